@@ -141,6 +141,10 @@ public class Awk {
 						settings.isAdditionalFunctions(),
 						settings.isAdditionalTypeFunctions(),
 						extensions);
+				// the intermediate file and the JVM compiler only know the tuples
+				parser.setCompileNodes(settings.isNodeEngine()
+						&& !settings.isWriteIntermediateFile()
+						&& !settings.isCompileToJvm());
 				// parse the script
 				AwkSyntaxTree ast = parser.parse(notIntermediateScriptSources);
 
@@ -162,6 +166,8 @@ public class Awk {
 					ast.semanticAnalysis();
 					// 2nd pass to tie actual parameters to forward-referenced formal parameters
 					ast.semanticAnalysis();
+					// fold constants, drop dead code and uncalled functions
+					ast.optimize();
 					// build tuples
 					int result = ast.populateTuples(tuples);
 					// ASSERTION: NOTHING should be left on the operand stack ...
@@ -169,6 +175,8 @@ public class Awk {
 					// Assign queue.next to the next element in the queue.
 					// Calls touch(...) per Tuple so that addresses can be normalized/assigned/allocated
 					tuples.postProcess();
+					// Remove NOPs, thread jumps and fuse frequent sequences of tuples
+					tuples.optimize();
 					// record global_var -> offset mapping into the tuples
 					// so that the interpreter/compiler can assign variables
 					// on the "file list input" command line
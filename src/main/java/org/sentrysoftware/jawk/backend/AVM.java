@@ -43,9 +43,7 @@ import java.util.regex.Pattern;
 import org.sentrysoftware.jawk.ExitException;
 import org.sentrysoftware.jawk.ext.JawkExtension;
 import org.sentrysoftware.jawk.frontend.AwkSyntaxTree;
-import org.sentrysoftware.jawk.intermediate.Address;
 import org.sentrysoftware.jawk.intermediate.AwkTuples;
-import org.sentrysoftware.jawk.intermediate.Position;
 import org.sentrysoftware.jawk.intermediate.PositionForInterpretation;
 import org.sentrysoftware.jawk.intermediate.UninitializedObject;
 import org.sentrysoftware.jawk.jrt.AssocArray;
@@ -53,18 +51,17 @@ import org.sentrysoftware.jawk.jrt.AwkRuntimeException;
 import org.sentrysoftware.jawk.jrt.BlockManager;
 import org.sentrysoftware.jawk.jrt.BlockObject;
 import org.sentrysoftware.jawk.jrt.CharacterTokenizer;
+import org.sentrysoftware.jawk.jrt.CompositeKey;
 import org.sentrysoftware.jawk.jrt.JRT;
 import org.sentrysoftware.jawk.jrt.KeyList;
 import org.sentrysoftware.jawk.jrt.KeyListImpl;
 import org.sentrysoftware.jawk.jrt.ConditionPair;
 import org.sentrysoftware.jawk.jrt.RegexTokenizer;
 import org.sentrysoftware.jawk.jrt.SingleCharacterTokenizer;
+import org.sentrysoftware.jawk.jrt.StrNum;
 import org.sentrysoftware.jawk.jrt.VariableManager;
-import org.sentrysoftware.jawk.util.ArrayStackImpl;
 import org.sentrysoftware.jawk.util.AwkLogger;
 import org.sentrysoftware.jawk.util.AwkSettings;
-import org.sentrysoftware.jawk.util.LinkedListStackImpl;
-import org.sentrysoftware.jawk.util.MyStack;
 import org.sentrysoftware.jawk.util.ScriptSource;
 import org.sentrysoftware.printf4j.Printf4J;
 import org.slf4j.Logger;
@@ -96,20 +93,22 @@ import org.slf4j.Logger;
  * errors/conditions. It can also throw a <code>java.lang.Error</code> if an
  * interpreter error is encountered.
  *
+ * <p>
+ * The handlers of the opcodes which the code compiled to JVM bytecode
+ * calls implement {@link AvmOperations}, which is internal to Jawk;
+ * the other handlers are package-private.
+ *
  * @author Danny Daglas
  */
-public class AVM implements AwkInterpreter, VariableManager {
+public class AVM implements AwkInterpreter, VariableManager, AvmOperations {
 
 	private static final Logger LOG = AwkLogger.getLogger(AVM.class);
 	private static final boolean IS_WINDOWS = (System.getProperty("os.name").indexOf("Windows") >= 0);
 
 	private RuntimeStack runtime_stack = new RuntimeStack();
 
-	// 16 slots by default
-	// (could be a parameter)
-	//private Deque<Object> operand_stack = new ArrayDeque<Object>(16);
-	//private MyStack<Object> operand_stack = new LinkedListStackImpl<Object>();
-	private MyStack<Object> operand_stack = new ArrayStackImpl<Object>();
+	// numbers computed by the opcodes stay unboxed in the stack
+	private final OperandStack operand_stack = new OperandStack();
 	private java.util.List<String> arguments;
 	private boolean sorted_array_keys;
 	private Map<String, Object> initial_variables;
@@ -122,8 +121,28 @@ public class AVM implements AwkInterpreter, VariableManager {
 	// stack methods
 	//private Object pop() { return operand_stack.removeFirst(); }
 	//private void push(Object o) { operand_stack.addLast(o); }
-	private Object pop() { return operand_stack.pop(); }
-	private void push(Object o) { operand_stack.push(o); }
+	/**
+	 * Pops an item off the operand stack.
+	 *
+	 * @return the item
+	 */
+	Object pop() { return operand_stack.pop(); }
+
+	/** {@inheritDoc} */
+	@Override
+	public void drop() { operand_stack.drop(); }
+
+	/** {@inheritDoc} */
+	@Override
+	public void push(Object o) { operand_stack.push(o); }
+
+	/** {@inheritDoc} */
+	@Override
+	public void pushLong(long l) { operand_stack.pushLong(l); }
+
+	/** {@inheritDoc} */
+	@Override
+	public void pushDouble(double d) { operand_stack.pushDouble(d); }
 
 	private final AwkSettings settings;
 
@@ -188,13 +207,43 @@ public class AVM implements AwkInterpreter, VariableManager {
 	private long argc_offset = NULL_OFFSET;
 	private long argv_offset = NULL_OFFSET;
 
+	/**
+	 * A special variable whose string value is kept, and converted again
+	 * only once the variable has been assigned.
+	 * <p>
+	 * An assignment always stores another object in the global, whichever
+	 * way it runs (interpreter, register VM, compiled code, getline var,
+	 * sub(), name=value arguments), so comparing the identity of the value
+	 * tracks all of them, with no hook on the assignments themselves.
+	 */
+	private final class SpecialVariable {
+
+		private Object value;
+		private String string;
+
+		String toString(long offset) {
+			Object v = runtime_stack.getVariable(offset, true);	// true = global
+			if (v != value) {
+				string = v.toString();
+				value = v;
+			}
+			return string;
+		}
+	}
+
+	private final SpecialVariable convfmt = new SpecialVariable();
+	private final SpecialVariable ofmt = new SpecialVariable();
+	private final SpecialVariable ofs = new SpecialVariable();
+	private final SpecialVariable ors = new SpecialVariable();
+	private final SpecialVariable subsep = new SpecialVariable();
+
 	private static final Integer ZERO = Integer.valueOf(0);
 	private static final Integer ONE = Integer.valueOf(1);
 
 	private Random random_number_generator;
 	private int oldseed;
 
-	private Address exit_address = null;
+	private int exit_address = -1;
 	
 	/**
 	 * <code>true</code> if execution position is within an END block;
@@ -225,7 +274,70 @@ public class AVM implements AwkInterpreter, VariableManager {
 	private Map<String, Boolean> global_variable_arrays;
 	private Set<String> function_names;
 
-	private static int parseIntField(Object obj, PositionForInterpretation position) {
+	/**
+	 * Current position within the tuples being interpreted.
+	 * It is a field (rather than a local variable of the interpreter
+	 * loop) so that opcode handlers can report line numbers.
+	 */
+	private PositionForInterpretation position;
+
+	/**
+	 * Line number of the tuple being executed by compiled code
+	 * (see {@link AwkCompiler}), or -1 when interpreting.
+	 */
+	private int compiled_lineno = -1;
+
+	/**
+	 * Compiles the hot regions of the tuples being interpreted;
+	 * <code>null</code> unless tiered compilation is enabled.
+	 */
+	private TieredCompiler tiered_compiler;
+
+	/**
+	 * Executes the register-based translation of the tuples;
+	 * <code>null</code> unless the register VM is enabled.
+	 */
+	private RegisterMachine register_machine;
+
+	/**
+	 * The statements compiled to trees of nodes, indexed by
+	 * the second argument of the <code>_EXEC_NODE_</code> tuples.
+	 */
+	private Nodes.Statement[] nodes;
+
+	/** Caches of the results of the pure functions, by function name */
+	private Map<String, FunctionMemo> function_memos = new HashMap<String, FunctionMemo>();
+
+	// programs compiled by exec(), shared with the AVMs which run them
+	private ProgramCache program_cache;
+	/** The cache and key of a call to a pure function about to run, see {@link #lookupMemo(FunctionMemo, int)} */
+	private FunctionMemo pending_memo;
+	private Object[] pending_memo_key;
+	/**
+	 * One cache slot per tuple, indexed like the tuples, for the values
+	 * an instruction resolves on its first execution: the compiled
+	 * <code>_REGEXP_</code> patterns (of the compiled code, the interpreter
+	 * reads them already compiled from the tuples), the state of the
+	 * <code>_CONDITION_PAIR_</code> ranges and the <code>_EXTENSION_</code>
+	 * implementations.
+	 */
+	private Object[] inline_caches = new Object[0];
+
+	/**
+	 * @return the line number of the tuple being executed, whether
+	 *   interpreted or compiled
+	 */
+	private int lineNumber() {
+		return compiled_lineno >= 0 ? compiled_lineno : position.lineNumber();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setLineNumber(int lineno) {
+		compiled_lineno = lineno;
+	}
+
+	private int parseIntField(Object obj) {
 
 		int fieldVal;
 
@@ -235,7 +347,7 @@ public class AVM implements AwkInterpreter, VariableManager {
 			try {
 				fieldVal = (int) Double.parseDouble(obj.toString());
 			} catch (NumberFormatException nfe) {
-				throw new AwkRuntimeException(position.lineNumber(), "Field $(" + obj.toString() + ") is incorrect.");
+				throw new AwkRuntimeException(lineNumber(), "Field $(" + obj.toString() + ") is incorrect.");
 			}
 		}
 
@@ -244,32 +356,26 @@ public class AVM implements AwkInterpreter, VariableManager {
 
 	private void setNumOnJRT(int fieldNum, double num) {
 
-		String numString;
-		if (num == (long) num) {
-			numString = Long.toString((long) num);
-		} else {
-			numString = Double.toString(num);
-		}
+		// the field keeps the number, and $0 is rebuilt with its CONVFMT string
+		Double value = num;
+		String numString = JRT.toAwkString(value, getConvfmtString(), locale);
 
 		// same code as _ASSIGN_AS_INPUT_FIELD_
 		if (fieldNum == 0) {
-			jrt.setInputLine(numString.toString());
-			jrt.jrtParseFields();
+			jrt.jrtSetInputLine(value, numString);
 		} else {
-			jrt.jrtSetInputField(numString, fieldNum);
+			jrt.jrtSetInputField(value, numString, fieldNum);
 		}
 	}
 
-	private String execSubOrGSub(PositionForInterpretation position, int gsubArgPos) {
+	private String execSubOrGSub(boolean is_gsub) {
 
 		String newString;
 
-		// arg[gsubArgPos] = is_gsub
 		// stack[0] = original field value
 		// stack[1] = replacement string
 		// stack[2] = ere
-		boolean is_gsub = position.boolArg(gsubArgPos);
-		String convfmt = getCONVFMT().toString();
+		String convfmt = getConvfmtString();
 		String orig = JRT.toAwkString(pop(), convfmt, locale);
 		String repl = JRT.toAwkString(pop(), convfmt, locale);
 		String ere = JRT.toAwkString(pop(), convfmt, locale);
@@ -287,1753 +393,2875 @@ public class AVM implements AwkInterpreter, VariableManager {
 	 *
 	 * Traverse the tuples, executing their associated opcodes to provide
 	 * an execution platform for Jawk scripts.
+	 * <p>
+	 * The loop below only decodes the tuple arguments and moves
+	 * the position; the semantics of each opcode live in a small
+	 * handler method. This keeps the dispatch loop well under the
+	 * JIT's huge-method limit, and lets each handler be compiled
+	 * and inlined on its own.
+	 *
 	 * @throws IOException in case of I/O problems (with getline typically)
 	 */
 	@Override
 	public void interpret(AwkTuples tuples)
 			throws ExitException, IOException
 	{
-		Map<String, Pattern> regexps = new HashMap<String, Pattern>();
-		Map<Integer, ConditionPair> condition_pairs = new HashMap<Integer, ConditionPair>();
-
 		global_variable_offsets = tuples.getGlobalVariableOffsetMap();
 		global_variable_arrays = tuples.getGlobalVariableAarrayMap();
 		function_names = tuples.getFunctionNameSet();
+		if (settings.getMemoCacheSize() > 0) {
+			for (String name : tuples.getPureFunctionNameSet()) {
+				function_memos.put(name, new FunctionMemo(name, settings.getMemoCacheSize()));
+			}
+		}
 
-		PositionForInterpretation position = (PositionForInterpretation) tuples.top();
+		position = (PositionForInterpretation) tuples.top();
+		inline_caches = new Object[tuples.size()];
+		AwkCompiledScript script = settings.isCompileToJvm() ? compile(tuples) : null;
+		List<Object> node_list = tuples.getNodes();
+		nodes = new Nodes.Statement[node_list.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = (Nodes.Statement) node_list.get(i);
+		}
+		// with nodes, the register VM and the tiered compiler would only
+		// translate the tuples the nodes jump over
+		if (nodes.length == 0 && script == null && settings.isRegisterVm()) {
+			register_machine = RegisterCompiler.compile(tuples);
+		} else if (nodes.length == 0 && script == null && settings.isTieredCompilation() && tuples.size() > 0) {
+			tiered_compiler = new TieredCompiler(tuples);
+		}
 
 		try {
-			while (!position.isEOF()) {
-				//System_out.println("--> "+position);
-				int opcode = position.opcode();
-				// switch on OPCODE
-				switch (opcode) {
-					case AwkTuples._PRINT_: {
-						// arg[0] = # of items to print on the stack
-						// stack[0] = item 1
-						// stack[1] = item 2
-						// etc.
-						long num_args = position.intArg(0);
-						printTo(settings.getOutputStream(), num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._PRINT_TO_FILE_: {
-						// arg[0] = # of items to print on the stack
-						// arg[1] = true=append, false=overwrite
-						// stack[0] = output filename
-						// stack[1] = item 1
-						// stack[2] = item 2
-						// etc.
-						long num_args = position.intArg(0);
-						boolean append = position.boolArg(1);
-						String key = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						PrintStream ps = jrt.getOutputFiles().get(key);
-						if (ps == null) {
-							try {
-								jrt.getOutputFiles().put(key, ps = new PrintStream(new FileOutputStream(key, append), true));	// true = autoflush
-							} catch (IOException ioe) {
-								throw new AwkRuntimeException(position.lineNumber(), "Cannot open " + key + " for writing: " + ioe);
+			if (script != null) {
+				executeCompiled(script, tuples.size());
+			} else {
+				while (!position.isEOF()) {
+					//System_out.println("--> "+position);
+					int opcode = position.opcode();
+					// switch on OPCODE
+					switch (opcode) {
+						case AwkTuples._PRINT_:
+							print(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._PRINT_TO_FILE_:
+							printToFile(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._PRINT_TO_PIPE_:
+							printToPipe(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._PRINTF_:
+							printf(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._PRINTF_TO_FILE_:
+							printfToFile(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._PRINTF_TO_PIPE_:
+							printfToPipe(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._SPRINTF_:
+							sprintf(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._LENGTH_:
+							length(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._PUSH_:
+							// arg[0] = constant to push onto the stack
+							push(position.arg(0));
+							position.next();
+							break;
+						case AwkTuples._POP_:
+							// stack[0] = item to pop from the stack
+							drop();
+							position.next();
+							break;
+						case AwkTuples._IFFALSE_:
+							// arg[0] = address to jump to if top of stack is false
+							if (ifFalse()) {
+								position.jump(position.addressArg());
+							} else {
+								position.next();
 							}
-						}
-						printTo(ps, num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._PRINT_TO_PIPE_: {
-						// arg[0] = # of items to print on the stack
-						// stack[0] = command to execute
-						// stack[1] = item 1
-						// stack[2] = item 2
-						// etc.
-						long num_args = position.intArg(0);
-						String cmd = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						PrintStream ps = jrt.jrtSpawnForOutput(cmd);
-						printTo(ps, num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._PRINTF_: {
-						// arg[0] = # of items to print on the stack (includes format string)
-						// stack[0] = format string
-						// stack[1] = item 1
-						// etc.
-						long num_args = position.intArg(0);
-						printfTo(settings.getOutputStream(), num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._PRINTF_TO_FILE_: {
-						// arg[0] = # of items to print on the stack (includes format string)
-						// arg[1] = true=append, false=overwrite
-						// stack[0] = output filename
-						// stack[1] = format string
-						// stack[2] = item 1
-						// etc.
-						long num_args = position.intArg(0);
-						boolean append = position.boolArg(1);
-						String key = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						PrintStream ps = jrt.getOutputFiles().get(key);
-						if (ps == null) {
-							try {
-								jrt.getOutputFiles().put(key, ps = new PrintStream(new FileOutputStream(key, append), true));	// true = autoflush
-							} catch (IOException ioe) {
-								throw new AwkRuntimeException(position.lineNumber(), "Cannot open " + key + " for writing: " + ioe);
+							break;
+						case AwkTuples._TO_NUMBER_:
+							toNumber();
+							position.next();
+							break;
+						case AwkTuples._IFTRUE_:
+							// arg[0] = address to jump to if top of stack is true
+							if (ifTrue()) {
+								position.jump(position.addressArg());
+							} else {
+								position.next();
 							}
-						}
-						printfTo(ps, num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._PRINTF_TO_PIPE_: {
-						// arg[0] = # of items to print on the stack (includes format string)
-						// stack[0] = command to execute
-						// stack[1] = format string
-						// stack[2] = item 1
-						// etc.
-						long num_args = position.intArg(0);
-						String cmd = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						PrintStream ps = jrt.jrtSpawnForOutput(cmd);
-						printfTo(ps, num_args);
-						position.next();
-						break;
-					}
-					case AwkTuples._SPRINTF_: {
-						// arg[0] = # of sprintf arguments
-						// stack[0] = arg1 (format string)
-						// stack[1] = arg2
-						// etc.
-						long num_args = position.intArg(0);
-						push(sprintfFunction(num_args));
-						position.next();
-						break;
-					}
-					case AwkTuples._LENGTH_: {
-
-						// arg[0] = 0==use $0, otherwise, use the stack element
-						// stack[0] = element to measure (only if arg[0] != 0)
-
-						// print items from the top of the stack
-						// # of items
-						long num = position.intArg(0);
-						if (num == 0) {
-							// display $0
-							push(jrt.jrtGetInputField(0).toString().length());
-						} else {
-							push(pop().toString().length());
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._PUSH_: {
-						// arg[0] = constant to push onto the stack
-						push(position.arg(0));
-						position.next();
-						break;
-					}
-					case AwkTuples._POP_: {
-						// stack[0] = item to pop from the stack
-						pop();
-						position.next();
-						break;
-					}
-					case AwkTuples._IFFALSE_: {
-						// arg[0] = address to jump to if top of stack is false
-						// stack[0] = item to check
-
-						// if int, then check for 0
-						// if double, then check for 0
-						// if String, then check for "" or double value of "0"
-						boolean jump = !jrt.toBoolean(pop());
-						if (jump) {
-							position.jump(position.addressArg());
-						} else {
+							break;
+						case AwkTuples._NOT_:
+							not();
 							position.next();
-						}
-						break;
-					}
-					case AwkTuples._TO_NUMBER_: {
-						// stack[0] = item to convert to a number
-
-						// if int, then check for 0
-						// if double, then check for 0
-						// if String, then check for "" or double value of "0"
-						boolean val = jrt.toBoolean(pop());
-						push(val ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._IFTRUE_: {
-						// arg[0] = address to jump to if top of stack is true
-						// stack[0] = item to check
-
-						// if int, then check for 0
-						// if double, then check for 0
-						// if String, then check for "" or double value of "0"
-						boolean jump = jrt.toBoolean(pop());
-						if (jump) {
-							position.jump(position.addressArg());
-						} else {
+							break;
+						case AwkTuples._NEGATE_:
+							negate();
 							position.next();
-						}
-						break;
-					}
-					case AwkTuples._NOT_: {
-						// stack[0] = item to logically negate
-
-						// if int, then check for 0
-						// if double, then check for 0
-						// if String, then check for "" or double value of "0"
-						Object o = pop();
-						boolean result;
-						if (o instanceof Integer) {
-							result = ((Integer)o).intValue() != 0;
-						} else if (o instanceof Long) {
-							result = ((Long)o).longValue() != 0;
-						} else if (o instanceof Double) {
-							result = ((Double)o).doubleValue() != 0;
-						} else if (o instanceof String) {
-							result = (o.toString().length() > 0);
-						} else if (o instanceof UninitializedObject) {
-							result = false;
-						} else {
-							throw new Error("Unknown operand_stack type: "+o.getClass()+" for value "+o);
-						}
-						if (result) {
-							push(0);
-						} else {
-							push(1);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._NEGATE_: {
-						// stack[0] = item to numerically negate
-
-						double d = JRT.toDouble(pop());
-						if (d == (long) d) {
-							push((long) -d);
-						} else {
-							push(-d);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._UNARY_PLUS_: {
-						// stack[0] = item to convert to a number
-						double d = JRT.toDouble(pop());
-						if (d == (long) d) {
-							push((long)d);
-						} else {
-							push(d);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._GOTO_: {
-						// arg[0] = address
-
-						position.jump(position.addressArg());
-						break;
-					}
-					case AwkTuples._NOP_: {
-						// do nothing, just advance the position
-						position.next();
-						break;
-					}
-					case AwkTuples._CONCAT_: {
-						// stack[0] = string1
-						// stack[1] = string2
-						String convfmt = getCONVFMT().toString();
-						String s2 = JRT.toAwkString(pop(), convfmt, locale);
-						String s1 = JRT.toAwkString(pop(), convfmt, locale);
-						String result_string = s1 + s2;
-						push(result_string);
-						position.next();
-						break;
-					}
-					case AwkTuples._ASSIGN_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = value
-						Object value = pop();
-						boolean is_global = position.boolArg(1);
-						assign(position.intArg(0), value, is_global, position);
-						position.next();
-						break;
-					}
-					case AwkTuples._ASSIGN_ARRAY_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = array index
-						// stack[1] = value
-						Object arr_idx = pop();
-						Object rhs = pop();
-						if (rhs == null) {
-							rhs = BLANK;
-						}
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-						assignArray(offset, arr_idx, rhs, is_global);
-						position.next();
-						break;
-					}
-					case AwkTuples._PLUS_EQ_ARRAY_:
-					case AwkTuples._MINUS_EQ_ARRAY_:
-					case AwkTuples._MULT_EQ_ARRAY_:
-					case AwkTuples._DIV_EQ_ARRAY_:
-					case AwkTuples._MOD_EQ_ARRAY_:
-					case AwkTuples._POW_EQ_ARRAY_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = array index
-						// stack[1] = value
-						Object arr_idx = pop();
-						Object rhs = pop();
-						if (rhs == null) {
-							rhs = BLANK;
-						}
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-
-						double val = JRT.toDouble(rhs);
-
-						// from _DEREF_ARRAY_
-						// stack[0] = AssocArray
-						// stack[1] = array index
-						Object o1 = runtime_stack.getVariable(offset, is_global);	// map
-						if (o1 == null || o1 instanceof UninitializedObject) {
-							runtime_stack.setVariable(offset, o1 = new AssocArray(sorted_array_keys), is_global);
-						} else {
-							assert o1 instanceof AssocArray;
-						}
-
-						AssocArray array = (AssocArray) o1;
-						Object o = array.get(arr_idx);
-						assert o != null;
-						double orig_val = JRT.toDouble(o);
-
-						double new_val;
-
-						switch (opcode) {
-							case AwkTuples._PLUS_EQ_ARRAY_:
-								new_val = orig_val + val;
-								break;
-							case AwkTuples._MINUS_EQ_ARRAY_:
-								new_val = orig_val - val;
-								break;
-							case AwkTuples._MULT_EQ_ARRAY_:
-								new_val = orig_val * val;
-								break;
-							case AwkTuples._DIV_EQ_ARRAY_:
-								new_val = orig_val / val;
-								break;
-							case AwkTuples._MOD_EQ_ARRAY_:
-								new_val = orig_val % val;
-								break;
-							case AwkTuples._POW_EQ_ARRAY_:
-								new_val = Math.pow(orig_val, val);
-								break;
-							default:
-								throw new Error("Invalid op code here: " + opcode);
-						}
-
-						if (new_val == (long) new_val) {
-							assignArray(offset, arr_idx, (long) new_val, is_global);
-						} else {
-							assignArray(offset, arr_idx, new_val, is_global);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._ASSIGN_AS_INPUT_: {
-						// stack[0] = value
-						jrt.setInputLine(pop().toString());
-						jrt.jrtParseFields();
-						push(jrt.getInputLine());
-						position.next();
-						break;
-					}
-					case AwkTuples._ASSIGN_AS_INPUT_FIELD_: {
-						// stack[0] = field number
-						// stack[1] = value
-						Object field_num_obj = pop();
-						int field_num;
-						if (field_num_obj instanceof Number) {
-							field_num = ((Number) field_num_obj).intValue();
-						} else {
-							try {
-								field_num = Integer.parseInt(field_num_obj.toString());
-							} catch (NumberFormatException nfe) {
-								field_num = 0;
+							break;
+						case AwkTuples._UNARY_PLUS_:
+							unaryPlus();
+							position.next();
+							break;
+						case AwkTuples._GOTO_: {
+							// arg[0] = address
+							int target = position.addressArg().index();
+							if (tiered_compiler != null && target <= position.current()) {
+								tiered_compiler.countLoop(target, position.current());
 							}
+							jumpTo(target);
+							break;
 						}
-						String value = pop().toString();
-						push(value);	// leave the result on the stack
-						if (field_num == 0) {
-							jrt.setInputLine(value);
-							jrt.jrtParseFields();
-						} else {
-							jrt.jrtSetInputField(value, field_num);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._PLUS_EQ_:
-					case AwkTuples._MINUS_EQ_:
-					case AwkTuples._MULT_EQ_:
-					case AwkTuples._DIV_EQ_:
-					case AwkTuples._MOD_EQ_:
-					case AwkTuples._POW_EQ_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = value
-						boolean is_global = position.boolArg(1);
-						Object o1 = runtime_stack.getVariable(position.intArg(0), is_global);
-						if (o1 == null) {
-							o1 = BLANK;
-						}
-						Object o2 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans;
-						switch (opcode) {
-							case AwkTuples._PLUS_EQ_:
-								ans = d1 + d2;
-								break;
-							case AwkTuples._MINUS_EQ_:
-								ans = d1 - d2;
-								break;
-							case AwkTuples._MULT_EQ_:
-								ans = d1 * d2;
-								break;
-							case AwkTuples._DIV_EQ_:
-								ans = d1 / d2;
-								break;
-							case AwkTuples._MOD_EQ_:
-								ans = d1 % d2;
-								break;
-							case AwkTuples._POW_EQ_:
-								ans = Math.pow(d1, d2);
-								break;
-							default:
-								throw new Error("Invalid opcode here: " + opcode);
-						}
-						if (ans == (long) ans) {
-							push((long) ans);
-							runtime_stack.setVariable(position.intArg(0), (int) ans, is_global);
-						} else {
-							push(ans);
-							runtime_stack.setVariable(position.intArg(0), ans, is_global);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._PLUS_EQ_INPUT_FIELD_:
-					case AwkTuples._MINUS_EQ_INPUT_FIELD_:
-					case AwkTuples._MULT_EQ_INPUT_FIELD_:
-					case AwkTuples._DIV_EQ_INPUT_FIELD_:
-					case AwkTuples._MOD_EQ_INPUT_FIELD_:
-					case AwkTuples._POW_EQ_INPUT_FIELD_: {
-						// stack[0] = dollar_field_number
-						// stack[1] = inc value
-
-						// same code as _GET_INPUT_FIELD_:
-						int fieldnum = parseIntField(pop(), position);
-						double incval = JRT.toDouble(pop());
-
-						// except here, get the number, and add the incvalue
-						Object num_obj = jrt.jrtGetInputField(fieldnum);
-						double num;
-						switch (opcode) {
-							case AwkTuples._PLUS_EQ_INPUT_FIELD_:
-								num = JRT.toDouble(num_obj) + incval;
-								break;
-							case AwkTuples._MINUS_EQ_INPUT_FIELD_:
-								num = JRT.toDouble(num_obj) - incval;
-								break;
-							case AwkTuples._MULT_EQ_INPUT_FIELD_:
-								num = JRT.toDouble(num_obj) * incval;
-								break;
-							case AwkTuples._DIV_EQ_INPUT_FIELD_:
-								num = JRT.toDouble(num_obj) / incval;
-								break;
-							case AwkTuples._MOD_EQ_INPUT_FIELD_:
-								num = JRT.toDouble(num_obj) % incval;
-								break;
-							case AwkTuples._POW_EQ_INPUT_FIELD_:
-								num = Math.pow(JRT.toDouble(num_obj), incval);
-								break;
-							default:
-								throw new Error("Invalid opcode here: " + opcode);
-						}
-						setNumOnJRT(fieldnum, num);
-
-						// put the result value on the stack
-						push(num);
-						position.next();
-
-						break;
-					}
-					case AwkTuples._INC_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						inc(position.intArg(0), position.boolArg(1));
-						position.next();
-						break;
-					}
-					case AwkTuples._DEC_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						dec(position.intArg(0), position.boolArg(1));
-						position.next();
-						break;
-					}
-					case AwkTuples._POSTINC_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						pop();
-						push(inc(position.intArg(0), position.boolArg(1)));
-						position.next();
-						break;
-					}
-					case AwkTuples._POSTDEC_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						pop();
-						push(dec(position.intArg(0), position.boolArg(1)));
-						position.next();
-						break;
-					}
-					case AwkTuples._INC_ARRAY_REF_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = array index
-						boolean is_global = position.boolArg(1);
-						Object o1 = runtime_stack.getVariable(position.intArg(0), is_global);
-						if (o1 == null || o1 instanceof UninitializedObject) {
-							runtime_stack.setVariable(position.intArg(0), o1 = new AssocArray(sorted_array_keys), is_global);
-						}
-						AssocArray aa = (AssocArray) o1;
-						Object key = pop();
-						Object o = aa.get(key);
-						assert o != null;
-						double ans = JRT.toDouble(o) + 1;
-						if (ans == (long) ans) {
-							aa.put(key, (long) ans);
-						} else {
-							aa.put(key, ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DEC_ARRAY_REF_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = array index
-						boolean is_global = position.boolArg(1);
-						Object o1 = runtime_stack.getVariable(position.intArg(0), is_global);
-						if (o1 == null || o1 instanceof UninitializedObject) {
-							runtime_stack.setVariable(position.intArg(0), o1 = new AssocArray(sorted_array_keys), is_global);
-						}
-						AssocArray aa = (AssocArray) o1;
-						Object key = pop();
-						Object o = aa.get(key);
-						assert o != null;
-						double ans = JRT.toDouble(o) - 1;
-						if (ans == (long) ans) {
-							aa.put(key, (long) ans);
-						} else {
-							aa.put(key, ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._INC_DOLLAR_REF_: {
-						// stack[0] = dollar index (field number)
-						// same code as _GET_INPUT_FIELD_:
-						int fieldnum = parseIntField(pop(), position);
-						// except here, get the number, and add one
-						//push(avmGetInputField(fieldnum));
-						Object num_obj = jrt.jrtGetInputField(fieldnum);
-						double num = JRT.toDouble(num_obj) + 1;
-						setNumOnJRT(fieldnum, num);
-
-						position.next();
-						break;
-					}
-					case AwkTuples._DEC_DOLLAR_REF_: {
-						// stack[0] = dollar index (field number)
-						// same code as _GET_INPUT_FIELD_:
-						int fieldnum = parseIntField(pop(), position);
-						// except here, get the number, and add one
-						//push(avmGetInputField(fieldnum));
-						Object num_obj = jrt.jrtGetInputField(fieldnum);
-						double num = JRT.toDouble(num_obj) - 1;
-						setNumOnJRT(fieldnum, num);
-
-						position.next();
-						break;
-					}
-					case AwkTuples._DEREFERENCE_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						boolean is_global = position.boolArg(2);
-						Object o = runtime_stack.getVariable(position.intArg(0), is_global);
-						if (o == null) {
-							if (position.boolArg(1)) {
-								// is_array
-								push(runtime_stack.setVariable(position.intArg(0), new AssocArray(sorted_array_keys), is_global));
+						case AwkTuples._NOP_:
+							// do nothing, just advance the position
+							position.next();
+							break;
+						case AwkTuples._CONCAT_:
+							concat();
+							position.next();
+							break;
+						case AwkTuples._ASSIGN_:
+							assign(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._ASSIGN_ARRAY_:
+							assignArray(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._PLUS_EQ_ARRAY_:
+						case AwkTuples._MINUS_EQ_ARRAY_:
+						case AwkTuples._MULT_EQ_ARRAY_:
+						case AwkTuples._DIV_EQ_ARRAY_:
+						case AwkTuples._MOD_EQ_ARRAY_:
+						case AwkTuples._POW_EQ_ARRAY_:
+							assignOpArray(opcode, position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._ASSIGN_AS_INPUT_:
+							assignAsInput();
+							position.next();
+							break;
+						case AwkTuples._ASSIGN_AS_INPUT_FIELD_:
+							assignAsInputField();
+							position.next();
+							break;
+						case AwkTuples._PLUS_EQ_:
+						case AwkTuples._MINUS_EQ_:
+						case AwkTuples._MULT_EQ_:
+						case AwkTuples._DIV_EQ_:
+						case AwkTuples._MOD_EQ_:
+						case AwkTuples._POW_EQ_:
+							assignOp(opcode, position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._PLUS_EQ_INPUT_FIELD_:
+						case AwkTuples._MINUS_EQ_INPUT_FIELD_:
+						case AwkTuples._MULT_EQ_INPUT_FIELD_:
+						case AwkTuples._DIV_EQ_INPUT_FIELD_:
+						case AwkTuples._MOD_EQ_INPUT_FIELD_:
+						case AwkTuples._POW_EQ_INPUT_FIELD_:
+							assignOpInputField(opcode);
+							position.next();
+							break;
+						case AwkTuples._INC_:
+							// arg[0] = offset
+							// arg[1] = is_global
+							inc(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._DEC_:
+							// arg[0] = offset
+							// arg[1] = is_global
+							dec(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._POSTINC_:
+							postInc(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._POSTDEC_:
+							postDec(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._INC_ARRAY_REF_:
+							incArrayRef(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._DEC_ARRAY_REF_:
+							decArrayRef(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._INC_DOLLAR_REF_:
+							incDollarRef();
+							position.next();
+							break;
+						case AwkTuples._DEC_DOLLAR_REF_:
+							decDollarRef();
+							position.next();
+							break;
+						case AwkTuples._DEREFERENCE_:
+							dereference(position.intArg(0), position.boolArg(1), position.boolArg(2));
+							position.next();
+							break;
+						case AwkTuples._DEREF_ARRAY_:
+							derefArray();
+							position.next();
+							break;
+						case AwkTuples._SRAND_:
+							srand(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._RAND_:
+							rand();
+							position.next();
+							break;
+						case AwkTuples._INTFUNC_:
+						case AwkTuples._CAST_INT_:
+							intFunc();
+							position.next();
+							break;
+						case AwkTuples._SQRT_:
+							sqrt();
+							position.next();
+							break;
+						case AwkTuples._LOG_:
+							log();
+							position.next();
+							break;
+						case AwkTuples._EXP_:
+							exp();
+							position.next();
+							break;
+						case AwkTuples._SIN_:
+							sin();
+							position.next();
+							break;
+						case AwkTuples._COS_:
+							cos();
+							position.next();
+							break;
+						case AwkTuples._ATAN2_:
+							atan2();
+							position.next();
+							break;
+						case AwkTuples._MATCH_:
+							match();
+							position.next();
+							break;
+						case AwkTuples._INDEX_:
+							index();
+							position.next();
+							break;
+						case AwkTuples._SUB_FOR_DOLLAR_0_:
+							subForDollar0(position.boolArg(0));
+							position.next();
+							break;
+						case AwkTuples._SUB_FOR_DOLLAR_REFERENCE_:
+							subForDollarReference(position.boolArg(0));
+							position.next();
+							break;
+						case AwkTuples._SUB_FOR_VARIABLE_:
+							subForVariable(position.intArg(0), position.boolArg(1), position.boolArg(2));
+							position.next();
+							break;
+						case AwkTuples._SUB_FOR_ARRAY_REFERENCE_:
+							subForArrayReference(position.intArg(0), position.boolArg(1), position.boolArg(2));
+							position.next();
+							break;
+						case AwkTuples._SPLIT_:
+							split(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._SUBSTR_:
+							substr(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._TOLOWER_:
+							toLower();
+							position.next();
+							break;
+						case AwkTuples._TOUPPER_:
+							toUpper();
+							position.next();
+							break;
+						case AwkTuples._SYSTEM_:
+							system();
+							position.next();
+							break;
+						case AwkTuples._SWAP_:
+							swap();
+							position.next();
+							break;
+						case AwkTuples._CMP_EQ_:
+							cmpEq();
+							position.next();
+							break;
+						case AwkTuples._CMP_LT_:
+							cmpLt();
+							position.next();
+							break;
+						case AwkTuples._CMP_GT_:
+							cmpGt();
+							position.next();
+							break;
+						case AwkTuples._CMP_EQ_NUM_:
+							cmpEqNum();
+							position.next();
+							break;
+						case AwkTuples._CMP_NE_NUM_:
+							cmpNeNum();
+							position.next();
+							break;
+						case AwkTuples._CMP_LT_NUM_:
+							cmpLtNum();
+							position.next();
+							break;
+						case AwkTuples._CMP_LE_NUM_:
+							cmpLeNum();
+							position.next();
+							break;
+						case AwkTuples._CMP_GT_NUM_:
+							cmpGtNum();
+							position.next();
+							break;
+						case AwkTuples._CMP_GE_NUM_:
+							cmpGeNum();
+							position.next();
+							break;
+						case AwkTuples._MATCHES_:
+							matches();
+							position.next();
+							break;
+						case AwkTuples._SLEEP_:
+							sleep(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._DUMP_:
+							dump(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._ADD_:
+							add();
+							position.next();
+							break;
+						case AwkTuples._SUBTRACT_:
+							subtract();
+							position.next();
+							break;
+						case AwkTuples._MULTIPLY_:
+							multiply();
+							position.next();
+							break;
+						case AwkTuples._DIVIDE_:
+							divide();
+							position.next();
+							break;
+						case AwkTuples._MOD_:
+							mod();
+							position.next();
+							break;
+						case AwkTuples._POW_:
+							pow();
+							position.next();
+							break;
+						case AwkTuples._DUP_:
+							dup();
+							position.next();
+							break;
+						case AwkTuples._KEYLIST_:
+							keylist();
+							position.next();
+							break;
+						case AwkTuples._IS_EMPTY_KEYLIST_:
+							// arg[0] = address
+							if (isEmptyKeylist()) {
+								position.jump(position.addressArg());
 							} else {
-								push(runtime_stack.setVariable(position.intArg(0), BLANK, is_global));
+								position.next();
 							}
-						} else {
-							push(o);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DEREF_ARRAY_: {
-						// stack[0] = array index
-						// stack[1] = AssocArray
-						Object idx = pop();	// idx
-						Object array = pop();	// map
-						if (!(array instanceof AssocArray)) {
-							throw new AwkRuntimeException("Attempting to index a non-associative-array.");
-						}
-						Object o = ((AssocArray) array).get(idx);
-						assert o != null;
-						push(o);
-						position.next();
-						break;
-					}
-					case AwkTuples._SRAND_: {
-						// arg[0] = num_args (where 0 = no args, anything else = one argument)
-						// stack[0] = seed (only if num_args != 0)
-						long numargs = position.intArg(0);
-						int seed;
-						if (numargs == 0) {
-							// use the time of day for the seed
-							seed = JRT.timeSeed();
-						} else {
-							Object o = pop();
-							if (o instanceof Double) {
-								seed = ((Double) o).intValue();
-							} else if (o instanceof Long) {
-								seed = ((Long) o).intValue();
-							} else if (o instanceof Integer) {
-								seed = ((Integer) o).intValue();
+							break;
+						case AwkTuples._GET_FIRST_AND_REMOVE_FROM_KEYLIST_:
+							getFirstAndRemoveFromKeylist();
+							position.next();
+							break;
+						case AwkTuples._CHECK_CLASS_:
+							checkClass(position.classArg());
+							position.next();
+							break;
+						case AwkTuples._CONSUME_INPUT_:
+							// arg[0] = address
+							if (consumeInput()) {
+								position.next();
 							} else {
-								try {
-									seed = Integer.parseInt(o.toString());
-								} catch (NumberFormatException nfe) {
-									seed = 0;
-								}
+								position.jump(position.addressArg());
 							}
-						}
-						random_number_generator = new Random(seed);
-						push(oldseed);
-						oldseed = seed;
-						position.next();
-						break;
-					}
-					case AwkTuples._RAND_: {
-						if (random_number_generator == null) {
-							int seed = JRT.timeSeed();
-							random_number_generator = new Random(seed);
-							oldseed = seed;
-						}
-						push(random_number_generator.nextDouble());
-						position.next();
-						break;
-					}
-					case AwkTuples._INTFUNC_:
-					case AwkTuples._CAST_INT_: {
-						// stack[0] = arg to int() function
-						push((long) JRT.toDouble(pop()));
-						position.next();
-						break;
-					}
-					case AwkTuples._SQRT_: {
-						// stack[0] = arg to sqrt() function
-						push(Math.sqrt(JRT.toDouble(pop())));
-						position.next();
-						break;
-					}
-					case AwkTuples._LOG_: {
-						// stack[0] = arg to log() function
-						push(Math.log(JRT.toDouble(pop())));
-						position.next();
-						break;
-					}
-					case AwkTuples._EXP_: {
-						// stack[0] = arg to exp() function
-						push(Math.exp(JRT.toDouble(pop())));
-						position.next();
-						break;
-					}
-					case AwkTuples._SIN_: {
-						// stack[0] = arg to sin() function
-						push(Math.sin(JRT.toDouble(pop())));
-						position.next();
-						break;
-					}
-					case AwkTuples._COS_: {
-						// stack[0] = arg to cos() function
-						push(Math.cos(JRT.toDouble(pop())));
-						position.next();
-						break;
-					}
-					case AwkTuples._ATAN2_: {
-						// stack[0] = 2nd arg to atan2() function
-						// stack[1] = 1st arg to atan2() function
-						double d2 = JRT.toDouble(pop());
-						double d1 = JRT.toDouble(pop());
-						push(Math.atan2(d1, d2));
-						position.next();
-						break;
-					}
-					case AwkTuples._MATCH_: {
-						// stack[0] = 2nd arg to match() function
-						// stack[1] = 1st arg to match() function
-						String convfmt = getCONVFMT().toString();
-						String ere = JRT.toAwkString(pop(), convfmt, locale);
-						String s = JRT.toAwkString(pop(), convfmt, locale);
-
-						// check if IGNORECASE set
-						int flags = 0;
-
-						if (global_variable_offsets.containsKey("IGNORECASE")) {
-							Integer offset_obj = global_variable_offsets.get("IGNORECASE");
-							Object ignorecase = runtime_stack.getVariable(offset_obj, true);
-
-							if (JRT.toDouble(ignorecase) != 0) {
-								flags |= Pattern.CASE_INSENSITIVE;
+							break;
+						case AwkTuples._GETLINE_INPUT_:
+							getlineInput();
+							position.next();
+							break;
+						case AwkTuples._USE_AS_FILE_INPUT_:
+							useAsFileInput();
+							position.next();
+							break;
+						case AwkTuples._USE_AS_COMMAND_INPUT_:
+							useAsCommandInput();
+							position.next();
+							break;
+						case AwkTuples._NF_OFFSET_:
+						case AwkTuples._NR_OFFSET_:
+						case AwkTuples._FNR_OFFSET_:
+						case AwkTuples._FS_OFFSET_:
+						case AwkTuples._RS_OFFSET_:
+						case AwkTuples._OFS_OFFSET_:
+						case AwkTuples._ORS_OFFSET_:
+						case AwkTuples._RSTART_OFFSET_:
+						case AwkTuples._RLENGTH_OFFSET_:
+						case AwkTuples._FILENAME_OFFSET_:
+						case AwkTuples._SUBSEP_OFFSET_:
+						case AwkTuples._CONVFMT_OFFSET_:
+						case AwkTuples._OFMT_OFFSET_:
+						case AwkTuples._ENVIRON_OFFSET_:
+						case AwkTuples._ARGC_OFFSET_:
+						case AwkTuples._ARGV_OFFSET_:
+							setSpecialVariableOffset(opcode, position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._GET_INPUT_FIELD_:
+							getInputField();
+							position.next();
+							break;
+						case AwkTuples._APPLY_RS_:
+							applyRS();
+							position.next();
+							break;
+						case AwkTuples._CALL_FUNCTION_: {
+							// arg[0] = function address
+							// arg[1] = function name
+							// arg[2] = # of formal parameters
+							// arg[3] = # of actual parameters
+							int func_idx = position.addressArg().index();
+							FunctionMemo memo = functionMemo(position.arg(1).toString());
+							if (memo != null && lookupMemo(memo, (int) position.intArg(3))) {
+								position.next();
+								break;
 							}
-						}
-
-						Pattern pattern = Pattern.compile(ere, flags);
-						Matcher matcher = pattern.matcher(s);
-						boolean result = matcher.find();
-						if (result) {
-							assign(rstart_offset, matcher.start() + 1, true, position);
-							assign(rlength_offset, matcher.end() - matcher.start(), true, position);
-							pop();
-							// end up with RSTART on the stack
-						} else {
-							assign(rstart_offset, ZERO, true, position);
-							assign(rlength_offset, -1, true, position);
-							pop();
-							// end up with RSTART on the stack
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._INDEX_: {
-						// stack[0] = 2nd arg to index() function
-						// stack[1] = 1st arg to index() function
-						String convfmt = getCONVFMT().toString();
-						String s2 = JRT.toAwkString(pop(), convfmt, locale);
-						String s1 = JRT.toAwkString(pop(), convfmt, locale);
-						push(s1.indexOf(s2) + 1);
-						position.next();
-						break;
-					}
-					case AwkTuples._SUB_FOR_DOLLAR_0_: {
-						// arg[0] = is_global
-						// stack[0] = replacement string
-						// stack[1] = ere
-						boolean is_gsub = position.boolArg(0);
-						String convfmt = getCONVFMT().toString();
-						String repl = JRT.toAwkString(pop(), convfmt, locale);
-						String ere = JRT.toAwkString(pop(), convfmt, locale);
-						String orig = JRT.toAwkString(jrt.jrtGetInputField(0), convfmt, locale);
-						String newstring;
-						if (is_gsub) {
-							newstring = replaceAll(orig, ere, repl);
-						} else {
-							newstring = replaceFirst(orig, ere, repl);
-						}
-						// assign it to "$0"
-						jrt.setInputLine(newstring);
-						jrt.jrtParseFields();
-						position.next();
-						break;
-					}
-					case AwkTuples._SUB_FOR_DOLLAR_REFERENCE_: {
-						// arg[0] = is_global
-						// stack[0] = field num
-						// stack[1] = original field value
-						// stack[2] = replacement string
-						// stack[3] = ere
-						boolean is_gsub = position.boolArg(0);
-						String convfmt = getCONVFMT().toString();
-						int fieldNum = (int) JRT.toDouble(pop());
-						String orig = JRT.toAwkString(pop(), convfmt, locale);
-						String repl = JRT.toAwkString(pop(), convfmt, locale);
-						String ere = JRT.toAwkString(pop(), convfmt, locale);
-						String newstring;
-						if (is_gsub) {
-							newstring = replaceAll(orig, ere, repl);
-						} else {
-							newstring = replaceFirst(orig, ere, repl);
-						}
-						// assign it to "$0"
-						if (fieldNum == 0) {
-							jrt.setInputLine(newstring);
-							jrt.jrtParseFields();
-						} else {
-							jrt.jrtSetInputField(newstring, fieldNum);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._SUB_FOR_VARIABLE_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// arg[2] = is_gsub
-						// stack[0] = original variable value
-						// stack[1] = replacement string
-						// stack[2] = ere
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-						String newString = execSubOrGSub(position, 2);
-						// assign it to "offset/global"
-						assign(offset, newString, is_global, position);
-						pop();
-						position.next();
-						break;
-					}
-					case AwkTuples._SUB_FOR_ARRAY_REFERENCE_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// arg[2] = is_gsub
-						// stack[0] = original variable value
-						// stack[1] = replacement string
-						// stack[2] = ere
-						// stack[3] = array index
-						// ARRAY reference offset/is_global
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-						Object arr_idx = pop();
-						String newString = execSubOrGSub(position, 2);
-						// assign it to "offset/arr_idx/global"
-						assignArray(offset, arr_idx, newString, is_global);
-						pop();
-						position.next();
-						break;
-					}
-					case AwkTuples._SPLIT_: {
-						// arg[0] = num args
-						// stack[0] = field_sep (only if num args == 3)
-						// stack[1] = array
-						// stack[2] = string
-						String convfmt = getCONVFMT().toString();
-						long numargs = position.intArg(0);
-						String fs_string;
-						if (numargs == 2) {
-							fs_string = JRT.toAwkString(getFS(), convfmt, locale);
-						} else if (numargs == 3) {
-							fs_string = JRT.toAwkString(pop(), convfmt, locale);
-						} else {
-							throw new Error("Invalid # of args. split() requires 2 or 3. Got: " + numargs);
-						}
-						Object o = pop();
-						if (!(o instanceof AssocArray)) {
-							throw new AwkRuntimeException(position.lineNumber(), o + " is not an array.");
-						}
-						String s = JRT.toAwkString(pop(), convfmt, locale);
-						Enumeration<Object> tokenizer;
-						if (fs_string.equals(" ")) {
-							tokenizer = new StringTokenizer(s);
-						} else if (fs_string.length() == 1) {
-							tokenizer = new SingleCharacterTokenizer(s, fs_string.charAt(0));
-						} else if (fs_string.isEmpty()) {
-							tokenizer = new CharacterTokenizer(s);
-						} else {
-							tokenizer = new RegexTokenizer(s, fs_string);
-						}
-
-						AssocArray assoc_array = (AssocArray) o;
-						assoc_array.clear();
-						int cnt = 0;
-						while (tokenizer.hasMoreElements()) {
-							assoc_array.put(++cnt, tokenizer.nextElement());
-						}
-						push(cnt);
-						position.next();
-						break;
-					}
-					case AwkTuples._SUBSTR_: {
-						// arg[0] = num args
-						// stack[0] = length (only if num args == 3)
-						// stack[1] = start pos
-						// stack[2] = string
-						long numargs = position.intArg(0);
-						int startPos, length;
-						String s;
-						if (numargs == 3)
-						{
-							length = (int) JRT.toLong(pop());
-							startPos = (int) JRT.toDouble(pop());
-							s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						} else if (numargs == 2) {
-							startPos = (int) JRT.toDouble(pop());
-							s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-							length = s.length() - startPos + 1;
-						} else {
-							throw new Error("numargs for _SUBSTR_ must be 2 or 3. It is " + numargs);
-						}
-						if (startPos <= 0) {
-							startPos = 1;
-						}
-						if (length <= 0 || startPos > s.length()) {
-							push(BLANK);
-						} else {
-							if (startPos + length > s.length()) {
-								push(s.substring(startPos - 1));
-							} else {
-								push(s.substring(startPos - 1, startPos + length - 1));
+							callFunction(position.intArg(2), position.intArg(3), position.current());
+							if (tiered_compiler != null) {
+								tiered_compiler.countCall(func_idx);
 							}
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._TOLOWER_: {
-						// stack[0] = string
-						push(JRT.toAwkString(pop(), getCONVFMT().toString(), locale).toLowerCase());
-						position.next();
-						break;
-					}
-					case AwkTuples._TOUPPER_: {
-						// stack[0] = string
-						push(JRT.toAwkString(pop(), getCONVFMT().toString(), locale).toUpperCase());
-						position.next();
-						break;
-					}
-					case AwkTuples._SYSTEM_: {
-						// stack[0] = command string
-						String s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						push(JRT.jrtSystem(s));
-						position.next();
-						break;
-					}
-					case AwkTuples._SWAP_: {
-						// stack[0] = item1
-						// stack[1] = item2
-						swapOnStack();
-						position.next();
-						break;
-					}
-					case AwkTuples._CMP_EQ_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						push(JRT.compare2(o1, o2, 0) ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._CMP_LT_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						push(JRT.compare2(o1, o2, -1) ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._CMP_GT_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						push(JRT.compare2(o1, o2, 1) ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._MATCHES_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						// use o1's string value
-						String s = o1.toString();
-						// assume o2 is a regexp
-						if (o2 instanceof Pattern) {
-							Pattern p = (Pattern) o2;
-							Matcher m = p.matcher(s);
-							// m.matches() matches the ENTIRE string
-							// m.find() is more appropriate
-							boolean result = m.find();
-							push(result ? 1 : 0);
-						} else {
-							String r = JRT.toAwkString(o2, getCONVFMT().toString(), locale);
-							boolean result = Pattern.compile(r).matcher(s).find();
-							push(result ? 1 : 0);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._SLEEP_: {
-						// arg[0] = num_args
-						// if (num_args==1)
-						// 	stack[0] = # of seconds
-						// else
-						// 	nothing on the stack
-						//int seconds = (int) JRT.toDouble(pop());
-						long seconds;
-						long numargs = position.intArg(0);
-						if (numargs == 0) {
-							seconds = 1;
-						} else {
-							seconds = (long) JRT.toDouble(pop());
-						}
-						try {
-							Thread.sleep(seconds * 1000);
-						} catch (InterruptedException ie) {
-							throw new AwkRuntimeException(position.lineNumber(), "Caught exception while waiting for process exit: " + ie);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DUMP_: {
-						// arg[0] = num_args
-						// if (num_args==0)
-						// 	all Jawk global variables
-						// else
-						// 	args are assoc arrays to display
-						//int seconds = (int) JRT.toDouble(pop());
-						long numargs = position.intArg(0);
-						AssocArray[] aa_array;
-						if (numargs == 0) {
-							aa_array = null;
-						} else {
-							aa_array = new AssocArray[(int) numargs];
-							for (int i = 0; i < numargs; ++i) {
-								aa_array[i] = (AssocArray) pop();
+							jumpTo(func_idx);
+							break;
+						}
+						case AwkTuples._FUNCTION_:
+							// important for compilation,
+							// not needed for interpretation
+							// arg[0] = function name
+							// arg[1] = # of formal parameters
+							position.next();
+							break;
+						case AwkTuples._SET_RETURN_RESULT_:
+							setReturnResult();
+							position.next();
+							break;
+						case AwkTuples._RETURN_FROM_FUNCTION_:
+							jumpTo(returnFromFunction() + 1);
+							break;
+						case AwkTuples._SET_NUM_GLOBALS_:
+							setNumGlobals(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._CLOSE_:
+							closeFile();
+							position.next();
+							break;
+						case AwkTuples._APPLY_SUBSEP_:
+							applySubsep(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._DELETE_ARRAY_ELEMENT_:
+							deleteArrayElement(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._DELETE_ARRAY_:
+							deleteArray(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._SET_EXIT_ADDRESS_:
+							// arg[0] = exit address
+							setExitAddress(position.addressArg().index());
+							position.next();
+							break;
+						case AwkTuples._SET_WITHIN_END_BLOCKS_:
+							// arg[0] = whether within the END blocks section
+							setWithinEndBlocks(position.boolArg(0));
+							position.next();
+							break;
+						case AwkTuples._EXIT_WITHOUT_CODE_:
+						case AwkTuples._EXIT_WITH_CODE_:
+							// If in BEGIN or in a rule, jump to the END section
+							jumpTo(exit(opcode == AwkTuples._EXIT_WITH_CODE_));
+							break;
+						case AwkTuples._REGEXP_:
+							regexp(position.arg(0));
+							position.next();
+							break;
+						case AwkTuples._CONDITION_PAIR_:
+							conditionPair(position.current());
+							position.next();
+							break;
+						case AwkTuples._IS_IN_:
+							isIn();
+							position.next();
+							break;
+						case AwkTuples._CAST_DOUBLE_:
+							castDouble();
+							position.next();
+							break;
+						case AwkTuples._CAST_STRING_:
+							castString();
+							position.next();
+							break;
+						case AwkTuples._THIS_:
+							// this is in preparation for a function
+							// call for the JVM-COMPILED script, only
+							// therefore, do NOTHING for the interpreted
+							// version
+							position.next();
+							break;
+						case AwkTuples._EXEC_:
+							exec();
+							position.next();
+							break;
+						case AwkTuples._GET_INPUT_FIELD_CONST_:
+							getInputFieldConst(position.intArg(0));
+							position.next();
+							break;
+						case AwkTuples._IFFALSE_VAR_EQ_CONST_:
+							// arg[0] = address to jump to if the variable differs from the constant
+							if (ifFalseVarEqConst(position.intArg(1), position.boolArg(2), position.arg(3))) {
+								position.jump(position.addressArg());
+							} else {
+								position.next();
 							}
-						}
-						avmDump(aa_array);
-						position.next();
-						break;
-					}
-					case AwkTuples._ADD_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = d1 + d2;
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._SUBTRACT_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = d1 - d2;
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._MULTIPLY_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = d1 * d2;
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DIVIDE_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = d1 / d2;
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._MOD_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = d1 % d2;
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._POW_: {
-						// stack[0] = item2
-						// stack[1] = item1
-						Object o2 = pop();
-						Object o1 = pop();
-						double d1 = JRT.toDouble(o1);
-						double d2 = JRT.toDouble(o2);
-						double ans = Math.pow(d1, d2);
-						if (ans == (long) ans) {
-							push((long) ans);
-						} else {
-							push(ans);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DUP_: {
-						// stack[0] = top of stack item
-						Object o = pop();
-						push(o);
-						push(o);
-						position.next();
-						break;
-					}
-					case AwkTuples._KEYLIST_: {
-						// stack[0] = AssocArray
-						Object o = pop();
-						assert o != null;
-						if (!(o instanceof AssocArray)) {
-							throw new AwkRuntimeException(position.lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
-						}
-						AssocArray aa = (AssocArray) o;
-						push(new KeyListImpl(aa.keySet()));
-						position.next();
-						break;
-					}
-					case AwkTuples._IS_EMPTY_KEYLIST_: {
-						// arg[0] = address
-						// stack[0] = KeyList
-						Object o = pop();
-						if (o == null || !(o instanceof KeyList)) {
-							throw new AwkRuntimeException(position.lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
-						}
-						KeyList keylist = (KeyList) o;
-						if (keylist.size() == 0) {
-							position.jump(position.addressArg());
-						} else {
+							break;
+						case AwkTuples._STORE_:
+							store(position.intArg(0), position.boolArg(1));
 							position.next();
-						}
-						break;
-					}
-					case AwkTuples._GET_FIRST_AND_REMOVE_FROM_KEYLIST_: {
-						// stack[0] = KeyList
-						Object o = pop();
-						if (o == null || !(o instanceof KeyList)) {
-							throw new AwkRuntimeException(position.lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
-						}
-						// pop off and return the head of the key set
-						KeyList keylist = (KeyList) o;
-						assert keylist.size() > 0;
-						push(keylist.getFirstAndRemove());
-						position.next();
-						break;
-					}
-					case AwkTuples._CHECK_CLASS_: {
-						// arg[0] = class object
-						// stack[0] = item to check
-						Object o = pop();
-						if (!(position.classArg().isInstance(o))) {
-							throw new AwkRuntimeException(position.lineNumber(), "Verification failed. Top-of-stack = " + o.getClass() + " isn't an instance of " + position.classArg());
-						}
-						push(o);
-						position.next();
-						break;
-					}
-					case AwkTuples._CONSUME_INPUT_: {
-						// arg[0] = address
-						// false = do NOT put result on stack...
-						// instead, put it in field vars ($0, $1, ...)
-						if (avmConsumeInput(false)) {
+							break;
+						case AwkTuples._ADD_TO_ARRAY_ELEMENT_:
+							addToArrayElement(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._INC_VAR_:
+							inc(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._DEREFERENCE_NUM_:
+							dereferenceNumber(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._ASSIGN_NUM_:
+							assignNumber(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._STORE_NUM_:
+							storeNumber(position.intArg(0), position.boolArg(1));
 							position.next();
-						} else {
+							break;
+						case AwkTuples._INC_VAR_NUM_:
+							incNumber(position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._PLUS_EQ_NUM_:
+						case AwkTuples._MINUS_EQ_NUM_:
+						case AwkTuples._MULT_EQ_NUM_:
+						case AwkTuples._DIV_EQ_NUM_:
+						case AwkTuples._MOD_EQ_NUM_:
+							assignOpNumber(opcode, position.intArg(0), position.boolArg(1));
+							position.next();
+							break;
+						case AwkTuples._EXTENSION_:
+							extension(position.current(), position.arg(0).toString(), position.intArg(1), position.boolArg(2));
+							position.next();
+							break;
+						case AwkTuples._REGISTERS_:
+							position.jump(register_machine.execute(this, position.current()));
+							break;
+						case AwkTuples._EXEC_NODE_:
+							// arg[0] = address after the tuples of the statement
+							// arg[1] = index of the node
+							nodes[(int) position.intArg(1)].exec(this);
+							setLineNumber(-1);
 							position.jump(position.addressArg());
-						}
-						break;
-					}
-					case AwkTuples._GETLINE_INPUT_: {
-						avmConsumeInputForGetline();
-						position.next();
-						break;
-					}
-					case AwkTuples._USE_AS_FILE_INPUT_: {
-						// stack[0] = filename
-						String s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						avmConsumeFileInputForGetline(s);
-						position.next();
-						break;
-					}
-					case AwkTuples._USE_AS_COMMAND_INPUT_: {
-						// stack[0] = command line
-						String s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						avmConsumeCommandInputForGetline(s);
-						position.next();
-						break;
-					}
-					case AwkTuples._NF_OFFSET_: {
-						// stack[0] = offset
-						nf_offset = position.intArg(0);
-						assert nf_offset != NULL_OFFSET;
-						assign(nf_offset, 0, true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._NR_OFFSET_: {
-						// stack[0] = offset
-						nr_offset = position.intArg(0);
-						assert nr_offset != NULL_OFFSET;
-						assign(nr_offset, 0, true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._FNR_OFFSET_: {
-						// stack[0] = offset
-						fnr_offset = position.intArg(0);
-						assert fnr_offset != NULL_OFFSET;
-						assign(fnr_offset, 0, true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._FS_OFFSET_: {
-						// stack[0] = offset
-						fs_offset = position.intArg(0);
-						assert fs_offset != NULL_OFFSET;
-						if (initial_fs_value == null) {
-							assign(fs_offset, " ", true, position);
-						} else {
-							assign(fs_offset, initial_fs_value, true, position);
-						}
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._RS_OFFSET_: {
-						// stack[0] = offset
-						rs_offset = position.intArg(0);
-						assert rs_offset != NULL_OFFSET;
-						assign(rs_offset, settings.getDefaultRS(), true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._OFS_OFFSET_: {
-						// stack[0] = offset
-						ofs_offset = position.intArg(0);
-						assert ofs_offset != NULL_OFFSET;
-						assign(ofs_offset, " ", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._ORS_OFFSET_: {
-						// stack[0] = offset
-						ors_offset = position.intArg(0);
-						assert ors_offset != NULL_OFFSET;
-						assign(ors_offset, settings.getDefaultORS(), true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._RSTART_OFFSET_: {
-						// stack[0] = offset
-						rstart_offset = position.intArg(0);
-						assert rstart_offset != NULL_OFFSET;
-						assign(rstart_offset, "", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._RLENGTH_OFFSET_: {
-						// stack[0] = offset
-						rlength_offset = position.intArg(0);
-						assert rlength_offset != NULL_OFFSET;
-						assign(rlength_offset, "", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._FILENAME_OFFSET_: {
-						// stack[0] = offset
-						filename_offset = position.intArg(0);
-						assert filename_offset != NULL_OFFSET;
-						assign(filename_offset, "", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._SUBSEP_OFFSET_: {
-						// stack[0] = offset
-						subsep_offset = position.intArg(0);
-						assert subsep_offset != NULL_OFFSET;
-						assign(subsep_offset, new String(new byte[] {28}), true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._CONVFMT_OFFSET_: {
-						// stack[0] = offset
-						convfmt_offset = position.intArg(0);
-						assert convfmt_offset != NULL_OFFSET;
-						assign(convfmt_offset, "%.6g", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._OFMT_OFFSET_: {
-						// stack[0] = offset
-						ofmt_offset = position.intArg(0);
-						assert ofmt_offset != NULL_OFFSET;
-						assign(ofmt_offset, "%.6g", true, position);
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
-					}
-					case AwkTuples._ENVIRON_OFFSET_: {
-						// stack[0] = offset
-						//// assignArray(offset, arr_idx, newstring, is_global);
-						environ_offset = position.intArg(0);
-						assert environ_offset != NULL_OFFSET;
-						// set the initial variables
-						Map<String, String> env = System.getenv();
-						for (Map.Entry<String, String> var : env.entrySet()) {
-							assignArray(environ_offset, var.getKey(), var.getValue(), true);
-							pop(); // clean up the stack after the assignment
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._ARGC_OFFSET_: {
-						// stack[0] = offset
-						argc_offset = position.intArg(0);
-						assert argc_offset != NULL_OFFSET;
-						//assign(argc_offset, arguments.size(), true, position);	// true = global
-						// +1 to include the "java Awk" (ARGV[0])
-						assign(argc_offset, arguments.size() + 1, true, position);	// true = global
-						pop();			// clean up the stack after the assignment
-						position.next();
-						break;
+							break;
+						default:
+							throw new Error("invalid opcode: " + AwkTuples.toOpcodeString(position.opcode()));
 					}
-					case AwkTuples._ARGV_OFFSET_: {
-						// stack[0] = offset
-						argv_offset = position.intArg(0);
-						assert argv_offset != NULL_OFFSET;
-						// consume argv (looping from 1 to argc)
-						int argc = (int) JRT.toDouble(runtime_stack.getVariable(argc_offset, true));	// true = global
-						assignArray(argv_offset, 0, "java Awk", true);
-						pop();
-						for (int i = 1; i < argc; i++) {
-							//assignArray(argv_offset, i+1, arguments.get(i), true);
-							assignArray(argv_offset, i, arguments.get(i - 1), true);
-							pop();			// clean up the stack after the assignment
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._GET_INPUT_FIELD_: {
-						// stack[0] = field number
-						int fieldnum = parseIntField(pop(), position);
-						push(jrt.jrtGetInputField(fieldnum));
-						position.next();
-						break;
-					}
-					case AwkTuples._APPLY_RS_: {
-						assert rs_offset != NULL_OFFSET;
-						Object rs_obj = runtime_stack.getVariable(rs_offset, true);	// true = global
-						if (jrt.getPartitioningReader() != null) {
-							jrt.getPartitioningReader().setRecordSeparator(rs_obj.toString());
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._CALL_FUNCTION_: {
-						// arg[0] = function address
-						// arg[1] = function name
-						// arg[2] = # of formal parameters
-						// arg[3] = # of actual parameters
-						// stack[0] = last actual parameter
-						// stack[1] = before-last actual parameter
-						// ...
-						// stack[n-1] = first actual parameter
-						// etc.
-						Address func_addr = position.addressArg();
-						//String func_name = position.arg(1).toString();
-						long num_formal_params = position.intArg(2);
-						long num_actual_params = position.intArg(3);
-						assert num_formal_params >= num_actual_params;
-						runtime_stack.pushFrame(num_formal_params, position.current());
-						// Arguments are stacked, so first in the stack is the last for the function 
-						for (long i = num_actual_params - 1 ; i >= 0 ; i--) {
-							runtime_stack.setVariable(i, pop(), false);	// false = local
-						}
-						position.jump(func_addr);
-						//position.next();
-						break;
-					}
-					case AwkTuples._FUNCTION_: {
-						// important for compilation,
-						// not needed for interpretation
-						// arg[0] = function name
-						// arg[1] = # of formal parameters
-						position.next();
-						break;
-					}
-					case AwkTuples._SET_RETURN_RESULT_: {
-						// stack[0] = return result
-						runtime_stack.setReturnValue(pop());
-						position.next();
-						break;
-					}
-					case AwkTuples._RETURN_FROM_FUNCTION_: {
-						position.jump(runtime_stack.popFrame());
-						push(runtime_stack.getReturnValue());
-						position.next();
-						break;
-					}
-					case AwkTuples._SET_NUM_GLOBALS_: {
-						// arg[0] = # of globals
-						assert position.intArg(0) == global_variable_offsets.size();
-						runtime_stack.setNumGlobals(position.intArg(0));
-
-						// now that we have the global variable size,
-						// we can allocate the initial variables
-
-						// assign -v variables (from initial_variables container)
-						for (String key : initial_variables.keySet()) {
-							if (function_names.contains(key)) {
-								throw new IllegalArgumentException("Cannot assign a scalar to a function name (" + key + ").");
-							}
-							Integer offset_obj = global_variable_offsets.get(key);
-							Boolean array_obj = global_variable_arrays.get(key);
-							if (offset_obj != null) {
-								assert array_obj != null;
-								if (array_obj.booleanValue()) {
-									throw new IllegalArgumentException("Cannot assign a scalar to a non-scalar variable (" + key + ").");
-								} else {
-									Object obj = initial_variables.get(key);
-									runtime_stack.setFilelistVariable(offset_obj.intValue(), obj);
-								}
-							}
-						}
+				}
+			}
 
-						position.next();
-						break;
-					}
-					case AwkTuples._CLOSE_: {
-						// stack[0] = file or command line to close
-						String s = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						push(jrt.jrtClose(s));
-						position.next();
-						break;
-					}
-					case AwkTuples._APPLY_SUBSEP_: {
-						// arg[0] = # of elements for SUBSEP application
-						// stack[0] = first element
-						// stack[1] = second element
-						// etc.
-						long count = position.intArg(0);
-						assert count >= 1;
-						//String s;
-						String convfmt = getCONVFMT().toString();
-						if (count == 1) {
-							//s = JRT.toAwkString(pop(), convfmt);
-						} else {
-							StringBuilder sb = new StringBuilder();
-							sb.append(JRT.toAwkString(pop(), convfmt, locale));
-							String subsep = JRT.toAwkString(runtime_stack.getVariable(subsep_offset, true), convfmt, locale);
-							for (int i = 1; i < count; i++) {
-								sb.insert(0, subsep);
-								sb.insert(0, JRT.toAwkString(pop(), convfmt, locale));
-							}
-							push(sb.toString());
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DELETE_ARRAY_ELEMENT_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// stack[0] = array index
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-						AssocArray aa = (AssocArray) runtime_stack.getVariable(offset, is_global);
-						Object key = pop();
-						if (aa != null) {
-							aa.remove(key);
-						}
-						position.next();
-						break;
-					}
-					case AwkTuples._DELETE_ARRAY_: {
-						// arg[0] = offset
-						// arg[1] = is_global
-						// (nothing on the stack)
-						long offset = position.intArg(0);
-						boolean is_global = position.boolArg(1);
-						runtime_stack.removeVariable(offset, is_global);
-						position.next();
-						break;
-					}
-					case AwkTuples._SET_EXIT_ADDRESS_: {
-						// arg[0] = exit address
-						exit_address = position.addressArg();
-						position.next();
-						break;
-					}
-					case AwkTuples._SET_WITHIN_END_BLOCKS_: {
-						// arg[0] = whether within the END blocks section
-						within_end_blocks = position.boolArg(0);
-						position.next();
-						break;
-					}
-					case AwkTuples._EXIT_WITHOUT_CODE_:
-					case AwkTuples._EXIT_WITH_CODE_: {
-						if (opcode == AwkTuples._EXIT_WITH_CODE_) {
-							// stack[0] = exit code
-							exit_code = (int) JRT.toDouble(pop());
-						}
-						throw_exit_exception = true;
-						
-						// If in BEGIN or in a rule, jump to the END section
-						if (!within_end_blocks) {
-							// clear runtime stack
-							runtime_stack.popAllFrames();
-							// clear operand stack
-							operand_stack.clear();
-							position.jump(exit_address);
-						} else {
-							// Exit immediately with ExitException
-							jrt.jrtCloseAll();
-							// clear operand stack
-							operand_stack.clear();
-							throw new ExitException(exit_code, "The AWK script requested an exit");
-							//position.next();
-						}
-						break;
-					}
-					case AwkTuples._REGEXP_: {
-						// arg[0] = string representation of regexp
-						String key = JRT.toAwkString(position.arg(0), getCONVFMT().toString(), locale);
-						Pattern pattern = regexps.get(key);
-						if (pattern == null) {
-							regexps.put(key, pattern = Pattern.compile(key));
-						}
-						push(pattern);
-						position.next();
-						break;
-					}
-					case AwkTuples._CONDITION_PAIR_: {
-						// stack[0] = End condition
-						// stack[1] = Start condition
-						ConditionPair cp = condition_pairs.get(position.current());
-						if (cp == null) {
-							cp = new ConditionPair();
-							condition_pairs.put(position.current(), cp);
-						}
-						boolean end = jrt.toBoolean(pop());
-						boolean start = jrt.toBoolean(pop());
-						push(cp.update(start, end) ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._IS_IN_: {
-						// stack[0] = AssocArray
-						// stack[1] = key to check
-						Object arr = pop();
-						Object arg = pop();
-						AssocArray aa = (AssocArray) arr;
-						boolean result = aa.isIn(arg);
-						push(result ? ONE : ZERO);
-						position.next();
-						break;
-					}
-					case AwkTuples._CAST_DOUBLE_: {
-						push(JRT.toDouble(pop()));
-						position.next();
-						break;
-					}
-					case AwkTuples._CAST_STRING_: {
-						push(pop().toString());
-						position.next();
-						break;
-					}
-					case AwkTuples._THIS_: {
-						// this is in preparation for a function
-						// call for the JVM-COMPILED script, only
-						// therefore, do NOTHING for the interpreted
-						// version
-						position.next();
-						break;
-					}
-					case AwkTuples._EXEC_: {
-						// stack[0] = Jawk code
-
-						// TODO FIXME First attempt. It is not complete by a long-shot. Use at your own risk.
-
-						String awk_code = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
-						List<ScriptSource> scriptSources = new ArrayList<ScriptSource>(1);
-						scriptSources.add(new ScriptSource(ScriptSource.DESCRIPTION_COMMAND_LINE_SCRIPT, new StringReader(awk_code), false));
-
-						org.sentrysoftware.jawk.frontend.AwkParser ap = new org.sentrysoftware.jawk.frontend.AwkParser(
-								//true, true, true, extensions
-								settings.isAdditionalFunctions(),
-								settings.isAdditionalTypeFunctions(),
-								extensions);
-						try {
-							AwkSyntaxTree ast = ap.parse(scriptSources);
-							if (ast != null) {
-								ast.semanticAnalysis();
-								ast.semanticAnalysis();
-								AwkTuples new_tuples = new AwkTuples();
-								int result = ast.populateTuples(new_tuples);
-								assert result == 0;
-								new_tuples.postProcess();
-								ap.populateGlobalVariableNameToOffsetMappings(new_tuples);
-								AVM new_avm = new AVM(settings, extensions);
-								int subScriptExitCode = 0;
-								try {
-									new_avm.interpret(new_tuples);
-								} catch (ExitException ex) {
-									subScriptExitCode = ex.getCode();
-								}
-								push(subScriptExitCode);
-							} else {
-								push(-1);
-							}
-						} catch (IOException ioe) {
-							throw new AwkRuntimeException(position.lineNumber(), "IO Exception caught : " + ioe);
-						}
+			// End of the instructions
+			jrt.jrtCloseAll();
+
+			for (FunctionMemo memo : function_memos.values()) {
+				LOG.debug("memoized {}", memo);
+			}
+
+		} catch (RuntimeException re) {
+			LOG.error("", re);
+			LOG.error("operand_stack = {}", operand_stack);
+			LOG.error("position = {}", position);
+			LOG.error("line number = {}", lineNumber());
+
+			// clear runtime stack
+			runtime_stack.popAllFrames();
+			// clear operand stack
+			operand_stack.clear();
+
+			throw re;
+		} catch (AssertionError ae) {
+			LOG.error("", ae);
+			LOG.error("operand_stack = {}", operand_stack);
+			try {
+				LOG.error("position = {}", position);
+			} catch (Throwable t) {
+				LOG.error("{ could not report on position", t);
+			}
+			try {
+				LOG.error("line number = {}", lineNumber());
+			} catch (Throwable t) {
+				LOG.error("{ could not report on line number", t);
+			}
+			throw ae;
+		}
+
+		// If <code>exit</code> was called, throw an ExitException
+		if (throw_exit_exception) {
+			throw new ExitException(exit_code, "The AWK script requested an exit");
+		}
+
+	}
+
+	/**
+	 * Compiles all the tuples to JVM bytecode.
+	 *
+	 * @return the compiled script, or <code>null</code> if the tuples
+	 *   cannot be compiled, in which case they will be interpreted
+	 */
+	private AwkCompiledScript compile(AwkTuples tuples) {
+		if (tuples.size() == 0) {
+			return null;
+		}
+		try {
+			return AwkCompiler.compile(tuples, 0, tuples.size());
+		} catch (ClassFileWriter.CodeTooLargeException ctle) {
+			LOG.warn("Cannot compile the script to JVM bytecode, it will be interpreted: {}", ctle.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Jumps to the specified tuple, running the compiled code
+	 * that covers it, if any.
+	 */
+	private void jumpTo(int idx) throws ExitException, IOException {
+		if (tiered_compiler != null) {
+			idx = tiered_compiler.execute(this, idx);
+		}
+		position.jump(idx);
+	}
+
+	/**
+	 * Runs the compiled script until it leaves the tuples.
+	 * The compiled code only hands control back to us to
+	 * jump to the exit address.
+	 */
+	private void executeCompiled(AwkCompiledScript script, int size) throws ExitException, IOException {
+		int idx = 0;
+		while (idx < size) {
+			int next_idx = script.execute(this, idx);
+			if (next_idx == idx) {
+				throw new Error("Compiled script cannot be entered at tuple " + idx);
+			}
+			idx = next_idx;
+		}
+	}
+
+	// opcode handlers
+	//
+	// Each handler implements the semantics of one opcode (or of a family
+	// of opcodes that only differ by their arithmetic operator).
+	// Tuple arguments are decoded by the caller and passed in as
+	// parameters; operands are taken from (and results left on)
+	// the operand stack.
+
+	private PrintStream getOutputFile(String key, boolean append) {
+		PrintStream ps = jrt.getOutputFiles().get(key);
+		if (ps == null) {
+			try {
+				jrt.getOutputFiles().put(key, ps = new PrintStream(new FileOutputStream(key, append), true));	// true = autoflush
+			} catch (IOException ioe) {
+				throw new AwkRuntimeException(lineNumber(), "Cannot open " + key + " for writing: " + ioe);
+			}
+		}
+		return ps;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void print(long num_args) {
+		// arg[0] = # of items to print on the stack
+		// stack[0] = item 1
+		// stack[1] = item 2
+		// etc.
+		printTo(settings.getOutputStream(), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void printToFile(long num_args, boolean append) {
+		// arg[0] = # of items to print on the stack
+		// arg[1] = true=append, false=overwrite
+		// stack[0] = output filename
+		// stack[1] = item 1
+		// stack[2] = item 2
+		// etc.
+		String key = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		printTo(getOutputFile(key, append), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void printToPipe(long num_args) {
+		// arg[0] = # of items to print on the stack
+		// stack[0] = command to execute
+		// stack[1] = item 1
+		// stack[2] = item 2
+		// etc.
+		String cmd = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		printTo(jrt.jrtSpawnForOutput(cmd), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void printf(long num_args) {
+		// arg[0] = # of items to print on the stack (includes format string)
+		// stack[0] = format string
+		// stack[1] = item 1
+		// etc.
+		printfTo(settings.getOutputStream(), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void printfToFile(long num_args, boolean append) {
+		// arg[0] = # of items to print on the stack (includes format string)
+		// arg[1] = true=append, false=overwrite
+		// stack[0] = output filename
+		// stack[1] = format string
+		// stack[2] = item 1
+		// etc.
+		String key = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		printfTo(getOutputFile(key, append), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void printfToPipe(long num_args) {
+		// arg[0] = # of items to print on the stack (includes format string)
+		// stack[0] = command to execute
+		// stack[1] = format string
+		// stack[2] = item 1
+		// etc.
+		String cmd = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		printfTo(jrt.jrtSpawnForOutput(cmd), num_args);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void sprintf(long num_args) {
+		// arg[0] = # of sprintf arguments
+		// stack[0] = arg1 (format string)
+		// stack[1] = arg2
+		// etc.
+		push(sprintfFunction(num_args));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void length(long num) {
+		// arg[0] = 0==use $0, otherwise, use the stack element
+		// stack[0] = element to measure (only if arg[0] != 0)
+		if (num == 0) {
+			// display $0
+			push(jrt.jrtGetInputField(0).toString().length());
+		} else {
+			Object o = pop();
+			if (o instanceof AssocArray) {
+				// the number of elements of an array
+				push(((AssocArray) o).keySet().size());
+			} else {
+				push(o.toString().length());
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean ifFalse() {
+		// stack[0] = item to check
+
+		// if int, then check for 0
+		// if double, then check for 0
+		// if String, then check for "" or double value of "0"
+		if (operand_stack.type(0) != OperandStack.OBJECT) {
+			return operand_stack.popDouble() == 0;
+		}
+		return !jrt.toBoolean(pop());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void toNumber() {
+		// stack[0] = item to convert to a number
+
+		// if int, then check for 0
+		// if double, then check for 0
+		// if String, then check for "" or double value of "0"
+		boolean val = ifTrue();
+		operand_stack.pushLong(val ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean ifTrue() {
+		// stack[0] = item to check
+
+		// if int, then check for 0
+		// if double, then check for 0
+		// if String, then check for "" or double value of "0"
+		if (operand_stack.type(0) != OperandStack.OBJECT) {
+			return operand_stack.popDouble() != 0;
+		}
+		return jrt.toBoolean(pop());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void not() {
+		// stack[0] = item to logically negate
+
+		// if int, then check for 0
+		// if double, then check for 0
+		// if String, then check for "" or double value of "0"
+		if (operand_stack.type(0) != OperandStack.OBJECT) {
+			operand_stack.pushLong(operand_stack.popDouble() == 0 ? 1 : 0);
+		} else {
+			push(not(pop()));
+		}
+	}
+
+	/**
+	 * Logical negation of a value (see {@link #not()}).
+	 *
+	 * @param o the value to negate
+	 * @return 1 if o is false, 0 otherwise
+	 */
+	Object not(Object o) {
+		boolean result;
+		if (o instanceof Integer) {
+			result = ((Integer)o).intValue() != 0;
+		} else if (o instanceof Long) {
+			result = ((Long)o).longValue() != 0;
+		} else if (o instanceof Double) {
+			result = ((Double)o).doubleValue() != 0;
+		} else if (o instanceof String) {
+			result = (o.toString().length() > 0);
+		} else if (o instanceof StrNum) {
+			result = jrt.toBoolean(o);
+		} else if (o instanceof UninitializedObject) {
+			result = false;
+		} else {
+			throw new Error("Unknown operand_stack type: "+o.getClass()+" for value "+o);
+		}
+		return result ? 0 : 1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void negate() {
+		// stack[0] = item to numerically negate
+		byte type = operand_stack.type(0);
+		if (type == OperandStack.LONG) {
+			long l = operand_stack.popLong();
+			if (l != Long.MIN_VALUE) {
+				operand_stack.pushLong(-l);
+			} else {
+				operand_stack.pushNumber(-(double) l);
+			}
+		} else if (type == OperandStack.DOUBLE) {
+			operand_stack.pushNumber(-operand_stack.popDouble());
+		} else {
+			push(JRT.negate(pop()));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void unaryPlus() {
+		// stack[0] = item to convert to a number
+		push(JRT.unaryPlus(pop()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void concat() {
+		// stack[0] = string1
+		// stack[1] = string2
+		Object o2 = pop();
+		Object o1 = pop();
+		push(concat(o1, o2));
+	}
+
+	/**
+	 * Concatenates two values (see {@link #concat()}).
+	 *
+	 * @param o1 the left-hand side
+	 * @param o2 the right-hand side
+	 * @return the concatenation of their string values
+	 */
+	String concat(Object o1, Object o2) {
+		String convfmt = getConvfmtString();
+		String s2 = JRT.toAwkString(o2, convfmt, locale);
+		String s1 = JRT.toAwkString(o1, convfmt, locale);
+		return s1 + s2;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assign(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = value
+		Object value = pop();
+		assign(offset, value, is_global);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignArray(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = array index
+		// stack[1] = value
+		Object arr_idx = pop();
+		Object rhs = pop();
+		if (rhs == null) {
+			rhs = BLANK;
+		}
+		assignArray(offset, arr_idx, rhs, is_global);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignOpArray(int opcode, long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = array index
+		// stack[1] = value
+
+		// from _DEREF_ARRAY_
+		// stack[0] = AssocArray
+		// stack[1] = array index
+		Object o1 = runtime_stack.getVariable(offset, is_global);	// map
+		if (o1 == null || o1 instanceof UninitializedObject) {
+			runtime_stack.setVariable(offset, o1 = new AssocArray(sorted_array_keys), is_global);
+		} else {
+			assert o1 instanceof AssocArray;
+		}
+
+		AssocArray array = (AssocArray) o1;
+		Object arr_idx = null;
+		int entry = -1;
+		boolean numeric = opcode != AwkTuples._POW_EQ_ARRAY_ && operand_stack.type(1) != OperandStack.OBJECT;
+		if (numeric && operand_stack.type(0) == OperandStack.LONG) {
+			long key = operand_stack.popLong();
+			entry = array.numberEntry(key);
+			if (entry < 0) {
+				arr_idx = key;
+			}
+		} else {
+			arr_idx = pop();
+			if (numeric) {
+				entry = array.numberEntry(arr_idx);
+			}
+		}
+		if (entry >= 0) {
+			assignOpNumber(opcode, array, entry);
+			return;
+		}
+
+		Object rhs = pop();
+		if (rhs == null) {
+			rhs = BLANK;
+		}
+		Object o = array.get(arr_idx);
+		assert o != null;
+
+		Object new_val;
+
+		// the JRT operations keep integers exact (see JRT.add())
+		switch (opcode) {
+			case AwkTuples._PLUS_EQ_ARRAY_:
+				new_val = JRT.add(o, rhs);
+				break;
+			case AwkTuples._MINUS_EQ_ARRAY_:
+				new_val = JRT.subtract(o, rhs);
+				break;
+			case AwkTuples._MULT_EQ_ARRAY_:
+				new_val = JRT.multiply(o, rhs);
+				break;
+			case AwkTuples._DIV_EQ_ARRAY_:
+				new_val = JRT.divide(o, rhs);
+				break;
+			case AwkTuples._MOD_EQ_ARRAY_:
+				new_val = JRT.mod(o, rhs);
+				break;
+			case AwkTuples._POW_EQ_ARRAY_:
+				new_val = JRT.pow(o, rhs);
+				break;
+			default:
+				throw new Error("Invalid op code here: " + opcode);
+		}
+
+		assignArray(offset, arr_idx, new_val, is_global);
+	}
+
+	/**
+	 * Applies a compound assignment to an array element whose number is
+	 * updated in place (see {@link AssocArray#numberEntry(Object)}), with
+	 * the operator of the operand stack: neither the element, nor the
+	 * operand, nor the result are boxed.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param array the associative array
+	 * @param entry the position of the element in the array
+	 */
+	private void assignOpNumber(int opcode, AssocArray array, int entry) {
+		// stack[0] = value, a number
+		// the element goes below the value
+		boolean long_value = operand_stack.type(0) == OperandStack.LONG;
+		long l = 0;
+		double d = 0;
+		if (long_value) {
+			l = operand_stack.popLong();
+		} else {
+			d = operand_stack.popDouble();
+		}
+		if (array.isLongAt(entry)) {
+			operand_stack.pushLong(array.longAt(entry));
+		} else {
+			operand_stack.pushDouble(array.doubleAt(entry));
+		}
+		if (long_value) {
+			operand_stack.pushLong(l);
+		} else {
+			operand_stack.pushDouble(d);
+		}
+
+		switch (opcode) {
+			case AwkTuples._PLUS_EQ_ARRAY_:
+				add();
+				break;
+			case AwkTuples._MINUS_EQ_ARRAY_:
+				subtract();
+				break;
+			case AwkTuples._MULT_EQ_ARRAY_:
+				multiply();
+				break;
+			case AwkTuples._DIV_EQ_ARRAY_:
+				divide();
+				break;
+			case AwkTuples._MOD_EQ_ARRAY_:
+				mod();
+				break;
+			default:
+				throw new Error("Invalid op code here: " + opcode);
+		}
+
+		// the result stays on the stack, as the value of the assignment
+		if (operand_stack.type(0) == OperandStack.LONG) {
+			l = operand_stack.popLong();
+			array.putLongAt(entry, l);
+			operand_stack.pushLong(l);
+		} else {
+			d = operand_stack.popDouble();
+			array.putDoubleAt(entry, d);
+			operand_stack.pushDouble(d);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignAsInput() {
+		// stack[0] = value
+		Object value_obj = pop();
+		jrt.jrtSetInputLine(value_obj, JRT.toAwkString(value_obj, getConvfmtString(), locale));
+		push(value_obj);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignAsInputField() {
+		// stack[0] = field number
+		// stack[1] = value
+		Object field_num_obj = pop();
+		int field_num;
+		if (field_num_obj instanceof Number) {
+			field_num = ((Number) field_num_obj).intValue();
+		} else {
+			try {
+				field_num = Integer.parseInt(field_num_obj.toString());
+			} catch (NumberFormatException nfe) {
+				field_num = 0;
+			}
+		}
+		// the field keeps the value, and $0 is rebuilt with its CONVFMT string
+		Object value_obj = pop();
+		String value = JRT.toAwkString(value_obj, getConvfmtString(), locale);
+		push(value_obj);	// leave the result on the stack
+		if (field_num == 0) {
+			jrt.jrtSetInputLine(value_obj, value);
+		} else {
+			jrt.jrtSetInputField(value_obj, value, field_num);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignOp(int opcode, long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = value
+		push(assignOp(opcode, offset, pop(), is_global));
+	}
+
+	/**
+	 * Applies a compound assignment to a variable (see {@link #assignOp(int, long, boolean)}).
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param offset offset of the variable
+	 * @param o2 the right-hand side of the assignment
+	 * @param is_global whether the variable is global (or local)
+	 * @return the value of the assignment
+	 */
+	Object assignOp(int opcode, long offset, Object o2, boolean is_global) {
+		Object o1 = runtime_stack.getVariable(offset, is_global);
+		if (o1 == null) {
+			o1 = BLANK;
+		}
+		Object ans;
+		// the JRT operations keep integers exact (see JRT.add())
+		switch (opcode) {
+			case AwkTuples._PLUS_EQ_:
+			case AwkTuples._PLUS_EQ_NUM_:
+				ans = JRT.add(o1, o2);
+				break;
+			case AwkTuples._MINUS_EQ_:
+			case AwkTuples._MINUS_EQ_NUM_:
+				ans = JRT.subtract(o1, o2);
+				break;
+			case AwkTuples._MULT_EQ_:
+			case AwkTuples._MULT_EQ_NUM_:
+				ans = JRT.multiply(o1, o2);
+				break;
+			case AwkTuples._DIV_EQ_:
+			case AwkTuples._DIV_EQ_NUM_:
+				ans = JRT.divide(o1, o2);
+				break;
+			case AwkTuples._MOD_EQ_:
+			case AwkTuples._MOD_EQ_NUM_:
+				ans = JRT.mod(o1, o2);
+				break;
+			case AwkTuples._POW_EQ_:
+				ans = JRT.pow(o1, o2);
+				break;
+			default:
+				throw new Error("Invalid opcode here: " + opcode);
+		}
+		runtime_stack.setVariable(offset, ans, is_global);
+		return ans;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignOpInputField(int opcode) {
+		// stack[0] = dollar_field_number
+		// stack[1] = inc value
+
+		// same code as _GET_INPUT_FIELD_:
+		int fieldnum = parseIntField(pop());
+		double incval = JRT.toDouble(pop());
+
+		// except here, get the number, and add the incvalue
+		Object num_obj = jrt.jrtGetInputField(fieldnum);
+		double num;
+		switch (opcode) {
+			case AwkTuples._PLUS_EQ_INPUT_FIELD_:
+				num = JRT.toDouble(num_obj) + incval;
+				break;
+			case AwkTuples._MINUS_EQ_INPUT_FIELD_:
+				num = JRT.toDouble(num_obj) - incval;
+				break;
+			case AwkTuples._MULT_EQ_INPUT_FIELD_:
+				num = JRT.toDouble(num_obj) * incval;
+				break;
+			case AwkTuples._DIV_EQ_INPUT_FIELD_:
+				num = JRT.toDouble(num_obj) / incval;
+				break;
+			case AwkTuples._MOD_EQ_INPUT_FIELD_:
+				num = JRT.toDouble(num_obj) % incval;
+				break;
+			case AwkTuples._POW_EQ_INPUT_FIELD_:
+				num = Math.pow(JRT.toDouble(num_obj), incval);
+				break;
+			default:
+				throw new Error("Invalid opcode here: " + opcode);
+		}
+		setNumOnJRT(fieldnum, num);
+
+		// put the result value on the stack
+		push(num);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void postInc(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		pop();
+		push(inc(offset, is_global));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void postDec(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		pop();
+		push(dec(offset, is_global));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void incArrayRef(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = array index
+		Object o1 = runtime_stack.getVariable(offset, is_global);
+		if (o1 == null || o1 instanceof UninitializedObject) {
+			runtime_stack.setVariable(offset, o1 = new AssocArray(sorted_array_keys), is_global);
+		}
+		AssocArray aa = (AssocArray) o1;
+		Object key = null;
+		int entry;
+		if (operand_stack.type(0) == OperandStack.LONG) {
+			long l = operand_stack.popLong();
+			entry = aa.numberEntry(l);
+			if (entry < 0) {
+				key = l;
+			}
+		} else {
+			key = pop();
+			entry = aa.numberEntry(key);
+		}
+		if (entry >= 0) {
+			if (aa.isLongAt(entry) && aa.longAt(entry) != Long.MAX_VALUE) {
+				aa.putLongAt(entry, aa.longAt(entry) + 1);
+			} else {
+				putNumberAt(aa, entry, (aa.isLongAt(entry) ? aa.longAt(entry) : aa.doubleAt(entry)) + 1);
+			}
+			return;
+		}
+		Object o = aa.get(key);
+		assert o != null;
+		if (o instanceof Long && (Long) o != Long.MAX_VALUE) {
+			aa.put(key, (Long) o + 1);
+			return;
+		}
+		double ans = JRT.toDouble(o) + 1;
+		if (ans == (long) ans) {
+			aa.put(key, (long) ans);
+		} else {
+			aa.put(key, ans);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void decArrayRef(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = array index
+		Object o1 = runtime_stack.getVariable(offset, is_global);
+		if (o1 == null || o1 instanceof UninitializedObject) {
+			runtime_stack.setVariable(offset, o1 = new AssocArray(sorted_array_keys), is_global);
+		}
+		AssocArray aa = (AssocArray) o1;
+		Object key = null;
+		int entry;
+		if (operand_stack.type(0) == OperandStack.LONG) {
+			long l = operand_stack.popLong();
+			entry = aa.numberEntry(l);
+			if (entry < 0) {
+				key = l;
+			}
+		} else {
+			key = pop();
+			entry = aa.numberEntry(key);
+		}
+		if (entry >= 0) {
+			if (aa.isLongAt(entry) && aa.longAt(entry) != Long.MIN_VALUE) {
+				aa.putLongAt(entry, aa.longAt(entry) - 1);
+			} else {
+				putNumberAt(aa, entry, (aa.isLongAt(entry) ? aa.longAt(entry) : aa.doubleAt(entry)) - 1);
+			}
+			return;
+		}
+		Object o = aa.get(key);
+		assert o != null;
+		if (o instanceof Long && (Long) o != Long.MIN_VALUE) {
+			aa.put(key, (Long) o - 1);
+			return;
+		}
+		double ans = JRT.toDouble(o) - 1;
+		if (ans == (long) ans) {
+			aa.put(key, (long) ans);
+		} else {
+			aa.put(key, ans);
+		}
+	}
+
+	/**
+	 * Updates an array element in place with the result of an arithmetic
+	 * operation, as a long if it is integral (like JRT.toAwkNumber()).
+	 */
+	private static void putNumberAt(AssocArray array, int entry, double d) {
+		if (d == (long) d) {
+			array.putLongAt(entry, (long) d);
+		} else {
+			array.putDoubleAt(entry, d);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void incDollarRef() {
+		// stack[0] = dollar index (field number)
+		// same code as _GET_INPUT_FIELD_:
+		int fieldnum = parseIntField(pop());
+		// except here, get the number, and add one
+		Object num_obj = jrt.jrtGetInputField(fieldnum);
+		double num = JRT.toDouble(num_obj) + 1;
+		setNumOnJRT(fieldnum, num);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void decDollarRef() {
+		// stack[0] = dollar index (field number)
+		// same code as _GET_INPUT_FIELD_:
+		int fieldnum = parseIntField(pop());
+		// except here, get the number, and subtract one
+		Object num_obj = jrt.jrtGetInputField(fieldnum);
+		double num = JRT.toDouble(num_obj) - 1;
+		setNumOnJRT(fieldnum, num);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void dereference(long offset, boolean is_array, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_array
+		// arg[2] = is_global
+		Object o = runtime_stack.getVariable(offset, is_global);
+		if (o == null) {
+			if (is_array) {
+				push(runtime_stack.setVariable(offset, new AssocArray(sorted_array_keys), is_global));
+			} else {
+				push(runtime_stack.setVariable(offset, BLANK, is_global));
+			}
+		} else {
+			push(o);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void derefArray() {
+		// stack[0] = array index
+		// stack[1] = AssocArray
+		Object idx = pop();	// idx
+		Object array = pop();	// map
+		if (!(array instanceof AssocArray)) {
+			throw new AwkRuntimeException("Attempting to index a non-associative-array.");
+		}
+		Object o = ((AssocArray) array).get(idx);
+		assert o != null;
+		push(o);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void srand(long numargs) {
+		// arg[0] = num_args (where 0 = no args, anything else = one argument)
+		// stack[0] = seed (only if num_args != 0)
+		int seed;
+		if (numargs == 0) {
+			// use the time of day for the seed
+			seed = JRT.timeSeed();
+		} else {
+			Object o = pop();
+			if (o instanceof Double) {
+				seed = ((Double) o).intValue();
+			} else if (o instanceof Long) {
+				seed = ((Long) o).intValue();
+			} else if (o instanceof Integer) {
+				seed = ((Integer) o).intValue();
+			} else {
+				try {
+					seed = Integer.parseInt(o.toString());
+				} catch (NumberFormatException nfe) {
+					seed = 0;
+				}
+			}
+		}
+		random_number_generator = new Random(seed);
+		push(oldseed);
+		oldseed = seed;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void rand() {
+		if (random_number_generator == null) {
+			int seed = JRT.timeSeed();
+			random_number_generator = new Random(seed);
+			oldseed = seed;
+		}
+		push(random_number_generator.nextDouble());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void intFunc() {
+		// stack[0] = arg to int() function
+		push((long) JRT.toDouble(pop()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void sqrt() {
+		// stack[0] = arg to sqrt() function
+		push(Math.sqrt(JRT.toDouble(pop())));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void log() {
+		// stack[0] = arg to log() function
+		push(Math.log(JRT.toDouble(pop())));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void exp() {
+		// stack[0] = arg to exp() function
+		push(Math.exp(JRT.toDouble(pop())));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void sin() {
+		// stack[0] = arg to sin() function
+		push(Math.sin(JRT.toDouble(pop())));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cos() {
+		// stack[0] = arg to cos() function
+		push(Math.cos(JRT.toDouble(pop())));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void atan2() {
+		// stack[0] = 2nd arg to atan2() function
+		// stack[1] = 1st arg to atan2() function
+		double d2 = JRT.toDouble(pop());
+		double d1 = JRT.toDouble(pop());
+		push(Math.atan2(d1, d2));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void match() {
+		// stack[0] = 2nd arg to match() function
+		// stack[1] = 1st arg to match() function
+		String convfmt = getConvfmtString();
+		String ere = JRT.toAwkString(pop(), convfmt, locale);
+		String s = JRT.toAwkString(pop(), convfmt, locale);
+
+		// check if IGNORECASE set
+		int flags = 0;
+
+		if (global_variable_offsets.containsKey("IGNORECASE")) {
+			Integer offset_obj = global_variable_offsets.get("IGNORECASE");
+			Object ignorecase = runtime_stack.getVariable(offset_obj, true);
+
+			if (JRT.toDouble(ignorecase) != 0) {
+				flags |= Pattern.CASE_INSENSITIVE;
+			}
+		}
+
+		Pattern pattern = Pattern.compile(ere, flags);
+		Matcher matcher = pattern.matcher(s);
+		boolean result = matcher.find();
+		if (result) {
+			assign(rstart_offset, matcher.start() + 1, true);
+			assign(rlength_offset, matcher.end() - matcher.start(), true);
+			pop();
+			// end up with RSTART on the stack
+		} else {
+			assign(rstart_offset, ZERO, true);
+			assign(rlength_offset, -1, true);
+			pop();
+			// end up with RSTART on the stack
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void index() {
+		// stack[0] = 2nd arg to index() function
+		// stack[1] = 1st arg to index() function
+		String convfmt = getConvfmtString();
+		String s2 = JRT.toAwkString(pop(), convfmt, locale);
+		String s1 = JRT.toAwkString(pop(), convfmt, locale);
+		push(s1.indexOf(s2) + 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void subForDollar0(boolean is_gsub) {
+		// arg[0] = is_gsub
+		// stack[0] = replacement string
+		// stack[1] = ere
+		String convfmt = getConvfmtString();
+		String repl = JRT.toAwkString(pop(), convfmt, locale);
+		String ere = JRT.toAwkString(pop(), convfmt, locale);
+		String orig = JRT.toAwkString(jrt.jrtGetInputField(0), convfmt, locale);
+		String newstring;
+		if (is_gsub) {
+			newstring = replaceAll(orig, ere, repl);
+		} else {
+			newstring = replaceFirst(orig, ere, repl);
+		}
+		// assign it to "$0"
+		jrt.jrtSetInputLine(newstring, newstring);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void subForDollarReference(boolean is_gsub) {
+		// arg[0] = is_gsub
+		// stack[0] = field num
+		// stack[1] = original field value
+		// stack[2] = replacement string
+		// stack[3] = ere
+		String convfmt = getConvfmtString();
+		int fieldNum = (int) JRT.toDouble(pop());
+		String orig = JRT.toAwkString(pop(), convfmt, locale);
+		String repl = JRT.toAwkString(pop(), convfmt, locale);
+		String ere = JRT.toAwkString(pop(), convfmt, locale);
+		String newstring;
+		if (is_gsub) {
+			newstring = replaceAll(orig, ere, repl);
+		} else {
+			newstring = replaceFirst(orig, ere, repl);
+		}
+		// assign it to "$0"
+		if (fieldNum == 0) {
+			jrt.jrtSetInputLine(newstring, newstring);
+		} else {
+			jrt.jrtSetInputField(newstring, fieldNum);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void subForVariable(long offset, boolean is_global, boolean is_gsub) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// arg[2] = is_gsub
+		// stack[0] = original variable value
+		// stack[1] = replacement string
+		// stack[2] = ere
+		String newString = execSubOrGSub(is_gsub);
+		// assign it to "offset/global"
+		assign(offset, newString, is_global);
+		pop();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void subForArrayReference(long offset, boolean is_global, boolean is_gsub) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// arg[2] = is_gsub
+		// stack[0] = original variable value
+		// stack[1] = replacement string
+		// stack[2] = ere
+		// stack[3] = array index
+		// ARRAY reference offset/is_global
+		Object arr_idx = pop();
+		String newString = execSubOrGSub(is_gsub);
+		// assign it to "offset/arr_idx/global"
+		assignArray(offset, arr_idx, newString, is_global);
+		pop();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void split(long numargs) {
+		// arg[0] = num args
+		// stack[0] = field_sep (only if num args == 3)
+		// stack[1] = array
+		// stack[2] = string
+		String convfmt = getConvfmtString();
+		String fs_string = null;
+		if (numargs == 2) {
+			// split with FS like the records, see below
+		} else if (numargs == 3) {
+			fs_string = JRT.toAwkString(pop(), convfmt, locale);
+		} else {
+			throw new Error("Invalid # of args. split() requires 2 or 3. Got: " + numargs);
+		}
+		Object o = pop();
+		if (!(o instanceof AssocArray)) {
+			throw new AwkRuntimeException(lineNumber(), o + " is not an array.");
+		}
+		String s = JRT.toAwkString(pop(), convfmt, locale);
+		Enumeration<Object> tokenizer;
+		if (fs_string == null) {
+			tokenizer = jrt.tokenizeWithFS(s);
+		} else if (fs_string.equals(" ")) {
+			tokenizer = new StringTokenizer(s);
+		} else if (fs_string.length() == 1) {
+			tokenizer = new SingleCharacterTokenizer(s, fs_string.charAt(0));
+		} else if (fs_string.isEmpty()) {
+			tokenizer = new CharacterTokenizer(s);
+		} else {
+			tokenizer = new RegexTokenizer(s, fs_string);
+		}
+
+		AssocArray assoc_array = (AssocArray) o;
+		assoc_array.clear();
+		int cnt = 0;
+		while (tokenizer.hasMoreElements()) {
+			assoc_array.put(++cnt, new StrNum((String) tokenizer.nextElement()));
+		}
+		push(cnt);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void substr(long numargs) {
+		// arg[0] = num args
+		// stack[0] = length (only if num args == 3)
+		// stack[1] = start pos
+		// stack[2] = string
+		int startPos, length;
+		String s;
+		if (numargs == 3)
+		{
+			length = (int) JRT.toLong(pop());
+			startPos = (int) JRT.toDouble(pop());
+			s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		} else if (numargs == 2) {
+			startPos = (int) JRT.toDouble(pop());
+			s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+			length = s.length() - startPos + 1;
+		} else {
+			throw new Error("numargs for _SUBSTR_ must be 2 or 3. It is " + numargs);
+		}
+		if (startPos <= 0) {
+			startPos = 1;
+		}
+		if (length <= 0 || startPos > s.length()) {
+			push(BLANK);
+		} else {
+			if (startPos + length > s.length()) {
+				push(s.substring(startPos - 1));
+			} else {
+				push(s.substring(startPos - 1, startPos + length - 1));
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void toLower() {
+		// stack[0] = string
+		push(JRT.toAwkString(pop(), getConvfmtString(), locale).toLowerCase());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void toUpper() {
+		// stack[0] = string
+		push(JRT.toAwkString(pop(), getConvfmtString(), locale).toUpperCase());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void system() {
+		// stack[0] = command string
+		String s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		push(JRT.jrtSystem(s));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpEq() {
+		// stack[0] = item2
+		// stack[1] = item1
+		operand_stack.pushLong(compare(0, false) ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpLt() {
+		// stack[0] = item2
+		// stack[1] = item1
+		operand_stack.pushLong(compare(-1, false) ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpGt() {
+		// stack[0] = item2
+		// stack[1] = item1
+		operand_stack.pushLong(compare(1, false) ? 1 : 0);
+	}
+
+	/**
+	 * Compares the top two stack elements, which the type inference
+	 * proved numeric (see JRT.compareNumbers()).
+	 *
+	 * @param mode same as JRT.compare2()
+	 * @return the result of the comparison
+	 */
+	private boolean compareNumbers(int mode) {
+		return compare(mode, true);
+	}
+
+	/**
+	 * Pops two items and compares them: as doubles if both are numbers,
+	 * without boxing them, with JRT.compareNumbers() or JRT.compare2()
+	 * otherwise.
+	 */
+	private boolean compare(int mode, boolean numeric) {
+		// stack[0] = item2
+		// stack[1] = item1
+		if (operand_stack.type(0) != OperandStack.OBJECT && operand_stack.type(1) != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			double d1 = operand_stack.popDouble();
+			if (mode < 0) {
+				return d1 < d2;
+			} else if (mode == 0) {
+				return d1 == d2;
+			} else {
+				return d1 > d2;
+			}
+		}
+		Object o2 = pop();
+		Object o1 = pop();
+		return numeric ? JRT.compareNumbers(o1, o2, mode) : JRT.compare2(o1, o2, mode);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpEqNum() {
+		operand_stack.pushLong(compareNumbers(0) ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpNeNum() {
+		operand_stack.pushLong(compareNumbers(0) ? 0 : 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpLtNum() {
+		operand_stack.pushLong(compareNumbers(-1) ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpLeNum() {
+		operand_stack.pushLong(compareNumbers(1) ? 0 : 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpGtNum() {
+		operand_stack.pushLong(compareNumbers(1) ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cmpGeNum() {
+		operand_stack.pushLong(compareNumbers(-1) ? 0 : 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void matches() {
+		// stack[0] = item2
+		// stack[1] = item1
+		Object o2 = pop();
+		Object o1 = pop();
+		// use o1's string value
+		String s = o1.toString();
+		// assume o2 is a regexp
+		if (o2 instanceof Pattern) {
+			Pattern p = (Pattern) o2;
+			Matcher m = p.matcher(s);
+			// m.matches() matches the ENTIRE string
+			// m.find() is more appropriate
+			boolean result = m.find();
+			operand_stack.pushLong(result ? 1 : 0);
+		} else {
+			String r = JRT.toAwkString(o2, getConvfmtString(), locale);
+			boolean result = Pattern.compile(r).matcher(s).find();
+			operand_stack.pushLong(result ? 1 : 0);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void sleep(long numargs) {
+		// arg[0] = num_args
+		// if (num_args==1)
+		// 	stack[0] = # of seconds
+		// else
+		// 	nothing on the stack
+		long seconds;
+		if (numargs == 0) {
+			seconds = 1;
+		} else {
+			seconds = (long) JRT.toDouble(pop());
+		}
+		try {
+			Thread.sleep(seconds * 1000);
+		} catch (InterruptedException ie) {
+			throw new AwkRuntimeException(lineNumber(), "Caught exception while waiting for process exit: " + ie);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void dump(long numargs) {
+		// arg[0] = num_args
+		// if (num_args==0)
+		// 	all Jawk global variables
+		// else
+		// 	args are assoc arrays to display
+		AssocArray[] aa_array;
+		if (numargs == 0) {
+			aa_array = null;
+		} else {
+			aa_array = new AssocArray[(int) numargs];
+			for (int i = 0; i < numargs; ++i) {
+				aa_array[i] = (AssocArray) pop();
+			}
+		}
+		avmDump(aa_array);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void add() {
+		// stack[0] = item2
+		// stack[1] = item1
+		byte t2 = operand_stack.type(0);
+		byte t1 = operand_stack.type(1);
+		if (t1 == OperandStack.LONG && t2 == OperandStack.LONG) {
+			long l2 = operand_stack.popLong();
+			long l1 = operand_stack.popLong();
+			long ans = l1 + l2;
+			if (JRT.isExactSum(l1, l2, ans)) {
+				operand_stack.pushLong(ans);
+			} else {
+				operand_stack.pushNumber((double) l1 + l2);
+			}
+		} else if (t1 != OperandStack.OBJECT && t2 != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			operand_stack.pushNumber(operand_stack.popDouble() + d2);
+		} else {
+			Object o2 = pop();
+			Object o1 = pop();
+			push(JRT.add(o1, o2));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void subtract() {
+		// stack[0] = item2
+		// stack[1] = item1
+		byte t2 = operand_stack.type(0);
+		byte t1 = operand_stack.type(1);
+		if (t1 == OperandStack.LONG && t2 == OperandStack.LONG) {
+			long l2 = operand_stack.popLong();
+			long l1 = operand_stack.popLong();
+			long ans = l1 - l2;
+			if (JRT.isExactDifference(l1, l2, ans)) {
+				operand_stack.pushLong(ans);
+			} else {
+				operand_stack.pushNumber((double) l1 - l2);
+			}
+		} else if (t1 != OperandStack.OBJECT && t2 != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			operand_stack.pushNumber(operand_stack.popDouble() - d2);
+		} else {
+			Object o2 = pop();
+			Object o1 = pop();
+			push(JRT.subtract(o1, o2));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void multiply() {
+		// stack[0] = item2
+		// stack[1] = item1
+		byte t2 = operand_stack.type(0);
+		byte t1 = operand_stack.type(1);
+		if (t1 == OperandStack.LONG && t2 == OperandStack.LONG) {
+			long l2 = operand_stack.popLong();
+			long l1 = operand_stack.popLong();
+			long ans = l1 * l2;
+			if (JRT.isExactProduct(l1, l2, ans)) {
+				operand_stack.pushLong(ans);
+			} else {
+				operand_stack.pushNumber((double) l1 * l2);
+			}
+		} else if (t1 != OperandStack.OBJECT && t2 != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			operand_stack.pushNumber(operand_stack.popDouble() * d2);
+		} else {
+			Object o2 = pop();
+			Object o1 = pop();
+			push(JRT.multiply(o1, o2));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void divide() {
+		// stack[0] = item2
+		// stack[1] = item1
+		byte t2 = operand_stack.type(0);
+		byte t1 = operand_stack.type(1);
+		if (t1 == OperandStack.LONG && t2 == OperandStack.LONG) {
+			long l2 = operand_stack.popLong();
+			long l1 = operand_stack.popLong();
+			if (JRT.isExactQuotient(l1, l2)) {
+				operand_stack.pushLong(l1 / l2);
+			} else {
+				operand_stack.pushNumber((double) l1 / l2);
+			}
+		} else if (t1 != OperandStack.OBJECT && t2 != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			operand_stack.pushNumber(operand_stack.popDouble() / d2);
+		} else {
+			Object o2 = pop();
+			Object o1 = pop();
+			push(JRT.divide(o1, o2));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void mod() {
+		// stack[0] = item2
+		// stack[1] = item1
+		byte t2 = operand_stack.type(0);
+		byte t1 = operand_stack.type(1);
+		if (t1 == OperandStack.LONG && t2 == OperandStack.LONG) {
+			long l2 = operand_stack.popLong();
+			long l1 = operand_stack.popLong();
+			if (l2 != 0) {
+				operand_stack.pushLong(l1 % l2);
+			} else {
+				operand_stack.pushNumber((double) l1 % l2);
+			}
+		} else if (t1 != OperandStack.OBJECT && t2 != OperandStack.OBJECT) {
+			double d2 = operand_stack.popDouble();
+			operand_stack.pushNumber(operand_stack.popDouble() % d2);
+		} else {
+			Object o2 = pop();
+			Object o1 = pop();
+			push(JRT.mod(o1, o2));
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void pow() {
+		// stack[0] = item2
+		// stack[1] = item1
+		Object o2 = pop();
+		Object o1 = pop();
+		push(JRT.pow(o1, o2));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void dup() {
+		// stack[0] = top of stack item
+		Object o = pop();
+		push(o);
+		push(o);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void keylist() {
+		// stack[0] = AssocArray
+		Object o = pop();
+		assert o != null;
+		if (!(o instanceof AssocArray)) {
+			throw new AwkRuntimeException(lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
+		}
+		AssocArray aa = (AssocArray) o;
+		push(new KeyListImpl(aa.keySet()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEmptyKeylist() {
+		// stack[0] = KeyList
+		Object o = pop();
+		if (o == null || !(o instanceof KeyList)) {
+			throw new AwkRuntimeException(lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
+		}
+		KeyList keylist = (KeyList) o;
+		return keylist.size() == 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getFirstAndRemoveFromKeylist() {
+		// stack[0] = KeyList
+		Object o = pop();
+		if (o == null || !(o instanceof KeyList)) {
+			throw new AwkRuntimeException(lineNumber(), "Cannot get a keylist (via 'in') of a non associative array. arg = " + o.getClass() + ", " + o);
+		}
+		// pop off and return the head of the key set
+		KeyList keylist = (KeyList) o;
+		assert keylist.size() > 0;
+		push(keylist.getFirstAndRemove());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void checkClass(Class<?> cls) {
+		// arg[0] = class object
+		// stack[0] = item to check
+		Object o = pop();
+		if (!(cls.isInstance(o))) {
+			throw new AwkRuntimeException(lineNumber(), "Verification failed. Top-of-stack = " + o.getClass() + " isn't an instance of " + cls);
+		}
+		push(o);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean consumeInput() throws IOException {
+		// false = do NOT put result on stack...
+		// instead, put it in field vars ($0, $1, ...)
+		return avmConsumeInput(false);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void useAsFileInput() throws IOException {
+		// stack[0] = filename
+		String s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		avmConsumeFileInputForGetline(s);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void useAsCommandInput() throws IOException {
+		// stack[0] = command line
+		String s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		avmConsumeCommandInputForGetline(s);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setSpecialVariableOffset(int opcode, long offset) {
+		// arg[0] = offset
+		assert offset != NULL_OFFSET;
+		switch (opcode) {
+			case AwkTuples._NF_OFFSET_:
+				nf_offset = offset;
+				assign(nf_offset, 0, true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._NR_OFFSET_:
+				nr_offset = offset;
+				assign(nr_offset, 0, true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._FNR_OFFSET_:
+				fnr_offset = offset;
+				assign(fnr_offset, 0, true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._FS_OFFSET_:
+				fs_offset = offset;
+				if (initial_fs_value == null) {
+					assign(fs_offset, " ", true);
+				} else {
+					assign(fs_offset, initial_fs_value, true);
+				}
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._RS_OFFSET_:
+				rs_offset = offset;
+				assign(rs_offset, settings.getDefaultRS(), true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._OFS_OFFSET_:
+				ofs_offset = offset;
+				assign(ofs_offset, " ", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._ORS_OFFSET_:
+				ors_offset = offset;
+				assign(ors_offset, settings.getDefaultORS(), true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._RSTART_OFFSET_:
+				rstart_offset = offset;
+				assign(rstart_offset, "", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._RLENGTH_OFFSET_:
+				rlength_offset = offset;
+				assign(rlength_offset, "", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._FILENAME_OFFSET_:
+				filename_offset = offset;
+				assign(filename_offset, "", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._SUBSEP_OFFSET_:
+				subsep_offset = offset;
+				assign(subsep_offset, new String(new byte[] {28}), true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._CONVFMT_OFFSET_:
+				convfmt_offset = offset;
+				assign(convfmt_offset, "%.6g", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._OFMT_OFFSET_:
+				ofmt_offset = offset;
+				assign(ofmt_offset, "%.6g", true);
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._ENVIRON_OFFSET_:
+				environ_offset = offset;
+				// set the initial variables
+				Map<String, String> env = System.getenv();
+				for (Map.Entry<String, String> var : env.entrySet()) {
+					assignArray(environ_offset, var.getKey(), var.getValue(), true);
+					pop(); // clean up the stack after the assignment
+				}
+				break;
+			case AwkTuples._ARGC_OFFSET_:
+				argc_offset = offset;
+				// +1 to include the "java Awk" (ARGV[0])
+				assign(argc_offset, arguments.size() + 1, true);	// true = global
+				pop();			// clean up the stack after the assignment
+				break;
+			case AwkTuples._ARGV_OFFSET_:
+				argv_offset = offset;
+				// consume argv (looping from 1 to argc)
+				int argc = (int) JRT.toDouble(runtime_stack.getVariable(argc_offset, true));	// true = global
+				assignArray(argv_offset, 0, "java Awk", true);
+				pop();
+				for (int i = 1; i < argc; i++) {
+					assignArray(argv_offset, i, arguments.get(i - 1), true);
+					pop();			// clean up the stack after the assignment
+				}
+				break;
+			default:
+				throw new Error("Invalid opcode here: " + opcode);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getInputField() {
+		// stack[0] = field number
+		push(getInputField(pop()));
+	}
+
+	/**
+	 * Reads an input field (see {@link #getInputField()}).
+	 *
+	 * @param fieldnum_obj the field number
+	 * @return the value of the field
+	 */
+	Object getInputField(Object fieldnum_obj) {
+		return jrt.jrtGetInputField(parseIntField(fieldnum_obj));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getInputFieldConst(long fieldnum) {
+		push(jrt.jrtGetInputField((int) fieldnum));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean ifFalseVarEqConst(long offset, boolean is_global, Object constant) {
+		// same as _DEREFERENCE_, _PUSH_, _CMP_EQ_, _IFFALSE_
+		if (constant instanceof Long && runtime_stack.numberType(offset, is_global) == OperandStack.LONG) {
+			return runtime_stack.getLong(offset, is_global) != (Long) constant;
+		}
+		Object o = runtime_stack.getVariable(offset, is_global);
+		if (o == null) {
+			o = runtime_stack.setVariable(offset, BLANK, is_global);
+		}
+		return !JRT.compare2(o, constant, 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void store(long offset, boolean is_global) {
+		// stack[0] = value
+		setScalar(offset, pop(), is_global);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void dereferenceNumber(long offset, boolean is_global) {
+		switch (runtime_stack.numberType(offset, is_global)) {
+			case OperandStack.LONG:
+				operand_stack.pushLong(runtime_stack.getLong(offset, is_global));
+				break;
+			case OperandStack.DOUBLE:
+				operand_stack.pushDouble(runtime_stack.getDouble(offset, is_global));
+				break;
+			default:
+				// uninitialized, or a string assigned with -v
+				dereference(offset, false, is_global);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignNumber(long offset, boolean is_global) {
+		// stack[0] = value, which remains on the stack
+		storeNumber(offset, is_global);
+		dereferenceNumber(offset, is_global);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void storeNumber(long offset, boolean is_global) {
+		// stack[0] = value
+		// a numeric string (StrNum) is not a number: it is kept as is
+		byte type = operand_stack.numberType(0);
+		if (type == OperandStack.OBJECT || runtime_stack.holdsArray(offset, is_global)) {
+			store(offset, is_global);
+		} else if (type == OperandStack.LONG) {
+			runtime_stack.setLong(offset, operand_stack.popLong(), is_global);
+		} else {
+			runtime_stack.setDouble(offset, operand_stack.popDouble(), is_global);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void incNumber(long offset, boolean is_global) {
+		byte type = runtime_stack.numberType(offset, is_global);
+		if (type == OperandStack.LONG && runtime_stack.getLong(offset, is_global) != Long.MAX_VALUE) {
+			runtime_stack.setLong(offset, runtime_stack.getLong(offset, is_global) + 1, is_global);
+		} else if (type == OperandStack.DOUBLE) {
+			// like JRT.inc()
+			double d = runtime_stack.getDouble(offset, is_global) + 1;
+			if (d == (long) d) {
+				runtime_stack.setLong(offset, (long) d, is_global);
+			} else {
+				runtime_stack.setDouble(offset, d, is_global);
+			}
+		} else {
+			inc(offset, is_global);
+			runtime_stack.unbox(offset, is_global);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void assignOpNumber(int opcode, long offset, boolean is_global) {
+		// stack[0] = value
+		byte var_type = runtime_stack.numberType(offset, is_global);
+		byte type = operand_stack.type(0);
+		if (var_type == OperandStack.OBJECT || type == OperandStack.OBJECT) {
+			assignOp(opcode, offset, is_global);
+			runtime_stack.unbox(offset, is_global);
+			return;
+		}
+		boolean long_value = type == OperandStack.LONG;
+		if (long_value && var_type == OperandStack.LONG && opcode == AwkTuples._PLUS_EQ_NUM_) {
+			// the most frequent case, like add()
+			long l2 = operand_stack.popLong();
+			long l1 = runtime_stack.getLong(offset, is_global);
+			long ans = l1 + l2;
+			if (JRT.isExactSum(l1, l2, ans)) {
+				runtime_stack.setLong(offset, ans, is_global);
+				operand_stack.pushLong(ans);
+				return;
+			}
+			operand_stack.pushLong(l2);
+		}
+		// the variable goes below the value
+		long l = 0;
+		double d = 0;
+		if (long_value) {
+			l = operand_stack.popLong();
+		} else {
+			d = operand_stack.popDouble();
+		}
+		dereferenceNumber(offset, is_global);
+		if (long_value) {
+			operand_stack.pushLong(l);
+		} else {
+			operand_stack.pushDouble(d);
+		}
+
+		switch (opcode) {
+			case AwkTuples._PLUS_EQ_NUM_:
+				add();
+				break;
+			case AwkTuples._MINUS_EQ_NUM_:
+				subtract();
+				break;
+			case AwkTuples._MULT_EQ_NUM_:
+				multiply();
+				break;
+			case AwkTuples._DIV_EQ_NUM_:
+				divide();
+				break;
+			case AwkTuples._MOD_EQ_NUM_:
+				mod();
+				break;
+			default:
+				throw new Error("Invalid op code here: " + opcode);
+		}
+
+		// the result stays on the stack, as the value of the assignment
+		if (operand_stack.type(0) == OperandStack.LONG) {
+			l = operand_stack.popLong();
+			runtime_stack.setLong(offset, l, is_global);
+			operand_stack.pushLong(l);
+		} else {
+			d = operand_stack.popDouble();
+			runtime_stack.setDouble(offset, d, is_global);
+			operand_stack.pushDouble(d);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void addToArrayElement(long offset, boolean is_global) {
+		assignOpArray(AwkTuples._PLUS_EQ_ARRAY_, offset, is_global);
+		// the result of the assignment is not used
+		operand_stack.drop();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void applyRS() {
+		assert rs_offset != NULL_OFFSET;
+		Object rs_obj = runtime_stack.getVariable(rs_offset, true);	// true = global
+		if (jrt.getPartitioningReader() != null) {
+			jrt.getPartitioningReader().setRecordSeparator(rs_obj.toString());
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void callFunction(long num_formal_params, long num_actual_params, int return_idx) {
+		// stack[0] = last actual parameter
+		// stack[1] = before-last actual parameter
+		// ...
+		// stack[n-1] = first actual parameter
+		// etc.
+		assert num_formal_params >= num_actual_params;
+		runtime_stack.pushFrame(num_formal_params, return_idx);
+		if (pending_memo != null) {
+			// the result will be cached on return
+			runtime_stack.setFrameMemo(pending_memo, pending_memo_key);
+			pending_memo = null;
+			pending_memo_key = null;
+		}
+		// Arguments are stacked, so first in the stack is the last for the function
+		for (long i = num_actual_params - 1 ; i >= 0 ; i--) {
+			runtime_stack.setVariable(i, pop(), false);	// false = local
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setReturnResult() {
+		// stack[0] = return result
+		runtime_stack.setReturnValue(pop());
+	}
 
-						position.next();
-						break;
-					}
-					case AwkTuples._EXTENSION_: {
-						// arg[0] = extension keyword
-						// arg[1] = # of args on the stack
-						// arg[2] = true if parent is NOT an extension function call
-						// 		(i.e., initial extension in calling expression)
-						// stack[0] = first actual parameter
-						// stack[1] = second actual parameter
-						// etc.
-						String extension_keyword = position.arg(0).toString();
-						long num_args = position.intArg(1);
-						boolean is_initial = position.boolArg(2);
-
-						JawkExtension extension = extensions.get(extension_keyword);
-						if (extension == null) {
-							throw new AwkRuntimeException("Extension for '" + extension_keyword + "' not found.");
-						}
+	/** {@inheritDoc} */
+	@Override
+	public int returnFromFunction() {
+		FunctionMemo memo = runtime_stack.getFrameMemo();
+		Object[] memo_key = runtime_stack.getFrameMemoKey();
+		int return_idx = runtime_stack.popFrame();
+		Object result = runtime_stack.getReturnValue();
+		if (memo != null) {
+			memo.put(memo_key, result);
+		}
+		push(result);
+		return return_idx;
+	}
 
-						Object[] args = new Object[(int) num_args];
-						for (int i = (int)num_args - 1 ; i >=0 ; i--) {
-							args[i] = pop();
-						}
+	/**
+	 * @param name Name of a user function
+	 * @return the cache of the results of the function, or
+	 *   <code>null</code> if it is not pure (or memoization is disabled)
+	 */
+	FunctionMemo functionMemo(String name) {
+		return function_memos.isEmpty() ? null : function_memos.get(name);
+	}
+
+	/**
+	 * Looks up the result of a call to a pure function, with the actual
+	 * parameters on the stack. If found, the parameters are replaced by
+	 * the result. Otherwise, they are left as is, and the result will be
+	 * cached when the function returns from the call which must follow.
+	 *
+	 * @param memo The cache of the function
+	 * @param num_actual_params # of actual parameters on the stack
+	 * @return whether the result was found
+	 */
+	boolean lookupMemo(FunctionMemo memo, int num_actual_params) {
+		Object[] args = new Object[num_actual_params];
+		for (int i = num_actual_params - 1; i >= 0; i--) {
+			args[i] = pop();
+		}
+		boolean cacheable = true;
+		for (Object arg : args) {
+			// an array passed to a parameter which is not used
+			cacheable &= !(arg instanceof AssocArray);
+		}
+		Object result = cacheable ? memo.get(args, getCONVFMT()) : null;
+		if (result != null) {
+			push(result);
+			return true;
+		}
+		for (Object arg : args) {
+			push(arg);
+		}
+		if (cacheable) {
+			pending_memo = memo;
+			pending_memo_key = args;
+		}
+		return false;
+	}
 
-						Object retval = extension.invoke(extension_keyword, args);
+	/** {@inheritDoc} */
+	@Override
+	public boolean lookupMemo(String name, long num_actual_params) {
+		FunctionMemo memo = functionMemo(name);
+		return memo != null && lookupMemo(memo, (int) num_actual_params);
+	}
 
-						// block if necessary
-						// (convert retval into the return value
-						// from the block operation ...)
-						if (is_initial && retval != null && retval instanceof BlockObject) {
-							retval = new BlockManager().block((BlockObject) retval);
-						}
-						// (... and proceed)
-
-						if (retval == null) {
-							retval = "";
-						} else if (retval instanceof Integer) {
-						} else if (retval instanceof Long) {
-						} else if (retval instanceof Double) {
-						} else if (retval instanceof String) {
-						} else if (retval instanceof AssocArray) {
-						} else if (retval instanceof BlockObject) {
-							// pass a block object through...
-						} else {
-							// all other extension results are converted
-							// to a string (via Object.toString())
-							retval = retval.toString();
-						}
-						push(retval);
+	/**
+	 * @return the caches of the results of the pure functions, by name,
+	 *   whose numbers of hits and misses help sizing them
+	 */
+	public Map<String, FunctionMemo> getFunctionMemos() {
+		return function_memos;
+	}
 
-						position.next();
-						break;
-					}
-					default:
-						throw new Error("invalid opcode: " + AwkTuples.toOpcodeString(position.opcode()));
+	/** {@inheritDoc} */
+	@Override
+	public void setNumGlobals(long num_globals) {
+		// arg[0] = # of globals
+		// (the named ones, followed by those holding the locals of inlined calls)
+		assert num_globals >= global_variable_offsets.size();
+		runtime_stack.setNumGlobals(num_globals);
+
+		// now that we have the global variable size,
+		// we can allocate the initial variables
+
+		// assign -v variables (from initial_variables container)
+		for (String key : initial_variables.keySet()) {
+			if (function_names.contains(key)) {
+				throw new IllegalArgumentException("Cannot assign a scalar to a function name (" + key + ").");
+			}
+			Integer offset_obj = global_variable_offsets.get(key);
+			Boolean array_obj = global_variable_arrays.get(key);
+			if (offset_obj != null) {
+				assert array_obj != null;
+				if (array_obj.booleanValue()) {
+					throw new IllegalArgumentException("Cannot assign a scalar to a non-scalar variable (" + key + ").");
+				} else {
+					Object obj = initial_variables.get(key);
+					runtime_stack.setFilelistVariable(offset_obj.intValue(), obj);
 				}
 			}
-			
-			// End of the instructions
-			jrt.jrtCloseAll();
-			
-		} catch (RuntimeException re) {
-			LOG.error("", re);
-			LOG.error("operand_stack = {}", operand_stack);
-			LOG.error("position = {}", position);
-			LOG.error("line number = {}", position.lineNumber());
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void closeFile() {
+		// stack[0] = file or command line to close
+		String s = JRT.toAwkString(pop(), getConvfmtString(), locale);
+		push(jrt.jrtClose(s));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void applySubsep(long count) {
+		// arg[0] = # of elements for SUBSEP application
+		// stack[0] = first element
+		// stack[1] = second element
+		// etc.
+		assert count >= 1;
+		if (count > 1) {
+			String convfmt = getConvfmtString();
+			String[] parts = new String[(int) count];
+			for (int i = parts.length - 1; i >= 0; i--) {
+				if (operand_stack.type(0) == OperandStack.LONG) {
+					parts[i] = Long.toString(operand_stack.popLong());
+				} else {
+					parts[i] = JRT.toAwkString(pop(), convfmt, locale);
+				}
+			}
+			String subsep_string = subsep.toString(subsep_offset);
+			// the arrays join the components only when the key is iterated
+			if (CompositeKey.isSeparator(subsep_string)) {
+				push(new CompositeKey(parts, subsep_string));
+			} else {
+				push(String.join(subsep_string, parts));
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void deleteArrayElement(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// stack[0] = array index
+		AssocArray aa = (AssocArray) runtime_stack.getVariable(offset, is_global);
+		Object key = pop();
+		if (aa != null) {
+			aa.remove(key);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void deleteArray(long offset, boolean is_global) {
+		// arg[0] = offset
+		// arg[1] = is_global
+		// (nothing on the stack)
+		runtime_stack.removeVariable(offset, is_global);
+	}
 
+	/** {@inheritDoc} */
+	@Override
+	public int exit(boolean with_code) throws ExitException {
+		if (with_code) {
+			// stack[0] = exit code
+			exit_code = (int) JRT.toDouble(pop());
+		}
+		throw_exit_exception = true;
+
+		// If in BEGIN or in a rule, jump to the END section
+		if (!within_end_blocks) {
 			// clear runtime stack
 			runtime_stack.popAllFrames();
 			// clear operand stack
 			operand_stack.clear();
+			return exit_address;
+		} else {
+			// Exit immediately with ExitException
+			jrt.jrtCloseAll();
+			// clear operand stack
+			operand_stack.clear();
+			throw new ExitException(exit_code, "The AWK script requested an exit");
+		}
+	}
 
-			throw re;
-		} catch (AssertionError ae) {
-			LOG.error("", ae);
-			LOG.error("operand_stack = {}", operand_stack);
-			try {
-				LOG.error("position = {}", position);
-			} catch (Throwable t) {
-				LOG.error("{ could not report on position", t);
+	/**
+	 * Executes {@link AwkTuples#_REGEXP_}.
+	 *
+	 * @param regexp the regexp, already compiled or as a string
+	 */
+	void regexp(Object regexp) {
+		if (regexp instanceof Pattern) {
+			push(regexp);
+			return;
+		}
+		// arg[0] = string representation of regexp, which does not compile:
+		// let Pattern report the syntax error
+		push(Pattern.compile(regexp.toString()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void regexp(int idx, String regexp) {
+		Object pattern = inline_caches[idx];
+		if (pattern == null) {
+			inline_caches[idx] = pattern = Pattern.compile(regexp);
+		}
+		push(pattern);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void conditionPair(int idx) {
+		// stack[0] = End condition
+		// stack[1] = Start condition
+		ConditionPair cp = (ConditionPair) inline_caches[idx];
+		if (cp == null) {
+			inline_caches[idx] = cp = new ConditionPair();
+		}
+		boolean end = jrt.toBoolean(pop());
+		boolean start = jrt.toBoolean(pop());
+		push(cp.update(start, end) ? ONE : ZERO);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void isIn() {
+		// stack[0] = AssocArray
+		// stack[1] = key to check
+		Object arr = pop();
+		Object arg = pop();
+		AssocArray aa = (AssocArray) arr;
+		boolean result = aa.isIn(arg);
+		push(result ? ONE : ZERO);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void castDouble() {
+		push(JRT.toDouble(pop()));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void castString() {
+		push(pop().toString());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void swap() {
+		// stack[0] = item1
+		// stack[1] = item2
+		swapOnStack();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getlineInput() throws IOException {
+		avmConsumeInputForGetline();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setExitAddress(int idx) {
+		exit_address = idx;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setWithinEndBlocks(boolean b) {
+		within_end_blocks = b;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void exec() {
+		// stack[0] = Jawk code
+
+		// TODO FIXME First attempt. It is not complete by a long-shot. Use at your own risk.
+
+		String awk_code = JRT.toAwkString(pop(), getConvfmtString(), locale);
+
+		try {
+			AwkTuples new_tuples;
+			if (settings.getExecCacheSize() > 0) {
+				if (program_cache == null) {
+					program_cache = new ProgramCache(settings.getExecCacheSize());
+				}
+				String key = ProgramCache.key(awk_code, settings.isAdditionalFunctions(), settings.isAdditionalTypeFunctions());
+				new_tuples = program_cache.get(key);
+				if (new_tuples == null) {
+					new_tuples = compileExec(awk_code);
+					if (new_tuples != null) {
+						program_cache.put(key, new_tuples);
+					}
+				}
+			} else {
+				new_tuples = compileExec(awk_code);
 			}
-			try {
-				LOG.error("line number = {}", position.lineNumber());
-			} catch (Throwable t) {
-				LOG.error("{ could not report on line number", t);
+			if (new_tuples != null) {
+				// each execution has its own variables and input
+				AVM new_avm = new AVM(settings, extensions);
+				new_avm.program_cache = program_cache;
+				int subScriptExitCode = 0;
+				try {
+					new_avm.interpret(new_tuples);
+				} catch (ExitException ex) {
+					subScriptExitCode = ex.getCode();
+				}
+				push(subScriptExitCode);
+			} else {
+				push(-1);
 			}
-			throw ae;
+		} catch (IOException ioe) {
+			throw new AwkRuntimeException(lineNumber(), "IO Exception caught : " + ioe);
 		}
-		
-		// If <code>exit</code> was called, throw an ExitException
-		if (throw_exit_exception) {
-			throw new ExitException(exit_code, "The AWK script requested an exit");
+	}
+
+	/**
+	 * Compiles the code run by {@link #exec()}.
+	 *
+	 * @param awk_code The Awk code
+	 * @return the tuples of the code, or <code>null</code> if it is empty
+	 */
+	private AwkTuples compileExec(String awk_code) throws IOException {
+		List<ScriptSource> scriptSources = new ArrayList<ScriptSource>(1);
+		scriptSources.add(new ScriptSource(ScriptSource.DESCRIPTION_COMMAND_LINE_SCRIPT, new StringReader(awk_code), false));
+
+		org.sentrysoftware.jawk.frontend.AwkParser ap = new org.sentrysoftware.jawk.frontend.AwkParser(
+				//true, true, true, extensions
+				settings.isAdditionalFunctions(),
+				settings.isAdditionalTypeFunctions(),
+				extensions);
+		AwkSyntaxTree ast = ap.parse(scriptSources);
+		if (ast == null) {
+			return null;
+		}
+		ast.semanticAnalysis();
+		ast.semanticAnalysis();
+		ast.optimize();
+		AwkTuples new_tuples = new AwkTuples();
+		int result = ast.populateTuples(new_tuples);
+		assert result == 0;
+		new_tuples.postProcess();
+		new_tuples.optimize();
+		ap.populateGlobalVariableNameToOffsetMappings(new_tuples);
+		return new_tuples;
+	}
+
+	/**
+	 * @return the cache of the programs compiled by <code>exec()</code>,
+	 *   whose numbers of hits and misses help sizing it, or
+	 *   <code>null</code> if exec() has not run (or the cache is disabled)
+	 */
+	public ProgramCache getProgramCache() {
+		return program_cache;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void extension(int idx, String extension_keyword, long num_args, boolean is_initial) {
+		// arg[0] = extension keyword
+		// arg[1] = # of args on the stack
+		// arg[2] = true if parent is NOT an extension function call
+		// 		(i.e., initial extension in calling expression)
+		// stack[0] = first actual parameter
+		// stack[1] = second actual parameter
+		// etc.
+		JawkExtension extension = (JawkExtension) inline_caches[idx];
+		if (extension == null) {
+			extension = extensions.get(extension_keyword);
+			if (extension == null) {
+				throw new AwkRuntimeException("Extension for '" + extension_keyword + "' not found.");
+			}
+			inline_caches[idx] = extension;
+		}
+
+		Object[] args = new Object[(int) num_args];
+		for (int i = (int)num_args - 1 ; i >=0 ; i--) {
+			args[i] = plain(pop());
 		}
 
+		Object retval = extension.invoke(extension_keyword, args);
+
+		// block if necessary
+		// (convert retval into the return value
+		// from the block operation ...)
+		if (is_initial && retval != null && retval instanceof BlockObject) {
+			retval = new BlockManager().block((BlockObject) retval);
+		}
+		// (... and proceed)
+
+		if (retval == null) {
+			retval = "";
+		} else if (retval instanceof Integer) {
+		} else if (retval instanceof Long) {
+		} else if (retval instanceof Double) {
+		} else if (retval instanceof String) {
+		} else if (retval instanceof AssocArray) {
+		} else if (retval instanceof BlockObject) {
+			// pass a block object through...
+		} else {
+			// all other extension results are converted
+			// to a string (via Object.toString())
+			retval = retval.toString();
+		}
+		push(retval);
 	}
 
 	/**
@@ -2046,10 +3274,9 @@ public class AVM implements AwkInterpreter, VariableManager {
 	private void avmDump(AssocArray[] aa_array) {
 		if (aa_array == null) {
 			// dump the runtime stack
-			Object[] globals = runtime_stack.getNumGlobals();
 			for (String name : global_variable_offsets.keySet()) {
 				int idx = global_variable_offsets.get(name);
-				Object value = globals[idx];
+				Object value = runtime_stack.getVariable(idx, true);
 				if (value instanceof AssocArray) {
 					AssocArray aa = (AssocArray) value;
 					value = aa.mapString();
@@ -2070,11 +3297,11 @@ public class AVM implements AwkInterpreter, VariableManager {
 		if (num_args == 0) {
 			// display $0
 			ps.print(jrt.jrtGetInputField(0));
-			ps.print(getORS().toString());
+			ps.print(ors.toString(ors_offset));
 		} else {
-			// cache $OFS to separate fields below
-			// (no need to execute getOFS for each field)
-			String ofs_string = getOFS().toString();
+			// cache $OFS and $OFMT for the fields below
+			String ofs_string = ofs.toString(ofs_offset);
+			String ofmt_string = ofmt.toString(ofmt_offset);
 			
 			// Arguments are stacked, so we need to reverse order
 			Object[] args = new Object[(int)num_args];
@@ -2084,14 +3311,14 @@ public class AVM implements AwkInterpreter, VariableManager {
 			
 			// Now print
 			for (int i = 0 ; i < num_args ; i++) {
-				ps.print(JRT.toAwkStringForOutput(args[i], getOFMT().toString(), locale));
+				ps.print(JRT.toAwkStringForOutput(args[i], ofmt_string, locale));
 				// if more elements, display $FS
 				if (i < num_args - 1) {
 					// use $OFS to separate fields
 					ps.print(ofs_string);
 				}
 			}
-			ps.print(getORS().toString());
+			ps.print(ors.toString(ors_offset));
 		}
 		// for now, since we are not using Process.waitFor()
 		if (IS_WINDOWS) {
@@ -2108,6 +3335,15 @@ public class AVM implements AwkInterpreter, VariableManager {
 		}
 	}
 
+	/**
+	 * @param o a value
+	 * @return o, or its string if o is a StrNum, for the code outside
+	 *   of Jawk (extensions, Printf4J), which does not know StrNums
+	 */
+	private static Object plain(Object o) {
+		return o instanceof StrNum ? o.toString() : o;
+	}
+
 	/**
 	 * sprintf() functionality
 	 */
@@ -2123,11 +3359,11 @@ public class AVM implements AwkInterpreter, VariableManager {
 		// array used in the String.format method
 		// Arguments are stacked, so we need to reverse their order
 		for (int i = (int)num_args - 2 ; i >= 0 ; i--) {
-			arg_array[i] = pop();
+			arg_array[i] = plain(pop());
 		}
 
 		// the format argument!
-		String fmt = JRT.toAwkString(pop(), getCONVFMT().toString(), locale);
+		String fmt = JRT.toAwkString(pop(), getConvfmtString(), locale);
 
 		if (trap_illegal_format_exceptions) {
 			return Printf4J.sprintf(locale, fmt, arg_array);
@@ -2159,13 +3395,47 @@ public class AVM implements AwkInterpreter, VariableManager {
 	/**
 	 * Awk variable assignment functionality.
 	 */
-	private void assign(long l, Object value, boolean is_global, Position position) {
+	private void assign(long l, Object value, boolean is_global) {
+		setScalar(l, value, is_global);
+		push(value);
+	}
+
+	/**
+	 * Reads a scalar variable, like {@link AwkTuples#_DEREFERENCE_} does.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @return the value of the variable (blank if uninitialized)
+	 */
+	Object getScalar(long offset, boolean is_global) {
+		Object o = runtime_stack.getVariable(offset, is_global);
+		if (o == null) {
+			o = runtime_stack.setVariable(offset, BLANK, is_global);
+		}
+		return o;
+	}
+
+	/**
+	 * Assigns a value to a scalar variable.
+	 *
+	 * @param offset offset of the variable
+	 * @param value the value to assign
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void setScalar(long offset, Object value, boolean is_global) {
 		// check if curr value already refers to an array
-		if (runtime_stack.getVariable(l, is_global) instanceof AssocArray) {
-			throw new AwkRuntimeException(position.lineNumber(), "cannot assign anything to an unindexed associative array");
+		if (runtime_stack.getVariable(offset, is_global) instanceof AssocArray) {
+			throw new AwkRuntimeException(lineNumber(), "cannot assign anything to an unindexed associative array");
 		}
-		push(value);
-		runtime_stack.setVariable(l, value, is_global);
+		runtime_stack.setVariable(offset, value, is_global);
+	}
+
+	/**
+	 * @param o the value to convert
+	 * @return the boolean value of o (see JRT.toBoolean())
+	 */
+	boolean toBoolean(Object o) {
+		return jrt.toBoolean(o);
 	}
 
 	/**
@@ -2189,16 +3459,14 @@ public class AVM implements AwkInterpreter, VariableManager {
 		AssocArray array = (AssocArray) o1;
 
 		// Convert arr_idx to a true integer if it is one
-//		String indexString = JRT.toAwkStringForOutput(arr_idx, getCONVFMT().toString());
+//		String indexString = JRT.toAwkStringForOutput(arr_idx, getConvfmtString());
 		array.put(arr_idx, rhs);
 		push(rhs);
 	}
 
-	/**
-	 * Numerically increases an Awk variable by one; the result
-	 * is placed back into that variable.
-	 */
-	private Object inc(long l, boolean is_global) {
+	/** {@inheritDoc} */
+	@Override
+	public Object inc(long l, boolean is_global) {
 		Object o = runtime_stack.getVariable(l, is_global);
 		if (o == null || o instanceof UninitializedObject) {
 			runtime_stack.setVariable(l, o = ZERO, is_global);
@@ -2207,11 +3475,9 @@ public class AVM implements AwkInterpreter, VariableManager {
 		return o;
 	}
 
-	/**
-	 * Numerically decreases an Awk variable by one; the result
-	 * is placed back into that variable.
-	 */
-	private Object dec(long l, boolean is_global) {
+	/** {@inheritDoc} */
+	@Override
+	public Object dec(long l, boolean is_global) {
 		Object o = runtime_stack.getVariable(l, is_global);
 		if (o == null) {
 			runtime_stack.setVariable(l, o = ZERO, is_global);
@@ -2357,7 +3623,7 @@ public class AVM implements AwkInterpreter, VariableManager {
 	{
 		boolean retval = jrt.jrtConsumeFileInput(filename);
 		if (retval) {
-			push(jrt.getInputLine());
+			push(new StrNum(jrt.getInputLine()));
 		} else {
 			push("");
 		}
@@ -2369,7 +3635,7 @@ public class AVM implements AwkInterpreter, VariableManager {
 	{
 		boolean retval = jrt.jrtConsumeCommandInput(cmd);
 		if (retval) {
-			push(jrt.getInputLine());
+			push(new StrNum(jrt.getInputLine()));
 		} else {
 			push("");
 		}
@@ -2381,7 +3647,7 @@ public class AVM implements AwkInterpreter, VariableManager {
 	{
 		boolean retval = jrt.jrtConsumeInput(settings.getInput(), for_getline, locale);
 		if (retval && for_getline) {
-			push(jrt.getInputLine());
+			push(new StrNum(jrt.getInputLine()));
 		}
 		return retval;
 	}
@@ -2444,10 +3710,13 @@ public class AVM implements AwkInterpreter, VariableManager {
 		return runtime_stack.getVariable(argc_offset, true);
 	}
 
-	private String getOFMT() {
-		assert ofmt_offset != NULL_OFFSET;
-		String ofmt_string = runtime_stack.getVariable(ofmt_offset, true).toString();	// true = global
-		return ofmt_string;
+	/**
+	 * @return the value of CONVFMT as a string, converted only once
+	 *   after each assignment
+	 */
+	private String getConvfmtString() {
+		assert convfmt_offset != NULL_OFFSET : "convfmt_offset not defined";
+		return convfmt.toString(convfmt_offset);
 	}
 
 	private static final UninitializedObject BLANK = new UninitializedObject();
@@ -2457,23 +3726,51 @@ public class AVM implements AwkInterpreter, VariableManager {
 	 */
 	public static final int NULL_OFFSET = -1;
 
+	/**
+	 * Global variables, and the local variables of the function calls.
+	 * <p>
+	 * The locals of all the pending calls live in one contiguous area:
+	 * a call takes the slots following those of its caller, starting at
+	 * <code>frame_pointer</code>, and gives them back when it returns.
+	 * The previous frame pointer and the index of the calling tuple are
+	 * saved in an <code>int[]</code>, so that a call allocates nothing
+	 * once the arrays are large enough.
+	 */
 	private static class RuntimeStack {
 
+		private static final int INITIAL_LOCALS = 64;
+		private static final int INITIAL_FRAMES = 16;
+
+		/**
+		 * Marks a variable which holds an unboxed number, whose bits are in
+		 * the corresponding slot of global_numbers or local_numbers (the
+		 * typed tuples, like {@link AwkTuples#_ASSIGN_NUM_}, keep numbers
+		 * unboxed, and getVariable() boxes them)
+		 */
+		private enum Unboxed { LONG, DOUBLE }
+
 		private Object[] globals = null;
-		private Object[] locals = null;
-		private MyStack<Object[]> locals_stack = new ArrayStackImpl<Object[]>();
-		private MyStack<Integer> return_indexes = new LinkedListStackImpl<Integer>();
+		private Object[] locals = new Object[INITIAL_LOCALS];
+		/** The numbers of the globals marked as Unboxed (a double as its raw long bits) */
+		private long[] global_numbers = null;
+		/** The numbers of the locals marked as Unboxed (a double as its raw long bits) */
+		private long[] local_numbers = new long[INITIAL_LOCALS];
+		/** Index in locals of the first local of the current call */
+		private int frame_pointer = 0;
+		/** Index in locals following the last local of the current call */
+		private int frame_top = 0;
+		/** For each pending call: the frame pointer of the caller, then the return index */
+		private int[] frames = new int[INITIAL_FRAMES * 2];
+		private int num_frames = 0;
+		/** For each pending call of a pure function: the cache and key of its result */
+		private FunctionMemo[] frame_memos = new FunctionMemo[INITIAL_FRAMES];
+		private Object[][] frame_memo_keys = new Object[INITIAL_FRAMES][];
 
 		@SuppressWarnings("unused")
 		public void dump() {
 			LOG.info("globals = " + Arrays.toString(globals));
-			LOG.info("locals = " + Arrays.toString(locals));
-			LOG.info("locals_stack = " + locals_stack);
-			LOG.info("return_indexes = " + return_indexes);
-		}
-
-		Object[] getNumGlobals() {
-			return globals;
+			LOG.info("locals = " + Arrays.toString(Arrays.copyOfRange(locals, frame_pointer, frame_top)));
+			LOG.info("frames = " + Arrays.toString(Arrays.copyOf(frames, num_frames * 2)));
 		}
 
 		/**
@@ -2486,6 +3783,7 @@ public class AVM implements AwkInterpreter, VariableManager {
 			for (int i = 0 ; i < l ; i++) {
 				globals[i] = null;
 			}
+			global_numbers = new long[(int) l];
 			// must accept multiple executions
 			//expandFrameIfNecessary(num_globals);
 		}
@@ -2508,32 +3806,115 @@ public class AVM implements AwkInterpreter, VariableManager {
 			assert globals != null;
 			assert offset != NULL_OFFSET;
 			if (is_global) {
-				return globals[(int) offset];
+				Object o = globals[(int) offset];
+				return o instanceof Unboxed ? box(o, global_numbers[(int) offset]) : o;
+			} else {
+				int i = frame_pointer + (int) offset;
+				Object o = locals[i];
+				return o instanceof Unboxed ? box(o, local_numbers[i]) : o;
+			}
+		}
+
+		private static Object box(Object unboxed, long bits) {
+			if (unboxed == Unboxed.LONG) {
+				return Long.valueOf(bits);
+			} else {
+				return Double.valueOf(Double.longBitsToDouble(bits));
+			}
+		}
+
+		/**
+		 * @return OperandStack.LONG or OperandStack.DOUBLE if the variable
+		 *   holds an unboxed number of that type, OperandStack.OBJECT otherwise
+		 */
+		byte numberType(long offset, boolean is_global) {
+			Object o = is_global ? globals[(int) offset] : locals[frame_pointer + (int) offset];
+			if (o == Unboxed.LONG) {
+				return OperandStack.LONG;
+			} else if (o == Unboxed.DOUBLE) {
+				return OperandStack.DOUBLE;
+			} else {
+				return OperandStack.OBJECT;
+			}
+		}
+
+		/**
+		 * @return the unboxed number of the variable, of type OperandStack.LONG
+		 */
+		long getLong(long offset, boolean is_global) {
+			return is_global ? global_numbers[(int) offset] : local_numbers[frame_pointer + (int) offset];
+		}
+
+		/**
+		 * @return the unboxed number of the variable, of type OperandStack.DOUBLE
+		 */
+		double getDouble(long offset, boolean is_global) {
+			return Double.longBitsToDouble(getLong(offset, is_global));
+		}
+
+		void setLong(long offset, long l, boolean is_global) {
+			if (is_global) {
+				globals[(int) offset] = Unboxed.LONG;
+				global_numbers[(int) offset] = l;
+			} else {
+				int i = frame_pointer + (int) offset;
+				locals[i] = Unboxed.LONG;
+				local_numbers[i] = l;
+			}
+		}
+
+		void setDouble(long offset, double d, boolean is_global) {
+			long bits = Double.doubleToRawLongBits(d);
+			if (is_global) {
+				globals[(int) offset] = Unboxed.DOUBLE;
+				global_numbers[(int) offset] = bits;
 			} else {
-				return locals[(int) offset];
+				int i = frame_pointer + (int) offset;
+				locals[i] = Unboxed.DOUBLE;
+				local_numbers[i] = bits;
+			}
+		}
+
+		/**
+		 * Unboxes the Long or the Double that the variable may hold.
+		 */
+		void unbox(long offset, boolean is_global) {
+			Object o = is_global ? globals[(int) offset] : locals[frame_pointer + (int) offset];
+			if (o instanceof Long) {
+				setLong(offset, (Long) o, is_global);
+			} else if (o instanceof Double) {
+				setDouble(offset, (Double) o, is_global);
 			}
 		}
 
+		/**
+		 * @return whether the variable holds an associative array
+		 *   (without boxing the number it may hold)
+		 */
+		boolean holdsArray(long offset, boolean is_global) {
+			Object o = is_global ? globals[(int) offset] : locals[frame_pointer + (int) offset];
+			return o instanceof AssocArray;
+		}
+
 		Object setVariable(long offset, Object val, boolean is_global) {
 			assert globals != null;
 			assert offset != NULL_OFFSET;
 			if (is_global) {
 				return globals[(int) offset] = val;
 			} else {
-				return locals[(int) offset] = val;
+				return locals[frame_pointer + (int) offset] = val;
 			}
 		}
 
-		// for _DELETE_ARRAY_
+		// for _DELETE_ARRAY_, which also resets the locals of the inlined
+		// function calls (scalars included) before they run
 		void removeVariable(long offset, boolean is_global) {
 			assert globals != null;
 			assert offset != NULL_OFFSET;
 			if (is_global) {
-				assert globals[(int) offset] == null || globals[(int) offset] instanceof AssocArray;
 				globals[(int) offset] = null;
 			} else {
-				assert locals[(int) offset] == null || locals[(int) offset] instanceof AssocArray;
-				locals[(int) offset] = null;
+				locals[frame_pointer + (int) offset] = null;
 			}
 		}
 
@@ -2544,22 +3925,50 @@ public class AVM implements AwkInterpreter, VariableManager {
 		}
 
 		void pushFrame(long num_formal_params, int position_idx) {
-			locals_stack.push(locals);
-			locals = new Object[(int) num_formal_params];
-			return_indexes.push(position_idx);
+			if (num_frames * 2 == frames.length) {
+				frames = Arrays.copyOf(frames, frames.length * 2);
+				frame_memos = Arrays.copyOf(frame_memos, num_frames * 2);
+				frame_memo_keys = Arrays.copyOf(frame_memo_keys, num_frames * 2);
+			}
+			frames[num_frames * 2] = frame_pointer;
+			frames[num_frames * 2 + 1] = position_idx;
+			num_frames++;
+			frame_pointer = frame_top;
+			frame_top += (int) num_formal_params;
+			if (frame_top > locals.length) {
+				locals = Arrays.copyOf(locals, Math.max(locals.length * 2, frame_top));
+				local_numbers = Arrays.copyOf(local_numbers, locals.length);
+			}
 		}
 
 		/** returns the position index */
 		int popFrame() {
-			locals = locals_stack.pop();
-			return return_indexes.pop();
+			// the slots must be blank for the next call, and must not retain the values
+			Arrays.fill(locals, frame_pointer, frame_top, null);
+			frame_top = frame_pointer;
+			num_frames--;
+			frame_memos[num_frames] = null;
+			frame_memo_keys[num_frames] = null;
+			frame_pointer = frames[num_frames * 2];
+			return frames[num_frames * 2 + 1];
+		}
+
+		void setFrameMemo(FunctionMemo memo, Object[] key) {
+			frame_memos[num_frames - 1] = memo;
+			frame_memo_keys[num_frames - 1] = key;
+		}
+
+		FunctionMemo getFrameMemo() {
+			return frame_memos[num_frames - 1];
+		}
+
+		Object[] getFrameMemoKey() {
+			return frame_memo_keys[num_frames - 1];
 		}
 
 		void popAllFrames() {
-			int sz = locals_stack.size();
-			while (--sz >= 0) {
-				locals = locals_stack.pop();
-				return_indexes.pop();
+			while (num_frames > 0) {
+				popFrame();
 			}
 		}
 		private Object return_value;
@@ -0,0 +1,813 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+
+import org.sentrysoftware.jawk.ExitException;
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+
+/**
+ * The operations of the {@link AVM} which the classes generated by the
+ * {@link AwkCompiler} call: the handlers of the opcodes, and the access
+ * to the operand stack.
+ * <p>
+ * <b>Internal:</b> this interface is public only because the generated
+ * classes are defined by their own class loader, in another runtime
+ * package. It is not part of the API of Jawk, may change with any
+ * release, and must not be used (nor implemented) outside of Jawk.
+ */
+public interface AvmOperations {
+
+	/**
+	 * Removes the item on top of the operand stack, without boxing it.
+	 * Used for {@link AwkTuples#_POP_}.
+	 */
+	void drop();
+
+	/**
+	 * Pushes an item onto the operand stack.
+	 * Used for {@link AwkTuples#_PUSH_}.
+	 *
+	 * @param o the item
+	 */
+	void push(Object o);
+
+	/**
+	 * Pushes a number onto the operand stack, without boxing it.
+	 *
+	 * @param l the number
+	 */
+	void pushLong(long l);
+
+	/**
+	 * Pushes a number onto the operand stack, without boxing it.
+	 *
+	 * @param d the number
+	 */
+	void pushDouble(double d);
+
+	/**
+	 * Records the line number of the tuple being executed by compiled
+	 * code, so that runtime errors report the right line.
+	 *
+	 * @param lineno line number in the Awk script
+	 */
+	void setLineNumber(int lineno);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINT_}.
+	 *
+	 * @param num_args # of items on the stack
+	 */
+	void print(long num_args);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINT_TO_FILE_}.
+	 *
+	 * @param num_args # of items on the stack
+	 * @param append true to append to the file, false to overwrite it
+	 */
+	void printToFile(long num_args, boolean append);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINT_TO_PIPE_}.
+	 *
+	 * @param num_args # of items on the stack
+	 */
+	void printToPipe(long num_args);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINTF_}.
+	 *
+	 * @param num_args # of items on the stack
+	 */
+	void printf(long num_args);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINTF_TO_FILE_}.
+	 *
+	 * @param num_args # of items on the stack
+	 * @param append true to append to the file, false to overwrite it
+	 */
+	void printfToFile(long num_args, boolean append);
+
+	/**
+	 * Executes {@link AwkTuples#_PRINTF_TO_PIPE_}.
+	 *
+	 * @param num_args # of items on the stack
+	 */
+	void printfToPipe(long num_args);
+
+	/**
+	 * Executes {@link AwkTuples#_SPRINTF_}.
+	 *
+	 * @param num_args # of items on the stack
+	 */
+	void sprintf(long num_args);
+
+	/**
+	 * Executes {@link AwkTuples#_LENGTH_}.
+	 *
+	 * @param num 0 to use $0, otherwise the top-of-stack element is used
+	 */
+	void length(long num);
+
+	/**
+	 * Executes {@link AwkTuples#_IFFALSE_}.
+	 *
+	 * @return true if the jump must be taken
+	 */
+	boolean ifFalse();
+
+	/**
+	 * Executes {@link AwkTuples#_TO_NUMBER_}.
+	 */
+	void toNumber();
+
+	/**
+	 * Executes {@link AwkTuples#_IFTRUE_}.
+	 *
+	 * @return true if the jump must be taken
+	 */
+	boolean ifTrue();
+
+	/**
+	 * Executes {@link AwkTuples#_NOT_}.
+	 */
+	void not();
+
+	/**
+	 * Executes {@link AwkTuples#_NEGATE_}.
+	 */
+	void negate();
+
+	/**
+	 * Executes {@link AwkTuples#_UNARY_PLUS_}.
+	 */
+	void unaryPlus();
+
+	/**
+	 * Executes {@link AwkTuples#_CONCAT_}.
+	 */
+	void concat();
+
+	/**
+	 * Executes {@link AwkTuples#_ASSIGN_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assign(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_ASSIGN_ARRAY_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assignArray(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_PLUS_EQ_ARRAY_} and the other compound assignments to array elements.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assignOpArray(int opcode, long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_ASSIGN_AS_INPUT_}.
+	 */
+	void assignAsInput();
+
+	/**
+	 * Executes {@link AwkTuples#_ASSIGN_AS_INPUT_FIELD_}.
+	 */
+	void assignAsInputField();
+
+	/**
+	 * Executes {@link AwkTuples#_PLUS_EQ_} and the other compound assignments to variables.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assignOp(int opcode, long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_PLUS_EQ_INPUT_FIELD_} and the other compound assignments to fields.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 */
+	void assignOpInputField(int opcode);
+
+	/**
+	 * Executes {@link AwkTuples#_POSTINC_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void postInc(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_POSTDEC_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void postDec(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_INC_ARRAY_REF_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void incArrayRef(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_DEC_ARRAY_REF_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void decArrayRef(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_INC_DOLLAR_REF_}.
+	 */
+	void incDollarRef();
+
+	/**
+	 * Executes {@link AwkTuples#_DEC_DOLLAR_REF_}.
+	 */
+	void decDollarRef();
+
+	/**
+	 * Executes {@link AwkTuples#_DEREFERENCE_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_array whether the variable is an associative array
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void dereference(long offset, boolean is_array, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_DEREF_ARRAY_}.
+	 */
+	void derefArray();
+
+	/**
+	 * Executes {@link AwkTuples#_SRAND_}.
+	 *
+	 * @param numargs # of arguments
+	 */
+	void srand(long numargs);
+
+	/**
+	 * Executes {@link AwkTuples#_RAND_}.
+	 */
+	void rand();
+
+	/**
+	 * Executes {@link AwkTuples#_INTFUNC_} and {@link AwkTuples#_CAST_INT_}.
+	 */
+	void intFunc();
+
+	/**
+	 * Executes {@link AwkTuples#_SQRT_}.
+	 */
+	void sqrt();
+
+	/**
+	 * Executes {@link AwkTuples#_LOG_}.
+	 */
+	void log();
+
+	/**
+	 * Executes {@link AwkTuples#_EXP_}.
+	 */
+	void exp();
+
+	/**
+	 * Executes {@link AwkTuples#_SIN_}.
+	 */
+	void sin();
+
+	/**
+	 * Executes {@link AwkTuples#_COS_}.
+	 */
+	void cos();
+
+	/**
+	 * Executes {@link AwkTuples#_ATAN2_}.
+	 */
+	void atan2();
+
+	/**
+	 * Executes {@link AwkTuples#_MATCH_}.
+	 */
+	void match();
+
+	/**
+	 * Executes {@link AwkTuples#_INDEX_}.
+	 */
+	void index();
+
+	/**
+	 * Executes {@link AwkTuples#_SUB_FOR_DOLLAR_0_}.
+	 *
+	 * @param is_gsub true for gsub(), false for sub()
+	 */
+	void subForDollar0(boolean is_gsub);
+
+	/**
+	 * Executes {@link AwkTuples#_SUB_FOR_DOLLAR_REFERENCE_}.
+	 *
+	 * @param is_gsub true for gsub(), false for sub()
+	 */
+	void subForDollarReference(boolean is_gsub);
+
+	/**
+	 * Executes {@link AwkTuples#_SUB_FOR_VARIABLE_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @param is_gsub true for gsub(), false for sub()
+	 */
+	void subForVariable(long offset, boolean is_global, boolean is_gsub);
+
+	/**
+	 * Executes {@link AwkTuples#_SUB_FOR_ARRAY_REFERENCE_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @param is_gsub true for gsub(), false for sub()
+	 */
+	void subForArrayReference(long offset, boolean is_global, boolean is_gsub);
+
+	/**
+	 * Executes {@link AwkTuples#_SPLIT_}.
+	 *
+	 * @param numargs # of arguments
+	 */
+	void split(long numargs);
+
+	/**
+	 * Executes {@link AwkTuples#_SUBSTR_}.
+	 *
+	 * @param numargs # of arguments
+	 */
+	void substr(long numargs);
+
+	/**
+	 * Executes {@link AwkTuples#_TOLOWER_}.
+	 */
+	void toLower();
+
+	/**
+	 * Executes {@link AwkTuples#_TOUPPER_}.
+	 */
+	void toUpper();
+
+	/**
+	 * Executes {@link AwkTuples#_SYSTEM_}.
+	 */
+	void system();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_EQ_}.
+	 */
+	void cmpEq();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_LT_}.
+	 */
+	void cmpLt();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_GT_}.
+	 */
+	void cmpGt();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_EQ_NUM_}.
+	 */
+	void cmpEqNum();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_NE_NUM_}.
+	 */
+	void cmpNeNum();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_LT_NUM_}.
+	 */
+	void cmpLtNum();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_LE_NUM_}.
+	 */
+	void cmpLeNum();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_GT_NUM_}.
+	 */
+	void cmpGtNum();
+
+	/**
+	 * Executes {@link AwkTuples#_CMP_GE_NUM_}.
+	 */
+	void cmpGeNum();
+
+	/**
+	 * Executes {@link AwkTuples#_MATCHES_}.
+	 */
+	void matches();
+
+	/**
+	 * Executes {@link AwkTuples#_SLEEP_}.
+	 *
+	 * @param numargs # of arguments
+	 */
+	void sleep(long numargs);
+
+	/**
+	 * Executes {@link AwkTuples#_DUMP_}.
+	 *
+	 * @param numargs # of arguments
+	 */
+	void dump(long numargs);
+
+	/**
+	 * Executes {@link AwkTuples#_ADD_}.
+	 */
+	void add();
+
+	/**
+	 * Executes {@link AwkTuples#_SUBTRACT_}.
+	 */
+	void subtract();
+
+	/**
+	 * Executes {@link AwkTuples#_MULTIPLY_}.
+	 */
+	void multiply();
+
+	/**
+	 * Executes {@link AwkTuples#_DIVIDE_}.
+	 */
+	void divide();
+
+	/**
+	 * Executes {@link AwkTuples#_MOD_}.
+	 */
+	void mod();
+
+	/**
+	 * Executes {@link AwkTuples#_POW_}.
+	 */
+	void pow();
+
+	/**
+	 * Executes {@link AwkTuples#_DUP_}.
+	 */
+	void dup();
+
+	/**
+	 * Executes {@link AwkTuples#_KEYLIST_}.
+	 */
+	void keylist();
+
+	/**
+	 * Executes {@link AwkTuples#_IS_EMPTY_KEYLIST_}.
+	 *
+	 * @return true if the jump must be taken
+	 */
+	boolean isEmptyKeylist();
+
+	/**
+	 * Executes {@link AwkTuples#_GET_FIRST_AND_REMOVE_FROM_KEYLIST_}.
+	 */
+	void getFirstAndRemoveFromKeylist();
+
+	/**
+	 * Executes {@link AwkTuples#_CHECK_CLASS_}.
+	 *
+	 * @param cls class the top-of-stack must be an instance of
+	 */
+	void checkClass(Class<?> cls);
+
+	/**
+	 * Executes {@link AwkTuples#_CONSUME_INPUT_}.
+	 *
+	 * @return false if there is no more input, i.e. if the jump must be taken
+	 * @throws IOException upon an IO error while reading the input
+	 */
+	boolean consumeInput() throws IOException;
+
+	/**
+	 * Executes {@link AwkTuples#_USE_AS_FILE_INPUT_}.
+	 *
+	 * @throws IOException upon an IO error while reading the file
+	 */
+	void useAsFileInput() throws IOException;
+
+	/**
+	 * Executes {@link AwkTuples#_USE_AS_COMMAND_INPUT_}.
+	 *
+	 * @throws IOException upon an IO error while reading the command output
+	 */
+	void useAsCommandInput() throws IOException;
+
+	/**
+	 * Executes {@link AwkTuples#_NF_OFFSET_} and the other special variable offset opcodes.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param offset offset of the variable
+	 */
+	void setSpecialVariableOffset(int opcode, long offset);
+
+	/**
+	 * Executes {@link AwkTuples#_GET_INPUT_FIELD_}.
+	 */
+	void getInputField();
+
+	/**
+	 * Executes {@link AwkTuples#_GET_INPUT_FIELD_CONST_}.
+	 *
+	 * @param fieldnum the field number
+	 */
+	void getInputFieldConst(long fieldnum);
+
+	/**
+	 * Executes {@link AwkTuples#_IFFALSE_VAR_EQ_CONST_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @param constant the constant to compare the variable to
+	 * @return true if the jump must be taken
+	 */
+	boolean ifFalseVarEqConst(long offset, boolean is_global, Object constant);
+
+	/**
+	 * Executes {@link AwkTuples#_STORE_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void store(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_DEREFERENCE_NUM_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void dereferenceNumber(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_ASSIGN_NUM_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assignNumber(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_STORE_NUM_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void storeNumber(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_INC_VAR_NUM_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void incNumber(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_PLUS_EQ_NUM_} and the other compound
+	 * assignments to variables statically typed as numbers: like for
+	 * the array elements, neither the variable, nor the operand, nor the
+	 * result are boxed.
+	 *
+	 * @param opcode the opcode, which selects the operator
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void assignOpNumber(int opcode, long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_ADD_TO_ARRAY_ELEMENT_}.
+	 *
+	 * @param offset offset of the associative array
+	 * @param is_global whether the associative array is global (or local)
+	 */
+	void addToArrayElement(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_APPLY_RS_}.
+	 */
+	void applyRS();
+
+	/**
+	 * Executes {@link AwkTuples#_CALL_FUNCTION_}.
+	 *
+	 * @param num_formal_params # of formal parameters of the function
+	 * @param num_actual_params # of actual parameters on the stack
+	 * @param return_idx index of the calling tuple
+	 */
+	void callFunction(long num_formal_params, long num_actual_params, int return_idx);
+
+	/**
+	 * Executes {@link AwkTuples#_SET_RETURN_RESULT_}.
+	 */
+	void setReturnResult();
+
+	/**
+	 * Executes {@link AwkTuples#_RETURN_FROM_FUNCTION_}.
+	 *
+	 * @return the index of the _CALL_FUNCTION_ tuple to return to
+	 */
+	int returnFromFunction();
+
+	/**
+	 * Looks up the result of a call to a user function, for the code
+	 * compiled to JVM bytecode, which holds the name of the function.
+	 *
+	 * @param name Name of the function
+	 * @param num_actual_params # of actual parameters on the stack
+	 * @return whether the result was found (and replaced the parameters)
+	 */
+	boolean lookupMemo(String name, long num_actual_params);
+
+	/**
+	 * Executes {@link AwkTuples#_SET_NUM_GLOBALS_}.
+	 *
+	 * @param num_globals # of global variables
+	 */
+	void setNumGlobals(long num_globals);
+
+	/**
+	 * Executes {@link AwkTuples#_CLOSE_}.
+	 */
+	void closeFile();
+
+	/**
+	 * Executes {@link AwkTuples#_APPLY_SUBSEP_}.
+	 *
+	 * @param count # of elements for SUBSEP application
+	 */
+	void applySubsep(long count);
+
+	/**
+	 * Executes {@link AwkTuples#_DELETE_ARRAY_ELEMENT_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void deleteArrayElement(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_DELETE_ARRAY_}.
+	 *
+	 * @param offset offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 */
+	void deleteArray(long offset, boolean is_global);
+
+	/**
+	 * Executes {@link AwkTuples#_EXIT_WITH_CODE_} and {@link AwkTuples#_EXIT_WITHOUT_CODE_}.
+	 *
+	 * <p>
+	 * Records the exit code and unwinds the stacks. Unless we are
+	 * within the END blocks (in which case an ExitException is thrown),
+	 * execution continues at the exit address.
+	 *
+	 * @param with_code whether the exit code is on the stack
+	 * @return the index of the tuple to jump to (the exit address)
+	 * @throws ExitException when exiting from the END blocks
+	 */
+	int exit(boolean with_code) throws ExitException;
+
+	/**
+	 * Executes {@link AwkTuples#_REGEXP_} from compiled code, which
+	 * cannot hold the compiled pattern as a constant.
+	 *
+	 * @param idx index of the tuple, where the compiled pattern is cached
+	 * @param regexp the regexp
+	 */
+	void regexp(int idx, String regexp);
+
+	/**
+	 * Executes {@link AwkTuples#_CONDITION_PAIR_}.
+	 *
+	 * @param idx index of the tuple, which identifies the condition pair
+	 */
+	void conditionPair(int idx);
+
+	/**
+	 * Executes {@link AwkTuples#_IS_IN_}.
+	 */
+	void isIn();
+
+	/**
+	 * Executes {@link AwkTuples#_CAST_DOUBLE_}.
+	 */
+	void castDouble();
+
+	/**
+	 * Executes {@link AwkTuples#_CAST_STRING_}.
+	 */
+	void castString();
+
+	/**
+	 * Executes {@link AwkTuples#_SWAP_}.
+	 */
+	void swap();
+
+	/**
+	 * Executes {@link AwkTuples#_GETLINE_INPUT_}.
+	 *
+	 * @throws IOException upon an IO error while reading the input
+	 */
+	void getlineInput() throws IOException;
+
+	/**
+	 * Executes {@link AwkTuples#_SET_EXIT_ADDRESS_}.
+	 *
+	 * @param idx index of the tuple to jump to upon exit
+	 */
+	void setExitAddress(int idx);
+
+	/**
+	 * Executes {@link AwkTuples#_SET_WITHIN_END_BLOCKS_}.
+	 *
+	 * @param b whether within the END blocks section
+	 */
+	void setWithinEndBlocks(boolean b);
+
+	/**
+	 * Executes {@link AwkTuples#_EXEC_}.
+	 */
+	void exec();
+
+	/**
+	 * Executes {@link AwkTuples#_EXTENSION_}.
+	 *
+	 * @param idx index of the tuple, where the extension is cached
+	 * @param extension_keyword the extension keyword
+	 * @param num_args # of items on the stack
+	 * @param is_initial true if the parent is NOT an extension function call
+	 */
+	void extension(int idx, String extension_keyword, long num_args, boolean is_initial);
+
+	/**
+	 * Numerically increases an Awk variable by one; the result
+	 * is placed back into that variable.
+	 * Used for {@link AwkTuples#_INC_}.
+	 *
+	 * @param l offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @return the value of the variable before the increment
+	 */
+	Object inc(long l, boolean is_global);
+
+	/**
+	 * Numerically decreases an Awk variable by one; the result
+	 * is placed back into that variable.
+	 * Used for {@link AwkTuples#_DEC_}.
+	 *
+	 * @param l offset of the variable
+	 * @param is_global whether the variable is global (or local)
+	 * @return the value of the variable before the decrement
+	 */
+	Object dec(long l, boolean is_global);
+}
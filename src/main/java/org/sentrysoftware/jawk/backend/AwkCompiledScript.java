@@ -0,0 +1,58 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+
+import org.sentrysoftware.jawk.ExitException;
+
+/**
+ * A Jawk script (or a region of it) compiled to JVM bytecode
+ * by the {@link AwkCompiler}.
+ * <p>
+ * The compiled code keeps the tuple indexes as its program counter:
+ * it is entered at a tuple index, runs the corresponding tuples
+ * natively, and returns the index of the next tuple to execute
+ * once control leaves the compiled region. All the opcode semantics
+ * are delegated to the handlers of the {@link AVM}, through its
+ * {@link AvmOperations}, so compiled and interpreted code share
+ * the same runtime.
+ * <p>
+ * This interface must be public, as the generated classes are
+ * defined by their own class loader.
+ */
+public interface AwkCompiledScript {
+
+	/**
+	 * Runs the compiled tuples, starting at the specified tuple index.
+	 *
+	 * @param avm The AVM providing the runtime state and the opcode handlers
+	 * @param idx The index of the first tuple to execute; it must be one
+	 *   of the entry points of the compiled region
+	 * @return The index of the next tuple to execute, which lies outside
+	 *   of the compiled region or is one of its entry points
+	 * @throws ExitException when the script exits from its END blocks
+	 * @throws IOException upon an IO error while reading the input
+	 */
+	int execute(AvmOperations avm, int idx) throws ExitException, IOException;
+}
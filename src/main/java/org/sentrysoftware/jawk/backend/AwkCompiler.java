@@ -0,0 +1,610 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sentrysoftware.jawk.backend.ClassFileWriter.CodeTooLargeException;
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+import org.sentrysoftware.jawk.intermediate.PositionForInterpretation;
+
+/**
+ * Compiles a range of {@link AwkTuples} to JVM bytecode, in memory.
+ * <p>
+ * Each tuple becomes a direct call to the matching opcode handler
+ * of the {@link AVM}, with the tuple arguments loaded as constants.
+ * Jumps between tuples of the compiled range become JVM branches,
+ * so the JIT sees the control flow of the Awk script itself instead
+ * of the dispatch loop of the interpreter.
+ * <p>
+ * Tuple indexes remain the program counter: the generated
+ * {@link AwkCompiledScript#execute(AVM, int)} method starts with a
+ * switch on the entry index, and returns the index of the next tuple
+ * to execute whenever control leaves the compiled range (or when
+ * <code>exit</code> is called).
+ */
+final class AwkCompiler {
+
+	private static final String AVM_INTERFACE = "org/sentrysoftware/jawk/backend/AvmOperations";
+	private static final String SCRIPT_INTERFACE = "org/sentrysoftware/jawk/backend/AwkCompiledScript";
+	private static final String CLASS_PREFIX = "org/sentrysoftware/jawk/compiled/AwkScript";
+
+	/** Largest string constant guaranteed to fit in a CONSTANT_Utf8 entry */
+	private static final int MAX_STRING_CONSTANT = 0xFFFF / 3;
+
+	private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+	private final AwkTuples tuples;
+	private final int from;
+	private final int to;
+	private final ClassFileWriter cfw;
+
+	/** Label of each tuple of the range, or -1 if nobody jumps there */
+	private final int[] labels;
+
+	/** Labels of the stubs returning the index of a tuple outside of the range */
+	private final Map<Integer, Integer> stubs = new HashMap<Integer, Integer>();
+
+	/** Entry points of the compiled range */
+	private final TreeSet<Integer> entries = new TreeSet<Integer>();
+
+	/** Indexes of the _CALL_FUNCTION_ tuples we can return to within the range */
+	private final List<Integer> call_sites = new ArrayList<Integer>();
+
+	private AwkCompiler(AwkTuples tuples, int from, int to, String class_name) {
+		this.tuples = tuples;
+		this.from = from;
+		this.to = to;
+		this.cfw = new ClassFileWriter(class_name, "java/lang/Object", SCRIPT_INTERFACE);
+		this.labels = new int[to - from];
+		Arrays.fill(labels, -1);
+	}
+
+	/**
+	 * Compiles the tuples in <code>[from, to)</code>.
+	 *
+	 * @param tuples The tuples to compile
+	 * @param from Index of the first tuple to compile
+	 * @param to Index following the last tuple to compile
+	 * @return the compiled tuples, ready to be executed
+	 * @throws CodeTooLargeException when the range does not fit
+	 *   in a single JVM method
+	 */
+	static AwkCompiledScript compile(AwkTuples tuples, int from, int to) throws CodeTooLargeException {
+		assert from >= 0 && from < to && to <= tuples.size();
+		String class_name = CLASS_PREFIX + CLASS_COUNTER.incrementAndGet();
+		AwkCompiler compiler = new AwkCompiler(tuples, from, to, class_name);
+		byte[] class_file = compiler.generate();
+		try {
+			Class<?> cls = new AwkScriptClassLoader().defineClass(class_name.replace('/', '.'), class_file);
+			return (AwkCompiledScript) cls.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException roe) {
+			throw new Error("Cannot instantiate the compiled script: " + roe, roe);
+		}
+	}
+
+	private PositionForInterpretation positionAt(int idx) {
+		PositionForInterpretation position = (PositionForInterpretation) tuples.top();
+		position.jump(idx);
+		return position;
+	}
+
+	private boolean inRange(int idx) {
+		return idx >= from && idx < to;
+	}
+
+	private int labelOf(int idx) {
+		if (inRange(idx)) {
+			if (labels[idx - from] < 0) {
+				labels[idx - from] = cfw.newLabel();
+			}
+			return labels[idx - from];
+		}
+		Integer stub = stubs.get(idx);
+		if (stub == null) {
+			stubs.put(idx, stub = cfw.newLabel());
+		}
+		return stub;
+	}
+
+	private byte[] generate() throws CodeTooLargeException {
+		// default constructor
+		cfw.beginMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+		cfw.localOp(ClassFileWriter.ALOAD, 0);
+		cfw.invoke(ClassFileWriter.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		cfw.op(ClassFileWriter.RETURN);
+		cfw.endMethod(1, 1);
+
+		cfw.beginMethod(ClassFileWriter.ACC_PUBLIC, "execute", "(L" + AVM_INTERFACE + ";I)I");
+		findEntries();
+
+		// dispatch on the entry index
+		int[] keys = new int[entries.size()];
+		int[] entry_labels = new int[keys.length];
+		int i = 0;
+		for (int entry : entries) {
+			keys[i] = entry;
+			entry_labels[i] = labelOf(entry);
+			++i;
+		}
+		int unknown_entry = cfw.newLabel();
+		cfw.localOp(ClassFileWriter.ILOAD, 2);
+		cfw.lookupSwitch(keys, entry_labels, unknown_entry);
+		cfw.placeLabel(unknown_entry);
+		cfw.localOp(ClassFileWriter.ILOAD, 2);
+		cfw.op(ClassFileWriter.IRETURN);
+
+		int line_number = -1;
+		PositionForInterpretation position = positionAt(from);
+		for (int idx = from; idx < to; idx++, position.next()) {
+			if (labels[idx - from] >= 0) {
+				cfw.placeLabel(labels[idx - from]);
+				// we may come from anywhere
+				line_number = -1;
+			}
+			if (position.lineNumber() != line_number) {
+				line_number = position.lineNumber();
+				cfw.localOp(ClassFileWriter.ALOAD, 1);
+				cfw.pushInt(line_number);
+				callAvm("setLineNumber", "(I)V");
+			}
+			compileTuple(position, idx);
+			if (cfw.codeLength() > ClassFileWriter.MAX_CODE_LENGTH) {
+				throw new CodeTooLargeException("Tuples " + from + " to " + to + " do not fit in a JVM method");
+			}
+		}
+
+		// falling off the range
+		cfw.pushInt(to);
+		cfw.op(ClassFileWriter.IRETURN);
+
+		// jumps out of the range
+		for (Map.Entry<Integer, Integer> stub : stubs.entrySet()) {
+			cfw.placeLabel(stub.getValue());
+			cfw.pushInt(stub.getKey());
+			cfw.op(ClassFileWriter.IRETURN);
+		}
+
+		cfw.endMethod(8, 4);
+		return cfw.toByteArray();
+	}
+
+	/**
+	 * Collects the tuples we may enter the compiled code at, and labels
+	 * all the jump targets.
+	 */
+	private void findEntries() {
+		entries.add(from);
+		PositionForInterpretation position = positionAt(from);
+		for (int idx = from; idx < to; idx++, position.next()) {
+			switch (position.opcode()) {
+				case AwkTuples._IFFALSE_:
+				case AwkTuples._IFTRUE_:
+				case AwkTuples._GOTO_:
+				case AwkTuples._IS_EMPTY_KEYLIST_:
+				case AwkTuples._CONSUME_INPUT_:
+				case AwkTuples._SET_EXIT_ADDRESS_:
+				case AwkTuples._IFFALSE_VAR_EQ_CONST_:
+					addTarget(position.addressArg().index());
+					break;
+				case AwkTuples._CALL_FUNCTION_:
+					addTarget(position.addressArg().index());
+					if (idx + 1 < to) {
+						// where returnFromFunction() leads us
+						call_sites.add(idx);
+						addTarget(idx + 1);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private void addTarget(int idx) {
+		if (inRange(idx)) {
+			// any jump target may also be reached from the interpreter
+			// (exit address, function called from outside of the range, etc.)
+			entries.add(idx);
+			labelOf(idx);
+		}
+	}
+
+	private void callAvm(String name, String descriptor) {
+		cfw.invokeInterface(AVM_INTERFACE, name, descriptor);
+	}
+
+	private void pushConstant(Object o) throws CodeTooLargeException {
+		if (o instanceof Long) {
+			cfw.pushLong((Long) o);
+			cfw.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+		} else if (o instanceof Double) {
+			cfw.pushDouble((Double) o);
+			cfw.invoke(ClassFileWriter.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+		} else {
+			pushString(o.toString());
+		}
+	}
+
+	private void pushString(String s) throws CodeTooLargeException {
+		if (s.length() > MAX_STRING_CONSTANT) {
+			throw new CodeTooLargeException("String constant is too long for a class file");
+		}
+		cfw.pushString(s);
+	}
+
+	private void compileTuple(PositionForInterpretation position, int idx) throws CodeTooLargeException {
+		int opcode = position.opcode();
+		switch (opcode) {
+			case AwkTuples._NOP_:
+			case AwkTuples._FUNCTION_:
+			case AwkTuples._THIS_:
+				return;
+			case AwkTuples._GOTO_:
+				cfw.jump(ClassFileWriter.GOTO, labelOf(position.addressArg().index()));
+				return;
+			default:
+				break;
+		}
+
+		cfw.localOp(ClassFileWriter.ALOAD, 1);
+		switch (opcode) {
+			// handlers without arguments
+			case AwkTuples._TO_NUMBER_: callAvm("toNumber", "()V"); break;
+			case AwkTuples._NOT_: callAvm("not", "()V"); break;
+			case AwkTuples._NEGATE_: callAvm("negate", "()V"); break;
+			case AwkTuples._UNARY_PLUS_: callAvm("unaryPlus", "()V"); break;
+			case AwkTuples._CONCAT_: callAvm("concat", "()V"); break;
+			case AwkTuples._ASSIGN_AS_INPUT_: callAvm("assignAsInput", "()V"); break;
+			case AwkTuples._ASSIGN_AS_INPUT_FIELD_: callAvm("assignAsInputField", "()V"); break;
+			case AwkTuples._INC_DOLLAR_REF_: callAvm("incDollarRef", "()V"); break;
+			case AwkTuples._DEC_DOLLAR_REF_: callAvm("decDollarRef", "()V"); break;
+			case AwkTuples._DEREF_ARRAY_: callAvm("derefArray", "()V"); break;
+			case AwkTuples._RAND_: callAvm("rand", "()V"); break;
+			case AwkTuples._INTFUNC_:
+			case AwkTuples._CAST_INT_: callAvm("intFunc", "()V"); break;
+			case AwkTuples._SQRT_: callAvm("sqrt", "()V"); break;
+			case AwkTuples._LOG_: callAvm("log", "()V"); break;
+			case AwkTuples._EXP_: callAvm("exp", "()V"); break;
+			case AwkTuples._SIN_: callAvm("sin", "()V"); break;
+			case AwkTuples._COS_: callAvm("cos", "()V"); break;
+			case AwkTuples._ATAN2_: callAvm("atan2", "()V"); break;
+			case AwkTuples._MATCH_: callAvm("match", "()V"); break;
+			case AwkTuples._INDEX_: callAvm("index", "()V"); break;
+			case AwkTuples._TOLOWER_: callAvm("toLower", "()V"); break;
+			case AwkTuples._TOUPPER_: callAvm("toUpper", "()V"); break;
+			case AwkTuples._SYSTEM_: callAvm("system", "()V"); break;
+			case AwkTuples._SWAP_: callAvm("swap", "()V"); break;
+			case AwkTuples._CMP_EQ_: callAvm("cmpEq", "()V"); break;
+			case AwkTuples._CMP_LT_: callAvm("cmpLt", "()V"); break;
+			case AwkTuples._CMP_GT_: callAvm("cmpGt", "()V"); break;
+			case AwkTuples._CMP_EQ_NUM_: callAvm("cmpEqNum", "()V"); break;
+			case AwkTuples._CMP_NE_NUM_: callAvm("cmpNeNum", "()V"); break;
+			case AwkTuples._CMP_LT_NUM_: callAvm("cmpLtNum", "()V"); break;
+			case AwkTuples._CMP_LE_NUM_: callAvm("cmpLeNum", "()V"); break;
+			case AwkTuples._CMP_GT_NUM_: callAvm("cmpGtNum", "()V"); break;
+			case AwkTuples._CMP_GE_NUM_: callAvm("cmpGeNum", "()V"); break;
+			case AwkTuples._MATCHES_: callAvm("matches", "()V"); break;
+			case AwkTuples._ADD_: callAvm("add", "()V"); break;
+			case AwkTuples._SUBTRACT_: callAvm("subtract", "()V"); break;
+			case AwkTuples._MULTIPLY_: callAvm("multiply", "()V"); break;
+			case AwkTuples._DIVIDE_: callAvm("divide", "()V"); break;
+			case AwkTuples._MOD_: callAvm("mod", "()V"); break;
+			case AwkTuples._POW_: callAvm("pow", "()V"); break;
+			case AwkTuples._DUP_: callAvm("dup", "()V"); break;
+			case AwkTuples._KEYLIST_: callAvm("keylist", "()V"); break;
+			case AwkTuples._GET_FIRST_AND_REMOVE_FROM_KEYLIST_: callAvm("getFirstAndRemoveFromKeylist", "()V"); break;
+			case AwkTuples._GETLINE_INPUT_: callAvm("getlineInput", "()V"); break;
+			case AwkTuples._USE_AS_FILE_INPUT_: callAvm("useAsFileInput", "()V"); break;
+			case AwkTuples._USE_AS_COMMAND_INPUT_: callAvm("useAsCommandInput", "()V"); break;
+			case AwkTuples._GET_INPUT_FIELD_: callAvm("getInputField", "()V"); break;
+			case AwkTuples._APPLY_RS_: callAvm("applyRS", "()V"); break;
+			case AwkTuples._SET_RETURN_RESULT_: callAvm("setReturnResult", "()V"); break;
+			case AwkTuples._CLOSE_: callAvm("closeFile", "()V"); break;
+			case AwkTuples._IS_IN_: callAvm("isIn", "()V"); break;
+			case AwkTuples._CAST_DOUBLE_: callAvm("castDouble", "()V"); break;
+			case AwkTuples._CAST_STRING_: callAvm("castString", "()V"); break;
+			case AwkTuples._EXEC_: callAvm("exec", "()V"); break;
+
+			// handlers taking a count
+			case AwkTuples._PRINT_: callWithCount(position, "print"); break;
+			case AwkTuples._PRINT_TO_PIPE_: callWithCount(position, "printToPipe"); break;
+			case AwkTuples._PRINTF_: callWithCount(position, "printf"); break;
+			case AwkTuples._PRINTF_TO_PIPE_: callWithCount(position, "printfToPipe"); break;
+			case AwkTuples._SPRINTF_: callWithCount(position, "sprintf"); break;
+			case AwkTuples._LENGTH_: callWithCount(position, "length"); break;
+			case AwkTuples._SRAND_: callWithCount(position, "srand"); break;
+			case AwkTuples._SPLIT_: callWithCount(position, "split"); break;
+			case AwkTuples._SUBSTR_: callWithCount(position, "substr"); break;
+			case AwkTuples._SLEEP_: callWithCount(position, "sleep"); break;
+			case AwkTuples._DUMP_: callWithCount(position, "dump"); break;
+			case AwkTuples._SET_NUM_GLOBALS_: callWithCount(position, "setNumGlobals"); break;
+			case AwkTuples._GET_INPUT_FIELD_CONST_: callWithCount(position, "getInputFieldConst"); break;
+			case AwkTuples._APPLY_SUBSEP_: callWithCount(position, "applySubsep"); break;
+
+			// handlers taking a count (or an offset) and a flag
+			case AwkTuples._PRINT_TO_FILE_: callWithOffset(position, "printToFile"); break;
+			case AwkTuples._PRINTF_TO_FILE_: callWithOffset(position, "printfToFile"); break;
+			case AwkTuples._ASSIGN_: callWithOffset(position, "assign"); break;
+			case AwkTuples._ASSIGN_ARRAY_: callWithOffset(position, "assignArray"); break;
+			case AwkTuples._POSTINC_: callWithOffset(position, "postInc"); break;
+			case AwkTuples._POSTDEC_: callWithOffset(position, "postDec"); break;
+			case AwkTuples._INC_ARRAY_REF_: callWithOffset(position, "incArrayRef"); break;
+			case AwkTuples._DEC_ARRAY_REF_: callWithOffset(position, "decArrayRef"); break;
+			case AwkTuples._DELETE_ARRAY_ELEMENT_: callWithOffset(position, "deleteArrayElement"); break;
+			case AwkTuples._DELETE_ARRAY_: callWithOffset(position, "deleteArray"); break;
+			case AwkTuples._STORE_: callWithOffset(position, "store"); break;
+			case AwkTuples._DEREFERENCE_NUM_: callWithOffset(position, "dereferenceNumber"); break;
+			case AwkTuples._ASSIGN_NUM_: callWithOffset(position, "assignNumber"); break;
+			case AwkTuples._STORE_NUM_: callWithOffset(position, "storeNumber"); break;
+			case AwkTuples._INC_VAR_NUM_: callWithOffset(position, "incNumber"); break;
+			case AwkTuples._ADD_TO_ARRAY_ELEMENT_: callWithOffset(position, "addToArrayElement"); break;
+			case AwkTuples._INC_VAR_:
+			case AwkTuples._INC_:
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				callAvm("inc", "(JZ)Ljava/lang/Object;");
+				cfw.op(ClassFileWriter.POP);
+				break;
+			case AwkTuples._DEC_:
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				callAvm("dec", "(JZ)Ljava/lang/Object;");
+				cfw.op(ClassFileWriter.POP);
+				break;
+
+			// handlers taking the opcode
+			case AwkTuples._PLUS_EQ_:
+			case AwkTuples._MINUS_EQ_:
+			case AwkTuples._MULT_EQ_:
+			case AwkTuples._DIV_EQ_:
+			case AwkTuples._MOD_EQ_:
+			case AwkTuples._POW_EQ_:
+				cfw.pushInt(opcode);
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				callAvm("assignOp", "(IJZ)V");
+				break;
+			case AwkTuples._PLUS_EQ_NUM_:
+			case AwkTuples._MINUS_EQ_NUM_:
+			case AwkTuples._MULT_EQ_NUM_:
+			case AwkTuples._DIV_EQ_NUM_:
+			case AwkTuples._MOD_EQ_NUM_:
+				cfw.pushInt(opcode);
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				callAvm("assignOpNumber", "(IJZ)V");
+				break;
+			case AwkTuples._PLUS_EQ_ARRAY_:
+			case AwkTuples._MINUS_EQ_ARRAY_:
+			case AwkTuples._MULT_EQ_ARRAY_:
+			case AwkTuples._DIV_EQ_ARRAY_:
+			case AwkTuples._MOD_EQ_ARRAY_:
+			case AwkTuples._POW_EQ_ARRAY_:
+				cfw.pushInt(opcode);
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				callAvm("assignOpArray", "(IJZ)V");
+				break;
+			case AwkTuples._PLUS_EQ_INPUT_FIELD_:
+			case AwkTuples._MINUS_EQ_INPUT_FIELD_:
+			case AwkTuples._MULT_EQ_INPUT_FIELD_:
+			case AwkTuples._DIV_EQ_INPUT_FIELD_:
+			case AwkTuples._MOD_EQ_INPUT_FIELD_:
+			case AwkTuples._POW_EQ_INPUT_FIELD_:
+				cfw.pushInt(opcode);
+				callAvm("assignOpInputField", "(I)V");
+				break;
+			case AwkTuples._NF_OFFSET_:
+			case AwkTuples._NR_OFFSET_:
+			case AwkTuples._FNR_OFFSET_:
+			case AwkTuples._FS_OFFSET_:
+			case AwkTuples._RS_OFFSET_:
+			case AwkTuples._OFS_OFFSET_:
+			case AwkTuples._ORS_OFFSET_:
+			case AwkTuples._RSTART_OFFSET_:
+			case AwkTuples._RLENGTH_OFFSET_:
+			case AwkTuples._FILENAME_OFFSET_:
+			case AwkTuples._SUBSEP_OFFSET_:
+			case AwkTuples._CONVFMT_OFFSET_:
+			case AwkTuples._OFMT_OFFSET_:
+			case AwkTuples._ENVIRON_OFFSET_:
+			case AwkTuples._ARGC_OFFSET_:
+			case AwkTuples._ARGV_OFFSET_:
+				cfw.pushInt(opcode);
+				cfw.pushLong(position.intArg(0));
+				callAvm("setSpecialVariableOffset", "(IJ)V");
+				break;
+
+			// other arguments
+			case AwkTuples._PUSH_:
+				// a number is pushed without boxing it
+				if (position.arg(0) instanceof Long) {
+					cfw.pushLong((Long) position.arg(0));
+					callAvm("pushLong", "(J)V");
+				} else if (position.arg(0) instanceof Double) {
+					cfw.pushDouble((Double) position.arg(0));
+					callAvm("pushDouble", "(D)V");
+				} else {
+					pushConstant(position.arg(0));
+					callAvm("push", "(Ljava/lang/Object;)V");
+				}
+				break;
+			case AwkTuples._POP_:
+				callAvm("drop", "()V");
+				break;
+			case AwkTuples._DEREFERENCE_:
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				cfw.pushBoolean(position.boolArg(2));
+				callAvm("dereference", "(JZZ)V");
+				break;
+			case AwkTuples._SUB_FOR_DOLLAR_0_:
+				cfw.pushBoolean(position.boolArg(0));
+				callAvm("subForDollar0", "(Z)V");
+				break;
+			case AwkTuples._SUB_FOR_DOLLAR_REFERENCE_:
+				cfw.pushBoolean(position.boolArg(0));
+				callAvm("subForDollarReference", "(Z)V");
+				break;
+			case AwkTuples._SUB_FOR_VARIABLE_:
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				cfw.pushBoolean(position.boolArg(2));
+				callAvm("subForVariable", "(JZZ)V");
+				break;
+			case AwkTuples._SUB_FOR_ARRAY_REFERENCE_:
+				cfw.pushLong(position.intArg(0));
+				cfw.pushBoolean(position.boolArg(1));
+				cfw.pushBoolean(position.boolArg(2));
+				callAvm("subForArrayReference", "(JZZ)V");
+				break;
+			case AwkTuples._CHECK_CLASS_:
+				cfw.pushClass(position.classArg().getName().replace('.', '/'));
+				callAvm("checkClass", "(Ljava/lang/Class;)V");
+				break;
+			case AwkTuples._REGEXP_:
+				// Patterns cannot be class file constants: pass their source,
+				// AVM.regexp() compiles it once and caches it with the tuple index
+				cfw.pushInt(idx);
+				pushString(position.arg(0).toString());
+				callAvm("regexp", "(ILjava/lang/String;)V");
+				break;
+			case AwkTuples._CONDITION_PAIR_:
+				cfw.pushInt(idx);
+				callAvm("conditionPair", "(I)V");
+				break;
+			case AwkTuples._SET_EXIT_ADDRESS_:
+				cfw.pushInt(position.addressArg().index());
+				callAvm("setExitAddress", "(I)V");
+				break;
+			case AwkTuples._SET_WITHIN_END_BLOCKS_:
+				cfw.pushBoolean(position.boolArg(0));
+				callAvm("setWithinEndBlocks", "(Z)V");
+				break;
+			case AwkTuples._EXTENSION_:
+				cfw.pushInt(idx);
+				pushString(position.arg(0).toString());
+				cfw.pushLong(position.intArg(1));
+				cfw.pushBoolean(position.boolArg(2));
+				callAvm("extension", "(ILjava/lang/String;JZ)V");
+				break;
+
+			// control flow
+			case AwkTuples._IFFALSE_:
+				callAvm("ifFalse", "()Z");
+				cfw.jump(ClassFileWriter.IFNE, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._IFTRUE_:
+				callAvm("ifTrue", "()Z");
+				cfw.jump(ClassFileWriter.IFNE, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._IS_EMPTY_KEYLIST_:
+				callAvm("isEmptyKeylist", "()Z");
+				cfw.jump(ClassFileWriter.IFNE, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._IFFALSE_VAR_EQ_CONST_:
+				cfw.pushLong(position.intArg(1));
+				cfw.pushBoolean(position.boolArg(2));
+				pushConstant(position.arg(3));
+				callAvm("ifFalseVarEqConst", "(JZLjava/lang/Object;)Z");
+				cfw.jump(ClassFileWriter.IFNE, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._CONSUME_INPUT_:
+				callAvm("consumeInput", "()Z");
+				cfw.jump(ClassFileWriter.IFEQ, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._CALL_FUNCTION_:
+				// arg[1] = function name
+				// arg[2] = # of formal parameters
+				// arg[3] = # of actual parameters
+				if (idx + 1 < to && tuples.getPureFunctionNameSet().contains(position.arg(1).toString())) {
+					// skip the call if its result is cached
+					pushString(position.arg(1).toString());
+					cfw.pushLong(position.intArg(3));
+					callAvm("lookupMemo", "(Ljava/lang/String;J)Z");
+					cfw.jump(ClassFileWriter.IFNE, labelOf(idx + 1));
+					cfw.localOp(ClassFileWriter.ALOAD, 1);
+				}
+				cfw.pushLong(position.intArg(2));
+				cfw.pushLong(position.intArg(3));
+				cfw.pushInt(idx);
+				callAvm("callFunction", "(JJI)V");
+				cfw.jump(ClassFileWriter.GOTO, labelOf(position.addressArg().index()));
+				break;
+			case AwkTuples._RETURN_FROM_FUNCTION_:
+				compileReturn();
+				break;
+			case AwkTuples._EXIT_WITHOUT_CODE_:
+			case AwkTuples._EXIT_WITH_CODE_:
+				// let the caller jump to the exit address
+				cfw.pushBoolean(opcode == AwkTuples._EXIT_WITH_CODE_);
+				callAvm("exit", "(Z)I");
+				cfw.op(ClassFileWriter.IRETURN);
+				break;
+			default:
+				throw new Error("invalid opcode: " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+
+	private void callWithCount(PositionForInterpretation position, String name) {
+		cfw.pushLong(position.intArg(0));
+		callAvm(name, "(J)V");
+	}
+
+	private void callWithOffset(PositionForInterpretation position, String name) {
+		cfw.pushLong(position.intArg(0));
+		cfw.pushBoolean(position.boolArg(1));
+		callAvm(name, "(JZ)V");
+	}
+
+	/**
+	 * Returns to the tuple following the _CALL_FUNCTION_ tuple recorded
+	 * in the runtime stack, which is either a call site of the range,
+	 * or the interpreter's business.
+	 */
+	private void compileReturn() {
+		callAvm("returnFromFunction", "()I");
+		cfw.localOp(ClassFileWriter.ISTORE, 3);
+		int[] keys = new int[call_sites.size()];
+		int[] return_labels = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = call_sites.get(i);
+			return_labels[i] = labelOf(keys[i] + 1);
+		}
+		int elsewhere = cfw.newLabel();
+		cfw.localOp(ClassFileWriter.ILOAD, 3);
+		cfw.lookupSwitch(keys, return_labels, elsewhere);
+		cfw.placeLabel(elsewhere);
+		cfw.localOp(ClassFileWriter.ILOAD, 3);
+		cfw.pushInt(1);
+		cfw.op(ClassFileWriter.IADD);
+		cfw.op(ClassFileWriter.IRETURN);
+	}
+}
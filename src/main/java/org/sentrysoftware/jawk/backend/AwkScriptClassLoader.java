@@ -0,0 +1,50 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+/**
+ * Class loader for the classes generated by the {@link AwkCompiler}.
+ * <p>
+ * Each compiled script gets its own loader, so that the generated
+ * class can be unloaded along with the script once it is not
+ * referenced anymore. Anything else is delegated to the loader of
+ * the Jawk classes, which gives the generated code access to
+ * the AVM and the JRT.
+ */
+final class AwkScriptClassLoader extends ClassLoader {
+
+	AwkScriptClassLoader() {
+		super(AwkScriptClassLoader.class.getClassLoader());
+	}
+
+	/**
+	 * Defines the class from its class file.
+	 *
+	 * @param name Binary name of the class
+	 * @param class_file The class file contents
+	 * @return the new class
+	 */
+	Class<?> defineClass(String name, byte[] class_file) {
+		return defineClass(name, class_file, 0, class_file.length);
+	}
+}
@@ -0,0 +1,485 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer of JVM class files, just capable enough to produce
+ * the classes generated by the {@link AwkCompiler}.
+ * <p>
+ * The classes are written in the class file format version 49 (Java 5).
+ * This version does not require <code>StackMapTable</code> attributes,
+ * which keeps this writer simple: the JVM verifies the generated code
+ * by type inference.
+ * <p>
+ * Usage: declare the class, then for each method call
+ * {@link #beginMethod(int, String, String)}, emit the instructions,
+ * and call {@link #endMethod(int, int)}. Finally, call
+ * {@link #toByteArray()}.
+ */
+final class ClassFileWriter {
+
+	// access flags
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	// opcodes used by the compiler
+	static final int ICONST_0 = 0x03;
+	static final int LCONST_0 = 0x09;
+	static final int LCONST_1 = 0x0a;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int LDC2_W = 0x14;
+	static final int ILOAD = 0x15;
+	static final int ALOAD = 0x19;
+	static final int ISTORE = 0x36;
+	static final int POP = 0x57;
+	static final int POP2 = 0x58;
+	static final int IADD = 0x60;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int GOTO = 0xa7;
+	static final int LOOKUPSWITCH = 0xab;
+	static final int IRETURN = 0xac;
+	static final int RETURN = 0xb1;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int INVOKEINTERFACE = 0xb9;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/** Largest code length reachable with 16-bit branch offsets */
+	static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+	/**
+	 * Thrown when the generated method exceeds what this writer
+	 * can encode. The caller is expected to fall back to interpretation.
+	 */
+	static final class CodeTooLargeException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		CodeTooLargeException(String message) {
+			super(message);
+		}
+	}
+
+	private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+	private int pool_count = 1;
+	private final Map<String, Integer> pool_entries = new HashMap<String, Integer>();
+
+	private final int this_class;
+	private final int super_class;
+	private final int[] interfaces;
+
+	private final ByteArrayOutputStream methods_bytes = new ByteArrayOutputStream();
+	private final DataOutputStream methods = new DataOutputStream(methods_bytes);
+	private int method_count = 0;
+
+	// state of the method being written
+	private int method_access;
+	private int method_name;
+	private int method_descriptor;
+	private byte[] code = new byte[1024];
+	private int code_length;
+	private List<int[]> fixups = new ArrayList<int[]>();
+	private int[] label_positions = new int[64];
+	private int label_count = 0;
+
+	/**
+	 * Declares the class to write.
+	 *
+	 * @param class_name Internal name of the class (e.g. <code>a/b/C</code>)
+	 * @param super_name Internal name of its super class
+	 * @param interface_names Internal names of the implemented interfaces
+	 */
+	ClassFileWriter(String class_name, String super_name, String... interface_names) {
+		this_class = classRef(class_name);
+		super_class = classRef(super_name);
+		interfaces = new int[interface_names.length];
+		for (int i = 0; i < interface_names.length; i++) {
+			interfaces[i] = classRef(interface_names[i]);
+		}
+	}
+
+	// constant pool
+
+	private int utf8(String s) {
+		Integer idx = pool_entries.get("U" + s);
+		if (idx == null) {
+			try {
+				pool.writeByte(CONSTANT_UTF8);
+				pool.writeUTF(s);
+			} catch (IOException ioe) {
+				throw new Error(ioe);
+			}
+			idx = pool_count++;
+			pool_entries.put("U" + s, idx);
+		}
+		return idx;
+	}
+
+	private int entry(String key, int tag, int ref1, int ref2) {
+		Integer idx = pool_entries.get(key);
+		if (idx == null) {
+			try {
+				pool.writeByte(tag);
+				pool.writeShort(ref1);
+				if (ref2 >= 0) {
+					pool.writeShort(ref2);
+				}
+			} catch (IOException ioe) {
+				throw new Error(ioe);
+			}
+			idx = pool_count++;
+			pool_entries.put(key, idx);
+		}
+		return idx;
+	}
+
+	int classRef(String internal_name) {
+		return entry("C" + internal_name, CONSTANT_CLASS, utf8(internal_name), -1);
+	}
+
+	int stringRef(String s) {
+		return entry("S" + s, CONSTANT_STRING, utf8(s), -1);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		int name_and_type = entry("N" + name + ' ' + descriptor, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+		return entry("M" + owner + '.' + name + descriptor, CONSTANT_METHODREF, classRef(owner), name_and_type);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor) {
+		int name_and_type = entry("N" + name + ' ' + descriptor, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+		return entry("F" + owner + '.' + name + descriptor, CONSTANT_INTERFACE_METHODREF, classRef(owner), name_and_type);
+	}
+
+	private int wideConstant(String key, int tag, long bits) {
+		Integer idx = pool_entries.get(key);
+		if (idx == null) {
+			try {
+				pool.writeByte(tag);
+				pool.writeLong(bits);
+			} catch (IOException ioe) {
+				throw new Error(ioe);
+			}
+			idx = pool_count;
+			// long and double constants take two slots
+			pool_count += 2;
+			pool_entries.put(key, idx);
+		}
+		return idx;
+	}
+
+	private int intConstant(int i) {
+		Integer idx = pool_entries.get("I" + i);
+		if (idx == null) {
+			try {
+				pool.writeByte(CONSTANT_INTEGER);
+				pool.writeInt(i);
+			} catch (IOException ioe) {
+				throw new Error(ioe);
+			}
+			idx = pool_count++;
+			pool_entries.put("I" + i, idx);
+		}
+		return idx;
+	}
+
+	// methods
+
+	void beginMethod(int access, String name, String descriptor) {
+		method_access = access;
+		method_name = utf8(name);
+		method_descriptor = utf8(descriptor);
+		code_length = 0;
+		fixups.clear();
+		label_count = 0;
+	}
+
+	void endMethod(int max_stack, int max_locals) throws CodeTooLargeException {
+		if (code_length > MAX_CODE_LENGTH) {
+			throw new CodeTooLargeException("Method code is " + code_length + " bytes long");
+		}
+		for (int[] fixup : fixups) {
+			// fixup = { instruction position, offset position, label, offset size }
+			int target = label_positions[fixup[2]];
+			assert target >= 0 : "label " + fixup[2] + " was never placed";
+			int offset = target - fixup[0];
+			if (fixup[3] == 2) {
+				putShort(fixup[1], offset);
+			} else {
+				putInt(fixup[1], offset);
+			}
+		}
+		try {
+			methods.writeShort(method_access);
+			methods.writeShort(method_name);
+			methods.writeShort(method_descriptor);
+			methods.writeShort(1);
+			// Code attribute
+			methods.writeShort(utf8("Code"));
+			methods.writeInt(12 + code_length);
+			methods.writeShort(max_stack);
+			methods.writeShort(max_locals);
+			methods.writeInt(code_length);
+			methods.write(code, 0, code_length);
+			methods.writeShort(0);	// exception table
+			methods.writeShort(0);	// attributes
+		} catch (IOException ioe) {
+			throw new Error(ioe);
+		}
+		++method_count;
+	}
+
+	/**
+	 * @return the complete class file
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);	// minor version
+			out.writeShort(49);	// major version (Java 5)
+			out.writeShort(pool_count);
+			pool.flush();
+			pool_bytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(this_class);
+			out.writeShort(super_class);
+			out.writeShort(interfaces.length);
+			for (int i : interfaces) {
+				out.writeShort(i);
+			}
+			out.writeShort(0);	// fields
+			out.writeShort(method_count);
+			methods.flush();
+			methods_bytes.writeTo(out);
+			out.writeShort(0);	// attributes
+			out.flush();
+		} catch (IOException ioe) {
+			throw new Error(ioe);
+		}
+		return baos.toByteArray();
+	}
+
+	// code emission
+
+	private void put(int b) {
+		if (code_length == code.length) {
+			byte[] new_code = new byte[code.length * 2];
+			System.arraycopy(code, 0, new_code, 0, code_length);
+			code = new_code;
+		}
+		code[code_length++] = (byte) b;
+	}
+
+	private void putShort(int pos, int s) {
+		code[pos] = (byte) (s >> 8);
+		code[pos + 1] = (byte) s;
+	}
+
+	private void putInt(int pos, int i) {
+		code[pos] = (byte) (i >> 24);
+		code[pos + 1] = (byte) (i >> 16);
+		code[pos + 2] = (byte) (i >> 8);
+		code[pos + 3] = (byte) i;
+	}
+
+	private void emitShort(int s) {
+		put(s >> 8);
+		put(s);
+	}
+
+	private void emitInt(int i) {
+		put(i >> 24);
+		put(i >> 16);
+		put(i >> 8);
+		put(i);
+	}
+
+	int codeLength() {
+		return code_length;
+	}
+
+	/**
+	 * @return a new label, to be placed later with {@link #placeLabel(int)}
+	 */
+	int newLabel() {
+		if (label_count == label_positions.length) {
+			int[] new_positions = new int[label_positions.length * 2];
+			System.arraycopy(label_positions, 0, new_positions, 0, label_count);
+			label_positions = new_positions;
+		}
+		label_positions[label_count] = -1;
+		return label_count++;
+	}
+
+	void placeLabel(int label) {
+		label_positions[label] = code_length;
+	}
+
+	void op(int opcode) {
+		put(opcode);
+	}
+
+	void localOp(int opcode, int local) {
+		assert local < 256;
+		put(opcode);
+		put(local);
+	}
+
+	void invoke(int opcode, String owner, String name, String descriptor) {
+		put(opcode);
+		emitShort(methodRef(owner, name, descriptor));
+	}
+
+	void invokeInterface(String owner, String name, String descriptor) {
+		put(INVOKEINTERFACE);
+		emitShort(interfaceMethodRef(owner, name, descriptor));
+		// the number of argument slots, including the receiver, then 0
+		put(argumentSlots(descriptor) + 1);
+		put(0);
+	}
+
+	/**
+	 * @param descriptor A method descriptor
+	 * @return the number of local variable slots its arguments take
+	 */
+	private static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			if (c == 'J' || c == 'D') {
+				slots += 2;
+				i++;
+			} else {
+				slots++;
+				while (descriptor.charAt(i) == '[') {
+					i++;
+				}
+				i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+			}
+		}
+		return slots;
+	}
+
+	void jump(int opcode, int label) {
+		int pos = code_length;
+		put(opcode);
+		fixups.add(new int[] {pos, code_length, label, 2});
+		emitShort(0);
+	}
+
+	void pushInt(int i) {
+		if (i >= -1 && i <= 5) {
+			put(ICONST_0 + i);
+		} else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+			put(BIPUSH);
+			put(i);
+		} else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+			put(SIPUSH);
+			emitShort(i);
+		} else {
+			put(LDC_W);
+			emitShort(intConstant(i));
+		}
+	}
+
+	void pushBoolean(boolean b) {
+		put(ICONST_0 + (b ? 1 : 0));
+	}
+
+	void pushLong(long l) {
+		if (l == 0) {
+			put(LCONST_0);
+		} else if (l == 1) {
+			put(LCONST_1);
+		} else {
+			put(LDC2_W);
+			emitShort(wideConstant("J" + l, CONSTANT_LONG, l));
+		}
+	}
+
+	void pushDouble(double d) {
+		long bits = Double.doubleToRawLongBits(d);
+		put(LDC2_W);
+		emitShort(wideConstant("D" + bits, CONSTANT_DOUBLE, bits));
+	}
+
+	void pushString(String s) {
+		put(LDC_W);
+		emitShort(stringRef(s));
+	}
+
+	void pushClass(String internal_name) {
+		put(LDC_W);
+		emitShort(classRef(internal_name));
+	}
+
+	/**
+	 * Emits a <code>lookupswitch</code> instruction.
+	 *
+	 * @param keys The keys to match, in ascending order
+	 * @param labels The label to jump to for each key
+	 * @param default_label The label to jump to when no key matches
+	 */
+	void lookupSwitch(int[] keys, int[] labels, int default_label) {
+		int pos = code_length;
+		put(LOOKUPSWITCH);
+		while (code_length % 4 != 0) {
+			put(0);
+		}
+		fixups.add(new int[] {pos, code_length, default_label, 4});
+		emitInt(0);
+		emitInt(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			assert i == 0 || keys[i - 1] < keys[i];
+			emitInt(keys[i]);
+			fixups.add(new int[] {pos, code_length, labels[i], 4});
+			emitInt(0);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of the calls to a pure function (as found by the parser),
+ * keyed by the values of the actual parameters.
+ * <p>
+ * The cache is bounded: once it is full, the least recently used result
+ * is dropped. The numbers of hits and misses help sizing it
+ * (see {@link org.sentrysoftware.jawk.util.AwkSettings#setMemoCacheSize(int)}).
+ * <p>
+ * Converting a number to a string depends on CONVFMT, so the results
+ * are dropped whenever CONVFMT changes.
+ */
+public final class FunctionMemo {
+
+	private final String name;
+	private final Map<List<Object>, Object> results;
+	private long hits;
+	private long misses;
+	private Object convfmt;
+
+	/**
+	 * @param name Name of the function
+	 * @param max_size Maximum number of results to keep
+	 */
+	FunctionMemo(String name, final int max_size) {
+		this.name = name;
+		this.results = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+				return size() > max_size;
+			}
+		};
+	}
+
+	/**
+	 * @param args Values of the actual parameters
+	 * @param current_convfmt Value of CONVFMT
+	 * @return the result of the call, or <code>null</code> if unknown
+	 */
+	Object get(Object[] args, Object current_convfmt) {
+		if (current_convfmt != convfmt) {
+			results.clear();
+			convfmt = current_convfmt;
+		}
+		Object result = results.get(Arrays.asList(args));
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * @param args Values of the actual parameters
+	 * @param result The result of the call
+	 */
+	void put(Object[] args, Object result) {
+		results.put(Arrays.asList(args), result);
+	}
+
+	/**
+	 * @return the name of the function
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of calls answered from the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of calls which ran the function
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of results in the cache
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + hits + " hits, " + misses + " misses, " + results.size() + " results";
+	}
+}
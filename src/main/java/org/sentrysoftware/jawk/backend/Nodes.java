@@ -0,0 +1,1616 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+import org.sentrysoftware.jawk.jrt.AssocArray;
+import org.sentrysoftware.jawk.jrt.AwkRuntimeException;
+import org.sentrysoftware.jawk.jrt.JRT;
+import org.sentrysoftware.jawk.jrt.KeyList;
+
+/**
+ * Closure compilation of the statements of a script: instead of
+ * tuples, the front end builds (with the factory methods of this
+ * class) a tree of pre-linked nodes, each of which evaluates itself
+ * with a specialized method. Variable offsets, constant field numbers,
+ * regular expression literals and the functions being called are all
+ * resolved when the tree is built, and each node class has its own
+ * <code>eval()</code>, so the JIT sees monomorphic call sites it can
+ * inline, instead of the central switch of the tuple interpreter.
+ * <p>
+ * The AVM runs a tree with the {@link AwkTuples#_EXEC_NODE_} tuple,
+ * which precedes the tuples of the statement it replaces. Only the
+ * statements which do not leave the flow of the tuples are compiled
+ * (no <code>next</code>, <code>exit</code>, <code>getline</code>,
+ * redirected output, etc.), and a <code>break</code>,
+ * <code>continue</code> or <code>return</code> only when its loop
+ * or function is compiled too.
+ * <p>
+ * Wherever the semantics are not trivial, the nodes push their operands
+ * onto the operand stack and call the same AVM method as the tuple they
+ * stand for, so that both behave exactly the same.
+ */
+public final class Nodes {
+
+	/** A statement ran to its end */
+	static final int NORMAL = 0;
+	/** A statement ran into a <code>break</code> */
+	static final int BREAK = 1;
+	/** A statement ran into a <code>continue</code> */
+	static final int CONTINUE = 2;
+	/** A statement ran into a <code>return</code> */
+	static final int RETURN = 3;
+
+	private static final Integer ZERO = Integer.valueOf(0);
+	private static final Integer ONE = Integer.valueOf(1);
+
+	private Nodes() {}
+
+	/**
+	 * An expression, which evaluates to a value.
+	 */
+	public abstract static class Expression {
+
+		Expression() {}
+
+		/**
+		 * @param avm The AVM, which holds the variables and the input
+		 * @return the value of the expression
+		 */
+		abstract Object eval(AVM avm);
+
+		/**
+		 * Evaluates the expression as a condition (like
+		 * <code>_IFFALSE_</code> does with its value).
+		 *
+		 * @param avm The AVM
+		 * @return the truth value of the expression
+		 */
+		boolean isTrue(AVM avm) {
+			return avm.toBoolean(eval(avm));
+		}
+	}
+
+	/**
+	 * A statement.
+	 */
+	public abstract static class Statement {
+
+		Statement() {}
+
+		/**
+		 * @param avm The AVM, which holds the variables and the input
+		 * @return how the statement completed: {@link #NORMAL},
+		 *   {@link #BREAK}, {@link #CONTINUE} or {@link #RETURN}
+		 */
+		abstract int exec(AVM avm);
+	}
+
+	/**
+	 * A user-defined function whose body is compiled to nodes. The calls
+	 * are linked to it before its body is built (the body may call the
+	 * function itself, or a function defined further down the script).
+	 */
+	public static final class Function {
+
+		private final String name;
+		private final int num_formal_params;
+		private Statement body;
+
+		/**
+		 * @param name Name of the function
+		 * @param num_formal_params Number of formal parameters
+		 */
+		public Function(String name, int num_formal_params) {
+			this.name = name;
+			this.num_formal_params = num_formal_params;
+		}
+
+		/**
+		 * @param body The body of the function
+		 */
+		public void setBody(Statement body) {
+			this.body = body;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	// expressions
+
+	/**
+	 * @param value A number or a string, as pushed by the tuples
+	 * @return a node evaluating to the value
+	 */
+	public static Expression constant(Object value) {
+		// _PUSH_ turns Integers into Longs
+		return new Constant(value instanceof Integer ? Long.valueOf((Integer) value) : value);
+	}
+
+	/**
+	 * @param regexp A regular expression literal
+	 * @return a node evaluating to the compiled regular expression,
+	 *   like <code>_REGEXP_</code>
+	 */
+	public static Expression regexp(final String regexp) {
+		try {
+			return new Constant(Pattern.compile(regexp));
+		} catch (PatternSyntaxException pse) {
+			// let the AVM report the error, when (and if) evaluated
+			return new StackOperation() {
+				@Override
+				void apply(AVM avm) {
+					avm.regexp(regexp);
+				}
+			};
+		}
+	}
+
+	/**
+	 * @param offset Offset of the variable
+	 * @param is_global Whether the variable is global (or local)
+	 * @param is_array Whether the variable is an array
+	 * @return a node reading the variable, like <code>_DEREFERENCE_</code>
+	 */
+	public static Expression variable(final long offset, final boolean is_global, boolean is_array) {
+		if (!is_array) {
+			return new Variable(offset, is_global);
+		}
+		return new StackOperation() {
+			@Override
+			void apply(AVM avm) {
+				avm.dereference(offset, true, is_global);
+			}
+		};
+	}
+
+	/**
+	 * @param array The array
+	 * @param index The key
+	 * @return a node reading an array element
+	 */
+	public static Expression arrayElement(Expression array, Expression index) {
+		return new ArrayElement(array, index);
+	}
+
+	/**
+	 * @param fieldnum The number of the field
+	 * @return a node reading an input field
+	 */
+	public static Expression field(Expression fieldnum) {
+		return new Field(fieldnum);
+	}
+
+	/**
+	 * @param opcode <code>_ASSIGN_</code>, or the tuple of a compound assignment
+	 *   (<code>_PLUS_EQ_</code>, etc.)
+	 * @param offset Offset of the variable
+	 * @param is_global Whether the variable is global (or local)
+	 * @param value The right-hand side
+	 * @param apply_rs Whether the variable is RS
+	 * @return a node assigning a scalar variable
+	 */
+	public static Expression assign(int opcode, long offset, boolean is_global, Expression value, boolean apply_rs) {
+		if (opcode == AwkTuples._ASSIGN_) {
+			return new Assignment(offset, is_global, value, apply_rs);
+		}
+		return new CompoundAssignment(opcode, offset, is_global, value, apply_rs);
+	}
+
+	/**
+	 * @param opcode <code>_ASSIGN_ARRAY_</code>, or the tuple of a compound
+	 *   assignment (<code>_PLUS_EQ_ARRAY_</code>, etc.)
+	 * @param offset Offset of the array
+	 * @param is_global Whether the array is global (or local)
+	 * @param value The right-hand side
+	 * @param index The key
+	 * @return a node assigning an array element
+	 */
+	public static Expression assignArray(final int opcode, final long offset, final boolean is_global, Expression value, Expression index) {
+		if (opcode == AwkTuples._ASSIGN_ARRAY_) {
+			return new StackOperation(value, index) {
+				@Override
+				void apply(AVM avm) {
+					avm.assignArray(offset, is_global);
+				}
+			};
+		}
+		return new StackOperation(value, index) {
+			@Override
+			void apply(AVM avm) {
+				avm.assignOpArray(opcode, offset, is_global);
+			}
+		};
+	}
+
+	/**
+	 * @param opcode <code>_ASSIGN_AS_INPUT_FIELD_</code>, or the tuple of a
+	 *   compound assignment (<code>_PLUS_EQ_INPUT_FIELD_</code>, etc.)
+	 * @param value The right-hand side
+	 * @param fieldnum The number of the field
+	 * @return a node assigning an input field
+	 */
+	public static Expression assignField(final int opcode, Expression value, Expression fieldnum) {
+		if (opcode == AwkTuples._ASSIGN_AS_INPUT_FIELD_) {
+			return new StackOperation(value, fieldnum) {
+				@Override
+				void apply(AVM avm) {
+					avm.assignAsInputField();
+				}
+			};
+		}
+		return new StackOperation(value, fieldnum) {
+			@Override
+			void apply(AVM avm) {
+				avm.assignOpInputField(opcode);
+			}
+		};
+	}
+
+	/**
+	 * Increments or decrements a scalar variable.
+	 *
+	 * @param offset Offset of the variable
+	 * @param is_global Whether the variable is global (or local)
+	 * @param delta 1 or -1
+	 * @param is_prefix Whether the value of the expression is the new
+	 *   value of the variable (or the old one)
+	 * @param read A node reading the variable
+	 * @return the node
+	 */
+	public static Expression incVariable(long offset, boolean is_global, int delta, boolean is_prefix, Expression read) {
+		return new IncVariable(offset, is_global, delta, is_prefix, read);
+	}
+
+	/**
+	 * Increments or decrements an array element.
+	 *
+	 * @param offset Offset of the array
+	 * @param is_global Whether the array is global (or local)
+	 * @param index The key (evaluated twice, like in the tuples)
+	 * @param delta 1 or -1
+	 * @param is_prefix Whether the value of the expression is the new
+	 *   value of the element (or the old one)
+	 * @param read A node reading the element
+	 * @return the node
+	 */
+	public static Expression incArrayElement(final long offset, final boolean is_global, final Expression index, final int delta,
+			final boolean is_prefix, final Expression read)
+	{
+		return new Expression() {
+			@Override
+			Object eval(AVM avm) {
+				Object old_value = is_prefix ? null : read.eval(avm);
+				avm.push(index.eval(avm));
+				if (delta > 0) {
+					avm.incArrayRef(offset, is_global);
+				} else {
+					avm.decArrayRef(offset, is_global);
+				}
+				return is_prefix ? read.eval(avm) : old_value;
+			}
+		};
+	}
+
+	/**
+	 * Increments or decrements an input field.
+	 *
+	 * @param fieldnum The number of the field
+	 * @param delta 1 or -1
+	 * @param is_prefix Whether the value of the expression is the new
+	 *   value of the field (or the old one)
+	 * @return the node
+	 */
+	public static Expression incField(final Expression fieldnum, final int delta, final boolean is_prefix) {
+		return new Expression() {
+			@Override
+			Object eval(AVM avm) {
+				if (is_prefix) {
+					Object num = fieldnum.eval(avm);
+					increment(avm, num);
+					return avm.getInputField(num);
+				}
+				Object old_value = avm.getInputField(fieldnum.eval(avm));
+				increment(avm, fieldnum.eval(avm));
+				return old_value;
+			}
+
+			private void increment(AVM avm, Object num) {
+				avm.push(num);
+				if (delta > 0) {
+					avm.incDollarRef();
+				} else {
+					avm.decDollarRef();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param opcode The arithmetic tuple (<code>_ADD_</code>, etc.)
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return a node computing the operation
+	 */
+	public static Expression arithmetic(int opcode, Expression left, Expression right) {
+		switch (opcode) {
+			case AwkTuples._ADD_:
+				return new Add(left, right);
+			case AwkTuples._SUBTRACT_:
+				return new Subtract(left, right);
+			case AwkTuples._MULTIPLY_:
+				return new Multiply(left, right);
+			case AwkTuples._DIVIDE_:
+				return new Divide(left, right);
+			case AwkTuples._MOD_:
+				return new Mod(left, right);
+			case AwkTuples._POW_:
+				return new Pow(left, right);
+			default:
+				throw new Error("Invalid arithmetic operation: " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+
+	/**
+	 * @param expr The operand
+	 * @return a node computing <code>-expr</code>
+	 */
+	public static Expression negate(Expression expr) {
+		return new Negate(expr);
+	}
+
+	/**
+	 * @param expr The operand
+	 * @return a node computing <code>+expr</code>
+	 */
+	public static Expression unaryPlus(Expression expr) {
+		return new UnaryPlus(expr);
+	}
+
+	/**
+	 * @param expr The operand
+	 * @return a node computing <code>!expr</code>
+	 */
+	public static Expression not(Expression expr) {
+		return new Not(expr);
+	}
+
+	/**
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return a node concatenating the operands
+	 */
+	public static Expression concat(Expression left, Expression right) {
+		return new Concat(left, right);
+	}
+
+	/**
+	 * @param opcode The comparison tuple (<code>_CMP_EQ_</code>,
+	 *   <code>_CMP_LT_NUM_</code>, etc.)
+	 * @param negated Whether the comparison is followed by <code>_NOT_</code>
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return a node comparing the operands
+	 */
+	public static Expression compare(int opcode, boolean negated, Expression left, Expression right) {
+		switch (opcode) {
+			case AwkTuples._CMP_EQ_:
+				return new Equal(left, right, negated);
+			case AwkTuples._CMP_LT_:
+				return new Less(left, right, negated);
+			case AwkTuples._CMP_GT_:
+				return new Greater(left, right, negated);
+			case AwkTuples._CMP_EQ_NUM_:
+				return new NumEqual(left, right, negated);
+			case AwkTuples._CMP_NE_NUM_:
+				return new NumEqual(left, right, !negated);
+			case AwkTuples._CMP_LT_NUM_:
+				return new NumLess(left, right, negated);
+			case AwkTuples._CMP_GE_NUM_:
+				return new NumLess(left, right, !negated);
+			case AwkTuples._CMP_GT_NUM_:
+				return new NumGreater(left, right, negated);
+			case AwkTuples._CMP_LE_NUM_:
+				return new NumGreater(left, right, !negated);
+			default:
+				throw new Error("Invalid comparison: " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+
+	/**
+	 * @param negated Whether the match is followed by <code>_NOT_</code>
+	 * @param string The string to match
+	 * @param regexp The regular expression
+	 * @return a node matching the string against the regular expression
+	 */
+	public static Expression matches(boolean negated, Expression string, Expression regexp) {
+		if (regexp instanceof Constant && ((Constant) regexp).value instanceof Pattern) {
+			return new MatchPattern(string, (Pattern) ((Constant) regexp).value, negated);
+		}
+		Expression match = new StackOperation(string, regexp) {
+			@Override
+			void apply(AVM avm) {
+				avm.matches();
+			}
+		};
+		return negated ? not(match) : match;
+	}
+
+	/**
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return a node computing <code>left &amp;&amp; right</code>
+	 */
+	public static Expression and(Expression left, Expression right) {
+		return new And(left, right);
+	}
+
+	/**
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return a node computing <code>left || right</code>
+	 */
+	public static Expression or(Expression left, Expression right) {
+		return new Or(left, right);
+	}
+
+	/**
+	 * @param condition The condition
+	 * @param if_true The value if the condition is true
+	 * @param if_false The value if the condition is false
+	 * @return a node computing <code>condition ? if_true : if_false</code>
+	 */
+	public static Expression ternary(final Expression condition, final Expression if_true, final Expression if_false) {
+		return new Expression() {
+			@Override
+			Object eval(AVM avm) {
+				return condition.isTrue(avm) ? if_true.eval(avm) : if_false.eval(avm);
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the call, restored when the function returns
+	 * @param function The function
+	 * @param args The actual parameters
+	 * @return a node calling the function
+	 */
+	public static Expression call(int lineno, Function function, Expression[] args) {
+		return new Call(lineno, function, args);
+	}
+
+	/**
+	 * Makes an expression run with its own line number, like its tuples,
+	 * when it is not on the line of the expression or statement using it.
+	 *
+	 * @param lineno Line number of the expression
+	 * @param enclosing_lineno Line number of the expression or statement
+	 *   using it, restored once it is evaluated
+	 * @param expr The expression
+	 * @return the node
+	 */
+	public static Expression atLine(int lineno, int enclosing_lineno, Expression expr) {
+		if (expr instanceof Constant) {
+			return expr;
+		}
+		return new AtLine(lineno, enclosing_lineno, expr);
+	}
+
+	/**
+	 * Builds a node which pushes its operands onto the operand stack,
+	 * and runs the AVM method of a tuple: this is how the built-in
+	 * functions, the <code>in</code> operator and the casts
+	 * are evaluated, exactly like by the tuples.
+	 *
+	 * @param opcode The tuple
+	 * @param operands What the tuple expects on the stack
+	 * @return the node
+	 */
+	public static Expression tuple(int opcode, Expression... operands) {
+		return tuple(opcode, 0, false, false, operands);
+	}
+
+	/**
+	 * Same as {@link #tuple(int, Expression...)}, for the tuples
+	 * with arguments.
+	 *
+	 * @param opcode The tuple
+	 * @param offset The offset of the variable, for the <code>sub()</code> tuples
+	 * @param is_global Whether that variable is global (or local)
+	 * @param is_gsub Whether the tuple is for <code>gsub()</code> (or <code>sub()</code>)
+	 * @param operands What the tuple expects on the stack
+	 * @return the node
+	 */
+	public static Expression tuple(int opcode, final long offset, final boolean is_global, final boolean is_gsub, Expression... operands) {
+		final int count = operands.length;
+		switch (opcode) {
+			case AwkTuples._SPRINTF_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.sprintf(count);
+					}
+				};
+			case AwkTuples._LENGTH_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.length(count);
+					}
+				};
+			case AwkTuples._SRAND_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.srand(count);
+					}
+				};
+			case AwkTuples._RAND_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.rand();
+					}
+				};
+			case AwkTuples._INTFUNC_:
+			case AwkTuples._CAST_INT_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.intFunc();
+					}
+				};
+			case AwkTuples._CAST_DOUBLE_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.castDouble();
+					}
+				};
+			case AwkTuples._CAST_STRING_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.castString();
+					}
+				};
+			case AwkTuples._SQRT_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.sqrt();
+					}
+				};
+			case AwkTuples._LOG_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.log();
+					}
+				};
+			case AwkTuples._EXP_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.exp();
+					}
+				};
+			case AwkTuples._SIN_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.sin();
+					}
+				};
+			case AwkTuples._COS_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.cos();
+					}
+				};
+			case AwkTuples._ATAN2_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.atan2();
+					}
+				};
+			case AwkTuples._MATCH_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.match();
+					}
+				};
+			case AwkTuples._INDEX_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.index();
+					}
+				};
+			case AwkTuples._SPLIT_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.split(count);
+					}
+				};
+			case AwkTuples._SUBSTR_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.substr(count);
+					}
+				};
+			case AwkTuples._TOLOWER_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.toLower();
+					}
+				};
+			case AwkTuples._TOUPPER_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.toUpper();
+					}
+				};
+			case AwkTuples._SYSTEM_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.system();
+					}
+				};
+			case AwkTuples._CLOSE_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.closeFile();
+					}
+				};
+			case AwkTuples._IS_IN_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.isIn();
+					}
+				};
+			case AwkTuples._APPLY_SUBSEP_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.applySubsep(count);
+					}
+				};
+			case AwkTuples._SUB_FOR_DOLLAR_0_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.subForDollar0(is_gsub);
+					}
+				};
+			case AwkTuples._SUB_FOR_DOLLAR_REFERENCE_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.subForDollarReference(is_gsub);
+					}
+				};
+			case AwkTuples._SUB_FOR_VARIABLE_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.subForVariable(offset, is_global, is_gsub);
+					}
+				};
+			case AwkTuples._SUB_FOR_ARRAY_REFERENCE_:
+				return new StackOperation(operands) {
+					@Override
+					void apply(AVM avm) {
+						avm.subForArrayReference(offset, is_global, is_gsub);
+					}
+				};
+			default:
+				throw new Error("No node for " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+
+	// statements
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param expr The expression
+	 * @return a statement evaluating the expression, and discarding its value
+	 */
+	public static Statement expression(final int lineno, final Expression expr) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				avm.setLineNumber(lineno);
+				expr.eval(avm);
+				return NORMAL;
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param is_printf Whether this is a <code>printf</code> (or a <code>print</code>)
+	 * @param args The expressions to print (none for $0)
+	 * @return a statement printing to the standard output
+	 */
+	public static Statement print(final int lineno, final boolean is_printf, final Expression[] args) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				avm.setLineNumber(lineno);
+				for (Expression arg : args) {
+					avm.push(arg.eval(avm));
+				}
+				if (is_printf) {
+					avm.printf(args.length);
+				} else {
+					avm.print(args.length);
+				}
+				return NORMAL;
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param offset Offset of the array
+	 * @param is_global Whether the array is global (or local)
+	 * @param index The key of the element to delete, or <code>null</code>
+	 *   to delete the whole array
+	 * @return the statement
+	 */
+	public static Statement delete(final int lineno, final long offset, final boolean is_global, final Expression index) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				avm.setLineNumber(lineno);
+				if (index == null) {
+					avm.deleteArray(offset, is_global);
+				} else {
+					avm.push(index.eval(avm));
+					avm.deleteArrayElement(offset, is_global);
+				}
+				return NORMAL;
+			}
+		};
+	}
+
+	/**
+	 * @param statements The statements, in order
+	 * @return a statement running the statements
+	 */
+	public static Statement block(List<Statement> statements) {
+		if (statements.size() == 1) {
+			return statements.get(0);
+		}
+		return new Block(statements.toArray(new Statement[statements.size()]));
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param condition The condition
+	 * @param then_part Statement to run if the condition is true, or <code>null</code>
+	 * @param else_part Statement to run if the condition is false, or <code>null</code>
+	 * @return the <code>if</code> statement
+	 */
+	public static Statement ifElse(final int lineno, final Expression condition, final Statement then_part, final Statement else_part) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				avm.setLineNumber(lineno);
+				Statement part = condition.isTrue(avm) ? then_part : else_part;
+				return part == null ? NORMAL : part.exec(avm);
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param init Statement run before the loop, or <code>null</code>
+	 * @param condition Condition evaluated before each iteration,
+	 *   or <code>null</code> to loop until a break
+	 * @param update Statement run after each iteration, or <code>null</code>
+	 * @param body The body of the loop, or <code>null</code>
+	 * @return the <code>for</code> (or <code>while</code>) statement
+	 */
+	public static Statement loop(int lineno, Statement init, Expression condition, Statement update, Statement body) {
+		return new Loop(lineno, init, condition, update, body);
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param body The body of the loop, or <code>null</code>
+	 * @param condition Condition evaluated after each iteration
+	 * @return the <code>do</code> statement
+	 */
+	public static Statement doLoop(final int lineno, final Statement body, final Expression condition) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				do {
+					if (body != null) {
+						int completion = body.exec(avm);
+						if (completion == BREAK) {
+							break;
+						} else if (completion == RETURN) {
+							return RETURN;
+						}
+					}
+					avm.setLineNumber(lineno);
+				} while (condition.isTrue(avm));
+				return NORMAL;
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param key_offset Offset of the variable receiving the keys
+	 * @param key_is_global Whether that variable is global (or local)
+	 * @param array The array
+	 * @param body The body of the loop, or <code>null</code>
+	 * @return the <code>for (key in array)</code> statement
+	 */
+	public static Statement forIn(final int lineno, final long key_offset, final boolean key_is_global, final Expression array,
+			final Statement body)
+	{
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				avm.setLineNumber(lineno);
+				avm.push(array.eval(avm));
+				avm.keylist();
+				KeyList keylist = (KeyList) avm.pop();
+				while (keylist.size() > 0) {
+					avm.setLineNumber(lineno);
+					avm.setScalar(key_offset, keylist.getFirstAndRemove(), key_is_global);
+					if (body != null) {
+						int completion = body.exec(avm);
+						if (completion == BREAK) {
+							break;
+						} else if (completion == RETURN) {
+							return RETURN;
+						}
+					}
+				}
+				return NORMAL;
+			}
+		};
+	}
+
+	/**
+	 * @param lineno Line number of the statement
+	 * @param value The value to return, or <code>null</code>
+	 * @return the <code>return</code> statement
+	 */
+	public static Statement returnFromFunction(final int lineno, final Expression value) {
+		return new Statement() {
+			@Override
+			int exec(AVM avm) {
+				if (value != null) {
+					avm.setLineNumber(lineno);
+					avm.push(value.eval(avm));
+					avm.setReturnResult();
+				}
+				return RETURN;
+			}
+		};
+	}
+
+	/**
+	 * @return the <code>break</code> statement
+	 */
+	public static Statement breakLoop() {
+		return BREAK_STATEMENT;
+	}
+
+	/**
+	 * @return the <code>continue</code> statement
+	 */
+	public static Statement continueLoop() {
+		return CONTINUE_STATEMENT;
+	}
+
+	private static final Statement BREAK_STATEMENT = new Statement() {
+		@Override
+		int exec(AVM avm) {
+			return BREAK;
+		}
+	};
+
+	private static final Statement CONTINUE_STATEMENT = new Statement() {
+		@Override
+		int exec(AVM avm) {
+			return CONTINUE;
+		}
+	};
+
+	// the node classes
+
+	private static final class Constant extends Expression {
+
+		private final Object value;
+
+		private Constant(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return value;
+		}
+	}
+
+	private static final class Variable extends Expression {
+
+		private final long offset;
+		private final boolean is_global;
+
+		private Variable(long offset, boolean is_global) {
+			this.offset = offset;
+			this.is_global = is_global;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return avm.getScalar(offset, is_global);
+		}
+	}
+
+	private static final class ArrayElement extends Expression {
+
+		private final Expression array;
+		private final Expression index;
+
+		private ArrayElement(Expression array, Expression index) {
+			this.array = array;
+			this.index = index;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			Object aa = array.eval(avm);
+			Object key = index.eval(avm);
+			if (!(aa instanceof AssocArray)) {
+				throw new AwkRuntimeException("Attempting to index a non-associative-array.");
+			}
+			return ((AssocArray) aa).get(key);
+		}
+	}
+
+	private static final class Field extends Expression {
+
+		private final Expression fieldnum;
+
+		private Field(Expression fieldnum) {
+			this.fieldnum = fieldnum;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return avm.getInputField(fieldnum.eval(avm));
+		}
+	}
+
+	private static final class Assignment extends Expression {
+
+		private final long offset;
+		private final boolean is_global;
+		private final Expression value;
+		private final boolean apply_rs;
+
+		private Assignment(long offset, boolean is_global, Expression value, boolean apply_rs) {
+			this.offset = offset;
+			this.is_global = is_global;
+			this.value = value;
+			this.apply_rs = apply_rs;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			Object result = value.eval(avm);
+			avm.setScalar(offset, result, is_global);
+			if (apply_rs) {
+				avm.applyRS();
+			}
+			return result;
+		}
+	}
+
+	private static final class CompoundAssignment extends Expression {
+
+		private final int opcode;
+		private final long offset;
+		private final boolean is_global;
+		private final Expression value;
+		private final boolean apply_rs;
+
+		private CompoundAssignment(int opcode, long offset, boolean is_global, Expression value, boolean apply_rs) {
+			this.opcode = opcode;
+			this.offset = offset;
+			this.is_global = is_global;
+			this.value = value;
+			this.apply_rs = apply_rs;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			Object result = avm.assignOp(opcode, offset, value.eval(avm), is_global);
+			if (apply_rs) {
+				avm.applyRS();
+			}
+			return result;
+		}
+	}
+
+	private static final class IncVariable extends Expression {
+
+		private final long offset;
+		private final boolean is_global;
+		private final int delta;
+		private final boolean is_prefix;
+		private final Expression read;
+
+		private IncVariable(long offset, boolean is_global, int delta, boolean is_prefix, Expression read) {
+			this.offset = offset;
+			this.is_global = is_global;
+			this.delta = delta;
+			this.is_prefix = is_prefix;
+			this.read = read;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			if (is_prefix) {
+				increment(avm);
+				return read.eval(avm);
+			}
+			// like _POSTINC_, which pops the variable pushed by _DEREFERENCE_
+			read.eval(avm);
+			return increment(avm);
+		}
+
+		private Object increment(AVM avm) {
+			return delta > 0 ? avm.inc(offset, is_global) : avm.dec(offset, is_global);
+		}
+	}
+
+	/**
+	 * Pushes its operands, and lets the AVM method of a tuple
+	 * compute the value left on the stack.
+	 */
+	private abstract static class StackOperation extends Expression {
+
+		private final Expression[] operands;
+
+		private StackOperation(Expression... operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		final Object eval(AVM avm) {
+			for (Expression operand : operands) {
+				avm.push(operand.eval(avm));
+			}
+			apply(avm);
+			return avm.pop();
+		}
+
+		abstract void apply(AVM avm);
+	}
+
+	private static final class Add extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Add(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.add(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Subtract extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Subtract(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.subtract(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Multiply extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Multiply(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.multiply(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Divide extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Divide(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.divide(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Mod extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Mod(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.mod(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Pow extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Pow(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.pow(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	private static final class Negate extends Expression {
+
+		private final Expression expr;
+
+		private Negate(Expression expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.negate(expr.eval(avm));
+		}
+	}
+
+	private static final class UnaryPlus extends Expression {
+
+		private final Expression expr;
+
+		private UnaryPlus(Expression expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return JRT.unaryPlus(expr.eval(avm));
+		}
+	}
+
+	private static final class Not extends Expression {
+
+		private final Expression expr;
+
+		private Not(Expression expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return avm.not(expr.eval(avm));
+		}
+	}
+
+	private static final class Concat extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Concat(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return avm.concat(left.eval(avm), right.eval(avm));
+		}
+	}
+
+	// each comparison has its own class, so that it can be inlined in its caller
+
+	private static final class Equal extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private Equal(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compare2(left.eval(avm), right.eval(avm), 0) != negated;
+		}
+	}
+
+	private static final class Less extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private Less(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compare2(left.eval(avm), right.eval(avm), -1) != negated;
+		}
+	}
+
+	private static final class Greater extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private Greater(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compare2(left.eval(avm), right.eval(avm), 1) != negated;
+		}
+	}
+
+	private static final class NumEqual extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private NumEqual(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compareNumbers(left.eval(avm), right.eval(avm), 0) != negated;
+		}
+	}
+
+	private static final class NumLess extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private NumLess(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compareNumbers(left.eval(avm), right.eval(avm), -1) != negated;
+		}
+	}
+
+	private static final class NumGreater extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+		private final boolean negated;
+
+		private NumGreater(Expression left, Expression right, boolean negated) {
+			this.left = left;
+			this.right = right;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return JRT.compareNumbers(left.eval(avm), right.eval(avm), 1) != negated;
+		}
+	}
+
+	private static final class MatchPattern extends Expression {
+
+		private final Expression string;
+		private final Pattern pattern;
+		private final boolean negated;
+
+		private MatchPattern(Expression string, Pattern pattern, boolean negated) {
+			this.string = string;
+			this.pattern = pattern;
+			this.negated = negated;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return pattern.matcher(string.eval(avm).toString()).find() != negated;
+		}
+	}
+
+	private static final class And extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private And(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return left.isTrue(avm) && right.isTrue(avm);
+		}
+	}
+
+	private static final class Or extends Expression {
+
+		private final Expression left;
+		private final Expression right;
+
+		private Or(Expression left, Expression right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			return isTrue(avm) ? ONE : ZERO;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			return left.isTrue(avm) || right.isTrue(avm);
+		}
+	}
+
+	private static final class Call extends Expression {
+
+		private final int lineno;
+		private final Function function;
+		private final Expression[] args;
+
+		private Call(int lineno, Function function, Expression[] args) {
+			this.lineno = lineno;
+			this.function = function;
+			this.args = args;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			for (Expression arg : args) {
+				avm.push(arg.eval(avm));
+			}
+			FunctionMemo memo = avm.functionMemo(function.name);
+			if (memo != null && avm.lookupMemo(memo, args.length)) {
+				return avm.pop();
+			}
+			// there is no tuple to return to
+			avm.callFunction(function.num_formal_params, args.length, -1);
+			function.body.exec(avm);
+			avm.returnFromFunction();
+			avm.setLineNumber(lineno);
+			return avm.pop();
+		}
+	}
+
+	private static final class AtLine extends Expression {
+
+		private final int lineno;
+		private final int enclosing_lineno;
+		private final Expression expr;
+
+		private AtLine(int lineno, int enclosing_lineno, Expression expr) {
+			this.lineno = lineno;
+			this.enclosing_lineno = enclosing_lineno;
+			this.expr = expr;
+		}
+
+		@Override
+		Object eval(AVM avm) {
+			avm.setLineNumber(lineno);
+			Object value = expr.eval(avm);
+			avm.setLineNumber(enclosing_lineno);
+			return value;
+		}
+
+		@Override
+		boolean isTrue(AVM avm) {
+			avm.setLineNumber(lineno);
+			boolean value = expr.isTrue(avm);
+			avm.setLineNumber(enclosing_lineno);
+			return value;
+		}
+	}
+
+	private static final class Block extends Statement {
+
+		private final Statement[] statements;
+
+		private Block(Statement[] statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		int exec(AVM avm) {
+			for (Statement statement : statements) {
+				int completion = statement.exec(avm);
+				if (completion != NORMAL) {
+					return completion;
+				}
+			}
+			return NORMAL;
+		}
+	}
+
+	private static final class Loop extends Statement {
+
+		private final int lineno;
+		private final Statement init;
+		private final Expression condition;
+		private final Statement update;
+		private final Statement body;
+
+		private Loop(int lineno, Statement init, Expression condition, Statement update, Statement body) {
+			this.lineno = lineno;
+			this.init = init;
+			this.condition = condition;
+			this.update = update;
+			this.body = body;
+		}
+
+		@Override
+		int exec(AVM avm) {
+			avm.setLineNumber(lineno);
+			if (init != null) {
+				init.exec(avm);
+			}
+			while (condition == null || condition.isTrue(avm)) {
+				if (body != null) {
+					int completion = body.exec(avm);
+					if (completion == BREAK) {
+						break;
+					} else if (completion == RETURN) {
+						return RETURN;
+					}
+					avm.setLineNumber(lineno);
+				}
+				if (update != null) {
+					update.exec(avm);
+				}
+			}
+			return NORMAL;
+		}
+	}
+}
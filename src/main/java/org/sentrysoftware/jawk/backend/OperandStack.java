@@ -0,0 +1,253 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+
+import java.util.Arrays;
+
+import org.sentrysoftware.jawk.jrt.StrNum;
+
+/**
+ * The operand stack of the AVM, with a lane for objects, one for longs
+ * and one for doubles, so that the intermediate results of arithmetic
+ * and comparisons are not boxed.
+ * <p>
+ * A number pushed with pushLong() or pushDouble() is boxed only if it
+ * is popped with pop(), e.g. to be assigned to a variable. popLong() and
+ * popDouble() read it, or a Long, a Double or a numeric input string
+ * pushed as an object, without any allocation.
+ * <p>
+ * Like <code>ArrayStackImpl</code>, there is no check when popping
+ * an empty stack.
+ */
+final class OperandStack {
+
+	/** The item is in the objects lane */
+	static final byte OBJECT = 0;
+
+	/** The item is a long, in the longs lane or a Long in the objects lane */
+	static final byte LONG = 1;
+
+	/**
+	 * The item is a double, in the doubles lane, or a Double or a numeric
+	 * StrNum in the objects lane
+	 */
+	static final byte DOUBLE = 2;
+
+	private byte[] tags = new byte[100];
+	private Object[] objects = new Object[100];
+	private long[] longs = new long[100];
+	private double[] doubles = new double[100];
+	private int size;
+
+	private void grow() {
+		int capacity = tags.length * 2;
+		tags = Arrays.copyOf(tags, capacity);
+		objects = Arrays.copyOf(objects, capacity);
+		longs = Arrays.copyOf(longs, capacity);
+		doubles = Arrays.copyOf(doubles, capacity);
+	}
+
+	/**
+	 * @param o The item to push
+	 */
+	void push(Object o) {
+		if (size == tags.length) {
+			grow();
+		}
+		tags[size] = OBJECT;
+		objects[size++] = o;
+	}
+
+	/**
+	 * @param l The number to push, without boxing it
+	 */
+	void pushLong(long l) {
+		if (size == tags.length) {
+			grow();
+		}
+		tags[size] = LONG;
+		longs[size++] = l;
+	}
+
+	/**
+	 * @param d The number to push, without boxing it
+	 */
+	void pushDouble(double d) {
+		if (size == tags.length) {
+			grow();
+		}
+		tags[size] = DOUBLE;
+		doubles[size++] = d;
+	}
+
+	/**
+	 * Pushes the result of an arithmetic operation, as a long if it is
+	 * integral, like <code>JRT.toAwkNumber()</code>.
+	 *
+	 * @param d The number to push, without boxing it
+	 */
+	void pushNumber(double d) {
+		if (d == (long) d) {
+			pushLong((long) d);
+		} else {
+			pushDouble(d);
+		}
+	}
+
+	/**
+	 * @return the item on top of the stack, boxed if it is a number
+	 *   of the longs or doubles lane
+	 */
+	Object pop() {
+		int i = --size;
+		switch (tags[i]) {
+		case LONG:
+			return longs[i];
+		case DOUBLE:
+			return doubles[i];
+		default:
+			Object o = objects[i];
+			objects[i] = null;
+			return o;
+		}
+	}
+
+	/**
+	 * Removes the item on top of the stack, without boxing it.
+	 */
+	void drop() {
+		objects[--size] = null;
+	}
+
+	/**
+	 * @param depth 0 for the item on top of the stack, 1 for the one
+	 *   below, etc.
+	 * @return LONG or DOUBLE if the item is a number of that type (in any
+	 *   lane), OBJECT otherwise
+	 */
+	byte type(int depth) {
+		int i = size - 1 - depth;
+		byte tag = tags[i];
+		if (tag == OBJECT) {
+			Object o = objects[i];
+			if (o instanceof Long) {
+				return LONG;
+			} else if (o instanceof Double || (o instanceof StrNum && ((StrNum) o).isNumeric())) {
+				return DOUBLE;
+			}
+		}
+		return tag;
+	}
+
+	/**
+	 * Like {@link #type(int)}, but for the items that are numbers only:
+	 * a numeric input string is not one, since it compares as a string
+	 * to a string.
+	 *
+	 * @param depth 0 for the item on top of the stack, 1 for the one
+	 *   below, etc.
+	 * @return LONG or DOUBLE if the item is a number of that type (in any
+	 *   lane), OBJECT otherwise
+	 */
+	byte numberType(int depth) {
+		int i = size - 1 - depth;
+		byte tag = tags[i];
+		if (tag == OBJECT) {
+			Object o = objects[i];
+			if (o instanceof Long) {
+				return LONG;
+			} else if (o instanceof Double) {
+				return DOUBLE;
+			}
+		}
+		return tag;
+	}
+
+	/**
+	 * @return the item on top of the stack, of type LONG
+	 */
+	long popLong() {
+		int i = --size;
+		if (tags[i] == LONG) {
+			return longs[i];
+		}
+		Object o = objects[i];
+		objects[i] = null;
+		return (Long) o;
+	}
+
+	/**
+	 * @return the item on top of the stack, of type LONG or DOUBLE
+	 */
+	double popDouble() {
+		int i = --size;
+		switch (tags[i]) {
+		case LONG:
+			return longs[i];
+		case DOUBLE:
+			return doubles[i];
+		default:
+			Object o = objects[i];
+			objects[i] = null;
+			return o instanceof StrNum ? ((StrNum) o).doubleValue() : ((Number) o).doubleValue();
+		}
+	}
+
+	/**
+	 * @return the number of items in the stack
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all the items.
+	 */
+	void clear() {
+		Arrays.fill(objects, 0, size, null);
+		size = 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			switch (tags[i]) {
+			case LONG:
+				sb.append(longs[i]);
+				break;
+			case DOUBLE:
+				sb.append(doubles[i]);
+				break;
+			default:
+				sb.append(objects[i]);
+			}
+		}
+		return sb.append(']').toString();
+	}
+}
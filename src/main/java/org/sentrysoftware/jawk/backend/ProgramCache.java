@@ -0,0 +1,118 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+
+/**
+ * Programs compiled by the <code>exec()</code> extension, keyed by their
+ * code and by the parser settings, so that running the same code again
+ * skips the parsing, the semantic analysis and the tuple generation.
+ * <p>
+ * The cache is bounded: once it is full, the least recently used program
+ * is dropped. The numbers of hits and misses help sizing it
+ * (see {@link org.sentrysoftware.jawk.util.AwkSettings#setExecCacheSize(int)}).
+ */
+public final class ProgramCache {
+
+	private final Map<String, AwkTuples> programs;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param max_size Maximum number of programs to keep
+	 */
+	ProgramCache(final int max_size) {
+		this.programs = new LinkedHashMap<String, AwkTuples>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, AwkTuples> eldest) {
+				return size() > max_size;
+			}
+		};
+	}
+
+	/**
+	 * @param code The Awk code
+	 * @param additional_functions Whether the parser accepts the additional functions
+	 * @param additional_type_functions Whether the parser accepts the additional type functions
+	 * @return the key of the program
+	 */
+	static String key(String code, boolean additional_functions, boolean additional_type_functions) {
+		return (additional_functions ? 'f' : '-') + (additional_type_functions ? "t" : "-") + code;
+	}
+
+	/**
+	 * @param key The key of the program (see {@link #key(String, boolean, boolean)})
+	 * @return the compiled program, or <code>null</code> if unknown
+	 */
+	AwkTuples get(String key) {
+		AwkTuples tuples = programs.get(key);
+		if (tuples == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return tuples;
+	}
+
+	/**
+	 * @param key The key of the program (see {@link #key(String, boolean, boolean)})
+	 * @param tuples The compiled program
+	 */
+	void put(String key, AwkTuples tuples) {
+		programs.put(key, tuples);
+	}
+
+	/**
+	 * @return the number of executions which reused a compiled program
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of executions which compiled their program
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of programs in the cache
+	 */
+	public int size() {
+		return programs.size();
+	}
+
+	@Override
+	public String toString() {
+		return hits + " hits, " + misses + " misses, " + programs.size() + " programs";
+	}
+}
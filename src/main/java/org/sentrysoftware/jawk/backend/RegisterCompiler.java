@@ -0,0 +1,522 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sentrysoftware.jawk.intermediate.Address;
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+import org.sentrysoftware.jawk.intermediate.PositionForInterpretation;
+
+/**
+ * Translates the tuples to the register-based instructions
+ * of the {@link RegisterMachine}.
+ * <p>
+ * The translation simulates the operand stack: instead of pushing
+ * values, the tuples push operand descriptors (a register, a constant
+ * or a variable), and the tuples consuming them become instructions
+ * naming their operands and a fresh register for their result.
+ * Variables are only read when an instruction uses them, so their
+ * descriptors are moved to registers before any assignment, which
+ * might change their value.
+ * <p>
+ * Only maximal runs of the tuples listed in {@link #isTranslated(PositionForInterpretation)}
+ * are translated. The simulated stack is empty at the beginning of a run
+ * and at each jump target: the pending descriptors are pushed onto the
+ * real operand stack before jumps and labels, and before leaving the run.
+ * The first tuple of each run, and each jump target within a run, is then
+ * an entry point, which the {@link AVM} executes with the register machine
+ * (see {@link AwkTuples#_REGISTERS_}).
+ */
+final class RegisterCompiler {
+
+	/**
+	 * Runs shorter than this are left to the interpreter: entering and
+	 * leaving the register code would cost more than they save
+	 */
+	private static final int MIN_RUN_LENGTH = 3;
+
+	private final AwkTuples tuples;
+	private final int size;
+
+	/** Tuples that are the target of a jump */
+	private final BitSet targets = new BitSet();
+
+	private int[] code = new int[64 * RegisterMachine.WIDTH];
+	private int[] lines = new int[64];
+	private int pc = 0;
+	private int num_registers = 0;
+
+	private final List<Object> constants = new ArrayList<Object>();
+	private final Map<Object, Integer> constant_indexes = new HashMap<Object, Integer>();
+
+	/** Offset in code of each entry point, by tuple index */
+	private final int[] entries;
+
+	// state of the run being translated
+
+	/** Simulated operand stack */
+	private final List<Integer> stack = new ArrayList<Integer>();
+	/** Index of the first tuple of the run, or -1 when not within a run */
+	private int run_start = -1;
+	private int run_pc;
+	private int next_register;
+	/** Jump instructions of the run, with the index of their target tuple */
+	private final Map<Integer, Integer> jumps = new HashMap<Integer, Integer>();
+	private int lineno;
+
+	private RegisterCompiler(AwkTuples tuples) {
+		this.tuples = tuples;
+		this.size = tuples.size();
+		this.entries = new int[size];
+		Arrays.fill(entries, -1);
+	}
+
+	/**
+	 * Translates the tuples, and patches the entry points of the
+	 * translated code with {@link AwkTuples#_REGISTERS_}.
+	 *
+	 * @param tuples The tuples to translate
+	 * @return the register machine executing the translated code
+	 */
+	static RegisterMachine compile(AwkTuples tuples) {
+		RegisterCompiler compiler = new RegisterCompiler(tuples);
+		compiler.translate();
+		for (int idx = 0; idx < compiler.size; idx++) {
+			if (compiler.entries[idx] >= 0) {
+				tuples.patchOpcode(idx, AwkTuples._REGISTERS_);
+			}
+		}
+		return new RegisterMachine(
+				Arrays.copyOf(compiler.code, compiler.pc),
+				Arrays.copyOf(compiler.lines, compiler.pc / RegisterMachine.WIDTH),
+				compiler.constants.toArray(),
+				compiler.entries,
+				compiler.num_registers);
+	}
+
+	private void translate() {
+		PositionForInterpretation position = (PositionForInterpretation) tuples.top();
+		while (!position.isEOF()) {
+			Address address = position.addressArg();
+			if (address != null) {
+				targets.set(address.index());
+			}
+			position.next();
+		}
+
+		position = (PositionForInterpretation) tuples.top();
+		while (!position.isEOF()) {
+			int idx = position.current();
+			if (!isTranslated(position)) {
+				endRun(idx);
+				position.next();
+				continue;
+			}
+			if (run_start < 0) {
+				startRun(idx);
+			} else if (targets.get(idx)) {
+				flush();
+				entries[idx] = pc;
+			}
+			lineno = position.lineNumber();
+			translateTuple(position);
+			position.next();
+		}
+		endRun(size);
+	}
+
+	private boolean isTranslated(PositionForInterpretation position) {
+		switch (tuples.originalOpcode(position.current())) {
+			case AwkTuples._PUSH_:
+			case AwkTuples._POP_:
+			case AwkTuples._DUP_:
+			case AwkTuples._SWAP_:
+			case AwkTuples._NOP_:
+			case AwkTuples._ASSIGN_:
+			case AwkTuples._STORE_:
+			case AwkTuples._INC_VAR_:
+			case AwkTuples._PLUS_EQ_:
+			case AwkTuples._MINUS_EQ_:
+			case AwkTuples._MULT_EQ_:
+			case AwkTuples._DIV_EQ_:
+			case AwkTuples._MOD_EQ_:
+			case AwkTuples._POW_EQ_:
+			// the registers hold objects: the typed tuples are translated
+			// like the generic ones (the variables box their numbers)
+			case AwkTuples._DEREFERENCE_NUM_:
+			case AwkTuples._ASSIGN_NUM_:
+			case AwkTuples._STORE_NUM_:
+			case AwkTuples._INC_VAR_NUM_:
+			case AwkTuples._PLUS_EQ_NUM_:
+			case AwkTuples._MINUS_EQ_NUM_:
+			case AwkTuples._MULT_EQ_NUM_:
+			case AwkTuples._DIV_EQ_NUM_:
+			case AwkTuples._MOD_EQ_NUM_:
+			case AwkTuples._ADD_:
+			case AwkTuples._SUBTRACT_:
+			case AwkTuples._MULTIPLY_:
+			case AwkTuples._DIVIDE_:
+			case AwkTuples._MOD_:
+			case AwkTuples._POW_:
+			case AwkTuples._NEGATE_:
+			case AwkTuples._UNARY_PLUS_:
+			case AwkTuples._NOT_:
+			case AwkTuples._TO_NUMBER_:
+			case AwkTuples._CONCAT_:
+			case AwkTuples._CMP_EQ_:
+			case AwkTuples._CMP_LT_:
+			case AwkTuples._CMP_GT_:
+			case AwkTuples._CMP_EQ_NUM_:
+			case AwkTuples._CMP_NE_NUM_:
+			case AwkTuples._CMP_LT_NUM_:
+			case AwkTuples._CMP_LE_NUM_:
+			case AwkTuples._CMP_GT_NUM_:
+			case AwkTuples._CMP_GE_NUM_:
+			case AwkTuples._GET_INPUT_FIELD_:
+			case AwkTuples._GET_INPUT_FIELD_CONST_:
+			case AwkTuples._IFFALSE_:
+			case AwkTuples._IFTRUE_:
+			case AwkTuples._GOTO_:
+			case AwkTuples._IFFALSE_VAR_EQ_CONST_:
+				return true;
+			case AwkTuples._DEREFERENCE_:
+				// arg[1] = is_array
+				return !position.boolArg(1);
+			default:
+				return false;
+		}
+	}
+
+	private void translateTuple(PositionForInterpretation position) {
+		int opcode = tuples.originalOpcode(position.current());
+		switch (opcode) {
+			case AwkTuples._NOP_:
+				break;
+			case AwkTuples._PUSH_:
+				push(constant(position.arg(0)));
+				break;
+			case AwkTuples._POP_:
+				if (stack.isEmpty()) {
+					emit(RegisterMachine.DISCARD, 0, 0, 0, 0);
+				} else {
+					pop();
+				}
+				break;
+			case AwkTuples._DUP_: {
+				int operand = pop();
+				push(operand);
+				push(operand);
+				break;
+			}
+			case AwkTuples._SWAP_: {
+				int operand2 = pop();
+				int operand1 = pop();
+				push(operand2);
+				push(operand1);
+				break;
+			}
+			case AwkTuples._DEREFERENCE_:
+				// arg[0] = offset, arg[2] = is_global
+				push(variable(position.intArg(0), position.boolArg(2)));
+				break;
+			case AwkTuples._DEREFERENCE_NUM_:
+				// arg[0] = offset, arg[1] = is_global
+				push(variable(position.intArg(0), position.boolArg(1)));
+				break;
+			case AwkTuples._ASSIGN_:
+			case AwkTuples._STORE_:
+			case AwkTuples._ASSIGN_NUM_:
+			case AwkTuples._STORE_NUM_: {
+				int value = pop();
+				readVariables();
+				emit(RegisterMachine.ASSIGN, variable(position.intArg(0), position.boolArg(1)), value, 0, 0);
+				if (opcode == AwkTuples._ASSIGN_ || opcode == AwkTuples._ASSIGN_NUM_) {
+					push(value);
+				}
+				break;
+			}
+			case AwkTuples._INC_VAR_:
+			case AwkTuples._INC_VAR_NUM_:
+				readVariables();
+				emit(RegisterMachine.INC, variable(position.intArg(0), position.boolArg(1)), 0, 0, 0);
+				break;
+			case AwkTuples._PLUS_EQ_:
+			case AwkTuples._MINUS_EQ_:
+			case AwkTuples._MULT_EQ_:
+			case AwkTuples._DIV_EQ_:
+			case AwkTuples._MOD_EQ_:
+			case AwkTuples._POW_EQ_:
+			case AwkTuples._PLUS_EQ_NUM_:
+			case AwkTuples._MINUS_EQ_NUM_:
+			case AwkTuples._MULT_EQ_NUM_:
+			case AwkTuples._DIV_EQ_NUM_:
+			case AwkTuples._MOD_EQ_NUM_: {
+				int value = pop();
+				readVariables();
+				int result = newRegister();
+				emit(RegisterMachine.ASSIGN_OP, result, variable(position.intArg(0), position.boolArg(1)), value, opcode);
+				push(operand(result, RegisterMachine.REGISTER));
+				break;
+			}
+			case AwkTuples._ADD_: binary(RegisterMachine.ADD, 0); break;
+			case AwkTuples._SUBTRACT_: binary(RegisterMachine.SUBTRACT, 0); break;
+			case AwkTuples._MULTIPLY_: binary(RegisterMachine.MULTIPLY, 0); break;
+			case AwkTuples._DIVIDE_: binary(RegisterMachine.DIVIDE, 0); break;
+			case AwkTuples._MOD_: binary(RegisterMachine.MOD, 0); break;
+			case AwkTuples._POW_: binary(RegisterMachine.POW, 0); break;
+			case AwkTuples._CONCAT_: binary(RegisterMachine.CONCAT, 0); break;
+			case AwkTuples._NEGATE_: unary(RegisterMachine.NEGATE); break;
+			case AwkTuples._UNARY_PLUS_: unary(RegisterMachine.UNARY_PLUS); break;
+			case AwkTuples._NOT_: unary(RegisterMachine.NOT); break;
+			case AwkTuples._TO_NUMBER_: unary(RegisterMachine.TO_NUMBER); break;
+			case AwkTuples._GET_INPUT_FIELD_: unary(RegisterMachine.FIELD); break;
+			case AwkTuples._GET_INPUT_FIELD_CONST_: {
+				int result = newRegister();
+				emit(RegisterMachine.FIELD, result, constant(Long.valueOf(position.intArg(0))), 0, 0);
+				push(operand(result, RegisterMachine.REGISTER));
+				break;
+			}
+			case AwkTuples._CMP_EQ_:
+			case AwkTuples._CMP_LT_:
+			case AwkTuples._CMP_GT_:
+			case AwkTuples._CMP_EQ_NUM_:
+			case AwkTuples._CMP_NE_NUM_:
+			case AwkTuples._CMP_LT_NUM_:
+			case AwkTuples._CMP_LE_NUM_:
+			case AwkTuples._CMP_GT_NUM_:
+			case AwkTuples._CMP_GE_NUM_:
+				binary(RegisterMachine.COMPARE, opcode);
+				break;
+			case AwkTuples._IFFALSE_:
+			case AwkTuples._IFTRUE_:
+				conditionalJump(opcode == AwkTuples._IFTRUE_, position.addressArg().index());
+				break;
+			case AwkTuples._GOTO_:
+				flush();
+				jump(RegisterMachine.JUMP, 0, 0, 0, position.addressArg().index());
+				break;
+			case AwkTuples._IFFALSE_VAR_EQ_CONST_:
+				// same as _DEREFERENCE_, _PUSH_, _CMP_EQ_, _IFFALSE_
+				flush();
+				jump(RegisterMachine.JUMP_UNLESS, variable(position.intArg(1), position.boolArg(2)),
+						constant(position.arg(3)), AwkTuples._CMP_EQ_, position.addressArg().index());
+				break;
+			default:
+				throw new Error("Tuple cannot be translated to register code: " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+
+	private void unary(int instruction) {
+		int operand = pop();
+		int result = newRegister();
+		emit(instruction, result, operand, 0, 0);
+		push(operand(result, RegisterMachine.REGISTER));
+	}
+
+	private void binary(int instruction, int x) {
+		int operand2 = pop();
+		int operand1 = pop();
+		int result = newRegister();
+		emit(instruction, result, operand1, operand2, x);
+		push(operand(result, RegisterMachine.REGISTER));
+	}
+
+	/**
+	 * Translates _IFFALSE_ and _IFTRUE_, fusing them with the
+	 * comparison (or the constant) they test, if any.
+	 */
+	private void conditionalJump(boolean jump_if_true, int target) {
+		int condition = pop();
+		int last = pc - RegisterMachine.WIDTH;
+		if (kind(condition) == RegisterMachine.CONSTANT && constants.get(index(condition)) instanceof Number) {
+			// e.g. the condition of a rule without pattern
+			boolean value = ((Number) constants.get(index(condition))).doubleValue() != 0;
+			if (value == jump_if_true) {
+				flush();
+				jump(RegisterMachine.JUMP, 0, 0, 0, target);
+			}
+		} else if (last >= run_pc && code[last] == RegisterMachine.COMPARE
+				&& kind(condition) == RegisterMachine.REGISTER && code[last + RegisterMachine.DST] == index(condition)
+				&& !stack.contains(condition)) {
+			// the comparison result is only used by this jump
+			pc = last;
+			int operand1 = code[last + RegisterMachine.A];
+			int operand2 = code[last + RegisterMachine.B];
+			int x = code[last + RegisterMachine.X];
+			flush();
+			jump(jump_if_true ? RegisterMachine.JUMP_IF : RegisterMachine.JUMP_UNLESS, operand1, operand2, x, target);
+		} else {
+			flush();
+			jump(jump_if_true ? RegisterMachine.JUMP_IF_TRUE : RegisterMachine.JUMP_IF_FALSE, condition, 0, 0, target);
+		}
+	}
+
+	private void startRun(int idx) {
+		run_start = idx;
+		run_pc = pc;
+		next_register = 0;
+		entries[idx] = pc;
+	}
+
+	/**
+	 * Ends the run being translated (if any), which is left to the
+	 * interpreter if it is too short.
+	 *
+	 * @param idx Index of the tuple following the run
+	 */
+	private void endRun(int idx) {
+		if (run_start < 0) {
+			return;
+		}
+		if (idx - run_start < MIN_RUN_LENGTH) {
+			pc = run_pc;
+			for (int i = run_start; i < idx; i++) {
+				entries[i] = -1;
+			}
+		} else {
+			flush();
+			emit(RegisterMachine.EXIT, idx, 0, 0, 0);
+			// resolve the jumps of the run
+			Map<Integer, Integer> exits = new HashMap<Integer, Integer>();
+			for (Map.Entry<Integer, Integer> jump : jumps.entrySet()) {
+				int target = jump.getValue();
+				int target_pc;
+				if (target >= run_start && target < idx) {
+					target_pc = entries[target];
+					assert target_pc >= 0;
+				} else {
+					Integer exit_pc = exits.get(target);
+					if (exit_pc == null) {
+						exit_pc = pc;
+						emit(RegisterMachine.EXIT, target, 0, 0, 0);
+						exits.put(target, exit_pc);
+					}
+					target_pc = exit_pc;
+				}
+				code[jump.getKey() + RegisterMachine.DST] = target_pc;
+			}
+			num_registers = Math.max(num_registers, next_register);
+		}
+		jumps.clear();
+		stack.clear();
+		run_start = -1;
+	}
+
+	private static int kind(int operand) {
+		return operand & RegisterMachine.KIND_MASK;
+	}
+
+	private static int index(int operand) {
+		return operand >> RegisterMachine.KIND_BITS;
+	}
+
+	private static int operand(int index, int kind) {
+		return (index << RegisterMachine.KIND_BITS) | kind;
+	}
+
+	private int newRegister() {
+		return next_register++;
+	}
+
+	private int constant(Object value) {
+		Integer index = constant_indexes.get(value);
+		if (index == null) {
+			// Long and Double never equal each other, so they can share the map
+			index = constants.size();
+			constants.add(value);
+			constant_indexes.put(value, index);
+		}
+		return operand(index, RegisterMachine.CONSTANT);
+	}
+
+	private static int variable(long offset, boolean is_global) {
+		return operand((int) offset, is_global ? RegisterMachine.GLOBAL : RegisterMachine.LOCAL);
+	}
+
+	private void push(int operand) {
+		stack.add(operand);
+	}
+
+	/**
+	 * Pops an operand off the simulated stack, or off the real
+	 * operand stack when the value was pushed before the run.
+	 */
+	private int pop() {
+		if (stack.isEmpty()) {
+			int register = newRegister();
+			emit(RegisterMachine.POP, register, 0, 0, 0);
+			return operand(register, RegisterMachine.REGISTER);
+		}
+		return stack.remove(stack.size() - 1);
+	}
+
+	/**
+	 * Reads the variables still pending on the simulated stack into
+	 * registers, before an instruction that assigns a variable.
+	 */
+	private void readVariables() {
+		for (int i = 0; i < stack.size(); i++) {
+			int operand = stack.get(i);
+			if (kind(operand) == RegisterMachine.GLOBAL || kind(operand) == RegisterMachine.LOCAL) {
+				int register = newRegister();
+				emit(RegisterMachine.MOVE, register, operand, 0, 0);
+				stack.set(i, operand(register, RegisterMachine.REGISTER));
+			}
+		}
+	}
+
+	/**
+	 * Pushes the simulated stack onto the real operand stack.
+	 */
+	private void flush() {
+		for (int operand : stack) {
+			emit(RegisterMachine.PUSH, 0, operand, 0, 0);
+		}
+		stack.clear();
+	}
+
+	private void jump(int instruction, int a, int b, int x, int target) {
+		jumps.put(pc, target);
+		emit(instruction, -1, a, b, x);
+	}
+
+	private void emit(int instruction, int dst, int a, int b, int x) {
+		if (pc + RegisterMachine.WIDTH > code.length) {
+			code = Arrays.copyOf(code, code.length * 2);
+			lines = Arrays.copyOf(lines, code.length / RegisterMachine.WIDTH);
+		}
+		lines[pc / RegisterMachine.WIDTH] = lineno;
+		code[pc + RegisterMachine.DST] = dst;
+		code[pc + RegisterMachine.A] = a;
+		code[pc + RegisterMachine.B] = b;
+		code[pc + RegisterMachine.X] = x;
+		code[pc] = instruction;
+		pc += RegisterMachine.WIDTH;
+	}
+}
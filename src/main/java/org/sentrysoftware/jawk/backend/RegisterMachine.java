@@ -0,0 +1,300 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+import org.sentrysoftware.jawk.jrt.JRT;
+
+/**
+ * Register-based alternative to the interpretation of the tuples
+ * on the operand stack.
+ * <p>
+ * The {@link RegisterCompiler} translates the runs of simple tuples
+ * (variable references, arithmetic, comparisons, jumps, etc.) to
+ * instructions that name their operands: registers, constants or
+ * variables. A statement like <code>sum += $i</code> thus takes two
+ * instructions instead of four tuples, and the values that the tuples
+ * merely shuffle around (<code>_DUP_</code>, <code>_SWAP_</code>,
+ * <code>_POP_</code> after an assignment) cost no instruction at all.
+ * <p>
+ * The instructions all have the same width:
+ * <code>{opcode, dst, a, b, x}</code>, where <code>dst</code> is the
+ * register receiving the result (or the variable to assign, or the
+ * jump target), <code>a</code> and <code>b</code> are the operands,
+ * and <code>x</code> an extra argument (the tuple opcode selecting
+ * the comparison, or the compound assignment operator).
+ * <p>
+ * Each translated region ends with the values the tuples would have left
+ * on the operand stack pushed back onto it, so that the {@link AVM} carries
+ * on with the next tuple, which it interprets as usual.
+ */
+final class RegisterMachine {
+
+	// instruction set
+
+	/** dst &lt;- a */
+	static final int MOVE = 0;
+	/** pushes a onto the operand stack */
+	static final int PUSH = 1;
+	/** dst &lt;- value popped from the operand stack */
+	static final int POP = 2;
+	/** pops a value from the operand stack and ignores it */
+	static final int DISCARD = 3;
+	/** variable dst &lt;- a */
+	static final int ASSIGN = 4;
+	/** dst &lt;- (variable a x= b), x being the compound assignment tuple opcode */
+	static final int ASSIGN_OP = 5;
+	/** variable dst &lt;- dst + 1 */
+	static final int INC = 6;
+	/** dst &lt;- a + b */
+	static final int ADD = 7;
+	/** dst &lt;- a - b */
+	static final int SUBTRACT = 8;
+	/** dst &lt;- a * b */
+	static final int MULTIPLY = 9;
+	/** dst &lt;- a / b */
+	static final int DIVIDE = 10;
+	/** dst &lt;- a % b */
+	static final int MOD = 11;
+	/** dst &lt;- a ^ b */
+	static final int POW = 12;
+	/** dst &lt;- -a */
+	static final int NEGATE = 13;
+	/** dst &lt;- +a */
+	static final int UNARY_PLUS = 14;
+	/** dst &lt;- !a */
+	static final int NOT = 15;
+	/** dst &lt;- a ? 1 : 0 */
+	static final int TO_NUMBER = 16;
+	/** dst &lt;- a b */
+	static final int CONCAT = 17;
+	/** dst &lt;- (a x b) ? 1 : 0, x being the comparison tuple opcode */
+	static final int COMPARE = 18;
+	/** dst &lt;- $a */
+	static final int FIELD = 19;
+	/** jumps to dst */
+	static final int JUMP = 20;
+	/** jumps to dst if a is false */
+	static final int JUMP_IF_FALSE = 21;
+	/** jumps to dst if a is true */
+	static final int JUMP_IF_TRUE = 22;
+	/** jumps to dst unless (a x b), x being the comparison tuple opcode */
+	static final int JUMP_UNLESS = 23;
+	/** jumps to dst if (a x b), x being the comparison tuple opcode */
+	static final int JUMP_IF = 24;
+	/** leaves the register code, to interpret the tuple at index dst */
+	static final int EXIT = 25;
+
+	/** Number of ints per instruction */
+	static final int WIDTH = 5;
+	static final int DST = 1;
+	static final int A = 2;
+	static final int B = 3;
+	static final int X = 4;
+
+	// operands are encoded as (index << KIND_BITS) | kind
+
+	static final int KIND_BITS = 2;
+	static final int KIND_MASK = (1 << KIND_BITS) - 1;
+	static final int REGISTER = 0;
+	static final int CONSTANT = 1;
+	static final int GLOBAL = 2;
+	static final int LOCAL = 3;
+
+	private static final Integer ZERO = Integer.valueOf(0);
+	private static final Integer ONE = Integer.valueOf(1);
+
+	private final int[] code;
+	/** Line number of each instruction */
+	private final int[] lines;
+	private final Object[] constants;
+	/** Offset in <code>code</code> of each entry point, by tuple index (or -1) */
+	private final int[] entries;
+	private final Object[] registers;
+
+	RegisterMachine(int[] code, int[] lines, Object[] constants, int[] entries, int num_registers) {
+		this.code = code;
+		this.lines = lines;
+		this.constants = constants;
+		this.entries = entries;
+		this.registers = new Object[num_registers];
+	}
+
+	/**
+	 * Runs the register code from the specified entry point, until
+	 * it leaves the translated region.
+	 *
+	 * @param avm The AVM, which holds the variables and the operand stack
+	 * @param idx Index of the tuple to start with
+	 * @return the index of the next tuple to interpret
+	 */
+	int execute(AVM avm, int idx) {
+		final int[] code = this.code;
+		final Object[] registers = this.registers;
+		int pc = entries[idx];
+		assert pc >= 0 : "tuple " + idx + " is not an entry point of the register code";
+		while (true) {
+			switch (code[pc]) {
+				case MOVE:
+					registers[code[pc + DST]] = value(avm, code[pc + A]);
+					break;
+				case PUSH:
+					avm.push(value(avm, code[pc + A]));
+					break;
+				case POP:
+					registers[code[pc + DST]] = avm.pop();
+					break;
+				case DISCARD:
+					avm.pop();
+					break;
+				case ASSIGN: {
+					int var = code[pc + DST];
+					avm.setLineNumber(lines[pc / WIDTH]);
+					avm.setScalar(var >> KIND_BITS, value(avm, code[pc + A]), (var & KIND_MASK) == GLOBAL);
+					break;
+				}
+				case ASSIGN_OP: {
+					int var = code[pc + A];
+					registers[code[pc + DST]] = avm.assignOp(code[pc + X], var >> KIND_BITS, value(avm, code[pc + B]), (var & KIND_MASK) == GLOBAL);
+					break;
+				}
+				case INC: {
+					int var = code[pc + DST];
+					avm.inc(var >> KIND_BITS, (var & KIND_MASK) == GLOBAL);
+					break;
+				}
+				case ADD:
+					registers[code[pc + DST]] = JRT.add(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case SUBTRACT:
+					registers[code[pc + DST]] = JRT.subtract(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case MULTIPLY:
+					registers[code[pc + DST]] = JRT.multiply(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case DIVIDE:
+					registers[code[pc + DST]] = JRT.divide(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case MOD:
+					registers[code[pc + DST]] = JRT.mod(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case POW:
+					registers[code[pc + DST]] = JRT.pow(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case NEGATE:
+					registers[code[pc + DST]] = JRT.negate(value(avm, code[pc + A]));
+					break;
+				case UNARY_PLUS:
+					registers[code[pc + DST]] = JRT.unaryPlus(value(avm, code[pc + A]));
+					break;
+				case NOT:
+					registers[code[pc + DST]] = avm.not(value(avm, code[pc + A]));
+					break;
+				case TO_NUMBER:
+					registers[code[pc + DST]] = avm.toBoolean(value(avm, code[pc + A])) ? ONE : ZERO;
+					break;
+				case CONCAT:
+					registers[code[pc + DST]] = avm.concat(value(avm, code[pc + A]), value(avm, code[pc + B]));
+					break;
+				case COMPARE:
+					registers[code[pc + DST]] = compare(code[pc + X], value(avm, code[pc + A]), value(avm, code[pc + B])) ? ONE : ZERO;
+					break;
+				case FIELD:
+					avm.setLineNumber(lines[pc / WIDTH]);
+					registers[code[pc + DST]] = avm.getInputField(value(avm, code[pc + A]));
+					break;
+				case JUMP:
+					pc = code[pc + DST];
+					continue;
+				case JUMP_IF_FALSE:
+					if (!avm.toBoolean(value(avm, code[pc + A]))) {
+						pc = code[pc + DST];
+						continue;
+					}
+					break;
+				case JUMP_IF_TRUE:
+					if (avm.toBoolean(value(avm, code[pc + A]))) {
+						pc = code[pc + DST];
+						continue;
+					}
+					break;
+				case JUMP_UNLESS:
+					if (!compare(code[pc + X], value(avm, code[pc + A]), value(avm, code[pc + B]))) {
+						pc = code[pc + DST];
+						continue;
+					}
+					break;
+				case JUMP_IF:
+					if (compare(code[pc + X], value(avm, code[pc + A]), value(avm, code[pc + B]))) {
+						pc = code[pc + DST];
+						continue;
+					}
+					break;
+				case EXIT:
+					// back to the interpreter, which knows the line numbers
+					avm.setLineNumber(-1);
+					return code[pc + DST];
+				default:
+					throw new Error("Invalid register instruction: " + code[pc]);
+			}
+			pc += WIDTH;
+		}
+	}
+
+	private Object value(AVM avm, int operand) {
+		int index = operand >> KIND_BITS;
+		switch (operand & KIND_MASK) {
+			case REGISTER:
+				return registers[index];
+			case CONSTANT:
+				return constants[index];
+			case GLOBAL:
+				return avm.getScalar(index, true);
+			default:
+				return avm.getScalar(index, false);
+		}
+	}
+
+	/**
+	 * Evaluates a comparison like the matching tuple does.
+	 *
+	 * @param opcode The opcode of the comparison tuple
+	 * @param o1 The left-hand side
+	 * @param o2 The right-hand side
+	 * @return the result of the comparison
+	 */
+	static boolean compare(int opcode, Object o1, Object o2) {
+		switch (opcode) {
+			case AwkTuples._CMP_EQ_: return JRT.compare2(o1, o2, 0);
+			case AwkTuples._CMP_LT_: return JRT.compare2(o1, o2, -1);
+			case AwkTuples._CMP_GT_: return JRT.compare2(o1, o2, 1);
+			case AwkTuples._CMP_EQ_NUM_: return JRT.compareNumbers(o1, o2, 0);
+			case AwkTuples._CMP_NE_NUM_: return !JRT.compareNumbers(o1, o2, 0);
+			case AwkTuples._CMP_LT_NUM_: return JRT.compareNumbers(o1, o2, -1);
+			case AwkTuples._CMP_LE_NUM_: return !JRT.compareNumbers(o1, o2, 1);
+			case AwkTuples._CMP_GT_NUM_: return JRT.compareNumbers(o1, o2, 1);
+			case AwkTuples._CMP_GE_NUM_: return !JRT.compareNumbers(o1, o2, -1);
+			default: throw new Error("Invalid comparison: " + AwkTuples.toOpcodeString(opcode));
+		}
+	}
+}
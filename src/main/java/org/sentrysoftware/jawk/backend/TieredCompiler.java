@@ -0,0 +1,158 @@
+package org.sentrysoftware.jawk.backend;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+
+import org.sentrysoftware.jawk.ExitException;
+import org.sentrysoftware.jawk.backend.ClassFileWriter.CodeTooLargeException;
+import org.sentrysoftware.jawk.intermediate.AwkTuples;
+import org.sentrysoftware.jawk.intermediate.PositionForInterpretation;
+import org.sentrysoftware.jawk.util.AwkLogger;
+import org.slf4j.Logger;
+
+/**
+ * Tiered execution of the tuples: the {@link AVM} starts interpreting,
+ * and the regions of the script that turn out to be hot are compiled
+ * to JVM bytecode by the {@link AwkCompiler}.
+ * <p>
+ * The regions are the loops (including the input loop, which runs
+ * the rules once per record) and the functions. The interpreter counts
+ * the backward jumps to each loop head, and the calls to each function.
+ * Once a counter reaches {@link #COMPILE_THRESHOLD}, the enclosing region
+ * is compiled, and executed natively whenever the interpreter jumps
+ * into it. Short runs therefore never pay for the compilation, while long
+ * runs spend most of their time in compiled code.
+ */
+final class TieredCompiler {
+
+	private static final Logger LOG = AwkLogger.getLogger(TieredCompiler.class);
+
+	/**
+	 * Number of iterations of a loop (or of calls to a function)
+	 * after which it is compiled
+	 */
+	static final int COMPILE_THRESHOLD = 1000;
+
+	/** Counter value of the regions that cannot be compiled */
+	private static final int NOT_COMPILABLE = -1;
+
+	private final AwkTuples tuples;
+
+	/**
+	 * Number of times each backward jump was taken, and each function
+	 * was called (indexed by the _GOTO_ and _FUNCTION_ tuples)
+	 */
+	private final int[] counters;
+
+	/** Compiled code covering each tuple, if any */
+	private final AwkCompiledScript[] compiled;
+
+	TieredCompiler(AwkTuples tuples) {
+		this.tuples = tuples;
+		this.counters = new int[tuples.size()];
+		this.compiled = new AwkCompiledScript[tuples.size()];
+	}
+
+	/**
+	 * Counts a jump back to the head of a loop.
+	 *
+	 * @param head Index of the first tuple of the loop
+	 * @param jump_idx Index of the tuple jumping back to the head
+	 */
+	void countLoop(int head, int jump_idx) {
+		// counting per jump (rather than per head) so that a hot 'continue'
+		// does not prevent the whole loop from being compiled
+		if (counters[jump_idx] >= 0 && ++counters[jump_idx] == COMPILE_THRESHOLD
+				&& !compileRegion(head, jump_idx + 1)) {
+			counters[jump_idx] = NOT_COMPILABLE;
+		}
+	}
+
+	/**
+	 * Counts a call to a function.
+	 *
+	 * @param function_idx Index of the _FUNCTION_ tuple
+	 */
+	void countCall(int function_idx) {
+		if (counters[function_idx] >= 0 && ++counters[function_idx] == COMPILE_THRESHOLD) {
+			PositionForInterpretation position = (PositionForInterpretation) tuples.top();
+			position.jump(function_idx);
+			while (!position.isEOF() && position.opcode() != AwkTuples._RETURN_FROM_FUNCTION_) {
+				position.next();
+			}
+			if (position.isEOF() || !compileRegion(function_idx, position.current() + 1)) {
+				counters[function_idx] = NOT_COMPILABLE;
+			}
+		}
+	}
+
+	private boolean compileRegion(int from, int to) {
+		if (compiled[from] != null && compiled[to - 1] == compiled[from]) {
+			// already covered by an enclosing region
+			return true;
+		}
+		AwkCompiledScript script;
+		try {
+			script = AwkCompiler.compile(tuples, from, to);
+		} catch (CodeTooLargeException ctle) {
+			LOG.debug("Tuples {} to {} will remain interpreted: {}", from, to, ctle.getMessage());
+			return false;
+		}
+		// loops are properly nested, and functions are outside of them,
+		// so the new region encloses any region compiled so far within [from, to)
+		for (int i = from; i < to; i++) {
+			compiled[i] = script;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the compiled code (if any) starting at the specified tuple,
+	 * until control gets back to tuples that are only interpreted.
+	 *
+	 * @param avm The AVM
+	 * @param idx Index of the next tuple to execute
+	 * @return the index of the next tuple to interpret
+	 * @throws ExitException when the script exits from its END blocks
+	 * @throws IOException upon an IO error while reading the input
+	 */
+	int execute(AVM avm, int idx) throws ExitException, IOException {
+		AwkCompiledScript script;
+		boolean executed = false;
+		while (idx < compiled.length && (script = compiled[idx]) != null) {
+			int next_idx = script.execute(avm, idx);
+			if (next_idx == idx) {
+				// not an entry point of the compiled region
+				break;
+			}
+			executed = true;
+			idx = next_idx;
+		}
+		if (executed) {
+			// back to the interpreter, which knows the line numbers
+			avm.setLineNumber(-1);
+		}
+		return idx;
+	}
+}
@@ -27,18 +27,27 @@ import java.io.LineNumberReader;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.sentrysoftware.jawk.NotImplementedError;
 import org.sentrysoftware.jawk.backend.AVM;
+import org.sentrysoftware.jawk.backend.Nodes;
 import org.sentrysoftware.jawk.ext.JawkExtension;
 import org.sentrysoftware.jawk.intermediate.Address;
 import org.sentrysoftware.jawk.intermediate.AwkTuples;
 import org.sentrysoftware.jawk.intermediate.HasFunctionAddress;
+import org.sentrysoftware.jawk.jrt.JRT;
 import org.sentrysoftware.jawk.jrt.KeyList;
 import org.sentrysoftware.jawk.util.AwkLogger;
 import org.sentrysoftware.jawk.util.ScriptSource;
@@ -257,6 +266,28 @@ public class AwkParser {
 		SPECIAL_VAR_NAMES.put("ARGV", sp_idx);
 	}
 
+	/**
+	 * Special variables which the runtime only assigns numbers to.
+	 */
+	private static final Set<String> NUMERIC_SPECIAL_VAR_NAMES = new HashSet<String>(
+			Arrays.asList("NR", "FNR", "NF", "RSTART", "RLENGTH"));
+
+	/**
+	 * Builtin functions which always return a number.
+	 */
+	private static final Set<String> NUMERIC_BUILTIN_FUNC_NAMES = new HashSet<String>(
+			Arrays.asList("atan2", "cos", "exp", "index", "int", "length", "log", "rand", "sin", "sqrt"));
+
+	/** Builtin functions with side effects (match() sets RSTART and RLENGTH) or random results */
+	private static final Set<String> IMPURE_BUILTIN_FUNC_NAMES = new HashSet<String>(
+			Arrays.asList("close", "exec", "match", "rand", "split", "srand", "system"));
+
+	/** Statements and expressions which depend on, or change, more than the locals of a function */
+	private static final Class<?>[] IMPURE_AST_TYPES = new Class<?>[] {
+			DollarExpression_AST.class, Getline_AST.class, Print_AST.class, Printf_AST.class, ExitStatement_AST.class,
+			NextStatement_AST.class, Extension_AST.class, SleepStatement_AST.class, DumpStatement_AST.class,
+			DeleteStatement_AST.class };
+
 	/**
 	 * Defined as concrete implementation class (not an
 	 * interface reference) as to not clutter the interface
@@ -268,6 +299,40 @@ public class AwkParser {
 	private final boolean additional_type_functions;
 	private final Map<String, JawkExtension> extensions;
 
+	/**
+	 * Whether to compile the statements to trees of nodes
+	 * (see {@link #setCompileNodes(boolean)}).
+	 */
+	private boolean compile_nodes = false;
+	/** Whether the tuples being populated are those of a statement compiled to nodes */
+	private boolean within_node = false;
+	/**
+	 * Whether each reference to a variable within the statement being
+	 * compiled to nodes is dereferenced as an array by its tuples, in order
+	 * (a later use, like <code>split()</code>, may find it to be an array)
+	 */
+	private final Map<ID_AST, Deque<Boolean>> node_dereferences = new HashMap<ID_AST, Deque<Boolean>>();
+	/** Line number of the node being built, which its operations run with (see {@link AST#lineNode()}) */
+	private int node_lineno;
+	/** The statement (or function body) whose compilation to nodes is being checked */
+	private AST node_root;
+	/** The function whose body is being checked, for the return statements */
+	private FunctionDef_AST node_function;
+	/** The functions whose whole body compiles to nodes */
+	private Set<FunctionDef_AST> node_functions;
+
+	/** Most syntax tree nodes in the body of a function to inline */
+	private static final int INLINE_MAX_SIZE = 32;
+	/** The functions whose calls are replaced by their body (see RuleList_AST.findInlineFunctions()) */
+	private Set<FunctionDef_AST> inline_functions = Collections.emptySet();
+	/** Names of the functions whose results only depend on their parameters (see RuleList_AST.findPureFunctions()) */
+	private Set<String> pure_function_names = Collections.emptySet();
+	/** Hidden globals, after all the others, holding the locals of the functions inlined in the rules */
+	private int num_inline_globals;
+	/** Where the locals of the next inlined call go: in the frame of the current function, or in the hidden globals */
+	private int inline_slot;
+	private boolean inline_slot_is_global;
+
 	/**
 	 * <p>Constructor for AwkParser.</p>
 	 *
@@ -310,6 +375,19 @@ public class AwkParser {
 		this.extensions = extensions;
 	}
 
+	/**
+	 * Compiles the statements of the script to trees of nodes (see
+	 * {@link Nodes}) where possible, when populating the tuples. The tuples
+	 * of these statements are still populated (and checked), but are
+	 * preceded by an {@link AwkTuples#_EXEC_NODE_} tuple which runs the
+	 * tree instead, and jumps over them.
+	 *
+	 * @param compile_nodes whether to compile the statements to nodes
+	 */
+	public void setCompileNodes(boolean compile_nodes) {
+		this.compile_nodes = compile_nodes;
+	}
+
 	private List<ScriptSource> scriptSources;
 	private int scriptSourcesCurrentIndex;
 	private LineNumberReader reader;
@@ -2086,8 +2164,8 @@ public class AwkParser {
 	// AST class defs
 	private abstract class AST implements AwkSyntaxTree {
 
-		private final String sourceDescription = scriptSources.get(scriptSourcesCurrentIndex).getDescription();
-		private final int lineNo = reader.getLineNumber() + 1;
+		private String sourceDescription = scriptSources.get(scriptSourcesCurrentIndex).getDescription();
+		private int lineNo = reader.getLineNumber() + 1;
 		protected AST parent;
 		protected AST ast1, ast2, ast3, ast4;
 
@@ -2220,6 +2298,61 @@ public class AwkParser {
 			}
 		}
 
+		/**
+		 * Simplifies the tree under this node. The default
+		 * implementation folds constant expressions and
+		 * unreachable statements; the root of the tree
+		 * (the rule list) also propagates constants and
+		 * drops the functions that are never called.
+		 */
+		@Override
+		public void optimize() {
+			fold();
+		}
+
+		/**
+		 * Folds the children of this node and returns the node
+		 * which must take the place of this one in the tree.
+		 * The default implementation only folds the children;
+		 * nodes which can be evaluated at compile time override
+		 * it to return a literal (or the surviving branch).
+		 * A statement never folds to <code>null</code>, but
+		 * to an empty statement.
+		 *
+		 * @return The replacement for this node, or this node.
+		 */
+		protected AST fold() {
+			ast1 = foldChild(ast1);
+			ast2 = foldChild(ast2);
+			ast3 = foldChild(ast3);
+			ast4 = foldChild(ast4);
+			return this;
+		}
+
+		private AST foldChild(AST child) {
+			if (child == null) {
+				return null;
+			}
+			AST folded = child.fold();
+			if (folded != child) {
+				folded.parent = this;
+			}
+			return folded;
+		}
+
+		/**
+		 * Attributes this node (synthesized by the optimizer)
+		 * to the source position of the node it replaces.
+		 *
+		 * @param origin The node being replaced.
+		 * @return This node.
+		 */
+		protected final AST at(AST origin) {
+			sourceDescription = origin.sourceDescription;
+			lineNo = origin.lineNo;
+			return this;
+		}
+
 		/**
 		 * Appends tuples to the AwkTuples list
 		 * for this abstract syntax tree node. Subclasses
@@ -2239,6 +2372,156 @@ public class AwkParser {
 		@Override
 		public abstract int populateTuples(AwkTuples tuples);
 
+		/**
+		 * Populates the tuples of this statement, like
+		 * {@link #populateTuples(AwkTuples)}, but when the statement
+		 * compiles to nodes, also builds its tree of nodes, which the AVM
+		 * then runs instead of the tuples (with an
+		 * {@link AwkTuples#_EXEC_NODE_} tuple that jumps over them).
+		 * The tree is built right after the tuples, so that it sees
+		 * the variables exactly as the tuples did (scalars or arrays).
+		 *
+		 * @param tuples The tuples to populate.
+		 *
+		 * @return The number of items left on the stack after
+		 *	these tuples have executed.
+		 */
+		protected final int populateTuplesOrNode(AwkTuples tuples) {
+			if (!compile_nodes || within_node || !AwkParser.this.compilesToNode(this, null)) {
+				return populateTuples(tuples);
+			}
+			Address end = tuples.createAddress("end of node");
+			populateNode(tuples, end);
+			tuples.address(end);
+			return 0;
+		}
+
+		/**
+		 * Populates the tuples of this statement after an
+		 * {@link AwkTuples#_EXEC_NODE_} tuple which runs its tree
+		 * of nodes instead, then jumps to the specified address.
+		 *
+		 * @return the tree of nodes
+		 */
+		protected final Nodes.Statement populateNode(AwkTuples tuples, Address end) {
+			int node_idx = tuples.execNode(end);
+			within_node = true;
+			try {
+				int result = populateTuples(tuples);
+				assert result == 0;
+			} finally {
+				within_node = false;
+			}
+			Nodes.Statement node;
+			try {
+				node = lineStatementNode();
+			} finally {
+				node_dereferences.clear();
+			}
+			tuples.setNode(node_idx, node);
+			return node;
+		}
+
+		/**
+		 * Whether this node can be compiled to a tree of nodes
+		 * (see {@link Nodes}). The default implementation says no;
+		 * the expressions and statements which can be compiled
+		 * override it, and check their children.
+		 *
+		 * @return true if {@link #expressionNode()} (for an expression)
+		 *   or {@link #statementNode()} (for a statement) can be called
+		 */
+		protected boolean compilesToNode() {
+			return false;
+		}
+
+		/**
+		 * @return true if all the children of this node compile to nodes
+		 */
+		protected final boolean childrenCompileToNode() {
+			return (ast1 == null || ast1.compilesToNode())
+					&& (ast2 == null || ast2.compilesToNode())
+					&& (ast3 == null || ast3.compilesToNode())
+					&& (ast4 == null || ast4.compilesToNode());
+		}
+
+		/**
+		 * Builds the node evaluating this expression, once its tuples
+		 * are populated (only if {@link #compilesToNode()}).
+		 *
+		 * @return the node
+		 */
+		protected Nodes.Expression expressionNode() {
+			throw new Error("Cannot compile " + this + " to a node");
+		}
+
+		/**
+		 * Builds the node running this statement, once its tuples
+		 * are populated (only if {@link #compilesToNode()}).
+		 *
+		 * @return the node
+		 */
+		protected Nodes.Statement statementNode() {
+			throw new Error("Cannot compile " + this + " to a node");
+		}
+
+		/**
+		 * Builds the node evaluating this expression, like
+		 * {@link #expressionNode()}, and makes it run with the line number
+		 * of this expression, like its tuples (which carry the line number
+		 * of their innermost expression), when it is not the line number
+		 * of the expression or statement using it.
+		 *
+		 * @return the node
+		 */
+		protected final Nodes.Expression lineNode() {
+			int enclosing_lineno = node_lineno;
+			if (lineNo == enclosing_lineno) {
+				return expressionNode();
+			}
+			node_lineno = lineNo;
+			try {
+				return Nodes.atLine(lineNo, enclosing_lineno, expressionNode());
+			} finally {
+				node_lineno = enclosing_lineno;
+			}
+		}
+
+		/**
+		 * Builds the node running this statement, like
+		 * {@link #statementNode()}; the statements set their own
+		 * line number, which their expressions are compared with
+		 * (see {@link #lineNode()}).
+		 *
+		 * @return the node
+		 */
+		protected final Nodes.Statement lineStatementNode() {
+			int enclosing_lineno = node_lineno;
+			node_lineno = lineNo;
+			try {
+				return statementNode();
+			} finally {
+				node_lineno = enclosing_lineno;
+			}
+		}
+
+		/**
+		 * @return true if this node is within the statement (or function body)
+		 *   whose compilation to nodes is being checked
+		 */
+		protected final boolean isWithinNodeRoot() {
+			for (AST ptr = this; ptr != null; ptr = ptr.parent) {
+				if (ptr == node_root) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		protected final int lineNumber() {
+			return lineNo;
+		}
+
 		protected final void pushSourceLineNumber(AwkTuples tuples) {
 			tuples.pushSourceLineNumber(lineNo);
 		}
@@ -2309,6 +2592,21 @@ public class AwkParser {
 			return false;
 		}
 
+		/**
+		 * Whether the static type of this expression is numeric,
+		 * as computed by the type inference of the optimizer.
+		 * An expression of numeric type evaluates to a number,
+		 * with one exception: a variable which the script only
+		 * assigns numbers to may still be uninitialized, or
+		 * assigned a string from the command line. The typed
+		 * tuples check for that before taking their fast path.
+		 *
+		 * @return true if the expression is known to be numeric
+		 */
+		protected boolean isNumeric() {
+			return false;
+		}
+
 		/**
 		 * Made protected so that subclasses can access it.
 		 * Package-level access was not necessary.
@@ -2332,6 +2630,82 @@ public class AwkParser {
 		}
 	}
 
+	/**
+	 * Checks whether a statement (or the body of a function)
+	 * compiles to nodes.
+	 *
+	 * @param root The statement
+	 * @param function The function whose body the statement is, if any
+	 * @return true if the statement compiles to nodes
+	 */
+	private boolean compilesToNode(AST root, FunctionDef_AST function) {
+		node_root = root;
+		node_function = function;
+		try {
+			return root.compilesToNode();
+		} finally {
+			node_root = null;
+			node_function = null;
+		}
+	}
+
+	/**
+	 * @param list A list of actual parameters (or of array indexes)
+	 * @return the nodes of the expressions in the list
+	 */
+	private List<Nodes.Expression> expressionNodes(AST list) {
+		List<Nodes.Expression> nodes = new ArrayList<Nodes.Expression>();
+		for (AST ptr = list; ptr != null; ptr = ptr.ast2) {
+			nodes.add(ptr.ast1.lineNode());
+		}
+		return nodes;
+	}
+
+	/**
+	 * @param lvalue The target of an assignment, increment or decrement
+	 * @return true if the target compiles to nodes
+	 */
+	private boolean lvalueCompilesToNode(AST lvalue) {
+		if (lvalue instanceof ID_AST) {
+			return true;
+		} else if (lvalue instanceof ArrayReference_AST) {
+			return lvalue.ast2.compilesToNode();
+		} else if (lvalue instanceof DollarExpression_AST) {
+			return lvalue.ast1.compilesToNode();
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the node of an increment or decrement
+	 * (see {@link PreInc_AST} and its siblings).
+	 *
+	 * @param lvalue The variable, array element or field
+	 * @param delta 1 or -1
+	 * @param is_prefix Whether this is a pre-increment (or pre-decrement)
+	 * @return the node
+	 */
+	private Nodes.Expression incrementNode(AST lvalue, int delta, boolean is_prefix) {
+		if (lvalue instanceof ID_AST) {
+			ID_AST id_ast = (ID_AST) lvalue;
+			return Nodes.incVariable(id_ast.offset, id_ast.is_global, delta, is_prefix, lvalue.lineNode());
+		} else if (lvalue instanceof ArrayReference_AST) {
+			ID_AST id_ast = (ID_AST) lvalue.ast1;
+			return Nodes.incArrayElement(id_ast.offset, id_ast.is_global, lvalue.ast2.lineNode(), delta, is_prefix,
+					lvalue.lineNode());
+		} else {
+			return Nodes.incField(lvalue.ast1.lineNode(), delta, is_prefix);
+		}
+	}
+
+	/**
+	 * @param statement A statement, or <code>null</code>
+	 * @return the node of the statement, or <code>null</code>
+	 */
+	private Nodes.Statement optionalStatementNode(AST statement) {
+		return statement == null ? null : statement.lineStatementNode();
+	}
+
 	private abstract class ScalarExpression_AST extends AST {
 
 		protected ScalarExpression_AST() {
@@ -2416,50 +2790,588 @@ public class AwkParser {
 				|| containsASTType(ast.ast4, cls_array);
 	}
 
-	private Address next_address;
-
-	private final class RuleList_AST extends AST {
-
-		private RuleList_AST(AST rule, AST rest) {
-			super(rule, rest);
+	/**
+	 * Returns the value of a literal node (Integer_AST, Double_AST
+	 * or String_AST), exactly as the interpreter would push it.
+	 *
+	 * @param ast The node to examine.
+	 *
+	 * @return the value of the literal; null if the node is not a literal.
+	 */
+	private static Object constantValue(AST ast) {
+		if (ast instanceof Integer_AST) {
+			return ((Integer_AST) ast).I;
+		} else if (ast instanceof Double_AST) {
+			return ((Double_AST) ast).D;
+		} else if (ast instanceof String_AST) {
+			return ((String_AST) ast).S;
+		} else {
+			return null;
 		}
+	}
 
-		@Override
-		public int populateTuples(AwkTuples tuples) {
-			pushSourceLineNumber(tuples);
-
-			next_address = tuples.createAddress("next_address");
+	/**
+	 * Evaluates a literal as a condition, the same way
+	 * JRT.toBoolean() does at runtime.
+	 */
+	private static boolean isTrue(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue() != 0;
+		} else {
+			return value.toString().length() > 0;
+		}
+	}
 
-			Address exit_addr = tuples.createAddress("end blocks start address");
+	/**
+	 * Builds a literal node for a value computed by the optimizer.
+	 * Longs become Integer_ASTs, other numbers Double_ASTs (which
+	 * keep integral values as Integers, like the interpreter does
+	 * for the results of comparisons), and anything else a String_AST.
+	 */
+	private AST literal(Object value, AST origin) {
+		AST ast;
+		if (value instanceof Long) {
+			ast = new Integer_AST((Long) value);
+		} else if (value instanceof Number) {
+			ast = new Double_AST(((Number) value).doubleValue());
+		} else {
+			ast = new String_AST(value.toString());
+		}
+		return ast.at(origin);
+	}
 
-			// goto start address
-			Address start_address = tuples.createAddress("start address");
+	/**
+	 * Whether the child of a node is evaluated (and only evaluated)
+	 * by this node, i.e. if a variable in this position could be
+	 * replaced by its value. All other positions (assignment targets,
+	 * function call parameters, getline targets, etc.) are considered
+	 * as possibly modifying the variable.
+	 */
+	private static boolean isReadSlot(AST parent, AST child) {
+		if (parent instanceof BinaryExpression_AST
+				|| parent instanceof ComparisonExpression_AST
+				|| parent instanceof LogicalExpression_AST
+				|| parent instanceof ConcatExpression_AST
+				|| parent instanceof NegativeExpression_AST
+				|| parent instanceof UnaryPlusExpression_AST
+				|| parent instanceof NotExpression_AST
+				|| parent instanceof TernaryExpression_AST
+				|| parent instanceof DollarExpression_AST) {
+			return true;
+		} else if (parent instanceof IfStatement_AST
+				|| parent instanceof WhileStatement_AST
+				|| parent instanceof ArrayIndex_AST
+				|| parent instanceof Rule_AST) {
+			return child == parent.ast1;
+		} else if (parent instanceof DoStatement_AST
+				|| parent instanceof ForStatement_AST
+				|| parent instanceof ArrayReference_AST) {
+			return child == parent.ast2;
+		} else if (parent instanceof AssignmentExpression_AST) {
+			return child == parent.ast2 && child != parent.ast1;
+		} else {
+			return false;
+		}
+	}
 
-			tuples.setExitAddress(exit_addr);
+	/**
+	 * Counts, for each global variable, the positions in the tree
+	 * where it is used as anything else than a plain value.
+	 */
+	private static void countWrites(AST ast, Map<ID_AST, Integer> writes) {
+		for (AST child : new AST[] {ast.ast1, ast.ast2, ast.ast3, ast.ast4}) {
+			if (child instanceof ID_AST) {
+				ID_AST id_ast = (ID_AST) child;
+				if (id_ast.is_global && !isReadSlot(ast, child)) {
+					Integer count = writes.get(id_ast);
+					writes.put(id_ast, count == null ? 1 : count + 1);
+				}
+			} else if (child != null) {
+				countWrites(child, writes);
+			}
+		}
+	}
 
-			tuples.gotoAddress(start_address);
+	/**
+	 * Replaces the reads of the specified variable under ast by its value.
+	 */
+	private void replaceReads(AST ast, ID_AST id_ast, Object value) {
+		if (ast.ast1 == id_ast && isReadSlot(ast, id_ast)) {
+			ast.ast1 = literal(value, ast);
+			ast.ast1.parent = ast;
+		} else if (ast.ast1 != null) {
+			replaceReads(ast.ast1, id_ast, value);
+		}
+		if (ast.ast2 == id_ast && isReadSlot(ast, id_ast)) {
+			ast.ast2 = literal(value, ast);
+			ast.ast2.parent = ast;
+		} else if (ast.ast2 != null) {
+			replaceReads(ast.ast2, id_ast, value);
+		}
+		if (ast.ast3 == id_ast && isReadSlot(ast, id_ast)) {
+			ast.ast3 = literal(value, ast);
+			ast.ast3.parent = ast;
+		} else if (ast.ast3 != null) {
+			replaceReads(ast.ast3, id_ast, value);
+		}
+		if (ast.ast4 == id_ast && isReadSlot(ast, id_ast)) {
+			ast.ast4 = literal(value, ast);
+			ast.ast4.parent = ast;
+		} else if (ast.ast4 != null) {
+			replaceReads(ast.ast4, id_ast, value);
+		}
+	}
 
-			AST ptr;
+	/**
+	 * Removes the numeric type of the variables under ast which
+	 * are assigned a value that is not numeric.
+	 *
+	 * @return whether a variable lost its numeric type
+	 */
+	private boolean removeNumericTypes(AST ast) {
+		if (ast == null) {
+			return false;
+		}
+		AST target = null;
+		boolean numeric = false;
+		if (ast instanceof AssignmentExpression_AST) {
+			target = ast.ast1;
+			numeric = ast.isNumeric();
+		} else if (ast instanceof Getline_AST) {
+			target = ast.ast2;
+		} else if (ast instanceof ForInStatement_AST) {
+			target = ast.ast1;
+		} else if (ast instanceof BuiltinFunctionCall_AST) {
+			String id = ((BuiltinFunctionCall_AST) ast).id;
+			if ((id.equals("sub") || id.equals("gsub"))
+					&& ast.ast1 != null && ast.ast1.ast2 != null && ast.ast1.ast2.ast2 != null) {
+				target = ast.ast1.ast2.ast2.ast1;
+			}
+		}
+		boolean changed = false;
+		if (target instanceof ID_AST && !numeric && ((ID_AST) target).is_numeric) {
+			((ID_AST) target).is_numeric = false;
+			changed = true;
+		}
+		if (ast instanceof FunctionCall_AST) {
+			// formal parameters take the type of the actual parameters
+			FunctionCall_AST call = (FunctionCall_AST) ast;
+			String function_name = call.function_proxy.getFunctionName();
+			AST formal = call.function_proxy.function_def_ast.ast1;
+			for (AST actual = call.ast1; actual != null && formal != null; actual = actual.ast2, formal = formal.ast1) {
+				ID_AST formal_id = symbol_table.getFunctionParameterIDAST(function_name, ((FunctionDefParamList_AST) formal).id);
+				if (formal_id.is_numeric && !actual.ast1.isNumeric()) {
+					formal_id.is_numeric = false;
+					changed = true;
+				}
+			}
+		}
+		changed |= removeNumericTypes(ast.ast1);
+		changed |= removeNumericTypes(ast.ast2);
+		changed |= removeNumericTypes(ast.ast3);
+		changed |= removeNumericTypes(ast.ast4);
+		return changed;
+	}
 
-			// compile functions
+	/**
+	 * Adds the statements of a statement list to the specified list.
+	 */
+	private static void flattenStatements(AST ast, List<AST> statements) {
+		if (ast instanceof STATEMENTLIST_AST) {
+			flattenStatements(ast.ast1, statements);
+			flattenStatements(ast.ast2, statements);
+		} else if (ast != null) {
+			statements.add(ast);
+		}
+	}
 
-			ptr = this;
-			while (ptr != null) {
-				if (ptr.ast1 != null && ptr.ast1.isFunction()) {
-					assert ptr.ast1 != null;
-					int ast1_count = ptr.ast1.populateTuples(tuples);
-					assert ast1_count == 0;
-				}
+	private static int countNodes(AST ast) {
+		if (ast == null) {
+			return 0;
+		}
+		return 1 + countNodes(ast.ast1) + countNodes(ast.ast2) + countNodes(ast.ast3) + countNodes(ast.ast4);
+	}
 
-				ptr = ptr.ast2;
+	/**
+	 * Whether a function can replace its calls: its body is small, has
+	 * no loop (whose cost would dwarf that of the call, and which is
+	 * rather worth memoizing), ends with a <code>return</code> statement
+	 * with a value and has no other one, and its locals are all scalars
+	 * (so that copying the actual parameters gives them the semantics
+	 * of a call).
+	 */
+	private boolean isInlinable(FunctionDef_AST function_def) {
+		if (function_def.ast2 == null || countNodes(function_def.ast2) > INLINE_MAX_SIZE) {
+			return false;
+		}
+		if (containsASTType(function_def.ast2, new Class<?>[] {
+				WhileStatement_AST.class, DoStatement_AST.class, ForStatement_AST.class, ForInStatement_AST.class })) {
+			return false;
+		}
+		if (function_def.hasArrayLocal()) {
+			return false;
+		}
+		List<AST> statements = new ArrayList<AST>();
+		flattenStatements(function_def.ast2, statements);
+		AST last = statements.get(statements.size() - 1);
+		if (!(last instanceof ReturnStatement_AST) || last.ast1 == null) {
+			return false;
+		}
+		for (AST statement : statements.subList(0, statements.size() - 1)) {
+			if (containsASTType(statement, ReturnStatement_AST.class)) {
+				return false;
 			}
+		}
+		return true;
+	}
 
-			// START OF MAIN BLOCK
+	/**
+	 * Whether the statements or expressions under ast only depend on, and
+	 * only change, the locals of a function: no global variable (special
+	 * ones included), no field, no I/O, no random number, and only calls
+	 * to the specified functions.
+	 */
+	private boolean isPure(AST ast, Set<String> pure_functions) {
+		if (ast == null) {
+			return true;
+		}
+		if (ast instanceof ID_AST && ((ID_AST) ast).is_global) {
+			return false;
+		}
+		if (ast instanceof FunctionCall_AST
+				&& !pure_functions.contains(((FunctionCall_AST) ast).function_proxy.getFunctionName())) {
+			return false;
+		}
+		if (ast instanceof BuiltinFunctionCall_AST) {
+			String id = ((BuiltinFunctionCall_AST) ast).id;
+			if (IMPURE_BUILTIN_FUNC_NAMES.contains(id)) {
+				return false;
+			}
+			// length() and the 2-argument sub() and gsub() work on $0
+			if (id.equals("length") && ast.ast1 == null) {
+				return false;
+			}
+			if ((id.equals("sub") || id.equals("gsub")) && ast.ast1.ast2.ast2 == null) {
+				return false;
+			}
+		}
+		for (Class<?> cls : IMPURE_AST_TYPES) {
+			if (cls.isInstance(ast)) {
+				return false;
+			}
+		}
+		return isPure(ast.ast1, pure_functions)
+				&& isPure(ast.ast2, pure_functions)
+				&& isPure(ast.ast3, pure_functions)
+				&& isPure(ast.ast4, pure_functions);
+	}
 
-			tuples.address(start_address);
+	/**
+	 * Computes how many slots the inlined calls under ast need for the
+	 * locals of the inlined functions. The arguments of a call are
+	 * evaluated before its locals are set, so the calls inlined in the
+	 * arguments reuse the same slots; those inlined in the body of the
+	 * called function use the following ones.
+	 */
+	private int inlineSlots(AST ast) {
+		if (ast == null) {
+			return 0;
+		}
+		int slots = 0;
+		if (ast instanceof FunctionCall_AST) {
+			FunctionDef_AST function_def = ((FunctionCall_AST) ast).function_proxy.function_def_ast;
+			if (inline_functions.contains(function_def)) {
+				slots = function_def.paramCount() + inlineSlots(function_def.ast2);
+			}
+		}
+		slots = Math.max(slots, inlineSlots(ast.ast1));
+		slots = Math.max(slots, inlineSlots(ast.ast2));
+		slots = Math.max(slots, inlineSlots(ast.ast3));
+		return Math.max(slots, inlineSlots(ast.ast4));
+	}
 
-			// initialze special variables
-			ID_AST nr_ast = symbol_table.getID("NR");
+	/**
+	 * Collects the names of the user-defined functions called under ast.
+	 */
+	private static void collectCalledFunctions(AST ast, Set<String> names) {
+		if (ast == null) {
+			return;
+		}
+		if (ast instanceof FunctionCall_AST) {
+			names.add(((FunctionCall_AST) ast).function_proxy.getFunctionName());
+		}
+		collectCalledFunctions(ast.ast1, names);
+		collectCalledFunctions(ast.ast2, names);
+		collectCalledFunctions(ast.ast3, names);
+		collectCalledFunctions(ast.ast4, names);
+	}
+
+	private Address next_address;
+
+	private final class RuleList_AST extends AST {
+
+		private RuleList_AST(AST rule, AST rest) {
+			super(rule, rest);
+		}
+
+		@Override
+		public void optimize() {
+			propagateConstants();
+			fold();
+			removeUncalledFunctions();
+			findInlineFunctions();
+			findPureFunctions();
+			inferTypes();
+		}
+
+		/**
+		 * Computes which scalar variables are numeric: starting with all
+		 * of them (but the special variables holding strings), a variable
+		 * loses the numeric type as soon as the script may assign it
+		 * something else than a number. This is iterated until nothing
+		 * changes, since assigning a variable to another one propagates
+		 * its type.
+		 */
+		private void inferTypes() {
+			List<ID_AST> variables = new ArrayList<ID_AST>(symbol_table.global_ids.values());
+			for (Map<String, ID_AST> locals : symbol_table.local_ids.values()) {
+				variables.addAll(locals.values());
+			}
+			for (ID_AST id_ast : variables) {
+				id_ast.is_numeric = !id_ast.isArray()
+						&& (SPECIAL_VAR_NAMES.get(id_ast.id) == null || NUMERIC_SPECIAL_VAR_NAMES.contains(id_ast.id));
+			}
+			while (removeNumericTypes(this)) {
+				// until a fixed point is reached
+			}
+		}
+
+		/**
+		 * Replaces the variables assigned a literal in a BEGIN block
+		 * by their value in the statements which follow the assignment
+		 * in that same block.
+		 * <p>
+		 * This is only done for global variables assigned exactly once
+		 * in the whole script, and never used otherwise than as a plain
+		 * value (not passed to a function, not a getline target, etc.).
+		 * The propagation stops at the end of the BEGIN block because
+		 * name=value arguments in the list of input files may change the
+		 * variable afterward. For the same reason, scripts using getline
+		 * (which may consume such arguments) or extensions are left as is.
+		 */
+		private void propagateConstants() {
+			if (containsASTType(this, new Class<?>[] {Getline_AST.class, Extension_AST.class})) {
+				return;
+			}
+			Map<ID_AST, Integer> writes = new HashMap<ID_AST, Integer>();
+			countWrites(this, writes);
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 == null || !(ptr.ast1.ast1 instanceof Begin_AST)) {
+					continue;
+				}
+				AST stmts = ptr.ast1.ast2;
+				while (stmts != null) {
+					AST stmt;
+					AST rest;
+					if (stmts instanceof STATEMENTLIST_AST) {
+						stmt = stmts.ast1;
+						rest = stmts.ast2;
+					} else {
+						stmt = stmts;
+						rest = null;
+					}
+					if (rest != null
+							&& stmt instanceof ExpressionStatement_AST
+							&& stmt.ast1 instanceof AssignmentExpression_AST
+							&& ((AssignmentExpression_AST) stmt.ast1).op == _EQUALS_
+							&& stmt.ast1.ast1 instanceof ID_AST) {
+						ID_AST id_ast = (ID_AST) stmt.ast1.ast1;
+						Object value = constantValue(stmt.ast1.ast2);
+						if (value != null
+								&& id_ast.is_global
+								&& SPECIAL_VAR_NAMES.get(id_ast.id) == null
+								&& Integer.valueOf(1).equals(writes.get(id_ast))) {
+							replaceReads(rest, id_ast, value);
+						}
+					}
+					stmts = rest;
+				}
+			}
+		}
+
+		/**
+		 * Drops the definitions of the functions that cannot be called
+		 * from any rule, directly or through other functions.
+		 */
+		private void removeUncalledFunctions() {
+			Map<String, FunctionDef_AST> uncalled = new HashMap<String, FunctionDef_AST>();
+			Set<String> called = new HashSet<String>();
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST) {
+					uncalled.put(((FunctionDef_AST) ptr.ast1).id, (FunctionDef_AST) ptr.ast1);
+				} else {
+					collectCalledFunctions(ptr.ast1, called);
+				}
+			}
+			while (!called.isEmpty()) {
+				Set<String> newly_called = new HashSet<String>();
+				for (String name : called) {
+					FunctionDef_AST function_def = uncalled.remove(name);
+					if (function_def != null) {
+						collectCalledFunctions(function_def.ast2, newly_called);
+					}
+				}
+				called = newly_called;
+			}
+			// the rule list loops in populateTuples() skip null entries
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST && uncalled.containsKey(((FunctionDef_AST) ptr.ast1).id)) {
+					ptr.ast1 = null;
+				}
+			}
+		}
+
+		/**
+		 * Finds the functions whose calls are replaced by their body,
+		 * which must not call themselves, directly or not, and
+		 * reserves the slots of their locals in every scope.
+		 */
+		private void findInlineFunctions() {
+			Map<String, FunctionDef_AST> functions = new HashMap<String, FunctionDef_AST>();
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST) {
+					functions.put(((FunctionDef_AST) ptr.ast1).id, (FunctionDef_AST) ptr.ast1);
+				}
+			}
+			inline_functions = new HashSet<FunctionDef_AST>();
+			for (FunctionDef_AST function_def : functions.values()) {
+				if (isInlinable(function_def) && !isRecursive(function_def, functions)) {
+					inline_functions.add(function_def);
+				}
+			}
+			num_inline_globals = 0;
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST) {
+					((FunctionDef_AST) ptr.ast1).inline_slots = inlineSlots(ptr.ast1.ast2);
+				} else {
+					num_inline_globals = Math.max(num_inline_globals, inlineSlots(ptr.ast1));
+				}
+			}
+		}
+
+		/**
+		 * Finds the functions whose results only depend on their parameters,
+		 * which the AVM may then cache: starting with all the functions
+		 * with scalar locals only, a function is dropped as soon as its body
+		 * is not pure, which in turn makes the functions calling it impure.
+		 * This is iterated until nothing changes.
+		 */
+		private void findPureFunctions() {
+			Map<String, FunctionDef_AST> functions = new HashMap<String, FunctionDef_AST>();
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST && !((FunctionDef_AST) ptr.ast1).hasArrayLocal()) {
+					functions.put(((FunctionDef_AST) ptr.ast1).id, (FunctionDef_AST) ptr.ast1);
+				}
+			}
+			Set<String> pure_functions = new HashSet<String>(functions.keySet());
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (Iterator<String> it = pure_functions.iterator(); it.hasNext();) {
+					if (!isPure(functions.get(it.next()).ast2, pure_functions)) {
+						it.remove();
+						changed = true;
+					}
+				}
+			}
+			pure_function_names = pure_functions;
+		}
+
+		private boolean isRecursive(FunctionDef_AST function_def, Map<String, FunctionDef_AST> functions) {
+			Set<String> reached = new HashSet<String>();
+			Set<String> called = new HashSet<String>();
+			collectCalledFunctions(function_def.ast2, called);
+			while (!called.isEmpty()) {
+				if (called.contains(function_def.id)) {
+					return true;
+				}
+				Set<String> newly_called = new HashSet<String>();
+				for (String name : called) {
+					if (reached.add(name) && functions.containsKey(name)) {
+						collectCalledFunctions(functions.get(name).ast2, newly_called);
+					}
+				}
+				called = newly_called;
+			}
+			return false;
+		}
+
+		/**
+		 * Finds the functions whose whole body compiles to nodes: starting
+		 * with all of them, a function is dropped as soon as its body does
+		 * not compile, which in turn prevents the calls to it from compiling.
+		 * This is iterated until nothing changes.
+		 */
+		private void findNodeFunctions() {
+			node_functions = new HashSet<FunctionDef_AST>();
+			for (AST ptr = this; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1 instanceof FunctionDef_AST) {
+					node_functions.add((FunctionDef_AST) ptr.ast1);
+				}
+			}
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (Iterator<FunctionDef_AST> it = node_functions.iterator(); it.hasNext();) {
+					FunctionDef_AST function_def = it.next();
+					if (function_def.ast2 != null && !AwkParser.this.compilesToNode(function_def.ast2, function_def)) {
+						it.remove();
+						changed = true;
+					}
+				}
+			}
+		}
+
+		@Override
+		public int populateTuples(AwkTuples tuples) {
+			pushSourceLineNumber(tuples);
+
+			if (compile_nodes) {
+				findNodeFunctions();
+			}
+
+			next_address = tuples.createAddress("next_address");
+
+			Address exit_addr = tuples.createAddress("end blocks start address");
+
+			// goto start address
+			Address start_address = tuples.createAddress("start address");
+
+			tuples.setExitAddress(exit_addr);
+
+			tuples.gotoAddress(start_address);
+
+			AST ptr;
+
+			// compile functions
+
+			ptr = this;
+			while (ptr != null) {
+				if (ptr.ast1 != null && ptr.ast1.isFunction()) {
+					assert ptr.ast1 != null;
+					int ast1_count = ptr.ast1.populateTuples(tuples);
+					assert ast1_count == 0;
+				}
+
+				ptr = ptr.ast2;
+			}
+
+			// START OF MAIN BLOCK
+
+			tuples.address(start_address);
+
+			// initialze special variables
+			ID_AST nr_ast = symbol_table.getID("NR");
 			ID_AST fnr_ast = symbol_table.getID("FNR");
 			ID_AST nf_ast = symbol_table.getID("NF");
 			ID_AST fs_ast = symbol_table.getID("FS");
@@ -2479,7 +3391,9 @@ public class AwkParser {
 			// MUST BE DONE AFTER FUNCTIONS ARE COMPILED,
 			// and after special variables are made known to the symbol table
 			// (see above)!
-			tuples.setNumGlobals(symbol_table.numGlobals());
+			tuples.setNumGlobals(symbol_table.numGlobals() + num_inline_globals);
+			inline_slot = symbol_table.numGlobals();
+			inline_slot_is_global = true;
 
 			tuples.nfOffset(nf_ast.offset);
 			tuples.nrOffset(nr_ast.offset);
@@ -2503,7 +3417,7 @@ public class AwkParser {
 			// ptr.ast1 == blank rule condition (i.e.: { print })
 			while (ptr != null) {
 				if (ptr.ast1 != null && ptr.ast1.isBegin()) {
-					ptr.ast1.populateTuples(tuples);
+					ptr.ast1.populateTuplesOrNode(tuples);
 				}
 
 				ptr = ptr.ast2;
@@ -2547,7 +3461,7 @@ public class AwkParser {
 				while (ptr != null) {
 					// the first one of these is an input rule
 					if (isRule(ptr.ast1)) {
-						ptr.ast1.populateTuples(tuples);
+						ptr.ast1.populateTuplesOrNode(tuples);
 					}
 					ptr = ptr.ast2;
 				}
@@ -2571,7 +3485,7 @@ public class AwkParser {
 			ptr = this;
 			while (ptr != null) {
 				if (ptr.ast1 != null && ptr.ast1.isEnd()) {
-					ptr.ast1.populateTuples(tuples);
+					ptr.ast1.populateTuplesOrNode(tuples);
 				}
 				ptr = ptr.ast2;
 			}
@@ -2592,6 +3506,29 @@ public class AwkParser {
 			super(opt_expression, opt_rule);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return (ast1 == null || ast1.isBegin() || ast1.isEnd() || ast1.compilesToNode())
+					&& (ast2 == null || ast2.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			Nodes.Statement action;
+			if (ast2 != null) {
+				action = ast2.lineStatementNode();
+			} else if (ast1 == null || !ast1.isBegin() && !ast1.isEnd()) {
+				// display $0
+				action = Nodes.print(lineNumber(), false, new Nodes.Expression[0]);
+			} else {
+				action = Nodes.block(Collections.<Nodes.Statement>emptyList());
+			}
+			if (ast1 == null || ast1.isBegin() || ast1.isEnd()) {
+				return action;
+			}
+			return Nodes.ifElse(lineNumber(), ast1.lineNode(), action, null);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -2615,7 +3552,7 @@ public class AwkParser {
 				// (i.e., blank BEGIN/END rule)
 			} else {
 				// execute it, and leave nothing on the stack
-				int ast2_count = ast2.populateTuples(tuples);
+				int ast2_count = ast2.populateTuplesOrNode(tuples);
 				assert ast2_count == 0;
 			}
 			tuples.address(bypass_rule).nop();
@@ -2641,6 +3578,27 @@ public class AwkParser {
 			super(expr, b1, b2);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.ifElse(lineNumber(), ast1.lineNode(), optionalStatementNode(ast2), optionalStatementNode(ast3));
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object condition = constantValue(ast1);
+			if (condition == null) {
+				return this;
+			}
+			AST branch = isTrue(condition) ? ast2 : ast3;
+			return branch != null ? branch : new EmptyStatement_AST().at(this);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -2652,7 +3610,7 @@ public class AwkParser {
 			assert ast1_result == 1;
 			tuples.ifFalse(elseblock);
 			if (ast2 != null) {
-				int ast2_result = ast2.populateTuples(tuples);
+				int ast2_result = ast2.populateTuplesOrNode(tuples);
 				assert ast2_result == 0;
 			}
 			if (ast3 == null) {
@@ -2661,7 +3619,7 @@ public class AwkParser {
 				Address end = tuples.createAddress("end");
 				tuples.gotoAddress(end);
 				tuples.address(elseblock);
-				int ast3_result = ast3.populateTuples(tuples);
+				int ast3_result = ast3.populateTuplesOrNode(tuples);
 				assert ast3_result == 0;
 				tuples.address(end);
 			}
@@ -2676,6 +3634,31 @@ public class AwkParser {
 			super(a1, a2, a3);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.ternary(ast1.lineNode(), ast2.lineNode(), ast3.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return ast2.isNumeric() && ast3.isNumeric();
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object condition = constantValue(ast1);
+			if (condition == null) {
+				return this;
+			}
+			return isTrue(condition) ? ast2 : ast3;
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -2713,6 +3696,26 @@ public class AwkParser {
 			super(expr, block);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.loop(lineNumber(), null, ast1.lineNode(), null, optionalStatementNode(ast2));
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object condition = constantValue(ast1);
+			if (condition != null && !isTrue(condition)) {
+				return new EmptyStatement_AST().at(this);
+			}
+			return this;
+		}
+
 		@Override
 		public Address breakAddress() {
 			assert break_address != null;
@@ -2745,7 +3748,7 @@ public class AwkParser {
 			tuples.ifFalse(break_address);
 
 			if (ast2 != null) {
-				int ast2_result = ast2.populateTuples(tuples);
+				int ast2_result = ast2.populateTuplesOrNode(tuples);
 				assert ast2_result == 0;
 			}
 
@@ -2767,6 +3770,16 @@ public class AwkParser {
 			super(block, expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.doLoop(lineNumber(), optionalStatementNode(ast1), ast2.lineNode());
+		}
+
 		@Override
 		public Address breakAddress() {
 			assert break_address != null;
@@ -2791,7 +3804,7 @@ public class AwkParser {
 			tuples.address(loop);
 
 			if (ast1 != null) {
-				int ast1_result = ast1.populateTuples(tuples);
+				int ast1_result = ast1.populateTuplesOrNode(tuples);
 				assert ast1_result == 0;
 			}
 
@@ -2822,6 +3835,17 @@ public class AwkParser {
 			super(expr1, expr2, expr3, block);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.loop(lineNumber(), optionalStatementNode(ast1), ast2 == null ? null : ast2.lineNode(),
+					optionalStatementNode(ast3), optionalStatementNode(ast4));
+		}
+
 		@Override
 		public Address breakAddress() {
 			assert break_address != null;
@@ -2862,7 +3886,7 @@ public class AwkParser {
 
 			if (ast4 != null) {
 				// post loop action
-				int ast4_result = ast4.populateTuples(tuples);
+				int ast4_result = ast4.populateTuplesOrNode(tuples);
 				assert ast4_result == 0;
 			}
 
@@ -2895,6 +3919,17 @@ public class AwkParser {
 			super(key_id_ast, array_id_ast, block);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast3 == null || ast3.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			ID_AST key_id_ast = (ID_AST) ast1;
+			return Nodes.forIn(lineNumber(), key_id_ast.offset, key_id_ast.is_global, ast2.lineNode(), optionalStatementNode(ast3));
+		}
+
 		@Override
 		public Address breakAddress() {
 			assert break_address != null;
@@ -2952,7 +3987,7 @@ public class AwkParser {
 
 			if (ast3 != null) {
 				// execute the block
-				int ast3_result = ast3.populateTuples(tuples);
+				int ast3_result = ast3.populateTuplesOrNode(tuples);
 				assert ast3_result == 0;
 			}
 			// otherwise, there is no block to execute
@@ -2969,13 +4004,22 @@ public class AwkParser {
 		}
 	}
 
-	@SuppressWarnings("unused")
 	private final class EmptyStatement_AST extends AST {
 
 		private EmptyStatement_AST() {
 			super();
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.block(Collections.<Nodes.Statement>emptyList());
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -2996,6 +4040,16 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.expression(lineNumber(), ast1.lineNode());
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3023,6 +4077,61 @@ public class AwkParser {
 			this.text = text;
 		}
 
+		@Override
+		protected boolean isNumeric() {
+			// compound assignments always compute a number
+			return ast1 instanceof ID_AST && (op != _EQUALS_ || ast2.isNumeric());
+		}
+
+		@Override
+		protected boolean compilesToNode() {
+			return ast2.compilesToNode() && lvalueCompilesToNode(ast1);
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			Nodes.Expression value = ast2.lineNode();
+			if (ast1 instanceof ID_AST) {
+				ID_AST id_ast = (ID_AST) ast1;
+				int opcode = opcode(AwkTuples._ASSIGN_, AwkTuples._PLUS_EQ_, AwkTuples._MINUS_EQ_, AwkTuples._MULT_EQ_,
+						AwkTuples._DIV_EQ_, AwkTuples._MOD_EQ_, AwkTuples._POW_EQ_);
+				return Nodes.assign(opcode, id_ast.offset, id_ast.is_global, value, id_ast.id.equals("RS"));
+			} else if (ast1 instanceof ArrayReference_AST) {
+				ID_AST id_ast = (ID_AST) ast1.ast1;
+				int opcode = opcode(AwkTuples._ASSIGN_ARRAY_, AwkTuples._PLUS_EQ_ARRAY_, AwkTuples._MINUS_EQ_ARRAY_,
+						AwkTuples._MULT_EQ_ARRAY_, AwkTuples._DIV_EQ_ARRAY_, AwkTuples._MOD_EQ_ARRAY_, AwkTuples._POW_EQ_ARRAY_);
+				return Nodes.assignArray(opcode, id_ast.offset, id_ast.is_global, value, ast1.ast2.lineNode());
+			} else {
+				int opcode = opcode(AwkTuples._ASSIGN_AS_INPUT_FIELD_, AwkTuples._PLUS_EQ_INPUT_FIELD_,
+						AwkTuples._MINUS_EQ_INPUT_FIELD_, AwkTuples._MULT_EQ_INPUT_FIELD_, AwkTuples._DIV_EQ_INPUT_FIELD_,
+						AwkTuples._MOD_EQ_INPUT_FIELD_, AwkTuples._POW_EQ_INPUT_FIELD_);
+				return Nodes.assignField(opcode, value, ast1.ast1.lineNode());
+			}
+		}
+
+		/**
+		 * @return the tuple of the operator, among the specified ones
+		 */
+		private int opcode(int assign, int plus_eq, int minus_eq, int mult_eq, int div_eq, int mod_eq, int pow_eq) {
+			if (op == _EQUALS_) {
+				return assign;
+			} else if (op == _PLUS_EQ_) {
+				return plus_eq;
+			} else if (op == _MINUS_EQ_) {
+				return minus_eq;
+			} else if (op == _MULT_EQ_) {
+				return mult_eq;
+			} else if (op == _DIV_EQ_) {
+				return div_eq;
+			} else if (op == _MOD_EQ_) {
+				return mod_eq;
+			} else if (op == _POW_EQ_) {
+				return pow_eq;
+			} else {
+				throw new Error("Unhandled op: " + op + " / " + text);
+			}
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + op + "/" + text + ")";
@@ -3041,7 +4150,16 @@ public class AwkParser {
 					throw new SemanticException("Cannot use " + id_ast + " as a scalar. It is an array.");
 				}
 				id_ast.setScalar(true);
-				if        (op == _EQUALS_) {
+				if (id_ast.isTypedNumber() && op != _POW_EQ_) {
+					// (there is no typed ^=, computed with doubles anyway)
+					int opcode = opcode(AwkTuples._ASSIGN_NUM_, AwkTuples._PLUS_EQ_NUM_, AwkTuples._MINUS_EQ_NUM_,
+							AwkTuples._MULT_EQ_NUM_, AwkTuples._DIV_EQ_NUM_, AwkTuples._MOD_EQ_NUM_, AwkTuples._POW_EQ_);
+					if (opcode == AwkTuples._ASSIGN_NUM_) {
+						tuples.assignNumber(id_ast.offset, id_ast.is_global);
+					} else {
+						tuples.assignOpNumber(opcode, id_ast.offset, id_ast.is_global);
+					}
+				} else if (op == _EQUALS_) {
 					// Expected side effect:
 					// Upon assignment, if the var is RS, reapply RS to input streams.
 					tuples.assign(id_ast.offset, id_ast.is_global);
@@ -3130,6 +4248,21 @@ public class AwkParser {
 			super(arg, arr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode() && ast2 instanceof ID_AST;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.tuple(AwkTuples._IS_IN_, ast1.lineNode(), ast2.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3171,6 +4304,84 @@ public class AwkParser {
 			this.text = text;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			Nodes.Expression left = ast1.lineNode();
+			Nodes.Expression right = ast2.lineNode();
+			// the same tuples as populateTuples()
+			if (ast1.isNumeric() && ast2.isNumeric() && op != _MATCHES_ && op != _NOT_MATCHES_) {
+				if (op == _EQ_) {
+					return Nodes.compare(AwkTuples._CMP_EQ_NUM_, false, left, right);
+				} else if (op == _NE_) {
+					return Nodes.compare(AwkTuples._CMP_NE_NUM_, false, left, right);
+				} else if (op == _LT_) {
+					return Nodes.compare(AwkTuples._CMP_LT_NUM_, false, left, right);
+				} else if (op == _GT_) {
+					return Nodes.compare(AwkTuples._CMP_GT_NUM_, false, left, right);
+				} else if (op == _LE_) {
+					return Nodes.compare(AwkTuples._CMP_LE_NUM_, false, left, right);
+				} else {
+					return Nodes.compare(AwkTuples._CMP_GE_NUM_, false, left, right);
+				}
+			} else if (op == _EQ_) {
+				return Nodes.compare(AwkTuples._CMP_EQ_, false, left, right);
+			} else if (op == _NE_) {
+				return Nodes.compare(AwkTuples._CMP_EQ_, true, left, right);
+			} else if (op == _LT_) {
+				return Nodes.compare(AwkTuples._CMP_LT_, false, left, right);
+			} else if (op == _GT_) {
+				return Nodes.compare(AwkTuples._CMP_GT_, false, left, right);
+			} else if (op == _LE_) {
+				return Nodes.compare(AwkTuples._CMP_GT_, true, left, right);
+			} else if (op == _GE_) {
+				return Nodes.compare(AwkTuples._CMP_LT_, true, left, right);
+			} else if (op == _MATCHES_) {
+				return Nodes.matches(false, left, right);
+			} else if (op == _NOT_MATCHES_) {
+				return Nodes.matches(true, left, right);
+			} else {
+				throw new Error("Unhandled op: " + op + " / " + text);
+			}
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object o1 = constantValue(ast1);
+			Object o2 = constantValue(ast2);
+			if (o1 == null || o2 == null) {
+				return this;
+			}
+			boolean result;
+			if (op == _EQ_) {
+				result = JRT.compare2(o1, o2, 0);
+			} else if (op == _NE_) {
+				result = !JRT.compare2(o1, o2, 0);
+			} else if (op == _LT_) {
+				result = JRT.compare2(o1, o2, -1);
+			} else if (op == _GT_) {
+				result = JRT.compare2(o1, o2, 1);
+			} else if (op == _LE_) {
+				result = !JRT.compare2(o1, o2, 1);
+			} else if (op == _GE_) {
+				result = !JRT.compare2(o1, o2, -1);
+			} else {
+				// regular expression matches are left to the runtime
+				return this;
+			}
+			return literal(Integer.valueOf(result ? 1 : 0), this);
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + op + "/" + text + ")";
@@ -3190,7 +4401,22 @@ public class AwkParser {
 
 			// 2 values on the stack
 
-			if (op == _EQ_) {
+			if (ast1.isNumeric() && ast2.isNumeric() && op != _MATCHES_ && op != _NOT_MATCHES_) {
+				// typed comparison of two numbers
+				if (op == _EQ_) {
+					tuples.cmpEqNum();
+				} else if (op == _NE_) {
+					tuples.cmpNeNum();
+				} else if (op == _LT_) {
+					tuples.cmpLtNum();
+				} else if (op == _GT_) {
+					tuples.cmpGtNum();
+				} else if (op == _LE_) {
+					tuples.cmpLeNum();
+				} else {
+					tuples.cmpGeNum();
+				}
+			} else if (op == _EQ_) {
 				tuples.cmpEq();
 			} else if (op == _NE_) {
 				tuples.cmpEq();
@@ -3233,6 +4459,45 @@ public class AwkParser {
 			this.text = text;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			if (op == _OR_) {
+				return Nodes.or(ast1.lineNode(), ast2.lineNode());
+			}
+			return Nodes.and(ast1.lineNode(), ast2.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object lhs = constantValue(ast1);
+			if (lhs == null) {
+				return this;
+			}
+			if (op == _OR_ && isTrue(lhs)) {
+				return literal(Integer.valueOf(1), this);
+			}
+			if (op == _AND_ && !isTrue(lhs)) {
+				return literal(Integer.valueOf(0), this);
+			}
+			// the result is the truth value of the right operand
+			Object rhs = constantValue(ast2);
+			if (rhs == null) {
+				return this;
+			}
+			return literal(Integer.valueOf(isTrue(rhs) ? 1 : 0), this);
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + op + "/" + text + ")";
@@ -3281,6 +4546,67 @@ public class AwkParser {
 			this.text = text;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			int opcode;
+			if (op == _PLUS_) {
+				opcode = AwkTuples._ADD_;
+			} else if (op == _MINUS_) {
+				opcode = AwkTuples._SUBTRACT_;
+			} else if (op == _MULT_) {
+				opcode = AwkTuples._MULTIPLY_;
+			} else if (op == _DIVIDE_) {
+				opcode = AwkTuples._DIVIDE_;
+			} else if (op == _MOD_) {
+				opcode = AwkTuples._MOD_;
+			} else if (op == _POW_) {
+				opcode = AwkTuples._POW_;
+			} else {
+				throw new Error("Unhandled op: " + op + " / " + this);
+			}
+			return Nodes.arithmetic(opcode, ast1.lineNode(), ast2.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object o1 = constantValue(ast1);
+			Object o2 = constantValue(ast2);
+			if (!(o1 instanceof Number) || !(o2 instanceof Number)) {
+				return this;
+			}
+			double d2 = ((Number) o2).doubleValue();
+			// same operations as the runtime, which keep integers exact
+			Object ans;
+			if (op == _PLUS_) {
+				ans = JRT.add(o1, o2);
+			} else if (op == _MINUS_) {
+				ans = JRT.subtract(o1, o2);
+			} else if (op == _MULT_) {
+				ans = JRT.multiply(o1, o2);
+			} else if (op == _DIVIDE_ && d2 != 0) {
+				ans = JRT.divide(o1, o2);
+			} else if (op == _MOD_ && d2 != 0) {
+				ans = JRT.mod(o1, o2);
+			} else if (op == _POW_) {
+				ans = JRT.pow(o1, o2);
+			} else {
+				// division by zero is left to the runtime
+				return this;
+			}
+			return literal(ans, this);
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + op + "/" + text + ")";
@@ -3319,6 +4645,40 @@ public class AwkParser {
 			super(lhs, rhs);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.concat(ast1.lineNode(), ast2.lineNode());
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			String s1 = constantString(ast1);
+			String s2 = constantString(ast2);
+			if (s1 == null || s2 == null) {
+				return this;
+			}
+			return literal(s1 + s2, this);
+		}
+
+		/**
+		 * Converts a literal to a string, unless the conversion
+		 * depends on CONVFMT (i.e. for non-integral numbers).
+		 */
+		private String constantString(AST ast) {
+			Object value = constantValue(ast);
+			if (value instanceof Number) {
+				double d = ((Number) value).doubleValue();
+				return d == (long) d ? Long.toString((long) d) : null;
+			}
+			return value == null ? null : value.toString();
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3340,6 +4700,31 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.negate(ast1.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object value = constantValue(ast1);
+			if (!(value instanceof Number)) {
+				return this;
+			}
+			return literal(JRT.negate(value), this);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3358,6 +4743,31 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.unaryPlus(ast1.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object value = constantValue(ast1);
+			if (!(value instanceof Number)) {
+				return this;
+			}
+			return literal(JRT.unaryPlus(value), this);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3376,6 +4786,31 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.not(ast1.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			Object value = constantValue(ast1);
+			if (value == null) {
+				return this;
+			}
+			return literal(Integer.valueOf(isTrue(value) ? 0 : 1), this);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3394,6 +4829,16 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.field(ast1.lineNode());
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3412,6 +4857,20 @@ public class AwkParser {
 			super(expr_ast, next);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			List<Nodes.Expression> indexes = expressionNodes(this);
+			if (indexes.size() == 1) {
+				return indexes.get(0);
+			}
+			return Nodes.tuple(AwkTuples._APPLY_SUBSEP_, indexes.toArray(new Nodes.Expression[indexes.size()]));
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3441,6 +4900,38 @@ public class AwkParser {
 			super(statement_ast, rest);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			List<Nodes.Statement> statements = new ArrayList<Nodes.Statement>();
+			AST ptr = this;
+			while (ptr instanceof STATEMENTLIST_AST) {
+				statements.add(ptr.ast1.lineStatementNode());
+				ptr = ptr.ast2;
+			}
+			if (ptr != null) {
+				statements.add(ptr.lineStatementNode());
+			}
+			return Nodes.block(statements);
+		}
+
+		@Override
+		protected AST fold() {
+			super.fold();
+			// drop the statements which folded to nothing
+			if (ast1 instanceof EmptyStatement_AST) {
+				return ast2;
+			}
+			if (ast2 instanceof EmptyStatement_AST) {
+				return ast1;
+			}
+			return this;
+		}
+
 		/**
 		 * Recursively process statements within this statement list.
 		 * <p>
@@ -3457,10 +4948,10 @@ public class AwkParser {
 			pushSourceLineNumber(tuples);
 			// typical recursive processing of a list
 			assert ast1 != null;
-			int ast1_count = ast1.populateTuples(tuples);
+			int ast1_count = ast1.populateTuplesOrNode(tuples);
 			assert ast1_count == 0;
 			if (ast2 != null) {
-				int ast2_count = ast2.populateTuples(tuples);
+				int ast2_count = ast2.populateTuplesOrNode(tuples);
 				assert ast2_count == 0;
 			}
 			popSourceLineNumber(tuples);
@@ -3484,6 +4975,9 @@ public class AwkParser {
 		private String id;
 		private Address function_address;
 		private Address return_address;
+		private Nodes.Function function_node;
+		/** Locals after the parameters, holding those of the inlined calls */
+		private int inline_slots;
 		// to satisfy the Returnable interface
 
 		@Override
@@ -3503,6 +4997,17 @@ public class AwkParser {
 			return function_address;
 		}
 
+		/**
+		 * @return the function called by the nodes, whose body
+		 *   is set once the function is populated
+		 */
+		private Nodes.Function functionNode() {
+			if (function_node == null) {
+				function_node = new Nodes.Function(id, paramCount());
+			}
+			return function_node;
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3513,7 +5018,10 @@ public class AwkParser {
 			// annotate the tuple list
 			// (useful for compilation,
 			// not necessary for interpretation)
-			tuples.function(id, paramCount());
+			tuples.function(id, frameSize());
+
+			inline_slot = paramCount();
+			inline_slot_is_global = false;
 
 			// function_address refers to first function body statement
 			// rather than to function def opcode because during
@@ -3526,8 +5034,15 @@ public class AwkParser {
 
 			// execute the body
 			// (function body could be empty [no statements])
-			if (ast2 != null) {
-				int ast2_result = ast2.populateTuples(tuples);
+			if (node_functions != null && node_functions.contains(this)) {
+				// the whole body runs as a tree of nodes, also when called from the tuples
+				if (ast2 == null) {
+					functionNode().setBody(Nodes.block(Collections.<Nodes.Statement>emptyList()));
+				} else {
+					functionNode().setBody(ast2.populateNode(tuples, return_address));
+				}
+			} else if (ast2 != null) {
+				int ast2_result = ast2.populateTuplesOrNode(tuples);
 				assert ast2_result == 0 || ast2_result == 1;
 			}
 
@@ -3551,6 +5066,30 @@ public class AwkParser {
 			return count;
 		}
 
+		/**
+		 * @return the number of locals of a call
+		 */
+		int frameSize() {
+			return paramCount() + inline_slots;
+		}
+
+		/**
+		 * @return the variables of the parameters
+		 */
+		Collection<ID_AST> locals() {
+			Map<String, ID_AST> locals = symbol_table.local_ids.get(id);
+			return locals == null ? Collections.<ID_AST>emptyList() : locals.values();
+		}
+
+		boolean hasArrayLocal() {
+			for (ID_AST local : locals()) {
+				if (local.isArray()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		void checkActualToFormalParameters(AST actual_param_list) {
 			AST a_ptr = actual_param_list;
 			FunctionDefParamList_AST f_ptr = (FunctionDefParamList_AST) ast1;
@@ -3594,6 +5133,18 @@ public class AwkParser {
 			this.function_proxy = function_proxy;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return node_functions != null && node_functions.contains(function_proxy.function_def_ast)
+					&& (ast1 == null || ast1.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			List<Nodes.Expression> args = expressionNodes(ast1);
+			return Nodes.call(lineNumber(), function_proxy.function_def_ast.functionNode(), args.toArray(new Nodes.Expression[args.size()]));
+		}
+
 		/**
 		 * Applies several semantic checks with respect
 		 * to user-defined-function calls.
@@ -3646,13 +5197,7 @@ public class AwkParser {
 			if (!function_proxy.isDefined()) {
 				throw new SemanticException("function " + function_proxy + " not defined");
 			}
-			tuples.scriptThis();
-			int actual_param_count;
-			if (ast1 == null) {
-				actual_param_count = 0;
-			} else {
-				actual_param_count = ast1.populateTuples(tuples);
-			}
+			int actual_param_count = actualParamCount();
 			int formal_param_count = function_proxy.getFunctionParamCount();
 			if (formal_param_count < actual_param_count) {
 				throw new SemanticException("the " + function_proxy.getFunctionName() + " function"
@@ -3660,11 +5205,76 @@ public class AwkParser {
 			}
 
 			function_proxy.checkActualToFormalParameters(ast1);
-			tuples.callFunction(function_proxy, function_proxy.getFunctionName(), formal_param_count, actual_param_count);
+			if (inline_functions.contains(function_proxy.function_def_ast) && !hasArrayParameter()) {
+				populateInline(tuples, actual_param_count);
+			} else {
+				tuples.scriptThis();
+				if (ast1 != null) {
+					ast1.populateTuples(tuples);
+				}
+				tuples.callFunction(function_proxy, function_proxy.getFunctionName(),
+						function_proxy.getFunctionFrameSize(), actual_param_count);
+			}
 			popSourceLineNumber(tuples);
 			return 1;
 		}
 
+		private boolean hasArrayParameter() {
+			for (AST ptr = ast1; ptr != null; ptr = ptr.ast2) {
+				if (ptr.ast1.isArray()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Populates the body of the called function instead of a call.
+		 * The actual parameters are stored in free slots of the current
+		 * scope, where the locals of the function are moved while its
+		 * body is populated, and the value of its final
+		 * <code>return</code> statement is left on the stack.
+		 */
+		private void populateInline(AwkTuples tuples, int actual_param_count) {
+			FunctionDef_AST function_def = function_proxy.function_def_ast;
+			int base = inline_slot;
+			boolean is_global = inline_slot_is_global;
+			if (ast1 != null) {
+				ast1.populateTuples(tuples);
+			}
+			for (int i = actual_param_count - 1; i >= 0; i--) {
+				tuples.assign(base + i, is_global);
+				tuples.pop();
+			}
+			for (int i = actual_param_count; i < function_def.paramCount(); i++) {
+				// uninitialized, like in a new frame
+				tuples.deleteArray(base + i, is_global);
+			}
+
+			List<AST> statements = new ArrayList<AST>();
+			flattenStatements(function_def.ast2, statements);
+			Collection<ID_AST> locals = function_def.locals();
+			for (ID_AST local : locals) {
+				local.offset += base;
+				local.is_global = is_global;
+			}
+			inline_slot = base + function_def.paramCount();
+			try {
+				for (AST statement : statements.subList(0, statements.size() - 1)) {
+					int result = statement.populateTuplesOrNode(tuples);
+					assert result == 0;
+				}
+				int result = statements.get(statements.size() - 1).ast1.populateTuples(tuples);
+				assert result == 1;
+			} finally {
+				inline_slot = base;
+				for (ID_AST local : locals) {
+					local.offset -= base;
+					local.is_global = false;
+				}
+			}
+		}
+
 		private int actualParamCount() {
 			int cnt = 0;
 			AST ptr = ast1;
@@ -3689,6 +5299,96 @@ public class AwkParser {
 			this.f_idx = BUILTIN_FUNC_NAMES.get(id);
 		}
 
+		@Override
+		protected boolean isNumeric() {
+			return NUMERIC_BUILTIN_FUNC_NAMES.contains(id);
+		}
+
+		@Override
+		protected boolean compilesToNode() {
+			return !id.equals("exec") && (ast1 == null || ast1.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			List<Nodes.Expression> args = expressionNodes(ast1);
+			if (id.equals("sub") || id.equals("gsub")) {
+				// the same tuples as populateTuples()
+				boolean is_gsub = id.equals("gsub");
+				int opcode;
+				long offset = 0;
+				boolean is_global = false;
+				if (args.size() == 2) {
+					opcode = AwkTuples._SUB_FOR_DOLLAR_0_;
+				} else {
+					AST ptr = ast1.ast2.ast2.ast1;
+					if (ptr instanceof ID_AST) {
+						opcode = AwkTuples._SUB_FOR_VARIABLE_;
+						offset = ((ID_AST) ptr).offset;
+						is_global = ((ID_AST) ptr).is_global;
+					} else if (ptr instanceof ArrayReference_AST) {
+						opcode = AwkTuples._SUB_FOR_ARRAY_REFERENCE_;
+						offset = ((ID_AST) ptr.ast1).offset;
+						is_global = ((ID_AST) ptr.ast1).is_global;
+						args.add(ptr.ast2.lineNode());
+					} else {
+						opcode = AwkTuples._SUB_FOR_DOLLAR_REFERENCE_;
+						args.add(ptr.ast1.lineNode());
+					}
+				}
+				return Nodes.tuple(opcode, offset, is_global, is_gsub, args.toArray(new Nodes.Expression[args.size()]));
+			}
+			return Nodes.tuple(opcode(), args.toArray(new Nodes.Expression[args.size()]));
+		}
+
+		/**
+		 * @return the tuple of this function (but sub and gsub)
+		 */
+		private int opcode() {
+			switch (id) {
+				case "sprintf":
+					return AwkTuples._SPRINTF_;
+				case "close":
+					return AwkTuples._CLOSE_;
+				case "length":
+					return AwkTuples._LENGTH_;
+				case "srand":
+					return AwkTuples._SRAND_;
+				case "rand":
+					return AwkTuples._RAND_;
+				case "sqrt":
+					return AwkTuples._SQRT_;
+				case "int":
+					return AwkTuples._INTFUNC_;
+				case "log":
+					return AwkTuples._LOG_;
+				case "exp":
+					return AwkTuples._EXP_;
+				case "sin":
+					return AwkTuples._SIN_;
+				case "cos":
+					return AwkTuples._COS_;
+				case "atan2":
+					return AwkTuples._ATAN2_;
+				case "match":
+					return AwkTuples._MATCH_;
+				case "index":
+					return AwkTuples._INDEX_;
+				case "split":
+					return AwkTuples._SPLIT_;
+				case "substr":
+					return AwkTuples._SUBSTR_;
+				case "tolower":
+					return AwkTuples._TOLOWER_;
+				case "toupper":
+					return AwkTuples._TOUPPER_;
+				case "system":
+					return AwkTuples._SYSTEM_;
+				default:
+					throw new NotImplementedError("builtin: " + id);
+			}
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -3954,6 +5654,11 @@ public class AwkParser {
 			super(expr, rest);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return childrenCompileToNode();
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4033,20 +5738,62 @@ public class AwkParser {
 		}
 		private boolean is_array = false;
 		private boolean is_scalar = false;
+		private boolean is_numeric = false;
 		@Override
 		public String toString() {
 			return super.toString() + " (" + id + ")";
 		}
 
+		@Override
+		protected boolean isNumeric() {
+			return is_numeric;
+		}
+
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			// like the tuples of this reference, even if a later use
+			// within the statement found the variable to be an array
+			Deque<Boolean> dereferences = node_dereferences.get(this);
+			Boolean as_array = dereferences == null ? null : dereferences.poll();
+			return Nodes.variable(offset, is_global, as_array == null ? isArray() : as_array);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
 			assert offset != AVM.NULL_OFFSET : "offset = " + offset + " for " + this;
-			tuples.dereference(offset, isArray(), is_global);
+			if (within_node) {
+				Deque<Boolean> dereferences = node_dereferences.get(this);
+				if (dereferences == null) {
+					dereferences = new ArrayDeque<Boolean>();
+					node_dereferences.put(this, dereferences);
+				}
+				dereferences.add(isArray());
+			}
+			if (isTypedNumber()) {
+				tuples.dereferenceNumber(offset, is_global);
+			} else {
+				tuples.dereference(offset, isArray(), is_global);
+			}
 			popSourceLineNumber(tuples);
 			return 1;
 		}
 
+		/**
+		 * @return whether the variable is read and assigned with the typed
+		 *   tuples (like {@link AwkTuples#_DEREFERENCE_NUM_}), which keep
+		 *   its numbers unboxed; not the special variables, which the
+		 *   runtime reads too
+		 */
+		private boolean isTypedNumber() {
+			return is_numeric && !isArray() && SPECIAL_VAR_NAMES.get(id) == null;
+		}
+
 		@Override
 		public final boolean isArray() {
 			return is_array;
@@ -4072,6 +5819,16 @@ public class AwkParser {
 			super(id_ast, idx_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast2.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.arrayElement(ast1.lineNode(), ast2.lineNode());
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + ast1 + " [...])";
@@ -4102,6 +5859,21 @@ public class AwkParser {
 			this.I = I;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.constant(I);
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + I + ")";
@@ -4133,6 +5905,21 @@ public class AwkParser {
 			}
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.constant(D);
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + D + ")";
@@ -4160,6 +5947,16 @@ public class AwkParser {
 			this.S = str;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.constant(S);
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + S + ")";
@@ -4183,6 +5980,16 @@ public class AwkParser {
 			this.regexp_str = regexp_str;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return true;
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.regexp(regexp_str);
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + regexp_str + ")";
@@ -4224,6 +6031,21 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.tuple(AwkTuples._CAST_INT_, ast1.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4241,6 +6063,21 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.tuple(AwkTuples._CAST_DOUBLE_, ast1.lineNode());
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			return true;
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4258,6 +6095,16 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return Nodes.tuple(AwkTuples._CAST_STRING_, ast1.lineNode());
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4307,6 +6154,22 @@ public class AwkParser {
 			super(symbol_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return lvalueCompilesToNode(ast1);
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return incrementNode(ast1, 1, true);
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			// $x is pushed back as a field (i.e. a string)
+			return !(ast1 instanceof DollarExpression_AST);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4357,6 +6220,22 @@ public class AwkParser {
 			super(symbol_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return lvalueCompilesToNode(ast1);
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return incrementNode(ast1, -1, true);
+		}
+
+		@Override
+		protected boolean isNumeric() {
+			// $x is pushed back as a field (i.e. a string)
+			return !(ast1 instanceof DollarExpression_AST);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4405,6 +6284,16 @@ public class AwkParser {
 			super(symbol_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return lvalueCompilesToNode(ast1);
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return incrementNode(ast1, 1, false);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4442,6 +6331,16 @@ public class AwkParser {
 			super(symbol_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return lvalueCompilesToNode(ast1);
+		}
+
+		@Override
+		protected Nodes.Expression expressionNode() {
+			return incrementNode(ast1, -1, false);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4482,6 +6381,18 @@ public class AwkParser {
 			this.output_token = output_token;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			// only to the standard output
+			return ast2 == null && (ast1 == null || ast1 instanceof FunctionCallParamList_AST && ast1.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			List<Nodes.Expression> args = expressionNodes(ast1);
+			return Nodes.print(lineNumber(), false, args.toArray(new Nodes.Expression[args.size()]));
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4613,6 +6524,18 @@ public class AwkParser {
 			this.output_token = output_token;
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			// only to the standard output
+			return ast2 == null && (ast1 == null || ast1 instanceof FunctionCallParamList_AST && ast1.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			List<Nodes.Expression> args = expressionNodes(ast1);
+			return Nodes.print(lineNumber(), true, args.toArray(new Nodes.Expression[args.size()]));
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4718,6 +6641,18 @@ public class AwkParser {
 			super(expr);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			// only within a function compiled as a whole
+			return node_function != null && searchFor(Returnable.class) == node_function
+					&& (ast1 == null || ast1.compilesToNode());
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.returnFromFunction(lineNumber(), ast1 == null ? null : ast1.lineNode());
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4763,6 +6698,21 @@ public class AwkParser {
 			super(symbol_ast);
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			return ast1 instanceof ID_AST || ast1 instanceof ArrayReference_AST && ast1.ast2.compilesToNode();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			if (ast1 instanceof ArrayReference_AST) {
+				ID_AST id_ast = (ID_AST) ast1.ast1;
+				return Nodes.delete(lineNumber(), id_ast.offset, id_ast.is_global, ast1.ast2.lineNode());
+			}
+			ID_AST id_ast = (ID_AST) ast1;
+			return Nodes.delete(lineNumber(), id_ast.offset, id_ast.is_global, null);
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4798,6 +6748,18 @@ public class AwkParser {
 
 	private class BreakStatement_AST extends AST {
 
+		@Override
+		protected boolean compilesToNode() {
+			// only within a loop compiled too
+			AST breakable = searchFor(Breakable.class);
+			return breakable != null && breakable.isWithinNodeRoot();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.breakLoop();
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4888,6 +6850,18 @@ public class AwkParser {
 			super();
 		}
 
+		@Override
+		protected boolean compilesToNode() {
+			// only within a loop compiled too
+			AST continueable = searchFor(Continueable.class);
+			return continueable != null && continueable.isWithinNodeRoot();
+		}
+
+		@Override
+		protected Nodes.Statement statementNode() {
+			return Nodes.continueLoop();
+		}
+
 		@Override
 		public int populateTuples(AwkTuples tuples) {
 			pushSourceLineNumber(tuples);
@@ -4938,6 +6912,10 @@ public class AwkParser {
 			return function_def_ast.paramCount();
 		}
 
+		private int getFunctionFrameSize() {
+			return function_def_ast.frameSize();
+		}
+
 		@Override
 		public String toString() {
 			return super.toString() + " (" + id + ")";
@@ -4967,6 +6945,7 @@ public class AwkParser {
 			tuples.addGlobalVariableNameToOffsetMapping(varname, id_ast.offset, id_ast.is_array);
 		}
 		tuples.setFunctionNameSet(symbol_table.function_proxies.keySet());
+		tuples.setPureFunctionNameSet(pure_function_names);
 	}
 
 	private class AwkSymbolTableImpl {
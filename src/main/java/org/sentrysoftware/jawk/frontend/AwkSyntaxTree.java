@@ -56,6 +56,17 @@ public interface AwkSyntaxTree {
 	 */
 	void semanticAnalysis();
 
+	/**
+	 * Simplifies the abstract syntax tree before the
+	 * tuples are populated: constant expressions are folded,
+	 * unreachable statements and functions that are never
+	 * called are removed, and literals assigned once in a
+	 * BEGIN block are propagated within that block.
+	 * <p>
+	 * Must be called after semanticAnalysis().
+	 */
+	void optimize();
+
 	/**
 	 * Appends tuples to the AwkTuples list
 	 * for this abstract syntax tree node. Subclasses
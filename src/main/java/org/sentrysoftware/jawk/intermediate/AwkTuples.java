@@ -31,10 +31,14 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.sentrysoftware.jawk.util.AwkLogger;
 import org.sentrysoftware.jawk.util.LinkedListStackImpl;
@@ -91,11 +95,26 @@ public class AwkTuples implements Serializable {
 		}
 	}
 
-	private class PositionImpl implements PositionForInterpretation, PositionForCompilation {
-		// index within the queue
+	/**
+	 * Position within the dense encoding of the tuples
+	 * (see {@link #encode()}).
+	 * <p>
+	 * The tuple index remains the public notion of position
+	 * (for jumps, return addresses, etc.), while <code>pc</code>
+	 * is the offset of the current tuple in <code>code</code>.
+	 */
+	private final class PositionImpl implements PositionForInterpretation, PositionForCompilation {
 
+		private final int[] code = AwkTuples.this.code;
+		private final int[] offsets = code_offsets;
+		private final Object[] constants = AwkTuples.this.constants;
+		private final Address[] addresses = AwkTuples.this.addresses;
+		private final int size = offsets.length - 1;
+
+		// index within the queue
 		private int idx = 0;
-		private Tuple tuple = queue.isEmpty() ? null : queue.get(idx); // current tuple
+		// offset of the current tuple within the code
+		private int pc = 0;
 
 		@Override
 		public int index() {
@@ -104,100 +123,235 @@ public class AwkTuples implements Serializable {
 
 		@Override
 		public boolean isEOF() {
-			return idx >= queue.size();
+			return idx >= size;
 		}
 
 		@Override
 		public void next() {
-			assert tuple != null;
-			++idx;
-			tuple = tuple.getNext();
-			assert queue.size() == idx || queue.get(idx) == tuple;
+			pc = offsets[++idx];
 		}
 
 		@Override
 		public void jump(Address address) {
-			tuple = queue.get(idx = address.index());
+			jump(address.index());
+		}
+
+		@Override
+		public void jump(int idx) {
+			// jumping right past the last tuple is how compiled code ends the program
+			pc = offsets[this.idx = idx];
 		}
 
 		@Override
 		public String toString() {
-			return "[" + idx + "]-->" + tuple.toString();
+			return "[" + idx + "]-->" + (idx < size ? tupleString(idx) : "EOF");
 		}
 
 		@Override
 		public int opcode() {
-			return tuple.getOpcode();
+			return code[pc];
 		}
 
 		@Override
 		public long intArg(int arg_idx) {
-			Class<?> c = tuple.getTypes()[arg_idx];
-			if (c == Long.class) {
-				return tuple.getInts()[arg_idx];
-			}
-			throw new Error("Invalid arg type: " + c + ", arg_idx = " + arg_idx + ", tuple = " + tuple);
+			return code[pc + ARGS + arg_idx];
 		}
 
 		@Override
 		public boolean boolArg(int arg_idx) {
-			Class<?> c = tuple.getTypes()[arg_idx];
-			if (c == Boolean.class) {
-				return tuple.getBools()[arg_idx];
-			}
-			throw new Error("Invalid arg type: " + c + ", arg_idx = " + arg_idx + ", tuple = " + tuple);
+			return code[pc + ARGS + arg_idx] != 0;
 		}
 
 		@Override
 		public Object arg(int arg_idx) {
-			Class<?> c = tuple.getTypes()[arg_idx];
-			if (c == Long.class) {
-				return tuple.getInts()[arg_idx];
-			}
-			if (c == Double.class) {
-				return tuple.getDoubles()[arg_idx];
-			}
-			if (c == String.class) {
-				return tuple.getStrings()[arg_idx];
-			}
-			if (c == Address.class) {
-				assert arg_idx == 0;
-				return tuple.getAddress();
-			}
-			throw new Error("Invalid arg type: " + c + ", arg_idx = " + arg_idx + ", tuple = " + tuple);
+			return constants[code[pc + ARGS + arg_idx]];
 		}
 
 		@Override
 		public Address addressArg() {
-			assert tuple.getAddress() != null || tuple.getHasFuncAddr() != null : "tuple.address = " + tuple.getAddress() + ", tuple.has_func_addr = " + tuple.getHasFuncAddr();
-			if (tuple.getAddress() == null) {
-				tuple.setAddress(tuple.getHasFuncAddr().getFunctionAddress());
-			}
-			return tuple.getAddress();
+			return addresses[idx];
 		}
 
 		@Override
 		public Class<?> classArg() {
-			//Tuple tuple = queue.get(idx);
-			assert tuple.getCls() != null;
-			return tuple.getCls();
+			return (Class<?>) constants[code[pc + ARGS]];
 		}
 
 		@Override
 		public int lineNumber() {
-			assert tuple.getLineno() != -1 : "The line number should have been set by queue.add(), but was not.";
-			return tuple.getLineno();
+			return code[pc + LINENO] & LINENO_MASK;
 		}
 
 		@Override
 		public int current() {
 			return idx;
 		}
+	}
 
-		@Override
-		public void jump(int idx) {
-			tuple = queue.get(this.idx = idx);
+	/** Offset of the line number within an encoded tuple */
+	private static final int LINENO = 1;
+	/** Offset of the first argument within an encoded tuple */
+	private static final int ARGS = 2;
+
+	/**
+	 * The line number takes the low bits of its slot; the top byte
+	 * holds the kind of each argument, 2 bits per argument, for the dumps
+	 */
+	private static final int KINDS_SHIFT = 24;
+	private static final int LINENO_MASK = (1 << KINDS_SHIFT) - 1;
+	private static final int KIND_INT = 0;
+	private static final int KIND_BOOLEAN = 1;
+	private static final int KIND_ADDRESS = 2;
+	private static final int KIND_CONSTANT = 3;
+
+	/**
+	 * The tuples, encoded as <code>{opcode, line number, arguments...}</code>.
+	 * Booleans, addresses and integers are stored inline; all other
+	 * arguments (and the constants pushed by <code>_PUSH_</code>)
+	 * are indexes in <code>constants</code>, where the numbers are
+	 * already boxed and the <code>_REGEXP_</code> literals already compiled.
+	 * <p>
+	 * Once encoded, the tuples only exist in this form, which is also
+	 * what is dumped and written to the intermediate files.
+	 */
+	private int[] code;
+	/** Offset of each tuple within <code>code</code>, plus the code length */
+	private int[] code_offsets;
+	/** Constant pool of the encoded tuples */
+	private Object[] constants;
+	/**
+	 * Address argument of each tuple, with the function addresses
+	 * already resolved by {@link Tuple#touch(java.util.List)}
+	 */
+	private Address[] addresses;
+	/**
+	 * The opcodes as encoded, once {@link #patchOpcode(int, int)}
+	 * replaced one of them (<code>null</code> until then)
+	 */
+	private transient int[] original_opcodes;
+
+	/**
+	 * Encodes the tuples in a single <code>int</code> array and a constant pool,
+	 * which is what the positions returned by {@link #top()} walk through.
+	 * This keeps the interpreter away from the Tuple object graph, and
+	 * from checking the type of each argument it reads. The Tuple objects
+	 * are released: no more tuples can be added afterward.
+	 */
+	private void encode() {
+		int length = 0;
+		for (Tuple tuple : queue) {
+			length += ARGS + tuple.argCount();
+		}
+		int[] new_code = new int[length];
+		int[] new_offsets = new int[queue.size() + 1];
+		Address[] new_addresses = new Address[queue.size()];
+		List<Object> pool = new ArrayList<Object>();
+		Map<Object, Integer> pool_indexes = new HashMap<Object, Integer>();
+		int pc = 0;
+		for (int i = 0; i < queue.size(); i++) {
+			Tuple tuple = queue.get(i);
+			new_offsets[i] = pc;
+			new_addresses[i] = tuple.getAddress();
+			if (tuple.getLineno() < 0 || tuple.getLineno() > LINENO_MASK) {
+				throw new Error("Line number of " + tuple + " is out of range: " + tuple.getLineno());
+			}
+			int kinds = 0;
+			new_code[pc] = tuple.getOpcode();
+			Class<?>[] types = tuple.getTypes();
+			for (int arg_idx = 0; arg_idx < tuple.argCount(); arg_idx++) {
+				int value;
+				int kind = KIND_INT;
+				Class<?> type = types[arg_idx];
+				if (type == Boolean.class) {
+					value = tuple.getBools()[arg_idx] ? 1 : 0;
+					kind = KIND_BOOLEAN;
+				} else if (type == Address.class) {
+					value = tuple.getAddress().index();
+					kind = KIND_ADDRESS;
+				} else if (type == Long.class && !isConstantArg(tuple.getOpcode(), arg_idx)) {
+					long l = tuple.getInts()[arg_idx];
+					if (l != (int) l) {
+						throw new Error("Argument " + arg_idx + " of " + tuple + " is out of range");
+					}
+					value = (int) l;
+				} else {
+					Object constant;
+					if (type == Long.class) {
+						constant = Long.valueOf(tuple.getInts()[arg_idx]);
+					} else if (type == Double.class) {
+						constant = Double.valueOf(tuple.getDoubles()[arg_idx]);
+					} else if (type == String.class) {
+						constant = tuple.getStrings()[arg_idx];
+					} else if (type == Class.class) {
+						constant = tuple.getCls();
+					} else {
+						throw new Error("Unknown param type (" + arg_idx + "): " + type);
+					}
+					Integer pool_idx;
+					if (tuple.getOpcode() == _REGEXP_) {
+						// regular expression literals are compiled once and for all
+						pool_idx = pool.size();
+						pool.add(compileRegexp((String) constant));
+					} else if ((pool_idx = pool_indexes.get(constant)) == null) {
+						// Long and Double never equal each other, so they can share the map
+						pool_idx = pool.size();
+						pool.add(constant);
+						pool_indexes.put(constant, pool_idx);
+					}
+					value = pool_idx;
+					kind = KIND_CONSTANT;
+				}
+				new_code[pc + ARGS + arg_idx] = value;
+				kinds |= kind << (2 * arg_idx);
+			}
+			new_code[pc + LINENO] = tuple.getLineno() | kinds << KINDS_SHIFT;
+			pc += ARGS + tuple.argCount();
 		}
+		new_offsets[queue.size()] = pc;
+		code_offsets = new_offsets;
+		constants = pool.toArray();
+		addresses = new_addresses;
+		code = new_code;
+		queue = null;
+	}
+
+	/**
+	 * Formats an encoded tuple like the tuples were before being
+	 * encoded: its opcode (as generated), and its arguments.
+	 *
+	 * @param idx Index of the tuple
+	 * @return the tuple, as dumped
+	 */
+	private String tupleString(int idx) {
+		int pc = code_offsets[idx];
+		int kinds = code[pc + LINENO] >>> KINDS_SHIFT;
+		StringBuilder sb = new StringBuilder();
+		sb.append(toOpcodeString(originalOpcode(idx)));
+		for (int arg_idx = 0; pc + ARGS + arg_idx < code_offsets[idx + 1]; arg_idx++) {
+			sb.append(", ");
+			int value = code[pc + ARGS + arg_idx];
+			switch ((kinds >> (2 * arg_idx)) & 3) {
+				case KIND_BOOLEAN:
+					sb.append(value != 0);
+					break;
+				case KIND_ADDRESS:
+					sb.append(addresses[idx]);
+					break;
+				case KIND_CONSTANT:
+					Object constant = constants[value];
+					if (constant instanceof Pattern) {
+						sb.append('"').append(((Pattern) constant).pattern()).append('"');
+					} else if (constant instanceof String) {
+						sb.append('"').append(constant).append('"');
+					} else {
+						sb.append(constant);
+					}
+					break;
+				default:
+					sb.append(value);
+			}
+		}
+		return sb.toString();
 	}
 
 	// made public to access static members of AwkTuples via Java Reflection
@@ -304,12 +458,57 @@ public class AwkTuples implements Serializable {
 			types[0] = Class.class;
 		}
 
+		private Tuple(int opcode, Address address, long i2) {
+			this(opcode, address);
+			ints[1] = i2;
+			types[1] = Long.class;
+		}
+
+		private Tuple(int opcode, Address address, long i2, boolean b3, Object constant) {
+			this(opcode, address, i2);
+			bools[2] = b3;
+			types[2] = Boolean.class;
+			if (constant instanceof Long) {
+				ints[3] = (Long) constant;
+			} else if (constant instanceof Double) {
+				doubles[3] = (Double) constant;
+			} else {
+				strings[3] = (String) constant;
+			}
+			types[3] = constant.getClass();
+		}
+
+		/**
+		 * @return the value of a <code>Long</code>, <code>Double</code>
+		 *   or <code>String</code> argument
+		 */
+		private Object constantArg(int arg_idx) {
+			if (types[arg_idx] == Long.class) {
+				return ints[arg_idx];
+			} else if (types[arg_idx] == Double.class) {
+				return doubles[arg_idx];
+			} else {
+				return strings[arg_idx];
+			}
+		}
+
 		private Tuple(int opcode, String s1, String s2) {
 			this(opcode, s1);
 			strings[1] = s2;
 			types[1] = String.class;
 		}
 
+		/**
+		 * @return the number of arguments of this tuple
+		 */
+		private int argCount() {
+			int count = 0;
+			while (count < types.length && types[count] != null) {
+				++count;
+			}
+			return count;
+		}
+
 		private boolean hasNext() {
 			return (next != null);
 		}
@@ -1826,11 +2025,311 @@ public class AwkTuples implements Serializable {
 	 */
 	public static final int _POSTDEC_ = 389;	// 0 -> x
 
+	/**
+	 * Pushes an input field, whose number is a constant
+	 * (fuses <code>_PUSH_</code> and <code>_GET_INPUT_FIELD_</code>,
+	 * see {@link #optimize()}).
+	 * <p>
+	 * Argument: the field number
+	 *
+	 * <p>
+	 * Stack before: ...<br/>
+	 * Stack after: x ...
+	 *
+	 */
+	public static final int _GET_INPUT_FIELD_CONST_ = 390;	// 0 -> x
+
+	/**
+	 * Compares a variable to a constant, and jumps to a specified
+	 * address if they are not equal
+	 * (fuses <code>_DEREFERENCE_</code>, <code>_PUSH_</code>,
+	 * <code>_CMP_EQ_</code> (or <code>_CMP_EQ_NUM_</code>) and <code>_IFFALSE_</code>,
+	 * see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: address<br/>
+	 * Argument 2: offset of the particular variable into the variable manager<br/>
+	 * Argument 3: whether the variable is global or local<br/>
+	 * Argument 4: the constant
+	 *
+	 * <p>
+	 * The operand stack is unaffected.
+	 *
+	 */
+	public static final int _IFFALSE_VAR_EQ_CONST_ = 391;	// 0 -> 0
+
+	/**
+	 * Pops and assigns the top of stack to a variable
+	 * (fuses <code>_ASSIGN_</code> and <code>_POP_</code>,
+	 * see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: x ...<br/>
+	 * Stack after: ...
+	 *
+	 */
+	public static final int _STORE_ = 392;	// x -> 0
+
+	/**
+	 * Adds a value to an array element
+	 * (fuses <code>_PLUS_EQ_ARRAY_</code> and <code>_POP_</code>,
+	 * see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: offset of the associative array into the variable manager<br/>
+	 * Argument 2: whether the associative array is global or local
+	 *
+	 * <p>
+	 * Stack before: array-idx value ...<br/>
+	 * Stack after: ...
+	 *
+	 */
+	public static final int _ADD_TO_ARRAY_ELEMENT_ = 393;	// x, y -> 0
+
+	/**
+	 * Increases a variable by one
+	 * (fuses <code>_DEREFERENCE_</code>, <code>_POSTINC_</code>
+	 * and <code>_POP_</code>, see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * The operand stack is unaffected.
+	 *
+	 */
+	public static final int _INC_VAR_ = 394;	// 0 -> 0
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 == x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1==x2
+	 *
+	 */
+	public static final int _CMP_EQ_NUM_ = 395;	// x2, x1 -> x1 == x2
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 != x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1!=x2
+	 *
+	 */
+	public static final int _CMP_NE_NUM_ = 396;	// x2, x1 -> x1 != x2
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 &lt; x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1&lt;x2
+	 *
+	 */
+	public static final int _CMP_LT_NUM_ = 397;	// x2, x1 -> x1 < x2
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 &lt;= x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1&lt;=x2
+	 *
+	 */
+	public static final int _CMP_LE_NUM_ = 398;	// x2, x1 -> x1 <= x2
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 &gt; x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1&gt;x2
+	 *
+	 */
+	public static final int _CMP_GT_NUM_ = 399;	// x2, x1 -> x1 > x2
+
+	/**
+	 * Compares the top two stack elements, statically typed as numbers;
+	 * pushes 1 onto the stack if x1 &gt;= x2, 0 if not
+	 * (emitted instead of the generic comparisons when the type
+	 * inference proves both operands numeric).
+	 * <p>
+	 * Stack before: x1 x2 ...<br/>
+	 * Stack after: x1&gt;=x2
+	 *
+	 */
+	public static final int _CMP_GE_NUM_ = 400;	// x2, x1 -> x1 >= x2
+
+	/**
+	 * Runs the register-based translation of the tuples starting here
+	 * (never emitted: the AVM patches the entry points of the regions it
+	 * translates with this opcode, see {@link #patchOpcode(int, int)}).
+	 * <p>
+	 * The operand stack is left as the translated tuples would leave it.
+	 *
+	 */
+	public static final int _REGISTERS_ = 401;	// ? -> ?
+
+	/**
+	 * Executes a statement compiled to a tree of nodes (see
+	 * {@link #execNode(Address)}), then jumps to the address, i.e.
+	 * right after the tuples of that same statement, which are kept
+	 * as the reference implementation but never run.
+	 * <p>
+	 * Argument 0: address to jump to<br/>
+	 * Argument 1: index of the node<br/>
+	 * Stack remains unchanged
+	 */
+	public static final int _EXEC_NODE_ = 402;	// 0 -> 0
+
+	/**
+	 * Obtains a variable statically typed as a number (see
+	 * {@link #_DEREFERENCE_}) and pushes it onto the stack, without boxing
+	 * it if the variable holds an unboxed number.
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: ...<br/>
+	 * Stack after: x ...
+	 *
+	 */
+	public static final int _DEREFERENCE_NUM_ = 403;	// 0 -> x
+
+	/**
+	 * Assigns the top-of-stack to a variable statically typed as a number
+	 * (see {@link #_ASSIGN_}): a number is kept unboxed in the variable.
+	 * The contents of the stack are unaffected.
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: x ...<br/>
+	 * Stack after: x ...
+	 *
+	 */
+	public static final int _ASSIGN_NUM_ = 404;	// x -> 0
+
+	/**
+	 * Pops and assigns the top of stack to a variable statically typed
+	 * as a number (fuses <code>_ASSIGN_NUM_</code> and <code>_POP_</code>,
+	 * see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: x ...<br/>
+	 * Stack after: ...
+	 *
+	 */
+	public static final int _STORE_NUM_ = 405;	// x -> 0
+
+	/**
+	 * Increases a variable statically typed as a number by one, in place
+	 * if it holds an unboxed number (fuses <code>_DEREFERENCE_NUM_</code>,
+	 * <code>_POSTINC_</code> and <code>_POP_</code>, see {@link #optimize()}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * The operand stack is unaffected.
+	 *
+	 */
+	public static final int _INC_VAR_NUM_ = 406;	// 0 -> 0
+
+	/**
+	 * Same as {@link #_PLUS_EQ_}, for a variable statically typed as a
+	 * number: neither the variable, nor the operand, nor the result are
+	 * boxed when they are numbers.
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: n ...<br/>
+	 * Stack after: x+n ...
+	 *
+	 */
+	public static final int _PLUS_EQ_NUM_ = 407;	// x -> x
+
+	/**
+	 * Same as {@link #_MINUS_EQ_}, for a variable statically typed as a
+	 * number (see {@link #_PLUS_EQ_NUM_}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: n ...<br/>
+	 * Stack after: x-n ...
+	 *
+	 */
+	public static final int _MINUS_EQ_NUM_ = 408;	// x -> x
+
+	/**
+	 * Same as {@link #_MULT_EQ_}, for a variable statically typed as a
+	 * number (see {@link #_PLUS_EQ_NUM_}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: n ...<br/>
+	 * Stack after: x*n ...
+	 *
+	 */
+	public static final int _MULT_EQ_NUM_ = 409;	// x -> x
+
+	/**
+	 * Same as {@link #_DIV_EQ_}, for a variable statically typed as a
+	 * number (see {@link #_PLUS_EQ_NUM_}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: n ...<br/>
+	 * Stack after: x/n ...
+	 *
+	 */
+	public static final int _DIV_EQ_NUM_ = 410;	// x -> x
+
+	/**
+	 * Same as {@link #_MOD_EQ_}, for a variable statically typed as a
+	 * number (see {@link #_PLUS_EQ_NUM_}).
+	 * <p>
+	 * Argument 1: offset of the particular variable into the variable manager<br/>
+	 * Argument 2: whether the variable is global or local
+	 *
+	 * <p>
+	 * Stack before: n ...<br/>
+	 * Stack after: x%n ...
+	 *
+	 */
+	public static final int _MOD_EQ_NUM_ = 411;	// x -> x
+
 	/**
 	 * Override add() to populate the line number for each tuple,
 	 * rather than polluting all the constructors with this assignment.
 	 */
-	private java.util.List<Tuple> queue = new ArrayList<Tuple>(100) {
+	private transient java.util.List<Tuple> queue = new ArrayList<Tuple>(100) {
 
 		private static final long serialVersionUID = -6334362156408598578L;
 
@@ -2101,6 +2600,39 @@ public class AwkTuples implements Serializable {
 		queue.add(new Tuple(_DEREFERENCE_, offset, is_array, is_global));
 	}
 
+	/**
+	 * <p>dereferenceNumber.</p>
+	 *
+	 * @param offset a int
+	 * @param is_global a boolean
+	 */
+	public void dereferenceNumber(int offset, boolean is_global) {
+		queue.add(new Tuple(_DEREFERENCE_NUM_, offset, is_global));
+	}
+
+	/**
+	 * <p>assignNumber.</p>
+	 *
+	 * @param offset a int
+	 * @param is_global a boolean
+	 */
+	public void assignNumber(int offset, boolean is_global) {
+		queue.add(new Tuple(_ASSIGN_NUM_, offset, is_global));
+	}
+
+	/**
+	 * Adds a compound assignment to a variable statically typed as a number.
+	 *
+	 * @param opcode one of {@link #_PLUS_EQ_NUM_}, {@link #_MINUS_EQ_NUM_},
+	 *   {@link #_MULT_EQ_NUM_}, {@link #_DIV_EQ_NUM_} and {@link #_MOD_EQ_NUM_}
+	 * @param offset a int
+	 * @param is_global a boolean
+	 */
+	public void assignOpNumber(int opcode, int offset, boolean is_global) {
+		assert opcode >= _PLUS_EQ_NUM_ && opcode <= _MOD_EQ_NUM_;
+		queue.add(new Tuple(opcode, offset, is_global));
+	}
+
 	/**
 	 * <p>plusEq.</p>
 	 *
@@ -2600,6 +3132,48 @@ public class AwkTuples implements Serializable {
 		queue.add(new Tuple(_CMP_GT_));
 	}
 
+	/**
+	 * <p>cmpEqNum.</p>
+	 */
+	public void cmpEqNum() {
+		queue.add(new Tuple(_CMP_EQ_NUM_));
+	}
+
+	/**
+	 * <p>cmpNeNum.</p>
+	 */
+	public void cmpNeNum() {
+		queue.add(new Tuple(_CMP_NE_NUM_));
+	}
+
+	/**
+	 * <p>cmpLtNum.</p>
+	 */
+	public void cmpLtNum() {
+		queue.add(new Tuple(_CMP_LT_NUM_));
+	}
+
+	/**
+	 * <p>cmpLeNum.</p>
+	 */
+	public void cmpLeNum() {
+		queue.add(new Tuple(_CMP_LE_NUM_));
+	}
+
+	/**
+	 * <p>cmpGtNum.</p>
+	 */
+	public void cmpGtNum() {
+		queue.add(new Tuple(_CMP_GT_NUM_));
+	}
+
+	/**
+	 * <p>cmpGeNum.</p>
+	 */
+	public void cmpGeNum() {
+		queue.add(new Tuple(_CMP_GE_NUM_));
+	}
+
 	/**
 	 * <p>matches.</p>
 	 */
@@ -3012,6 +3586,41 @@ public class AwkTuples implements Serializable {
 		queue.add(new Tuple(_CAST_STRING_));
 	}
 
+	/**
+	 * Adds an {@link #_EXEC_NODE_} tuple, for a node which the caller
+	 * provides with {@link #setNode(int, Object)} once the tuples of the
+	 * statement are populated, and which the AVM then runs instead.
+	 * <p>
+	 * The nodes are objects of the backend (hence the lack of typing)
+	 * and are not serialized: intermediate files are written without them.
+	 *
+	 * @param address Address of the tuple following the statement
+	 * @return the index of the node
+	 */
+	public int execNode(Address address) {
+		queue.add(new Tuple(_EXEC_NODE_, address, nodes.size()));
+		nodes.add(null);
+		return nodes.size() - 1;
+	}
+
+	/**
+	 * Provides the node of an {@link #_EXEC_NODE_} tuple.
+	 *
+	 * @param node_idx Index returned by {@link #execNode(Address)}
+	 * @param node The node
+	 */
+	public void setNode(int node_idx, Object node) {
+		nodes.set(node_idx, node);
+	}
+
+	/**
+	 * @return the nodes run by the {@link #_EXEC_NODE_} tuples, by index
+	 */
+	public List<Object> getNodes() {
+		// none in the tuples read from an intermediate file
+		return nodes == null ? Collections.emptyList() : nodes;
+	}
+
 	/**
 	 * <p>scriptThis.</p>
 	 */
@@ -3036,27 +3645,109 @@ public class AwkTuples implements Serializable {
 	 * @param ps a {@link java.io.PrintStream} object
 	 */
 	public void dump(PrintStream ps) {
+		if (code == null) {
+			encode();
+		}
 		ps.println("(" + version_manager + ")");
 		ps.println();
-		for (int i = 0; i < queue.size(); i++) {
+		for (int i = 0; i < size(); i++) {
 			Address address = address_indexes.get(i);
 			if (address == null) {
-				ps.println(i + " : " + queue.get(i));
+				ps.println(i + " : " + tupleString(i));
 			} else {
-				ps.println(i + " : [" + address + "] : " + queue.get(i));
+				ps.println(i + " : [" + address + "] : " + tupleString(i));
 			}
 		}
 	}
 
+	/**
+	 * Writes the tuples in their encoded form, encoding them first if needed.
+	 *
+	 * @param oos Stream to write to
+	 * @throws IOException upon an IO error
+	 */
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		if (code == null) {
+			encode();
+		}
+		oos.defaultWriteObject();
+	}
+
+	/**
+	 * @return whether the specified argument is a constant to push
+	 *   (or compare to), rather than an integer parameter of the opcode
+	 */
+	private static boolean isConstantArg(int opcode, int arg_idx) {
+		return opcode == _PUSH_ || (opcode == _IFFALSE_VAR_EQ_CONST_ && arg_idx == 3);
+	}
+
+	private static Object compileRegexp(String regexp) {
+		try {
+			return Pattern.compile(regexp);
+		} catch (PatternSyntaxException pse) {
+			// report the error when (and if) the regexp is evaluated
+			return regexp;
+		}
+	}
+
 	/**
 	 * <p>top.</p>
 	 *
 	 * @return a {@link org.sentrysoftware.jawk.intermediate.Position} object
 	 */
 	public Position top() {
+		if (code == null) {
+			encode();
+		}
 		return new PositionImpl();
 	}
 
+	/**
+	 * Replaces the opcode of a tuple in the encoding walked by the
+	 * positions (the tuples themselves, as dumped or written to an
+	 * intermediate file, remain unchanged). This is how the AVM hooks
+	 * alternative implementations of some tuples into the interpreter.
+	 *
+	 * @param idx Index of the tuple
+	 * @param opcode The new opcode
+	 */
+	public void patchOpcode(int idx, int opcode) {
+		if (code == null) {
+			encode();
+		}
+		if (original_opcodes == null) {
+			original_opcodes = new int[size()];
+			for (int i = 0; i < original_opcodes.length; i++) {
+				original_opcodes[i] = code[code_offsets[i]];
+			}
+		}
+		code[code_offsets[idx]] = opcode;
+	}
+
+	/**
+	 * The opcode of a tuple as generated, which
+	 * {@link #patchOpcode(int, int)} does not change: a program run
+	 * again (by <code>exec()</code>) is translated from these.
+	 *
+	 * @param idx Index of the tuple
+	 * @return the opcode of the tuple
+	 */
+	public int originalOpcode(int idx) {
+		if (code == null) {
+			return queue.get(idx).getOpcode();
+		}
+		return original_opcodes == null ? code[code_offsets[idx]] : original_opcodes[idx];
+	}
+
+	/**
+	 * <p>size.</p>
+	 *
+	 * @return the number of tuples in the queue
+	 */
+	public int size() {
+		return code == null ? queue.size() : code_offsets.length - 1;
+	}
+
 	/**
 	 * Executed after all tuples are entered in the queue.
 	 * Its main functions are:
@@ -3078,6 +3769,213 @@ public class AwkTuples implements Serializable {
 		}
 	}
 
+	/**
+	 * Peephole optimization of the tuples, executed after {@link #postProcess()}:
+	 * <ul>
+	 * <li>Removes the <code>_NOP_</code> tuples (left by the address labels).
+	 * <li>Jumps to a <code>_GOTO_</code> go straight to its destination.
+	 * <li>Fuses the most frequent sequences of tuples into superinstructions
+	 * (see {@link #_GET_INPUT_FIELD_CONST_}, {@link #_IFFALSE_VAR_EQ_CONST_},
+	 * {@link #_STORE_}, {@link #_ADD_TO_ARRAY_ELEMENT_} and {@link #_INC_VAR_},
+	 * and their typed forms {@link #_STORE_NUM_} and {@link #_INC_VAR_NUM_}).
+	 * </ul>
+	 * Sequences are never fused over a jump target, and all addresses
+	 * are re-assigned to the new tuple indexes.
+	 */
+	public void optimize() {
+		assert code == null : "optimize() must be called before the tuples are executed";
+
+		Set<Address> addresses = new HashSet<Address>(address_indexes.values());
+		for (Tuple tuple : queue) {
+			if (tuple.getAddress() != null) {
+				addresses.add(tuple.getAddress());
+			}
+		}
+
+		// remove the NOPs
+		removeTuples(addresses, new TupleFilter() {
+			@Override
+			public int length(int idx, Set<Integer> targets) {
+				return queue.get(idx).getOpcode() == _NOP_ ? 1 : 0;
+			}
+		});
+
+		// jump threading
+		for (Tuple tuple : queue) {
+			Address address = tuple.getAddress();
+			if (address == null || tuple.getOpcode() == _CALL_FUNCTION_ || tuple.getOpcode() == _SET_EXIT_ADDRESS_) {
+				continue;
+			}
+			// bounded, in case of an infinite loop of GOTOs
+			for (int hops = 0; hops < queue.size() && address.index() < queue.size(); hops++) {
+				Tuple target = queue.get(address.index());
+				if (target.getOpcode() != _GOTO_ || target.getAddress() == address) {
+					break;
+				}
+				address = target.getAddress();
+			}
+			tuple.setAddress(address);
+		}
+
+		// superinstructions
+		removeTuples(addresses, new TupleFilter() {
+			@Override
+			public int length(int idx, Set<Integer> targets) {
+				Tuple fused = fuse(idx, targets);
+				if (fused == null) {
+					return 0;
+				}
+				int length = fusedLength(fused.getOpcode());
+				fused.lineno = queue.get(idx).getLineno();
+				queue.set(idx, fused);
+				// the fused tuple replaces the first one, and the others are removed
+				return -(length - 1);
+			}
+		});
+
+		// re-link the tuples, as postProcess() did
+		for (int i = 0; i < queue.size(); i++) {
+			queue.get(i).setNext(i + 1 < queue.size() ? queue.get(i + 1) : null);
+		}
+	}
+
+	/**
+	 * Selects the tuples to remove, starting at a given index.
+	 */
+	private interface TupleFilter {
+		/**
+		 * @param idx Index of the tuple
+		 * @param targets Indexes of the tuples that are jump targets
+		 * @return the number of tuples to remove at <code>idx</code> (positive),
+		 *   or the number of tuples to remove after <code>idx</code> (negative),
+		 *   or 0 to keep them all
+		 */
+		int length(int idx, Set<Integer> targets);
+	}
+
+	/**
+	 * Removes tuples from the queue, and re-assigns the addresses:
+	 * an address to a removed tuple now refers to the following tuple.
+	 */
+	private void removeTuples(Set<Address> addresses, TupleFilter filter) {
+		Set<Integer> targets = new HashSet<Integer>();
+		for (Address address : addresses) {
+			targets.add(address.index());
+		}
+		int size = queue.size();
+		// new index of each tuple (or of the following one, if removed)
+		int[] new_indexes = new int[size + 1];
+		List<Tuple> kept = new ArrayList<Tuple>(size);
+		int idx = 0;
+		while (idx < size) {
+			int length = filter.length(idx, targets);
+			if (length > 0) {
+				for (int i = 0; i < length; i++) {
+					new_indexes[idx++] = kept.size();
+				}
+			} else {
+				new_indexes[idx] = kept.size();
+				kept.add(queue.get(idx++));
+				for (int i = 0; i < -length; i++) {
+					new_indexes[idx++] = kept.size() - 1;
+				}
+			}
+		}
+		new_indexes[size] = kept.size();
+
+		Map<Integer, Address> new_address_indexes = new HashMap<Integer, Address>();
+		for (Address address : addresses) {
+			address.assignIndex(new_indexes[address.index()]);
+		}
+		for (Map.Entry<Integer, Address> label : address_indexes.entrySet()) {
+			new_address_indexes.put(label.getValue().index(), label.getValue());
+		}
+		address_indexes = new_address_indexes;
+
+		// not using add(), which would assign new line numbers
+		for (int i = 0; i < kept.size(); i++) {
+			queue.set(i, kept.get(i));
+		}
+		while (queue.size() > kept.size()) {
+			queue.remove(queue.size() - 1);
+		}
+	}
+
+	/**
+	 * @return the superinstruction for the tuples starting at <code>idx</code>,
+	 *   or <code>null</code>
+	 */
+	private Tuple fuse(int idx, Set<Integer> targets) {
+		Tuple t1 = queue.get(idx);
+		Tuple t2 = idx + 1 < queue.size() && !targets.contains(idx + 1) ? queue.get(idx + 1) : null;
+		if (t2 == null) {
+			return null;
+		}
+		switch (t1.getOpcode()) {
+			case _PUSH_:
+				if (t2.getOpcode() == _GET_INPUT_FIELD_ && t1.getTypes()[0] == Long.class
+						&& t1.getInts()[0] >= 0 && t1.getInts()[0] <= Integer.MAX_VALUE) {
+					return new Tuple(_GET_INPUT_FIELD_CONST_, t1.getInts()[0]);
+				}
+				return null;
+			case _ASSIGN_:
+				if (t2.getOpcode() == _POP_) {
+					return new Tuple(_STORE_, t1.getInts()[0], t1.getBools()[1]);
+				}
+				return null;
+			case _ASSIGN_NUM_:
+				if (t2.getOpcode() == _POP_) {
+					return new Tuple(_STORE_NUM_, t1.getInts()[0], t1.getBools()[1]);
+				}
+				return null;
+			case _PLUS_EQ_ARRAY_:
+				if (t2.getOpcode() == _POP_) {
+					return new Tuple(_ADD_TO_ARRAY_ELEMENT_, t1.getInts()[0], t1.getBools()[1]);
+				}
+				return null;
+			case _DEREFERENCE_:
+			case _DEREFERENCE_NUM_: {
+				boolean typed = t1.getOpcode() == _DEREFERENCE_NUM_;
+				if (!typed && t1.getBools()[1]) {
+					// arrays are not concerned
+					return null;
+				}
+				Tuple t3 = idx + 2 < queue.size() && !targets.contains(idx + 2) ? queue.get(idx + 2) : null;
+				if (t3 == null) {
+					return null;
+				}
+				long offset = t1.getInts()[0];
+				boolean is_global = t1.getBools()[typed ? 1 : 2];
+				if (t2.getOpcode() == _POSTINC_ && t3.getOpcode() == _POP_
+						&& t2.getInts()[0] == offset && t2.getBools()[1] == is_global) {
+					return new Tuple(typed ? _INC_VAR_NUM_ : _INC_VAR_, offset, is_global);
+				}
+				Tuple t4 = idx + 3 < queue.size() && !targets.contains(idx + 3) ? queue.get(idx + 3) : null;
+				if (t4 != null && t2.getOpcode() == _PUSH_ && (t3.getOpcode() == _CMP_EQ_ || t3.getOpcode() == _CMP_EQ_NUM_) && t4.getOpcode() == _IFFALSE_) {
+					return new Tuple(_IFFALSE_VAR_EQ_CONST_, t4.getAddress(), offset, is_global, t2.constantArg(0));
+				}
+				return null;
+			}
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return the number of tuples replaced by the specified superinstruction
+	 */
+	private static int fusedLength(int fused_opcode) {
+		switch (fused_opcode) {
+			case _IFFALSE_VAR_EQ_CONST_:
+				return 4;
+			case _INC_VAR_:
+			case _INC_VAR_NUM_:
+				return 3;
+			default:
+				return 2;
+		}
+	}
+
 	/** Map of global variables offsets */
 	private Map<String, Integer> global_var_offset_map = new HashMap<String, Integer>();
 
@@ -3087,6 +3985,12 @@ public class AwkTuples implements Serializable {
 	/** List of user function names */
 	private Set<String> function_names = null;
 
+	/** Names of the user functions which only depend on their parameters */
+	private Set<String> pure_function_names = null;
+
+	/** Nodes run by the _EXEC_NODE_ tuples */
+	private transient List<Object> nodes = new ArrayList<Object>();
+
 	/**
 	 * Accept a {variable_name -&gt; offset} mapping such that global variables can be
 	 * assigned while processing name=value and filename command-line arguments.
@@ -3152,6 +4056,25 @@ public class AwkTuples implements Serializable {
 		return function_names;
 	}
 
+	/**
+	 * Accept the names of the pure functions from the parser: they
+	 * read and write no global variable, do no I/O and only take
+	 * scalars, so their results can be cached by the AVM.
+	 *
+	 * @param pure_function_names A set of function name strings.
+	 */
+	public void setPureFunctionNameSet(Set<String> pure_function_names) {
+		this.pure_function_names = new HashSet<String>(pure_function_names);
+	}
+
+	/**
+	 * @return the names of the pure functions (none in the
+	 *   intermediate files written by previous versions)
+	 */
+	public Set<String> getPureFunctionNameSet() {
+		return pure_function_names == null ? Collections.<String>emptySet() : pure_function_names;
+	}
+
 	/** linenumber stack ... */
 	private MyStack<Integer> lineno_stack = new LinkedListStackImpl<Integer>();
 
@@ -3198,10 +4121,11 @@ public class AwkTuples implements Serializable {
 		 * <ul>
 		 * <li> Version 1 - Initial release.
 		 * <li> Version 2 - Changes to support compilation to JVM.
+		 * <li> Version 3 - Tuples serialized in their encoded form.
 		 * </ul>
 		 *
 		 */
-		private static final int CLASS_VERSION = 2;
+		private static final int CLASS_VERSION = 3;
 
 		/**
 		 * Instance version number.
@@ -22,10 +22,13 @@ package org.sentrysoftware.jawk.jrt;
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
 
+import java.util.AbstractSet;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -41,13 +44,41 @@ import org.sentrysoftware.jawk.intermediate.UninitializedObject;
  * HashMap, depending on whether to maintain keys in
  * sorted order or not) and delegates calls to it
  * accordingly.
+ * <p>
+ * Unsorted arrays store their entries in tables without boxed keys nor
+ * nodes, as long as all their keys are integers, in a {@link LongKeyTable}
+ * (<code>"10"</code>, <code>10</code> and <code>10.0</code> being the same
+ * key), or strings, in a {@link StringKeyTable}. They switch to a HashMap
+ * for good with the first other key (a fractional number).
+ * Their numbers can then be updated in place, without boxing them (see
+ * {@link #numberEntry(Object)}).
+ * <p>
+ * The values are those of the script: numbers, Strings, and
+ * {@link StrNum}s for the elements created by <code>split()</code>
+ * (or assigned a field, or a line read by getline). A StrNum is not a
+ * String, and is only equal to another StrNum: code outside of Jawk
+ * (extensions, Java callers) should read it with <code>toString()</code>,
+ * or {@link JRT#toDouble(Object)} for its number.
  *
  * @author Danny Daglas
  */
 public class AssocArray implements Comparator<Object> {
 
+	/** The entries, unless they are in <code>longs</code> and <code>strings</code> */
 	private Map<Object, Object> map;
 
+	/** The entries with integer keys, <code>null</code> when there is a map */
+	private LongKeyTable longs;
+
+	/** The entries with string keys, once there is one, unless there is a map */
+	private StringKeyTable strings;
+
+	/** The table of the element given by the last numberEntry() */
+	private KeyTable updated;
+
+	/** Whether the map is a HashMap, which the tables can stand for */
+	private boolean hashed;
+
 	/**
 	 * <p>Constructor for AssocArray.</p>
 	 *
@@ -57,7 +88,8 @@ public class AssocArray implements Comparator<Object> {
 		if (sortedArrayKeys) {
 			map = new TreeMap<Object, Object>(this);
 		} else {
-			map = new HashMap<Object, Object>();
+			hashed = true;
+			longs = new LongKeyTable();
 		}
 	}
 
@@ -85,10 +117,15 @@ public class AssocArray implements Comparator<Object> {
 	 *   or MT_TREE.
 	 */
 	public void useMapType(int mapType) {
-		assert map.isEmpty();
+		assert keySet().isEmpty();
+		hashed = false;
+		longs = null;
+		strings = null;
 		switch (mapType) {
 			case MT_HASH:
-				map = new HashMap<Object, Object>();
+				hashed = true;
+				longs = new LongKeyTable();
+				map = null;
 				break;
 			case MT_LINKED:
 				map = new LinkedHashMap<Object, Object>();
@@ -101,6 +138,98 @@ public class AssocArray implements Comparator<Object> {
 		}
 	}
 
+	/**
+	 * Moves the entries of the tables to a HashMap, to store a key which
+	 * is neither an integer nor a string (or a <code>null</code> value).
+	 *
+	 * @return the map, which holds all the entries from now on
+	 */
+	private Map<Object, Object> map() {
+		if (longs != null) {
+			int size = longs.size() + (strings != null ? strings.size() : 0);
+			map = new HashMap<Object, Object>(Math.max(16, (int) (size / 0.75f) + 1));
+			moveToMap(longs);
+			if (strings != null) {
+				moveToMap(strings);
+			}
+			longs = null;
+			strings = null;
+		}
+		return map;
+	}
+
+	private void moveToMap(KeyTable table) {
+		for (int entry = 0; entry < table.count(); entry++) {
+			Object value = table.valueAt(entry);
+			if (value != null) {
+				map.put(table.keyAt(entry), value);
+			}
+		}
+	}
+
+	/**
+	 * @return the table of the string keys, created with the first one
+	 */
+	private StringKeyTable strings() {
+		if (strings == null) {
+			strings = new StringKeyTable();
+		}
+		return strings;
+	}
+
+	/**
+	 * @param key A key
+	 * @return whether the key is an integer, stored as a long: a Long,
+	 *   an Integer, an integral Double, or a string Long.toString() writes
+	 */
+	private static boolean isLongKey(Object key) {
+		if (key instanceof Long || key instanceof Integer) {
+			return true;
+		} else if (key instanceof Double) {
+			double d = (Double) key;
+			// 2^63 is not a long, although it converts to the largest one
+			return d == (long) d && d != 0x1p63;
+		} else if (key instanceof CompositeKey) {
+			// never an integer (see CompositeKey.isSeparator())
+			return false;
+		} else {
+			return NumberScanner.isCanonicalLong(key.toString());
+		}
+	}
+
+	/**
+	 * @param key A key for which isLongKey() is true
+	 * @return the key, as a long
+	 */
+	private static long longKey(Object key) {
+		if (key instanceof Number) {
+			return ((Number) key).longValue();
+		} else {
+			return Long.parseLong(key.toString());
+		}
+	}
+
+	/**
+	 * @param key A key which is not an integer
+	 * @return the key as stored in the map
+	 */
+	private static Object otherKey(Object key) {
+		// a key is a string
+		return key instanceof StrNum || key instanceof CompositeKey ? key.toString() : key;
+	}
+
+	/**
+	 * @param key A key which is not an integer
+	 * @return the key as stored in the table of string keys (a String, or
+	 *   a CompositeKey for its string), <code>null</code> if it is not a string
+	 */
+	private static CharSequence stringKey(Object key) {
+		if (key instanceof String || key instanceof CompositeKey) {
+			return (CharSequence) key;
+		}
+		return key instanceof StrNum ? key.toString() : null;
+	}
+
 	/**
 	 * Provide a string representation of the delegated
 	 * map object.
@@ -114,7 +243,7 @@ public class AssocArray implements Comparator<Object> {
 		// but since the extensions, assoc arrays can become keys as well
 		StringBuilder sb = new StringBuilder().append('{');
 		int cnt = 0;
-		for (Object o : map.keySet()) {
+		for (Object o : keySet()) {
 			if (cnt > 0) {
 				sb.append(", ");
 			}
@@ -125,7 +254,12 @@ public class AssocArray implements Comparator<Object> {
 			}
 			//sb.append('=').append(map.get(o));
 			sb.append('=');
-			Object o2 = map.get(o);
+			Object o2;
+			if (longs != null) {
+				o2 = o instanceof Long ? longs.get((Long) o) : strings.get((String) o);
+			} else {
+				o2 = map.get(o);
+			}
 			if (o2 instanceof AssocArray) {
 				sb.append(((AssocArray) o2).mapString());
 			} else {
@@ -151,7 +285,15 @@ public class AssocArray implements Comparator<Object> {
 	 * It exists to support the IN keyword.
 	 */
 	public boolean isIn(Object key) {
-		return map.get(key) != null;
+		if (isLongKey(key)) {
+			long l = longKey(key);
+			return longs != null ? longs.get(l) != null : map.get(l) != null;
+		}
+		if (longs != null) {
+			CharSequence s = stringKey(key);
+			return s != null && strings != null && strings.get(s) != null;
+		}
+		return map.get(otherKey(key)) != null;
 	}
 
 	/**
@@ -159,36 +301,50 @@ public class AssocArray implements Comparator<Object> {
 	 *
 	 * @param key Key to retrieve in the array
 	 * @return the value of an associative array
-	 * element given a particular key.
+	 * element given a particular key (possibly a {@link StrNum}).
 	 * If the key does not exist, a null value
 	 * (blank string) is inserted into the array
 	 * with this key, and the null value is returned.
 	 */
 	public Object get(Object key) {
 		if (key == null || key instanceof UninitializedObject) {
-			key = (long)0;
+			return get(0);
+		} else if (isLongKey(key)) {
+			return get(longKey(key));
 		}
-		Object result = map.get(key);
-		if (result != null) {
+		CharSequence s = longs != null ? stringKey(key) : null;
+		if (s != null) {
+			Object result = strings().get(s);
+			if (result == null) {
+				result = BLANK;
+				strings.put(s, result);
+			}
 			return result;
 		}
+		key = otherKey(key);
+		Object result = map().get(key);
+		if (result == null) {
+			// based on the AWK specification:
+			// Any reference (except for IN expressions) to a non-existent
+			// array element will automatically create it.
+			result = BLANK;
+			map.put(key, result);
+		}
+		return result;
+	}
 
-		// Did not find it?
-		try {
-			// try a integer version key
-			key = Long.parseLong(key.toString());
-			result = map.get(key);
-			if (result != null) {
-				return result;
-			}
-		} catch (Exception e) {}
-
-		// based on the AWK specification:
-		// Any reference (except for IN expressions) to a non-existent
-		// array element will automatically create it.
-		result = BLANK;
-		map.put(key, result);
-
+	/**
+	 * Same as {@link #get(Object)}, for an integer key.
+	 *
+	 * @param key Index of the entry to retrieve in the array
+	 * @return the value of the entry, a blank one if it was missing
+	 */
+	public Object get(long key) {
+		Object result = longs != null ? longs.get(key) : map.get(key);
+		if (result == null) {
+			result = BLANK;
+			put(key, result);
+		}
 		return result;
 	}
 
@@ -201,16 +357,16 @@ public class AssocArray implements Comparator<Object> {
 	 */
 	public Object put(Object key, Object value) {
 		if (key == null || key instanceof UninitializedObject) {
-			key = (long)0;
-		}
-		try {
+			return put(0, value);
+		} else if (isLongKey(key)) {
 			// Save a primitive version
-			long iKey = Long.parseLong(key.toString());
-			return map.put(iKey, value);
-		} catch (Exception e) {
+			return put(longKey(key), value);
 		}
-
-		return map.put(key, value);
+		CharSequence s = longs != null && value != null ? stringKey(key) : null;
+		if (s != null) {
+			return strings().put(s, value);
+		}
+		return map().put(otherKey(key), value);
 	}
 
 	/**
@@ -221,23 +377,169 @@ public class AssocArray implements Comparator<Object> {
 	 * @return the previous value of the specified key, or null if key didn't exist
 	 */
 	public Object put(long key, Object value) {
-		return map.put(key, value);
+		if (longs != null && value != null) {
+			return longs.put(key, value);
+		}
+		return map().put(key, value);
+	}
+
+	/**
+	 * Prepares the element of key to be updated in place, with
+	 * {@link #putLongAt(int, long)} or {@link #putDoubleAt(int, double)},
+	 * as the compound assignments do: the element is added if it is
+	 * missing, and the number of a blank element is 0.
+	 * <p>
+	 * The position of the element remains valid until another element is
+	 * added or removed.
+	 *
+	 * @param key Key of the element to update
+	 * @return the position of the element, or -1 if its number cannot be
+	 *   updated in place (its value is a string, or the array is not a
+	 *   table of integer keys), and get() and put() must be used instead
+	 */
+	public int numberEntry(Object key) {
+		if (longs == null) {
+			return -1;
+		} else if (key == null || key instanceof UninitializedObject) {
+			return numberEntry(0);
+		} else if (isLongKey(key)) {
+			return numberEntry(longKey(key));
+		}
+		CharSequence s = stringKey(key);
+		if (s != null) {
+			updated = strings();
+			return strings.numberEntry(s);
+		}
+		return -1;
+	}
+
+	/**
+	 * Same as {@link #numberEntry(Object)}, for an integer key.
+	 *
+	 * @param key Index of the element to update
+	 * @return the position of the element, or -1 if its number cannot be
+	 *   updated in place
+	 */
+	public int numberEntry(long key) {
+		if (longs == null) {
+			return -1;
+		}
+		updated = longs;
+		return longs.numberEntry(key);
+	}
+
+	/**
+	 * @param entry The position given by {@link #numberEntry(Object)}
+	 * @return whether the number of the element is a long (or a double)
+	 */
+	public boolean isLongAt(int entry) {
+		return updated.isLongAt(entry);
+	}
+
+	/**
+	 * @param entry The position given by {@link #numberEntry(Object)}
+	 * @return the number of the element, if it is a long
+	 */
+	public long longAt(int entry) {
+		return updated.longAt(entry);
+	}
+
+	/**
+	 * @param entry The position given by {@link #numberEntry(Object)}
+	 * @return the number of the element, if it is a double
+	 */
+	public double doubleAt(int entry) {
+		return updated.doubleAt(entry);
+	}
+
+	/**
+	 * @param entry The position given by {@link #numberEntry(Object)}
+	 * @param l The new value of the element
+	 */
+	public void putLongAt(int entry, long l) {
+		updated.putLongAt(entry, l);
+	}
+
+	/**
+	 * @param entry The position given by {@link #numberEntry(Object)}
+	 * @param d The new value of the element
+	 */
+	public void putDoubleAt(int entry, double d) {
+		updated.putDoubleAt(entry, d);
 	}
 
 	/**
 	 * <p>keySet.</p>
+	 * <p>
+	 * The keys of an unsorted array come in the order of its tables:
+	 * the integer keys, then the string keys, each in insertion order.
+	 * This order is not specified by awk, and scripts should not rely on it.
 	 *
 	 * @return the set of keys
 	 */
 	public Set<Object> keySet() {
-		return map.keySet();
+		if (longs == null) {
+			return map.keySet();
+		} else if (strings == null || strings.size() == 0) {
+			return longs.keySet();
+		}
+		final Set<Object> long_keys = longs.keySet();
+		final Set<Object> string_keys = strings.keySet();
+		return new AbstractSet<Object>() {
+
+			@Override
+			public Iterator<Object> iterator() {
+				return new Iterator<Object>() {
+
+					private Iterator<Object> keys = long_keys.iterator();
+
+					private boolean in_strings;
+
+					@Override
+					public boolean hasNext() {
+						if (!keys.hasNext() && !in_strings) {
+							// then the string keys
+							keys = string_keys.iterator();
+							in_strings = true;
+						}
+						return keys.hasNext();
+					}
+
+					@Override
+					public Object next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return keys.next();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return long_keys.size() + string_keys.size();
+			}
+		};
 	}
 
 	/**
 	 * Clear the array
 	 */
 	public void clear() {
-		map.clear();
+		if (hashed) {
+			// back to integer keys, reusing the table if there is one
+			if (longs != null) {
+				longs.clear();
+				if (strings != null) {
+					strings.clear();
+				}
+			} else {
+				longs = new LongKeyTable();
+				map = null;
+			}
+		} else {
+			map.clear();
+		}
 	}
 
 	/**
@@ -247,7 +549,18 @@ public class AssocArray implements Comparator<Object> {
 	 * @return the value of the entry before it was removed
 	 */
 	public Object remove(Object key) {
-		return map.remove(key);
+		if (key == null) {
+			return longs != null ? null : map.remove(null);
+		} else if (isLongKey(key)) {
+			// integral keys are stored as longs (see put())
+			long l = longKey(key);
+			return longs != null ? longs.remove(l) : map.remove(l);
+		}
+		if (longs != null) {
+			CharSequence s = stringKey(key);
+			return s != null && strings != null ? strings.remove(s) : null;
+		}
+		return map.remove(otherKey(key));
 	}
 
 	/**
@@ -293,6 +606,6 @@ public class AssocArray implements Comparator<Object> {
 	 * @return the specification version of this class
 	 */
 	public String getMapVersion() {
-		return map.getClass().getPackage().getSpecificationVersion();
+		return (longs != null ? HashMap.class : map.getClass()).getPackage().getSpecificationVersion();
 	}
 }
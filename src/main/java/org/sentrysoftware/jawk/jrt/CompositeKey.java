@@ -0,0 +1,160 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+/**
+ * The subscript of a multi-dimensional array element,
+ * <code>a[i, j]</code>: its components, joined by SUBSEP only when the
+ * string is needed, to iterate or print it. Arrays store and look up the
+ * key without building the string, with the same hash code.
+ * <p>
+ * It is equivalent to the joined string everywhere: toString() returns it,
+ * like for any other value, and the key of an array element iterated by
+ * <code>for (k in a)</code> is the string, which <code>split(k, parts,
+ * SUBSEP)</code> separates.
+ */
+public final class CompositeKey implements CharSequence {
+
+	private final String[] parts;
+	private final String subsep;
+	private final int length;
+	private int hash;
+	private String string;
+
+	/**
+	 * @param parts The components, as strings
+	 * @param subsep The separator, SUBSEP
+	 */
+	public CompositeKey(String[] parts, String subsep) {
+		this.parts = parts;
+		this.subsep = subsep;
+		int l = subsep.length() * (parts.length - 1);
+		for (String part : parts) {
+			l += part.length();
+		}
+		length = l;
+	}
+
+	/**
+	 * @param subsep The value of SUBSEP
+	 * @return whether the keys joined by subsep are never integers (only
+	 *   signs and digits), which arrays store apart
+	 */
+	public static boolean isSeparator(String subsep) {
+		for (int i = 0; i < subsep.length(); i++) {
+			char c = subsep.charAt(i);
+			if ((c < '0' || c > '9') && c != '+' && c != '-') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of segments of the key: the components and the
+	 *   separators between them
+	 */
+	int segments() {
+		return parts.length * 2 - 1;
+	}
+
+	/**
+	 * @param i The index of a segment, below segments()
+	 * @return a component for an even index, the separator otherwise
+	 */
+	String segment(int i) {
+		return (i & 1) == 0 ? parts[i >> 1] : subsep;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	/**
+	 * @return the joined string
+	 */
+	@Override
+	public String toString() {
+		if (string == null) {
+			StringBuilder sb = new StringBuilder(length);
+			for (int i = 0; i < segments(); i++) {
+				sb.append(segment(i));
+			}
+			string = sb.toString();
+		}
+		return string;
+	}
+
+	/**
+	 * @return the hash code of the joined string (see String.hashCode()),
+	 *   from the ones of the segments
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0 && length > 0) {
+			for (int i = 0; i < segments(); i++) {
+				String segment = segment(i);
+				h = h * pow31(segment.length()) + segment.hashCode();
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * @return 31^n, as computed with ints
+	 */
+	private static int pow31(int n) {
+		int result = 1;
+		int base = 31;
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				result *= base;
+			}
+			base *= base;
+			n >>= 1;
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CompositeKey && toString().equals(o.toString());
+	}
+}
@@ -35,6 +35,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -106,6 +107,13 @@ public class JRT {
 	private String inputLine = null;
 	// Current input fields ($0, $1, $2, ...).
 	private List<String> input_fields = new ArrayList<String>(100);
+	// The values of the fields: the StrNum of a field split from a record,
+	// created when first read (null until then), or the value assigned.
+	private Object[] field_values = new Object[100];
+	// FS, as of the last split, and its compiled regexp (if more than one character).
+	private Object fs_value = null;
+	private String fs_string;
+	private Pattern fs_pattern;
 	private AssocArray arglist_aa = null;
 	private int arglist_idx;
 	private boolean has_filenames = false;
@@ -171,7 +179,10 @@ public class JRT {
 	 */
 	public static String toAwkString(Object o, String convfmt, Locale locale) {
 
-		if (o instanceof Number) {
+		if (o instanceof Long || o instanceof Integer) {
+			// exactly, even beyond the 53 bits of a double
+			return o.toString();
+		} else if (o instanceof Number) {
 			// It is a number, some processing is required here
 			double d = ((Number) o).doubleValue();
 			if (d == (long) d) {
@@ -179,6 +190,10 @@ public class JRT {
 				return Long.toString((long) d);
 			} else {
 				// It's not a integer, represent it with the specified format
+				String fast = NumberFormatter.format(d, convfmt, locale);
+				if (fast != null) {
+					return fast;
+				}
 				try {
 					String s = String.format(locale, convfmt, d);
 					// Surprisingly, while %.6g is the official representation of numbers in AWK
@@ -217,14 +232,18 @@ public class JRT {
 	 */
 	public static String toAwkStringForOutput(Object o, String ofmt, Locale locale) {
 
+		// input is printed as read
+		if (o instanceof StrNum) {
+			return o.toString();
+		}
+
 		// Even if specified Object o is not officially a number, we try to convert
 		// it to a Double. Because if it's a literal representation of a number,
 		// we will need to display it as a number ("12.00" --> 12)
 		if (!(o instanceof Number)) {
-			try {
-				o = Double.parseDouble(o.toString());
-			} catch (NumberFormatException e) {
-				// Do nothing here
+			String s = o.toString();
+			if (NumberScanner.isNumber(s)) {
+				o = NumberScanner.toDouble(s);
 			}
 		}
 
@@ -248,33 +267,17 @@ public class JRT {
 			return ((Number) o).doubleValue();
 		}
 
-		if (o instanceof Character) {
-			return (double)((Character)o).charValue();
+		if (o instanceof StrNum) {
+			return ((StrNum) o).doubleValue();
 		}
 
-		// Try to convert the string to a number.
-		String s = o.toString();
-		int length = s.length();
-
-		// Optimization: We don't need to handle strings that are longer than 26 chars
-		// because a Double cannot be longer than 26 chars when converted to String.
-		if (length > 26) {
-			length = 26;
-		}
-
-		// Loop:
-		// If convervsion fails, try with one character less.
-		// 25fix will convert to 25 (any numeric prefix will work)
-		while (length > 0) {
-			try {
-				return Double.parseDouble(s.substring(0, length));
-			} catch (NumberFormatException nfe) {
-				length--;
-			}
+		if (o instanceof Character) {
+			return (double)((Character)o).charValue();
 		}
 
-		// Failed (not even with one char)
-		return 0;
+		// Convert the numeric prefix of the string:
+		// 25fix will convert to 25, fix25 to 0
+		return NumberScanner.toDouble(o.toString());
 	}
 
 	/**
@@ -298,29 +301,9 @@ public class JRT {
 			return (long)((Character)o).charValue();
 		}
 
-		// Try to convert the string to a number.
-		String s = o.toString();
-		int length = s.length();
-
-		// Optimization: We don't need to handle strings that are longer than 20 chars
-		// because a Long cannot be longer than 20 chars when converted to String.
-		if (length > 20) {
-			length = 20;
-		}
-
-		// Loop:
-		// If convervsion fails, try with one character less.
-		// 25fix will convert to 25 (any numeric prefix will work)
-		while (length > 0) {
-			try {
-				return Long.parseLong(s.substring(0, length));
-			} catch (NumberFormatException nfe) {
-				length--;
-			}
-
-		}
-		// Failed (not even with one char)
-		return 0;
+		// Convert the numeric prefix of the string:
+		// 25fix will convert to 25, fix25 to 0
+		return NumberScanner.toLong(o.toString());
 	}
 
 	/**
@@ -339,6 +322,14 @@ public class JRT {
 	 */
 	public static boolean compare2(Object o1, Object o2, int mode) {
 
+		// Numeric strings compare as numbers, other StrNums as strings
+		if (o1 instanceof StrNum && ((StrNum) o1).isNumeric()) {
+			o1 = ((StrNum) o1).doubleValue();
+		}
+		if (o2 instanceof StrNum && ((StrNum) o2).isNumeric()) {
+			o2 = ((StrNum) o2).doubleValue();
+		}
+
 		// Pre-compute String representations of o1 and o2
 		String o1String = o1.toString();
 		String o2String = o2.toString();
@@ -362,20 +353,16 @@ public class JRT {
 			}
 		}
 
-		if (!(o1 instanceof Number) && !o1String.isEmpty()) {
+		if (!(o1 instanceof Number) && !(o1 instanceof StrNum) && !o1String.isEmpty()) {
 			char o1FirstChar = o1String.charAt(0);
-			if (o1FirstChar >= '0' && o1FirstChar <= '9') {
-				try {
-					o1 = Double.parseDouble(o1String);
-				} catch (NumberFormatException nfe) { /* Fail silently */ }
+			if (o1FirstChar >= '0' && o1FirstChar <= '9' && NumberScanner.isNumber(o1String)) {
+				o1 = NumberScanner.toDouble(o1String);
 			}
 		}
-		if (!(o2 instanceof Number) && !o2String.isEmpty()) {
+		if (!(o2 instanceof Number) && !(o2 instanceof StrNum) && !o2String.isEmpty()) {
 			char o2FirstChar = o2String.charAt(0);
-			if (o2FirstChar >= '0' && o2FirstChar <= '9') {
-				try {
-					o2 = Double.parseDouble(o2String);
-				} catch (NumberFormatException nfe) { /* Fail silently */ }
+			if (o2FirstChar >= '0' && o2FirstChar <= '9' && NumberScanner.isNumber(o2String)) {
+				o2 = NumberScanner.toDouble(o2String);
 			}
 		}
 
@@ -400,6 +387,228 @@ public class JRT {
 		}
 	}
 
+	/**
+	 * Compares two objects which the type inference proved numeric.
+	 * They are compared as doubles, without the string conversions
+	 * of {@link #compare2(Object, Object, int)}, unless one of them
+	 * is not a number after all: an uninitialized variable, or a variable
+	 * assigned from the command line (-v or name=value arguments).
+	 *
+	 * @param o1 The 1st object.
+	 * @param o2 the 2nd object.
+	 * @param mode same as {@link #compare2(Object, Object, int)}
+	 * @return a boolean
+	 */
+	public static boolean compareNumbers(Object o1, Object o2, int mode) {
+		if (o1 instanceof Number && o2 instanceof Number) {
+			double d1 = ((Number) o1).doubleValue();
+			double d2 = ((Number) o2).doubleValue();
+			if (mode < 0) {
+				return d1 < d2;
+			} else if (mode == 0) {
+				return d1 == d2;
+			} else {
+				return d1 > d2;
+			}
+		}
+		return compare2(o1, o2, mode);
+	}
+
+	/**
+	 * Boxes the result of an arithmetic operation: a Long if
+	 * the result is integral, a Double otherwise.
+	 *
+	 * @param d The result of the operation.
+	 * @return the Awk value of d
+	 */
+	private static Object toAwkNumber(double d) {
+		if (d == (long) d) {
+			return (long) d;
+		} else {
+			return d;
+		}
+	}
+
+	/**
+	 * @param l1 The 1st operand.
+	 * @param l2 The 2nd operand.
+	 * @param sum <code>l1 + l2</code>
+	 * @return whether sum did not overflow
+	 */
+	public static boolean isExactSum(long l1, long l2, long sum) {
+		// overflow iff both operands have the sign opposite to the result (see Math.addExact())
+		return ((l1 ^ sum) & (l2 ^ sum)) >= 0;
+	}
+
+	/**
+	 * @param l1 The 1st operand.
+	 * @param l2 The 2nd operand.
+	 * @param difference <code>l1 - l2</code>
+	 * @return whether difference did not overflow
+	 */
+	public static boolean isExactDifference(long l1, long l2, long difference) {
+		// overflow iff the operands have different signs, and the result
+		// has the sign of the 2nd operand (see Math.subtractExact())
+		return ((l1 ^ l2) & (l1 ^ difference)) >= 0;
+	}
+
+	/**
+	 * @param l1 The 1st operand.
+	 * @param l2 The 2nd operand.
+	 * @param product <code>l1 * l2</code>
+	 * @return whether product did not overflow
+	 */
+	public static boolean isExactProduct(long l1, long l2, long product) {
+		// same check as Math.multiplyExact()
+		return ((Math.abs(l1) | Math.abs(l2)) >>> 31 == 0)
+				|| ((l2 == 0 || product / l2 == l1) && (l1 != Long.MIN_VALUE || l2 != -1));
+	}
+
+	/**
+	 * @param l1 The dividend.
+	 * @param l2 The divisor.
+	 * @return whether <code>l1 / l2</code> is an exact integer quotient
+	 *   (only exact quotients stay integers)
+	 */
+	public static boolean isExactQuotient(long l1, long l2) {
+		return l2 != 0 && l1 % l2 == 0 && (l1 != Long.MIN_VALUE || l2 != -1);
+	}
+
+	/**
+	 * Awk addition (<code>o1 + o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return the sum, as a Long or a Double
+	 */
+	public static Object add(Object o1, Object o2) {
+		if (o1 instanceof Long && o2 instanceof Long) {
+			long l1 = (Long) o1;
+			long l2 = (Long) o2;
+			long ans = l1 + l2;
+			if (isExactSum(l1, l2, ans)) {
+				return ans;
+			}
+		}
+		return toAwkNumber(toDouble(o1) + toDouble(o2));
+	}
+
+	/**
+	 * Awk subtraction (<code>o1 - o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return the difference, as a Long or a Double
+	 */
+	public static Object subtract(Object o1, Object o2) {
+		if (o1 instanceof Long && o2 instanceof Long) {
+			long l1 = (Long) o1;
+			long l2 = (Long) o2;
+			long ans = l1 - l2;
+			if (isExactDifference(l1, l2, ans)) {
+				return ans;
+			}
+		}
+		return toAwkNumber(toDouble(o1) - toDouble(o2));
+	}
+
+	/**
+	 * Awk multiplication (<code>o1 * o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return the product, as a Long or a Double
+	 */
+	public static Object multiply(Object o1, Object o2) {
+		if (o1 instanceof Long && o2 instanceof Long) {
+			long l1 = (Long) o1;
+			long l2 = (Long) o2;
+			long ans = l1 * l2;
+			if (isExactProduct(l1, l2, ans)) {
+				return ans;
+			}
+		}
+		return toAwkNumber(toDouble(o1) * toDouble(o2));
+	}
+
+	/**
+	 * Awk division (<code>o1 / o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return the quotient, as a Long or a Double
+	 */
+	public static Object divide(Object o1, Object o2) {
+		if (o1 instanceof Long && o2 instanceof Long) {
+			long l1 = (Long) o1;
+			long l2 = (Long) o2;
+			if (isExactQuotient(l1, l2)) {
+				return l1 / l2;
+			}
+		}
+		return toAwkNumber(toDouble(o1) / toDouble(o2));
+	}
+
+	/**
+	 * Awk modulo (<code>o1 % o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return the remainder, as a Long or a Double
+	 */
+	public static Object mod(Object o1, Object o2) {
+		if (o1 instanceof Long && o2 instanceof Long) {
+			long l2 = (Long) o2;
+			// the remainder of longs has the sign of the dividend, like fmod()
+			if (l2 != 0) {
+				return (Long) o1 % l2;
+			}
+		}
+		return toAwkNumber(toDouble(o1) % toDouble(o2));
+	}
+
+	/**
+	 * Awk exponentiation (<code>o1 ^ o2</code>).
+	 *
+	 * @param o1 The 1st operand.
+	 * @param o2 The 2nd operand.
+	 * @return o1 raised to the power of o2, as a Long or a Double
+	 */
+	public static Object pow(Object o1, Object o2) {
+		return toAwkNumber(Math.pow(toDouble(o1), toDouble(o2)));
+	}
+
+	/**
+	 * Awk numeric negation (<code>-o</code>).
+	 *
+	 * @param o The operand.
+	 * @return the opposite of o, as a Long or a Double
+	 */
+	public static Object negate(Object o) {
+		if (o instanceof Long && (Long) o != Long.MIN_VALUE) {
+			return -(Long) o;
+		}
+		double d = toDouble(o);
+		if (d == (long) d) {
+			return (long) -d;
+		} else {
+			return -d;
+		}
+	}
+
+	/**
+	 * Awk unary plus (<code>+o</code>), which converts its operand to a number.
+	 *
+	 * @param o The operand.
+	 * @return the numeric value of o, as a Long or a Double
+	 */
+	public static Object unaryPlus(Object o) {
+		if (o instanceof Long) {
+			return o;
+		}
+		return toAwkNumber(toDouble(o));
+	}
+
 	/**
 	 * Return an object which is numerically equivalent to
 	 * one plus a given object. For Integers and Doubles,
@@ -416,15 +625,14 @@ public class JRT {
 	 */
 	public static Object inc(Object o) {
 		assert (o != null);
+		if (o instanceof Long && (Long) o != Long.MAX_VALUE) {
+			return (Long) o + 1;
+		}
 		double ans;
 		if (o instanceof Number) {
 			ans = ((Number) o).doubleValue() + 1;
 		} else {
-			try {
-				ans = Double.parseDouble(o.toString()) + 1;
-			} catch (NumberFormatException nfe) {
-				ans = 1;
-			}
+			ans = toDouble(o) + 1;
 		}
 		if (ans == (long) ans) {
 			return (long) ans;
@@ -448,15 +656,14 @@ public class JRT {
 	 *   Otherwise, a Double object is returned.
 	 */
 	public static Object dec(Object o) {
+		if (o instanceof Long && (Long) o != Long.MIN_VALUE) {
+			return (Long) o - 1;
+		}
 		double ans;
 		if (o instanceof Number) {
 			ans = ((Number) o).doubleValue() - 1;
 		} else {
-			try {
-				ans = Double.parseDouble(o.toString()) - 1;
-			} catch (NumberFormatException nfe) {
-				ans = 1;
-			}
+			ans = toDouble(o) - 1;
 		}
 		if (ans == (long) ans) {
 			return (long) ans;
@@ -492,6 +699,9 @@ public class JRT {
 			val = ((Double)o).doubleValue() != 0;
 		} else if (o instanceof String) {
 			val = (o.toString().length() > 0);
+		} else if (o instanceof StrNum) {
+			StrNum strnum = (StrNum) o;
+			val = strnum.isNumeric() ? strnum.doubleValue() != 0 : !strnum.toString().isEmpty();
 		} else if (o instanceof UninitializedObject) {
 			val = false;
 		} else if (o instanceof Pattern) {
@@ -755,28 +965,47 @@ public class JRT {
 	 * Called when an update to $0 has occurred.
 	 */
 	public void jrtParseFields() {
-		String fs_string = vm.getFS().toString();
-		Enumeration<Object> tokenizer;
-		if (fs_string.equals(" ")) {
-			tokenizer = new StringTokenizer(inputLine);
-		} else if (fs_string.length() == 1) {
-			tokenizer = new SingleCharacterTokenizer(inputLine, fs_string.charAt(0));
-		} else if (fs_string.equals("")) {
-			tokenizer = new CharacterTokenizer(inputLine);
-		} else {
-			tokenizer = new RegexTokenizer(inputLine, fs_string);
-		}
-
 		assert inputLine != null;
+		Enumeration<Object> tokenizer = tokenizeWithFS(inputLine);
 		input_fields.clear();
 		input_fields.add(inputLine); // $0
 		while (tokenizer.hasMoreElements()) {
 			input_fields.add((String) tokenizer.nextElement());
 		}
+		// the fields of the new record are read as StrNums
+		Arrays.fill(field_values, 0, Math.min(input_fields.size(), field_values.length), null);
 		// recalc NF
 		recalculateNF();
 	}
 
+	/**
+	 * Splits a string into fields the way FS says, like the records.
+	 * <p>
+	 * FS is interpreted again (and compiled again when a regexp) only
+	 * once it has been assigned: an assignment stores another object
+	 * in the variable.
+	 *
+	 * @param input the string to split
+	 * @return the fields of input
+	 */
+	public Enumeration<Object> tokenizeWithFS(String input) {
+		Object fs = vm.getFS();
+		if (fs != fs_value) {
+			fs_string = fs.toString();
+			fs_pattern = fs_string.length() > 1 ? Pattern.compile(fs_string) : null;
+			fs_value = fs;
+		}
+		if (fs_pattern != null) {
+			return new RegexTokenizer(input, fs_pattern);
+		} else if (fs_string.equals(" ")) {
+			return new StringTokenizer(input);
+		} else if (fs_string.length() == 1) {
+			return new SingleCharacterTokenizer(input, fs_string.charAt(0));
+		} else {
+			return new CharacterTokenizer(input);
+		}
+	}
+
 	private void recalculateNF() {
 		vm.setNF(Integer.valueOf(input_fields.size() - 1));
 	}
@@ -799,7 +1028,9 @@ public class JRT {
 	 * Retrieve the contents of a particular input field.
 	 *
 	 * @param fieldnum_obj Object referring to the field number.
-	 * @return Contents of the field.
+	 * @return Contents of the field: a {@link StrNum} for a field
+	 *   of the input (use <code>toString()</code> for its string),
+	 *   or the value assigned to the field.
 	 */
 	public Object jrtGetInputField(Object fieldnum_obj) {
 		return jrtGetInputField(toFieldNumber(fieldnum_obj));
@@ -809,18 +1040,46 @@ public class JRT {
 	 * <p>jrtGetInputField.</p>
 	 *
 	 * @param fieldnum a int
-	 * @return a {@link java.lang.Object} object
+	 * @return the contents of the field, like {@link #jrtGetInputField(Object)}
 	 */
 	public Object jrtGetInputField(int fieldnum) {
 		if (fieldnum < input_fields.size()) {
-			String retval = input_fields.get(fieldnum);
-			assert retval != null;
-			return retval;
+			// a field split from a record is wrapped once per record
+			Object value = fieldnum < field_values.length ? field_values[fieldnum] : null;
+			if (value == null) {
+				String retval = input_fields.get(fieldnum);
+				assert retval != null;
+				value = new StrNum(retval);
+				setFieldValue(fieldnum, value);
+			}
+			return value;
 		} else {
 			return BLANK;
 		}
 	}
 
+	private void setFieldValue(int fieldnum, Object value) {
+		if (fieldnum >= field_values.length) {
+			field_values = Arrays.copyOf(field_values, Math.max(field_values.length * 2, fieldnum + 1));
+		}
+		field_values[fieldnum] = value;
+	}
+
+	/**
+	 * Assigns $0 and splits it into $1, $2, etc.
+	 * <p>
+	 * Unlike a record, $0 then keeps the value assigned (and its type),
+	 * while the fields split from it are numeric strings.
+	 *
+	 * @param value_obj The RHS of the assignment.
+	 * @param value The string of value_obj (converted with CONVFMT).
+	 */
+	public void jrtSetInputLine(Object value_obj, String value) {
+		setInputLine(value);
+		jrtParseFields();
+		setFieldValue(0, value_obj instanceof UninitializedObject ? value : value_obj);
+	}
+
 	/**
 	 * Stores value_obj into an input field.
 	 *
@@ -829,21 +1088,39 @@ public class JRT {
 	 * @return A string representation of value_obj.
 	 */
 	public String jrtSetInputField(Object value_obj, int field_num) {
+		// a BLANK value does not create the field
+		if (value_obj instanceof UninitializedObject && field_num >= input_fields.size()) {
+			rebuildDollarZeroFromFields();
+			recalculateNF();
+			return value_obj.toString();
+		}
+		return jrtSetInputField(value_obj, value_obj.toString(), field_num);
+	}
+
+	/**
+	 * Stores value_obj into an input field.
+	 * <p>
+	 * The field keeps the value assigned (and its type): a string
+	 * assigned to a field is not a numeric string, and a number
+	 * is printed with OFMT.
+	 *
+	 * @param value_obj The RHS of the assignment.
+	 * @param value The string of value_obj (converted with CONVFMT),
+	 *   which is what $0 is rebuilt with.
+	 * @param field_num Object referring to the field number.
+	 * @return value
+	 */
+	public String jrtSetInputField(Object value_obj, String value, int field_num) {
 		assert field_num >= 1;
 		assert value_obj != null;
-		String value = value_obj.toString();
-		// if the value is BLANK
-		if (value_obj instanceof UninitializedObject) {
-			if (field_num < input_fields.size()) {
-				input_fields.set(field_num, "");
-			}
-		} else {
-			// append the list to accommodate the new value
-			for (int i = input_fields.size() - 1; i < field_num; i++) {
-				input_fields.add("");
-			}
-			input_fields.set(field_num, value);
-		}
+		// append the list to accommodate the new value
+		for (int i = input_fields.size() - 1; i < field_num; i++) {
+			input_fields.add("");
+			setFieldValue(i + 1, null);
+		}
+		input_fields.set(field_num, value);
+		// a field assigned an uninitialized value holds an empty string
+		setFieldValue(field_num, value_obj instanceof UninitializedObject ? value : value_obj);
 		// rebuild $0
 		rebuildDollarZeroFromFields();
 		// recalc NF
@@ -860,7 +1137,9 @@ public class JRT {
 			}
 			new_dollar_zero_sb.append(input_fields.get(i));
 		}
-		input_fields.set(0, new_dollar_zero_sb.toString());
+		String new_dollar_zero = new_dollar_zero_sb.toString();
+		input_fields.set(0, new_dollar_zero);
+		setFieldValue(0, new_dollar_zero);
 	}
 
 	/**
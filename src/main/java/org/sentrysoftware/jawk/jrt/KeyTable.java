@@ -0,0 +1,265 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.sentrysoftware.jawk.intermediate.UninitializedObject;
+
+/**
+ * The storage of an associative array as arrays of entries, in insertion
+ * order, with an open-addressing hash index of the entries: the subclasses
+ * store the keys and the index, this class the values.
+ * <p>
+ * A removed entry keeps its place, with a <code>null</code> value (so
+ * values cannot be <code>null</code>), until the arrays are rebuilt.
+ * <p>
+ * The numbers updated in place, like the counters and the sums of
+ * <code>c[$1]++</code> or <code>s[$1] += $2</code>, are not boxed:
+ * their value is a marker, and the number is in a column of longs
+ * parallel to the values (the bits of a double, for a Double). It is boxed
+ * when it is read as an Object, and the box is kept until it is updated
+ * in place again.
+ */
+abstract class KeyTable {
+
+	static final int INITIAL_CAPACITY = 8;
+
+	/** The value of an entry whose number is a long, in <code>numbers</code> */
+	private static final Object LONG = new Object();
+
+	/** The value of an entry whose number is a double, in <code>numbers</code> */
+	private static final Object DOUBLE = new Object();
+
+	/** The value of a new entry to update in place, before it is updated in place */
+	static final UninitializedObject BLANK = new UninitializedObject();
+
+	/** Values of the entries, in insertion order */
+	Object[] values = new Object[INITIAL_CAPACITY];
+
+	/** The unboxed numbers of the entries, once there is one */
+	long[] numbers;
+
+	/** Number of entries, including the removed ones */
+	int count;
+
+	/** Number of entries which are not removed */
+	int size;
+
+	/**
+	 * Replaces the values with empty arrays.
+	 */
+	void allocateValues(int capacity) {
+		values = new Object[capacity];
+		if (numbers != null) {
+			numbers = new long[capacity];
+		}
+		count = 0;
+		size = 0;
+	}
+
+	/**
+	 * Copies the values to larger arrays.
+	 */
+	void growValues(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+		if (numbers != null) {
+			numbers = Arrays.copyOf(numbers, capacity);
+		}
+	}
+
+	/**
+	 * @return the value of an entry, boxing its number if it is unboxed
+	 */
+	Object value(int entry) {
+		Object value = values[entry];
+		if (value == LONG) {
+			values[entry] = value = numbers[entry];
+		} else if (value == DOUBLE) {
+			values[entry] = value = Double.longBitsToDouble(numbers[entry]);
+		}
+		return value;
+	}
+
+	/**
+	 * Removes all the entries, keeping the storage.
+	 */
+	void clear() {
+		Arrays.fill(values, 0, count, null);
+		count = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of positions of entries, including the removed ones
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * @param entry The position of an entry, below count()
+	 * @return the key of the entry, if its value is not <code>null</code>
+	 */
+	abstract Object keyAt(int entry);
+
+	/**
+	 * @param entry The position of an entry, below count()
+	 * @return whether the entry was removed
+	 */
+	boolean isRemoved(int entry) {
+		return values[entry] == null;
+	}
+
+	/**
+	 * @param entry The position of an entry, below count()
+	 * @return the value of the entry, <code>null</code> if it was removed
+	 */
+	Object valueAt(int entry) {
+		return value(entry);
+	}
+
+	/**
+	 * @return a view of the keys, in insertion order
+	 */
+	Set<Object> keySet() {
+		return new AbstractSet<Object>() {
+
+			@Override
+			public Iterator<Object> iterator() {
+				return new Iterator<Object>() {
+
+					private int entry = nextEntry(0);
+
+					@Override
+					public boolean hasNext() {
+						return entry < count;
+					}
+
+					@Override
+					public Object next() {
+						if (entry >= count) {
+							throw new NoSuchElementException();
+						}
+						Object key = keyAt(entry);
+						entry = nextEntry(entry + 1);
+						return key;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return the position of the first entry from the specified one
+	 *   which is not removed, count if there is none
+	 */
+	private int nextEntry(int entry) {
+		while (entry < count && values[entry] == null) {
+			entry++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Prepares the value of an entry to be updated in place: the number
+	 * of a blank value is 0.
+	 *
+	 * @param entry The position of an entry which is not removed
+	 * @return entry, or -1 if its value is not a number (or blank)
+	 */
+	int prepareNumber(int entry) {
+		if (numbers == null) {
+			numbers = new long[values.length];
+		}
+		Object value = values[entry];
+		if (value instanceof Long) {
+			putLongAt(entry, (Long) value);
+		} else if (value instanceof Double) {
+			putDoubleAt(entry, (Double) value);
+		} else if (value instanceof UninitializedObject) {
+			putLongAt(entry, 0);
+		} else if (value != LONG && value != DOUBLE) {
+			return -1;
+		}
+		return entry;
+	}
+
+	/**
+	 * @param entry The position given by prepareNumber()
+	 * @return whether the number of the entry is a long (or a double)
+	 */
+	boolean isLongAt(int entry) {
+		return values[entry] == LONG;
+	}
+
+	/**
+	 * @param entry The position given by prepareNumber()
+	 * @return the number of the entry, if it is a long
+	 */
+	long longAt(int entry) {
+		return numbers[entry];
+	}
+
+	/**
+	 * @param entry The position given by prepareNumber()
+	 * @return the number of the entry, if it is a double
+	 */
+	double doubleAt(int entry) {
+		return Double.longBitsToDouble(numbers[entry]);
+	}
+
+	/**
+	 * @param entry The position given by prepareNumber()
+	 * @param l The new number of the entry
+	 */
+	void putLongAt(int entry, long l) {
+		values[entry] = LONG;
+		numbers[entry] = l;
+	}
+
+	/**
+	 * @param entry The position given by prepareNumber()
+	 * @param d The new number of the entry
+	 */
+	void putDoubleAt(int entry, double d) {
+		values[entry] = DOUBLE;
+		numbers[entry] = Double.doubleToRawLongBits(d);
+	}
+}
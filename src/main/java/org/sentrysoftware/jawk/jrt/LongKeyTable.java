@@ -0,0 +1,272 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Arrays;
+
+/**
+ * The storage of an associative array whose keys are all integers:
+ * arrays of <code>long</code> keys and of values, in insertion order,
+ * with an open-addressing hash index of the entries.
+ * <p>
+ * Unlike a HashMap&lt;Long, Object&gt;, an entry costs neither a boxed
+ * key nor a node, only a slot in each array. The entries are kept, and
+ * iterated, in insertion order, which is ascending for the usual arrays
+ * filled by split() or <code>a[NR] = $0</code>.
+ * <p>
+ * As long as the keys are exactly 1..n, in this order, as split() or
+ * <code>a[++n] = $0</code> fill them, the table is dense: the key of an
+ * entry is its position + 1, so there are neither keys nor hash index,
+ * only the values. Any other key, or removing an entry other than the
+ * last one, makes the table hashed, until it is cleared.
+ */
+final class LongKeyTable extends KeyTable {
+
+	/** Keys of the entries, in insertion order (none while dense) */
+	private long[] keys;
+
+	/** Whether the keys are 1..count, without keys nor index */
+	private boolean dense = true;
+
+	/**
+	 * Hash index of the entries: 1 + the position of an entry, in the slot
+	 * given by the hash of its key (or the next free one), 0 for a free slot.
+	 * It has twice as many slots as there are entries.
+	 */
+	private int[] index;
+
+	/** 64 - log2(index.length), for Fibonacci hashing */
+	private int shift;
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		allocateValues(capacity);
+		allocateIndex(capacity);
+	}
+
+	private void allocateIndex(int capacity) {
+		if (index != null && index.length == capacity * 2) {
+			Arrays.fill(index, 0);
+		} else {
+			index = new int[capacity * 2];
+			shift = Long.numberOfLeadingZeros(index.length - 1);
+		}
+	}
+
+	/**
+	 * Gives the dense entries their keys, and indexes them.
+	 */
+	private void toHashed() {
+		dense = false;
+		int capacity = values.length;
+		if (keys == null || keys.length != capacity) {
+			keys = new long[capacity];
+		}
+		allocateIndex(capacity);
+		int mask = index.length - 1;
+		for (int entry = 0; entry < count; entry++) {
+			keys[entry] = entry + 1;
+			int i = slot(entry + 1);
+			while (index[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			index[i] = entry + 1;
+		}
+	}
+
+	/**
+	 * @return the home slot of a key in the index: consecutive keys
+	 *   are spread all over it, so that they do not form clusters
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	/**
+	 * @return the slot of the index for key: the one of its entry, or
+	 *   the free slot where it would go
+	 */
+	private int find(long key) {
+		int mask = index.length - 1;
+		int i = slot(key);
+		while (true) {
+			int entry = index[i] - 1;
+			if (entry < 0 || (keys[entry] == key && values[entry] != null)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the position of the entry of key, -1 if there is none
+	 */
+	private int entry(long key) {
+		if (dense) {
+			return key >= 1 && key <= count ? (int) key - 1 : -1;
+		}
+		return index[find(key)] - 1;
+	}
+
+	/**
+	 * @param key The key
+	 * @return the value of key, or <code>null</code> if there is none
+	 */
+	Object get(long key) {
+		int entry = entry(key);
+		return entry < 0 ? null : value(entry);
+	}
+
+	/**
+	 * @param key The key
+	 * @param value Its value, not <code>null</code>
+	 * @return the previous value of key, or <code>null</code> if there was none
+	 */
+	Object put(long key, Object value) {
+		if (dense) {
+			if (key >= 1 && key <= count) {
+				Object previous = value((int) key - 1);
+				values[(int) key - 1] = value;
+				return previous;
+			} else if (key == count + 1 && count < Integer.MAX_VALUE - 8) {
+				if (count == values.length) {
+					growValues(count * 2);
+				}
+				values[count++] = value;
+				size++;
+				return null;
+			}
+			toHashed();
+		}
+		int i = find(key);
+		int entry = index[i] - 1;
+		if (entry >= 0) {
+			Object previous = value(entry);
+			values[entry] = value;
+			return previous;
+		}
+		if (count == keys.length) {
+			// grow, unless there are enough removed entries to drop
+			rebuild(size < count / 2 ? keys.length : keys.length * 2);
+			i = find(key);
+		}
+		keys[count] = key;
+		values[count] = value;
+		index[i] = ++count;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @param key The key
+	 * @return the value of the removed key, or <code>null</code> if there was none
+	 */
+	Object remove(long key) {
+		if (dense) {
+			if (key < 1 || key > count) {
+				return null;
+			} else if (key == count) {
+				// still 1..count
+				Object previous = value(--count);
+				values[count] = null;
+				size--;
+				return previous;
+			}
+			toHashed();
+		}
+		int entry = index[find(key)] - 1;
+		if (entry < 0) {
+			return null;
+		}
+		// the slot stays taken, so that the lookups go on past it
+		Object previous = value(entry);
+		values[entry] = null;
+		size--;
+		return previous;
+	}
+
+	/**
+	 * Moves the entries which are not removed to new arrays.
+	 */
+	private void rebuild(int capacity) {
+		long[] old_keys = keys;
+		Object[] old_values = values;
+		long[] old_numbers = numbers;
+		int old_count = count;
+		allocate(capacity);
+		int mask = index.length - 1;
+		for (int j = 0; j < old_count; j++) {
+			if (old_values[j] != null) {
+				int i = slot(old_keys[j]);
+				while (index[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[count] = old_keys[j];
+				values[count] = old_values[j];
+				if (numbers != null) {
+					numbers[count] = old_numbers[j];
+				}
+				index[i] = ++count;
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Removes all the entries, keeping the storage: the table is dense
+	 * again.
+	 */
+	@Override
+	void clear() {
+		super.clear();
+		dense = true;
+	}
+
+	/**
+	 * @param entry The position of an entry, below count()
+	 * @return the key of the entry, as a Long, if its value is not
+	 *   <code>null</code>
+	 */
+	@Override
+	Object keyAt(int entry) {
+		return dense ? entry + 1L : keys[entry];
+	}
+
+	/**
+	 * Prepares the value of key to be updated in place, adding an entry
+	 * if there is none: the number of a blank (or new) value is 0.
+	 *
+	 * @param key The key
+	 * @return the position of the entry of key, -1 if its value is not
+	 *   a number (or blank)
+	 */
+	int numberEntry(long key) {
+		int entry = entry(key);
+		if (entry < 0) {
+			put(key, BLANK);
+			// a new entry is the last one, even if the arrays were rebuilt
+			entry = count - 1;
+		}
+		return prepareNumber(entry);
+	}
+}
@@ -0,0 +1,204 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats non-integral numbers with the usual CONVFMT and OFMT values,
+ * <code>%.<i>N</i>g</code> and <code>%.<i>N</i>f</code>, without going
+ * through java.util.Formatter: the format is parsed once, and the digits
+ * are computed with long arithmetic into a small char array.
+ * <p>
+ * The result is the one String.format() returns, with the trailing zeroes
+ * trimmed as JRT.toAwkString() does. Whenever that cannot be guaranteed
+ * (other formats, exponent notation, too many digits, or a value too
+ * close to halfway between two roundings), format() returns null and
+ * the caller uses String.format().
+ */
+final class NumberFormatter {
+
+	/** Largest scaled value whose rounding error is well below MIN_TIE_DISTANCE */
+	private static final double MAX_SCALED = 1e12;
+
+	/** Values closer to a tie than this are left to java.util.Formatter */
+	private static final double MIN_TIE_DISTANCE = 1e-3;
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12
+	};
+
+	/** 10^(e+1), the bound of the numbers with the decimal exponent e, from e = -4 */
+	private static final double[] EXPONENT_BOUNDS = {
+			1e-3, 1e-2, 1e-1, 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13
+	};
+
+	/**
+	 * A parsed format, along with the decimal separator of its locale
+	 */
+	private static final class Format {
+
+		private final String format;
+		private final Locale locale;
+		private final boolean general;
+		private final int precision;
+		private final char separator;
+
+		private Format(String format, Locale locale) {
+			this.format = format;
+			this.locale = locale;
+			int p = parsePrecision(format);
+			char s = 0;
+			if (p >= 0) {
+				DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+				if (symbols.getZeroDigit() == '0') {
+					s = symbols.getDecimalSeparator();
+				}
+			}
+			general = p >= 0 && format.charAt(format.length() - 1) == 'g';
+			// %.0g is %.1g
+			precision = general && p == 0 ? 1 : p;
+			// the trimming of JRT.toAwkString() only knows these separators
+			separator = s == '.' || s == ',' ? s : 0;
+		}
+
+		private boolean isFor(String f, Locale l) {
+			return (format == f || format.equals(f)) && locale.equals(l);
+		}
+	}
+
+	/** The last format used, most likely the one to use next */
+	private static volatile Format last = new Format("%.6g", Locale.US);
+
+	private NumberFormatter() {}
+
+	/**
+	 * @param format A printf format
+	 * @return the precision of a format <code>%.<i>N</i>g</code> or
+	 *   <code>%.<i>N</i>f</code> with 0 &lt;= N &lt;= 12, -1 for another format
+	 */
+	private static int parsePrecision(String format) {
+		int length = format.length();
+		if (length < 4 || length > 5 || format.charAt(0) != '%' || format.charAt(1) != '.') {
+			return -1;
+		}
+		char conversion = format.charAt(length - 1);
+		if (conversion != 'g' && conversion != 'f') {
+			return -1;
+		}
+		int precision = 0;
+		for (int i = 2; i < length - 1; i++) {
+			char c = format.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			precision = precision * 10 + c - '0';
+		}
+		return precision < POWERS_OF_TEN.length ? precision : -1;
+	}
+
+	/**
+	 * Formats a non-integral number like String.format(), then trims the
+	 * trailing zeroes of the decimals.
+	 *
+	 * @param d The number to format
+	 * @param format The printf format (CONVFMT or OFMT)
+	 * @param locale The locale of the decimal separator
+	 * @return the formatted number, or null if this format or this number
+	 *   must be formatted by java.util.Formatter
+	 */
+	static String format(double d, String format, Locale locale) {
+		Format f = last;
+		if (!f.isFor(format, locale)) {
+			f = new Format(format, locale);
+			last = f;
+		}
+		if (f.separator == 0) {
+			return null;
+		}
+
+		double a = Math.abs(d);
+		int decimals;
+		if (f.general) {
+			// %g is %f with (precision - 1 - exponent) decimals, unless
+			// the exponent is below -4 or above the precision
+			if (!(a >= 1e-4)) {
+				return null;
+			}
+			int exponent = -4;
+			while (exponent < f.precision && a >= EXPONENT_BOUNDS[exponent + 4]) {
+				exponent++;
+			}
+			if (exponent >= f.precision) {
+				return null;
+			}
+			decimals = f.precision - 1 - exponent;
+		} else {
+			decimals = f.precision;
+		}
+		if (decimals >= POWERS_OF_TEN.length) {
+			return null;
+		}
+
+		double scaled = a * POWERS_OF_TEN[decimals];
+		if (!(scaled < MAX_SCALED)) {
+			return null;
+		}
+		long digits = (long) scaled;
+		double fraction = scaled - digits;
+		if (Math.abs(fraction - 0.5) < MIN_TIE_DISTANCE) {
+			return null;
+		}
+		if (fraction > 0.5) {
+			digits++;
+		}
+		if (f.general && digits >= (long) POWERS_OF_TEN[f.precision]) {
+			// rounded up to the next power of ten: one digit less
+			return null;
+		}
+
+		// digits, from right to left
+		char[] buffer = new char[32];
+		int end = buffer.length;
+		int start = end;
+		for (int i = 0; i < decimals; i++) {
+			char c = (char) ('0' + digits % 10);
+			digits /= 10;
+			if (c != '0' || start != end) {
+				buffer[--start] = c;
+			}
+		}
+		if (start != end) {
+			buffer[--start] = f.separator;
+		}
+		do {
+			buffer[--start] = (char) ('0' + digits % 10);
+			digits /= 10;
+		} while (digits != 0);
+		if (d < 0) {
+			buffer[--start] = '-';
+		}
+		return new String(buffer, start, end - start);
+	}
+}
@@ -0,0 +1,250 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+/**
+ * Reads the numbers at the beginning of strings, the way Awk converts
+ * strings to numbers: blanks, then
+ * <code>[+-](digits[.[digits]]|.digits)[(e|E)[+-]digits]</code>.
+ * <p>
+ * Unlike Double.parseDouble() and Long.parseLong() in a loop, a string
+ * which is not a number costs neither an exception nor an allocation, and
+ * neither does an integer of up to 18 digits. Unlike Double.parseDouble(),
+ * "1d", "0x1p3", "NaN" or "Infinity" are not numbers.
+ * <p>
+ * {@link #toDouble(String)} still converts "Infinity", "-Infinity" and
+ * "NaN" (and the strings starting with them) to the values that
+ * Double.parseDouble() gives, as Jawk always did.
+ */
+final class NumberScanner {
+
+	/** Integers of up to 18 digits cannot overflow a long */
+	private static final int MAX_LONG_DIGITS = 18;
+
+	private NumberScanner() {}
+
+	/**
+	 * @param s The string to read
+	 * @return the length of the longest prefix of s which is a number
+	 *   (including the blanks before it), 0 if there is none
+	 */
+	static int prefixLength(String s) {
+		int length = s.length();
+		int i = skipBlanks(s, 0);
+		if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+			i++;
+		}
+		int digits = 0;
+		while (i < length && isDigit(s.charAt(i))) {
+			i++;
+			digits++;
+		}
+		if (i < length && s.charAt(i) == '.') {
+			i++;
+			while (i < length && isDigit(s.charAt(i))) {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) {
+			return 0;
+		}
+		if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			// the exponent is part of the number only if it has digits
+			int j = i + 1;
+			if (j < length && (s.charAt(j) == '+' || s.charAt(j) == '-')) {
+				j++;
+			}
+			if (j < length && isDigit(s.charAt(j))) {
+				while (j < length && isDigit(s.charAt(j))) {
+					j++;
+				}
+				i = j;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @param s The string to check
+	 * @return whether s is a number, with optional blanks around
+	 */
+	static boolean isNumber(String s) {
+		int end = prefixLength(s);
+		return end > 0 && skipBlanks(s, end) == s.length();
+	}
+
+	/**
+	 * @param s The string to convert
+	 * @return the value of the number at the beginning of s, 0 if there is none
+	 */
+	static double toDouble(String s) {
+		int end = prefixLength(s);
+		if (end == 0) {
+			return toSpecialDouble(s);
+		}
+		int start = skipBlanks(s, 0);
+		if (isShortInteger(s, start, end)) {
+			return parseShortInteger(s, start, end);
+		}
+		return Double.parseDouble(end == s.length() ? s : s.substring(0, end));
+	}
+
+	/**
+	 * @param s The string to convert, which does not start with a number
+	 * @return infinity or NaN if s starts with "Infinity" or "NaN" (after
+	 *   blanks and an optional sign), 0 otherwise
+	 */
+	private static double toSpecialDouble(String s) {
+		int i = skipBlanks(s, 0);
+		boolean negative = false;
+		if (i < s.length() && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		if (s.startsWith("Infinity", i)) {
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+		if (s.startsWith("NaN", i)) {
+			return Double.NaN;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param s The string to convert
+	 * @return the value of the number at the beginning of s, truncated
+	 *   to an integer, 0 if there is none
+	 */
+	static long toLong(String s) {
+		int end = prefixLength(s);
+		if (end == 0) {
+			return 0;
+		}
+		int start = skipBlanks(s, 0);
+		if (isShortInteger(s, start, end)) {
+			return parseShortInteger(s, start, end);
+		}
+		int i = start;
+		if (s.charAt(i) == '+' || s.charAt(i) == '-') {
+			i++;
+		}
+		while (i < end && isDigit(s.charAt(i))) {
+			i++;
+		}
+		if (i == end) {
+			// a long integer, which may overflow
+			try {
+				return Long.parseLong(s.substring(s.charAt(start) == '+' ? start + 1 : start, end));
+			} catch (NumberFormatException nfe) {
+				return (long) Double.parseDouble(s.substring(0, end));
+			}
+		}
+		return (long) Double.parseDouble(s.substring(0, end));
+	}
+
+	/**
+	 * Whether a string is a long the way Long.toString() writes it: an
+	 * optional minus sign and digits, without leading zeros, nothing else,
+	 * no "-0", and no overflow. Other strings, like "007" or "+1", are not
+	 * the same array subscripts as the integers they are equal to.
+	 *
+	 * @param s The string to check
+	 * @return true if Long.toString(Long.parseLong(s)) is s
+	 */
+	static boolean isCanonicalLong(String s) {
+		int length = s.length();
+		int i = 0;
+		if (length > 0 && s.charAt(0) == '-') {
+			i++;
+		}
+		int digits = length - i;
+		if (digits == 0 || digits > 19) {
+			return false;
+		}
+		if (s.charAt(i) == '0') {
+			// only "0" itself
+			return length == 1;
+		}
+		for (; i < length; i++) {
+			if (!isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		if (digits < 19) {
+			return true;
+		}
+		// 19 digits may overflow
+		String max = s.charAt(0) == '-' ? "9223372036854775808" : "9223372036854775807";
+		return s.substring(length - 19).compareTo(max) <= 0;
+	}
+
+	/**
+	 * @return whether s[start..end) is an integer (with an optional sign)
+	 *   of up to 18 digits
+	 */
+	private static boolean isShortInteger(String s, int start, int end) {
+		int i = start;
+		if (s.charAt(i) == '+' || s.charAt(i) == '-') {
+			i++;
+		}
+		if (end - i > MAX_LONG_DIGITS) {
+			return false;
+		}
+		for (; i < end; i++) {
+			if (!isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long parseShortInteger(String s, int start, int end) {
+		int i = start;
+		boolean negative = s.charAt(i) == '-';
+		if (negative || s.charAt(i) == '+') {
+			i++;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			value = value * 10 + (s.charAt(i) - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private static int skipBlanks(String s, int i) {
+		int length = s.length();
+		while (i < length && isBlank(s.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+	}
+}
@@ -23,6 +23,7 @@ package org.sentrysoftware.jawk.jrt;
  */
 
 import java.util.Enumeration;
+import java.util.regex.Pattern;
 
 /**
  * Similar to StringTokenizer, except that tokens are delimited
@@ -46,6 +47,17 @@ public class RegexTokenizer implements Enumeration<Object> {
 		array = input.split(delimitterRegexPattern, -2);
 	}
 
+	/**
+	 * Construct a RegexTokenizer with an already compiled regular expression.
+	 *
+	 * @param input The input string to tokenize.
+	 * @param delimitterPattern The regular expression delineating tokens
+	 *   within the input string.
+	 */
+	public RegexTokenizer(String input, Pattern delimitterPattern) {
+		array = delimitterPattern.split(input, -2);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean hasMoreElements() {
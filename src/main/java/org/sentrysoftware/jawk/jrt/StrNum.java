@@ -0,0 +1,104 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+/**
+ * A string read from the input, which is also a number when it
+ * looks like one: a <i>numeric string</i> (or strnum) in POSIX terms.
+ * The fields, the lines read by getline and the elements created by
+ * split() are StrNums.
+ * <p>
+ * A StrNum compares numerically with numbers and other numeric
+ * StrNums, and as a string otherwise. It prints as read, and is true
+ * when its number is non-zero (when numeric) or when it is not empty.
+ * <p>
+ * The string is scanned only once, when first used as a number,
+ * and its value kept, so a field used several times in a record
+ * is converted only once.
+ * <p>
+ * StrNums are handed as is to the Java code reading the fields and the
+ * arrays (see {@link AssocArray#get(Object)}); only the arguments of the
+ * extensions are converted to Strings. A StrNum is never equal to a
+ * String: compare its <code>toString()</code> instead.
+ */
+public final class StrNum {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte NUMBER = 1;
+	private static final byte STRING = 2;
+
+	private final String string;
+	private byte kind = UNKNOWN;
+	private double number;
+
+	/**
+	 * @param string The string, as read
+	 */
+	public StrNum(String string) {
+		this.string = string;
+	}
+
+	/**
+	 * @return whether the string looks like a number
+	 */
+	public boolean isNumeric() {
+		if (kind == UNKNOWN) {
+			scan();
+		}
+		return kind == NUMBER;
+	}
+
+	/**
+	 * @return the numeric value of the string: its numeric prefix if it does
+	 *   not look like a number (like {@link JRT#toDouble(Object)} for strings)
+	 */
+	public double doubleValue() {
+		if (kind == UNKNOWN) {
+			scan();
+		}
+		return number;
+	}
+
+	private void scan() {
+		kind = NumberScanner.isNumber(string) ? NUMBER : STRING;
+		number = NumberScanner.toDouble(string);
+	}
+
+	/**
+	 * @return the string, as read
+	 */
+	@Override
+	public String toString() {
+		return string;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof StrNum && ((StrNum) o).string.equals(string);
+	}
+
+	@Override
+	public int hashCode() {
+		return string.hashCode();
+	}
+}
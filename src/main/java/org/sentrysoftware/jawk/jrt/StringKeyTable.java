@@ -0,0 +1,446 @@
+package org.sentrysoftware.jawk.jrt;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Jawk
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2006 - 2023 Sentry Software
+ * ჻჻჻჻჻჻
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The storage of the string keys of an associative array: the keys are
+ * encoded, one after the other, in large arrays of bytes (slabs), with
+ * their hash codes and their values in arrays of entries, in insertion
+ * order, and an open-addressing hash index of the entries.
+ * <p>
+ * Unlike a HashMap&lt;String, Object&gt;, an entry costs neither a String
+ * (with its own array of chars) nor a node: a key takes its length and
+ * one byte per char (two if it is not Latin-1). The Strings of the keys
+ * are created only when they are iterated.
+ * <p>
+ * A key is a String or a {@link CompositeKey}, which is stored and looked
+ * up as the string it stands for, without building it.
+ * <p>
+ * The values which are strings, often the same few ones (a status, a
+ * method, a host...), are also shared through a dictionary, until it
+ * turns out that they are rarely repeated.
+ */
+final class StringKeyTable extends KeyTable {
+
+	/** Size of the first slab of keys */
+	private static final int FIRST_SLAB_SIZE = 256;
+
+	/** Size of the largest slabs of keys (a longer key has its own slab) */
+	private static final int SLAB_SIZE = 1 << 20;
+
+	/** Number of distinct values of the dictionary */
+	private static final int DICTIONARY_SIZE = 1024;
+
+	/** Hash codes (String.hashCode()) of the keys of the entries */
+	private int[] hashes = new int[INITIAL_CAPACITY];
+
+	/** Slab (high 32 bits) and offset (low 32 bits) of the keys of the entries */
+	private long[] addresses = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The encoded keys: a header, <code>length &lt;&lt; 1 | wide</code>,
+	 * in 7-bit groups, least significant first, with the high bit set for
+	 * all but the last one, then the chars, one byte each, or two (high
+	 * byte first) for a wide key, which is not Latin-1
+	 */
+	private byte[][] slabs = new byte[4][];
+
+	/** The slab where the keys are added, -1 if there is none yet */
+	private int slab = -1;
+
+	/** The position of the next key in the slab */
+	private int position;
+
+	/**
+	 * Hash index of the entries: 1 + the position of an entry, in the slot
+	 * given by the hash of its key (or the next free one), 0 for a free slot.
+	 * It has twice as many slots as there are entries.
+	 */
+	private int[] index = new int[INITIAL_CAPACITY * 2];
+
+	/** 32 - log2(index.length), for Fibonacci hashing */
+	private int shift = Integer.numberOfLeadingZeros(index.length - 1);
+
+	/** The values shared, <code>null</code> when they are rarely repeated */
+	private Map<Object, Object> dictionary = new HashMap<Object, Object>();
+
+	/** Number of values found in the dictionary */
+	private int dictionary_hits;
+
+	/**
+	 * @return the home slot of a hash code in the index
+	 */
+	private int slot(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * @return the slot of the index for key: the one of its entry, or
+	 *   the free slot where it would go
+	 */
+	private int find(CharSequence key, int hash) {
+		int mask = index.length - 1;
+		int i = slot(hash);
+		while (true) {
+			int entry = index[i] - 1;
+			if (entry < 0 || (hashes[entry] == hash && values[entry] != null && keyEquals(entry, key))) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the header of the key at position p of b
+	 */
+	private static int header(byte[] b, int p) {
+		int header = 0;
+		for (int bits = 0; ; bits += 7) {
+			byte x = b[p++];
+			header |= (x & 0x7F) << bits;
+			if (x >= 0) {
+				return header;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes of a header
+	 */
+	private static int headerSize(int header) {
+		return (38 - Integer.numberOfLeadingZeros(header | 1)) / 7;
+	}
+
+	/**
+	 * @return the number of bytes of an encoded key, with its header
+	 */
+	private static int keySize(int header) {
+		return headerSize(header) + ((header & 1) == 0 ? header >>> 1 : header & ~1);
+	}
+
+	/**
+	 * @return the number of strings key is made of
+	 */
+	private static int segments(CharSequence key) {
+		return key instanceof CompositeKey ? ((CompositeKey) key).segments() : 1;
+	}
+
+	/**
+	 * @return the i-th string key is made of
+	 */
+	private static String segment(CharSequence key, int i) {
+		return key instanceof CompositeKey ? ((CompositeKey) key).segment(i) : (String) key;
+	}
+
+	/**
+	 * @return whether the key of an entry is key
+	 */
+	private boolean keyEquals(int entry, CharSequence key) {
+		byte[] b = slabs[(int) (addresses[entry] >>> 32)];
+		int p = (int) addresses[entry];
+		int header = header(b, p);
+		if (header >>> 1 != key.length()) {
+			return false;
+		}
+		p += headerSize(header);
+		boolean wide = (header & 1) != 0;
+		for (int s = 0; s < segments(key); s++) {
+			String segment = segment(key, s);
+			int length = segment.length();
+			if (!wide) {
+				for (int i = 0; i < length; i++) {
+					if ((b[p + i] & 0xFF) != segment.charAt(i)) {
+						return false;
+					}
+				}
+				p += length;
+			} else {
+				for (int i = 0; i < length; i++) {
+					if ((char) ((b[p + 2 * i] & 0xFF) << 8 | (b[p + 2 * i + 1] & 0xFF)) != segment.charAt(i)) {
+						return false;
+					}
+				}
+				p += 2 * length;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reserves room for a key in the slabs.
+	 *
+	 * @return the address of the room
+	 */
+	private long reserve(int size) {
+		if (slab < 0 || position + size > slabs[slab].length) {
+			int capacity = slab < 0 ? FIRST_SLAB_SIZE : Math.min(slabs[slab].length * 2, SLAB_SIZE);
+			if (++slab == slabs.length) {
+				slabs = Arrays.copyOf(slabs, slab * 2);
+			}
+			slabs[slab] = new byte[Math.max(capacity, size)];
+			position = 0;
+		}
+		long address = (long) slab << 32 | position;
+		position += size;
+		return address;
+	}
+
+	/**
+	 * Encodes a key at the end of the slabs.
+	 *
+	 * @return its address
+	 */
+	private long store(CharSequence key) {
+		int wide = 0;
+		for (int s = 0; s < segments(key) && wide == 0; s++) {
+			String segment = segment(key, s);
+			for (int i = 0; i < segment.length(); i++) {
+				if (segment.charAt(i) > 0xFF) {
+					wide = 1;
+					break;
+				}
+			}
+		}
+		int header = key.length() << 1 | wide;
+		long address = reserve(keySize(header));
+		byte[] b = slabs[slab];
+		int p = (int) address;
+		for (int h = header; ; h >>>= 7) {
+			if (h < 0x80) {
+				b[p++] = (byte) h;
+				break;
+			}
+			b[p++] = (byte) (h | 0x80);
+		}
+		for (int s = 0; s < segments(key); s++) {
+			String segment = segment(key, s);
+			int length = segment.length();
+			if (wide == 0) {
+				for (int i = 0; i < length; i++) {
+					b[p + i] = (byte) segment.charAt(i);
+				}
+				p += length;
+			} else {
+				for (int i = 0; i < length; i++) {
+					char c = segment.charAt(i);
+					b[p + 2 * i] = (byte) (c >>> 8);
+					b[p + 2 * i + 1] = (byte) c;
+				}
+				p += 2 * length;
+			}
+		}
+		return address;
+	}
+
+	/**
+	 * @param key The key, a String or a CompositeKey
+	 * @return the value of key, or <code>null</code> if there is none
+	 */
+	Object get(CharSequence key) {
+		int entry = index[find(key, key.hashCode())] - 1;
+		return entry < 0 ? null : value(entry);
+	}
+
+	/**
+	 * @param key The key, a String or a CompositeKey
+	 * @param value Its value, not <code>null</code>
+	 * @return the previous value of key, or <code>null</code> if there was none
+	 */
+	Object put(CharSequence key, Object value) {
+		value = share(value);
+		int hash = key.hashCode();
+		int i = find(key, hash);
+		int entry = index[i] - 1;
+		if (entry >= 0) {
+			Object previous = value(entry);
+			values[entry] = value;
+			return previous;
+		}
+		if (count == values.length) {
+			// grow, unless there are enough removed entries to drop
+			rebuild(size < count / 2 ? values.length : values.length * 2);
+			i = find(key, hash);
+		}
+		hashes[count] = hash;
+		addresses[count] = store(key);
+		values[count] = value;
+		index[i] = ++count;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @return the value, or the same one of the dictionary
+	 */
+	private Object share(Object value) {
+		if (dictionary == null || !(value instanceof String || value instanceof StrNum)) {
+			return value;
+		}
+		Object shared = dictionary.get(value);
+		if (shared != null) {
+			dictionary_hits++;
+			return shared;
+		} else if (dictionary.size() < DICTIONARY_SIZE) {
+			dictionary.put(value, value);
+		} else if (dictionary_hits < DICTIONARY_SIZE) {
+			// most of the values are distinct
+			dictionary = null;
+		}
+		return value;
+	}
+
+	/**
+	 * @param key The key, a String or a CompositeKey
+	 * @return the value of the removed key, or <code>null</code> if there was none
+	 */
+	Object remove(CharSequence key) {
+		int entry = index[find(key, key.hashCode())] - 1;
+		if (entry < 0) {
+			return null;
+		}
+		// the slot stays taken, so that the lookups go on past it,
+		// and the key stays in its slab, until the arrays are rebuilt
+		Object previous = value(entry);
+		values[entry] = null;
+		size--;
+		return previous;
+	}
+
+	/**
+	 * Moves the entries which are not removed to new arrays, and their
+	 * keys to new slabs if some were removed.
+	 */
+	private void rebuild(int capacity) {
+		if (size == count) {
+			// only grow: the keys stay where they are
+			hashes = Arrays.copyOf(hashes, capacity);
+			addresses = Arrays.copyOf(addresses, capacity);
+			growValues(capacity);
+			index = new int[capacity * 2];
+			shift = Integer.numberOfLeadingZeros(index.length - 1);
+			int mask = index.length - 1;
+			for (int entry = 0; entry < count; entry++) {
+				int i = slot(hashes[entry]);
+				while (index[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				index[i] = entry + 1;
+			}
+			return;
+		}
+		int[] old_hashes = hashes;
+		long[] old_addresses = addresses;
+		byte[][] old_slabs = slabs;
+		Object[] old_values = values;
+		long[] old_numbers = numbers;
+		int old_count = count;
+		hashes = new int[capacity];
+		addresses = new long[capacity];
+		allocateValues(capacity);
+		slabs = new byte[4][];
+		slab = -1;
+		index = new int[capacity * 2];
+		shift = Integer.numberOfLeadingZeros(index.length - 1);
+		int mask = index.length - 1;
+		for (int j = 0; j < old_count; j++) {
+			if (old_values[j] != null) {
+				int i = slot(old_hashes[j]);
+				while (index[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				byte[] b = old_slabs[(int) (old_addresses[j] >>> 32)];
+				int p = (int) old_addresses[j];
+				int key_size = keySize(header(b, p));
+				long address = reserve(key_size);
+				System.arraycopy(b, p, slabs[slab], (int) address, key_size);
+				hashes[count] = old_hashes[j];
+				addresses[count] = address;
+				values[count] = old_values[j];
+				if (numbers != null) {
+					numbers[count] = old_numbers[j];
+				}
+				index[i] = ++count;
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Removes all the entries, keeping the storage (and the dictionary).
+	 */
+	@Override
+	void clear() {
+		super.clear();
+		Arrays.fill(index, 0);
+		if (slab >= 0) {
+			Arrays.fill(slabs, 1, slab + 1, null);
+			slab = 0;
+			position = 0;
+		}
+	}
+
+	/**
+	 * @param entry The position of an entry, below count()
+	 * @return the key of the entry, as a new String, if its value is not
+	 *   <code>null</code>
+	 */
+	@Override
+	Object keyAt(int entry) {
+		byte[] b = slabs[(int) (addresses[entry] >>> 32)];
+		int p = (int) addresses[entry];
+		int header = header(b, p);
+		int length = header >>> 1;
+		p += headerSize(header);
+		if ((header & 1) == 0) {
+			return new String(b, p, length, StandardCharsets.ISO_8859_1);
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ((b[p + 2 * i] & 0xFF) << 8 | (b[p + 2 * i + 1] & 0xFF));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Prepares the value of key to be updated in place, adding an entry
+	 * if there is none: the number of a blank (or new) value is 0.
+	 *
+	 * @param key The key, a String or a CompositeKey
+	 * @return the position of the entry of key, -1 if its value is not
+	 *   a number (or blank)
+	 */
+	int numberEntry(CharSequence key) {
+		int entry = index[find(key, key.hashCode())] - 1;
+		if (entry < 0) {
+			put(key, BLANK);
+			// a new entry is the last one, even if the arrays were rebuilt
+			entry = count - 1;
+		}
+		return prepareNumber(entry);
+	}
+}
@@ -62,6 +62,22 @@ import org.slf4j.Logger;
  *   Do NOT error for <code>IllegalFormatException</code> when using
  *   <code>java.util.Formatter</code> for <code>sprintf</code>
  *   and <code>printf</code>.
+ * <li><i>Extension</i> -z <br/>
+ *   Compile the intermediate code to JVM bytecode (in memory)
+ *   and run it, instead of interpreting it.
+ * <li><i>Extension</i> --no-tiered <br/>
+ *   Only interpret: do not compile the hot loops, rules and functions
+ *   to JVM bytecode while interpreting.
+ * <li><i>Extension</i> --registers <br/>
+ *   Interpret register-based code instead of the stack-based tuples.
+ * <li><i>Extension</i> --nodes <br/>
+ *   Run the statements as trees of nodes instead of tuples.
+ * <li><i>Extension</i> --memo size <br/>
+ *   Number of results cached for each pure function
+ *   (1024 by default, 0 to disable the caching).
+ * <li><i>Extension</i> --exec-cache size <br/>
+ *   Number of programs compiled by <code>exec()</code> to keep
+ *   (16 by default, 0 to disable the caching).
  * <li><i>Extension</i> -ext <br/>
  *   Enabled user-defined extensions. Works together with the
  *   -Djava.extensions property.
@@ -123,6 +139,8 @@ public class AwkParameters {
 	public static AwkSettings parseCommandLineArguments(String[] args) {
 
 		AwkSettings settings = new AwkSettings();
+		// the hot code is compiled, unless --no-tiered
+		settings.setTieredCompilation(true);
 
 		int argIdx = 0;
 		try {
@@ -166,6 +184,22 @@ public class AwkParameters {
 					settings.setUseSortedArrayKeys(true);
 				} else if (args[argIdx].equals("-r")) {
 					settings.setCatchIllegalFormatExceptions(false);
+				} else if (args[argIdx].equals("-z")) {
+					settings.setCompileToJvm(true);
+				} else if (args[argIdx].equals("--no-tiered")) {
+					settings.setTieredCompilation(false);
+				} else if (args[argIdx].equals("--registers")) {
+					settings.setRegisterVm(true);
+				} else if (args[argIdx].equals("--nodes")) {
+					settings.setNodeEngine(true);
+				} else if (args[argIdx].equals("--memo")) {
+					checkParameterHasArgument(args, argIdx);
+					++argIdx;
+					settings.setMemoCacheSize(parseCacheSize(args, argIdx));
+				} else if (args[argIdx].equals("--exec-cache")) {
+					checkParameterHasArgument(args, argIdx);
+					++argIdx;
+					settings.setExecCacheSize(parseCacheSize(args, argIdx));
 				} else if (args[argIdx].equals("-F")) {
 					checkParameterHasArgument(args, argIdx);
 					++argIdx;
@@ -245,6 +279,12 @@ public class AwkParameters {
 				+ " [-x]"
 				+ " [-y]"
 				+ " [-r]"
+				+ " [-z]"
+				+ " [--no-tiered]"
+				+ " [--registers]"
+				+ " [--nodes]"
+				+ " [--memo size]"
+				+ " [--exec-cache size]"
 				+ " [--locale locale]"
 				+ " [-ext]"
 				+ " [-t]"
@@ -264,6 +304,12 @@ public class AwkParameters {
 		dest.println(" -x = (extension) Enable _sleep, _dump as keywords, and exec as a builtin func.");
 		dest.println(" -y = (extension) Enable _INTEGER, _DOUBLE, and _STRING casting keywords.");
 		dest.println(" -r = (extension) Do NOT hide IllegalFormatExceptions for [s]printf.");
+		dest.println(" -z = (extension) Compile to JVM bytecode in memory, instead of interpreting.");
+		dest.println(" --no-tiered = (extension) Only interpret: do not compile the hot loops, rules and functions to JVM bytecode.");
+		dest.println(" --registers = (extension) Interpret register-based code instead of the stack-based tuples.");
+		dest.println(" --nodes = (extension) Run the statements as trees of nodes instead of tuples.");
+		dest.println(" --memo size = (extension) Number of results cached for each pure function (default 1024, 0 to disable).");
+		dest.println(" --exec-cache size = (extension) Number of programs compiled by exec() to keep (default 16, 0 to disable).");
 		dest.println(" --locale Locale = (extension) Specify a locale to be used instead of US-English");
 		dest.println("-ext= (extension) Enable user-defined extensions. (default: not enabled)");
 		dest.println();
@@ -288,6 +334,25 @@ public class AwkParameters {
 		}
 	}
 
+	/**
+	 * Parses the size argument of a cache parameter
+	 * (<code>--memo</code>, <code>--exec-cache</code>).
+	 *
+	 * @return the size, zero or more
+	 */
+	private static int parseCacheSize(String[] args, int argIdx) {
+		int size;
+		try {
+			size = Integer.parseInt(args[argIdx]);
+		} catch (NumberFormatException nfe) {
+			size = -1;
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException(args[argIdx - 1] + " expects a size (0 or more), not \"" + args[argIdx] + "\"");
+		}
+		return size;
+	}
+
 	/**
 	 * Makes sure the argument is of the form name=value.
 	 */
@@ -114,6 +114,47 @@ public class AwkSettings {
 	 */
 	private boolean catchIllegalFormatExceptions = true;
 
+	/**
+	 * Whether to compile the tuples to JVM bytecode (in memory)
+	 * instead of interpreting them;
+	 * <code>false</code> by default.
+	 */
+	private boolean compileToJvm = false;
+
+	/**
+	 * Whether to compile the hot loops, rules and functions to JVM bytecode
+	 * while interpreting the tuples, which defines classes at runtime;
+	 * <code>false</code> by default (the command line enables it,
+	 * unless <code>--no-tiered</code> is specified).
+	 */
+	private boolean tieredCompilation = false;
+
+	/**
+	 * Whether to translate the tuples to register-based code,
+	 * instead of interpreting them on the operand stack;
+	 * <code>false</code> by default.
+	 */
+	private boolean registerVm = false;
+
+	/**
+	 * Whether to compile the statements of the script to trees of
+	 * nodes, which evaluate themselves, instead of interpreting their
+	 * tuples; <code>false</code> by default.
+	 */
+	private boolean nodeEngine = false;
+
+	/**
+	 * Maximum number of results cached for each pure function;
+	 * <code>1024</code> by default, <code>0</code> disables the memoization.
+	 */
+	private int memoCacheSize = 1024;
+
+	/**
+	 * Maximum number of programs compiled by <code>exec()</code> to keep;
+	 * <code>16</code> by default, <code>0</code> disables the cache.
+	 */
+	private int execCacheSize = 16;
+
 	/**
 	 * Whether user extensions are enabled;
 	 * <code>false</code> by default.
@@ -193,6 +234,18 @@ public class AwkSettings {
 				.append(isUseSortedArrayKeys()).append(newLine);
 		desc.append("catchIllegalFormatExceptions = ")
 				.append(isCatchIllegalFormatExceptions()).append(newLine);
+		desc.append("compileToJvm = ")
+				.append(isCompileToJvm()).append(newLine);
+		desc.append("tieredCompilation = ")
+				.append(isTieredCompilation()).append(newLine);
+		desc.append("registerVm = ")
+				.append(isRegisterVm()).append(newLine);
+		desc.append("nodeEngine = ")
+				.append(isNodeEngine()).append(newLine);
+		desc.append("memoCacheSize = ")
+				.append(getMemoCacheSize()).append(newLine);
+		desc.append("execCacheSize = ")
+				.append(getExecCacheSize()).append(newLine);
 		desc.append("writeIntermediateFile = ")
 				.append(isWriteIntermediateFile()).append(newLine);
 		desc.append("outputFilename = ")
@@ -623,6 +676,138 @@ public class AwkSettings {
 		this.catchIllegalFormatExceptions = catchIllegalFormatExceptions;
 	}
 
+	/**
+	 * Whether to compile the tuples to JVM bytecode (in memory)
+	 * instead of interpreting them;
+	 * <code>false</code> by default.
+	 *
+	 * @return the compileToJvm
+	 */
+	public boolean isCompileToJvm() {
+		return compileToJvm;
+	}
+
+	/**
+	 * Whether to compile the tuples to JVM bytecode (in memory)
+	 * instead of interpreting them;
+	 * <code>false</code> by default.
+	 *
+	 * @param compileToJvm the compileToJvm to set
+	 */
+	public void setCompileToJvm(boolean compileToJvm) {
+		this.compileToJvm = compileToJvm;
+	}
+
+	/**
+	 * Whether to compile the hot loops, rules and functions to JVM bytecode
+	 * while interpreting the tuples, which defines classes at runtime;
+	 * <code>false</code> by default (the command line enables it,
+	 * unless <code>--no-tiered</code> is specified).
+	 *
+	 * @return the tieredCompilation
+	 */
+	public boolean isTieredCompilation() {
+		return tieredCompilation;
+	}
+
+	/**
+	 * Whether to compile the hot loops, rules and functions to JVM bytecode
+	 * while interpreting the tuples, which defines classes at runtime;
+	 * <code>false</code> by default (the command line enables it,
+	 * unless <code>--no-tiered</code> is specified).
+	 *
+	 * @param tieredCompilation the tieredCompilation to set
+	 */
+	public void setTieredCompilation(boolean tieredCompilation) {
+		this.tieredCompilation = tieredCompilation;
+	}
+
+	/**
+	 * Whether to translate the tuples to register-based code,
+	 * instead of interpreting them on the operand stack;
+	 * <code>false</code> by default.
+	 *
+	 * @return the registerVm
+	 */
+	public boolean isRegisterVm() {
+		return registerVm;
+	}
+
+	/**
+	 * Whether to translate the tuples to register-based code,
+	 * instead of interpreting them on the operand stack;
+	 * <code>false</code> by default.
+	 *
+	 * @param registerVm the registerVm to set
+	 */
+	public void setRegisterVm(boolean registerVm) {
+		this.registerVm = registerVm;
+	}
+
+	/**
+	 * Whether to compile the statements of the script to trees of
+	 * nodes, which evaluate themselves, instead of interpreting their
+	 * tuples; <code>false</code> by default.
+	 *
+	 * @return the nodeEngine
+	 */
+	public boolean isNodeEngine() {
+		return nodeEngine;
+	}
+
+	/**
+	 * Whether to compile the statements of the script to trees of
+	 * nodes, which evaluate themselves, instead of interpreting their
+	 * tuples; <code>false</code> by default.
+	 *
+	 * @param nodeEngine the nodeEngine to set
+	 */
+	public void setNodeEngine(boolean nodeEngine) {
+		this.nodeEngine = nodeEngine;
+	}
+
+	/**
+	 * <p>Getter for the field <code>memoCacheSize</code>.</p>
+	 *
+	 * @return the memoCacheSize
+	 */
+	public int getMemoCacheSize() {
+		return memoCacheSize;
+	}
+
+	/**
+	 * Maximum number of results cached for each pure function (one
+	 * which only depends on its parameters), the least recently used
+	 * ones being dropped first; <code>1024</code> by default,
+	 * <code>0</code> to always run the functions.
+	 *
+	 * @param memoCacheSize the memoCacheSize to set
+	 */
+	public void setMemoCacheSize(int memoCacheSize) {
+		this.memoCacheSize = memoCacheSize;
+	}
+
+	/**
+	 * <p>Getter for the field <code>execCacheSize</code>.</p>
+	 *
+	 * @return the execCacheSize
+	 */
+	public int getExecCacheSize() {
+		return execCacheSize;
+	}
+
+	/**
+	 * Maximum number of programs compiled by the <code>exec()</code>
+	 * extension to keep, keyed by their code, the least recently used
+	 * ones being dropped first; <code>16</code> by default, <code>0</code>
+	 * to compile the code at each execution.
+	 *
+	 * @param execCacheSize the execCacheSize to set
+	 */
+	public void setExecCacheSize(int execCacheSize) {
+		this.execCacheSize = execCacheSize;
+	}
+
 	/**
 	 * <p>Getter for the field <code>locale</code>.</p>
 	 *
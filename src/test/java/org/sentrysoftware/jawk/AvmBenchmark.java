@@ -0,0 +1,91 @@
+package org.sentrysoftware.jawk;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.sentrysoftware.jawk.util.AwkSettings;
+import org.sentrysoftware.jawk.util.ScriptSource;
+
+/**
+ * Compares the execution modes of the AVM on a few typical scripts:
+ * the stack-based interpreter (the reference implementation), the
+ * register VM, the tiered compilation to JVM bytecode and the node engine.
+ * <p>
+ * This is not a unit test (Surefire ignores it): run its main() method,
+ * with the test classpath, e.g.
+ * <code>java -cp target/classes:target/test-classes:... org.sentrysoftware.jawk.AvmBenchmark [lines] [runs]</code>
+ */
+public class AvmBenchmark {
+
+	private static final String[][] SCRIPTS = {
+		{ "sum of fields", "{ for (i = 1; i <= NF; i++) s += $i } END { print s }" },
+		{ "arithmetic", "BEGIN { for (i = 0; i < 3000000; i++) { x = x + i * 2 - (i % 7); if (x > 1000000) x = x / 3 } print x }" },
+		{ "conditions", "$3 > 500 && $4 < 200 { n++ } $1 % 2 == 0 { m += $2 } END { print n, m }" },
+		{ "concatenation", "{ k = $1 \"-\" $2; if (length(k) > l) l = length(k) } END { print l }" },
+		{ "functions", "function f(a, b) { return a * b + 1 } { t += f($1, $2) } END { print t }" },
+		{ "recursion", "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2) } BEGIN { print fib(27) }" },
+		{ "helpers", "function max(a, b) { return a > b ? a : b } function clamp(v, lo, hi,   r) { r = max(v, lo); return r > hi ? hi : r }"
+				+ " { for (i = 1; i <= NF; i++) t += clamp($i, 100, 900) } END { print t }" },
+		{ "library", "function trim(s) { sub(/^ +/, \"\", s); return s } function key(a, b) { return a SUBSEP b }"
+				+ " { c[key(trim($1), $2 % 10)]++ } END { for (k in c) n++; print n }" },
+		{ "pure", "function norm(s,   i, r) { for (i = length(s); i > 0; i--) r = r substr(s, i, 1); return toupper(r) }"
+				+ " { for (i = 1; i <= NF; i++) n += length(norm($i)) } END { print n }" },
+		{ "number prefixes", "{ for (i = 1; i <= NF; i++) { s += ($i \"px\") + 0; t += (\"w\" $i) + 0; c[$i \"k\"]++ } } END { print s, t }" },
+		{ "number output", "{ print $1 / 7, $2 / 3, ($3 + $4) / 2; k[$5 / 8]++ }" },
+		{ "split", "{ n = split($0, a); for (i = 1; i <= n; i++) s += a[i]; b[NR] = a[n] } END { print s, length(b) }" },
+		{ "aggregations", "{ for (i = 1; i <= NF; i++) { s[$i % 64] += $i / 4; c[$i % 1000]++; m[i] *= 1 } } END { print s[7], c[11], length(m) }" },
+		{ "group by", "{ n[\"h\" $1 % 5000 \".example.com\"]++; v[$2 % 700 \"/\" $3 % 30] = $4 } END { print length(n), length(v) }" }
+	};
+
+	private enum Mode { STACK, REGISTERS, TIERED, NODES }
+
+	public static void main(String[] args) throws Exception {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			for (int f = 0; f < 10; f++) {
+				input.append(f == 0 ? "" : " ").append((i * 31 + f * 17) % 1000);
+			}
+			input.append('\n');
+		}
+		byte[] input_bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+
+		System.out.printf("%-16s %12s %12s %12s %12s%n", "script (ms)", "stack", "registers", "tiered", "nodes");
+		for (String[] script : SCRIPTS) {
+			System.out.printf("%-16s", script[0]);
+			for (Mode mode : Mode.values()) {
+				long best = Long.MAX_VALUE;
+				for (int run = 0; run < runs; run++) {
+					long start = System.nanoTime();
+					run(script[1], input_bytes, mode);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				System.out.printf(" %12d", best / 1000000);
+			}
+			System.out.println();
+		}
+	}
+
+	private static void run(String script, byte[] input, Mode mode) throws Exception {
+		AwkSettings settings = new AwkSettings();
+		settings.setTieredCompilation(mode == Mode.TIERED);
+		settings.setRegisterVm(mode == Mode.REGISTERS);
+		settings.setNodeEngine(mode == Mode.NODES);
+		settings.setInput(new ByteArrayInputStream(input));
+		settings.setDefaultRS("\n");
+		settings.setDefaultORS("\n");
+		settings.setOutputStream(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// discard the output
+			}
+		}));
+		settings.addScriptSource(new ScriptSource("Benchmark", new StringReader(script), false));
+		new Awk().invoke(settings);
+	}
+}
@@ -0,0 +1,119 @@
+package org.sentrysoftware.jawk;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sentrysoftware.jawk.util.AwkSettings;
+
+/**
+ * Runs scripts compiled to JVM bytecode (-z) and checks they behave
+ * exactly like the interpreted ones.
+ */
+public class AwkCompilerTest {
+
+	private static String compiled(String script, String input) throws Exception {
+		return AwkTestHelper.runAwk(script, input, false, true);
+	}
+
+	private static String tiered(String script, String input) throws Exception {
+		AwkSettings settings = new AwkSettings();
+		settings.setTieredCompilation(true);
+		return AwkTestHelper.runAwk(script, input, false, settings);
+	}
+
+	private static void assertSameAsInterpreted(String script, String input) throws Exception {
+		assertEquals(AwkTestHelper.runAwk(script, input), compiled(script, input));
+	}
+
+	@Test
+	public void testBeginOnly() throws Exception {
+		assertEquals("hello 3\n", compiled("BEGIN { x = 1 + 2; print \"hello\", x }", null));
+	}
+
+	@Test
+	public void testRules() throws Exception {
+		assertSameAsInterpreted("$1 > 2 { s += $1; n++ } /b/ { print NR, $2 } END { print s, n }", "1 a\n2 b\n3 c\n4 b\n");
+	}
+
+	@Test
+	public void testLoopsAndArrays() throws Exception {
+		assertSameAsInterpreted(
+				"{ c[$1]++ } END { for (i = 0; i < 3; i++) { t = t i } ; n = 0; for (k in c) n += c[k]; while (n > 0) { n--; w++ } ; do { w-- } while (w > 3); print t, w, n }",
+				"a\nb\na\nc\n");
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		assertEquals("120 55\n", compiled(
+				"function fact(n) { return n <= 1 ? 1 : n * fact(n - 1) }\n"
+				+ "function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }\n"
+				+ "BEGIN { print fact(5), fib(10) }", null));
+	}
+
+	@Test
+	public void testRangesAndGetline() throws Exception {
+		assertSameAsInterpreted("/start/,/stop/ { print \"in\", $0; next } { getline l; print \"out\", $0, l }",
+				"a\nstart\nb\nstop\nc\nd\n");
+	}
+
+	@Test
+	public void testIndependentRanges() throws Exception {
+		// each range keeps its own state, and the same regexp literal appears twice
+		assertSameAsInterpreted("/a/,/c/ { print \"1:\" $0 } /b/,/b/ { print \"2:\" $0 } /c/,/a/ { print \"3:\" $0 }",
+				"a\nb\nc\nd\na\nb\n");
+	}
+
+	@Test
+	public void testExit() throws Exception {
+		assertEquals("1\nend\n", compiled("{ print; exit } END { print \"end\" }", "1\n2\n"));
+	}
+
+	@Test(expected = ExitException.class)
+	public void testExitWithCode() throws Exception {
+		compiled("BEGIN { exit 3 }", null);
+	}
+
+	@Test
+	public void testTieredLoop() throws Exception {
+		// enough iterations for the loop to be compiled while it runs
+		assertEquals("50005000 2500\n", tiered(
+				"BEGIN { for (i = 1; i <= 10000; i++) { s += i; if (i % 4) continue; c++ } print s, c }", null));
+	}
+
+	@Test
+	public void testTieredFunctionsAndRules() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int i = 1; i <= 3000; i++) {
+			input.append(i).append(i % 3 == 0 ? " x\n" : " y\n");
+		}
+		assertEquals("3000 1000 9003000\n", tiered(
+				"function twice(n) { return n + n }\n"
+				+ "$2 == \"x\" { x++ } { s += twice($1) } END { print NR, x, s }", input.toString()));
+	}
+
+	@Test
+	public void testTieredExit() throws Exception {
+		assertEquals("2000\nend\n", tiered(
+				"BEGIN { while (1) { if (++i == 2000) { print i; exit } } } END { print \"end\" }", null));
+	}
+
+	@Test
+	public void testBwkP() throws Exception {
+		URL bwkPUrl = AwkCompilerTest.class.getResource("/bwk/p");
+		File bwkPDirectory = new File(bwkPUrl.toURI());
+		File inputFile = new File(bwkPDirectory, "inputs/test.countries");
+		for (File awkFile : new File(bwkPDirectory, "scripts").listFiles()) {
+			if (!awkFile.getName().startsWith("p.")) {
+				continue;
+			}
+			String expectedResult = AwkTestHelper.readTextFile(new File(bwkPDirectory, "results/" + awkFile.getName() + ".ok"));
+			String result = AwkTestHelper.runAwk(awkFile, Collections.singletonList(inputFile), false, true);
+			result = result.replace(inputFile.getParent() + System.getProperty("file.separator"), "");
+			assertEquals(awkFile.getName(), expectedResult, result);
+		}
+	}
+}
@@ -20,6 +20,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.SystemOutRule;
 import org.sentrysoftware.jawk.frontend.AwkParser;
+import org.sentrysoftware.jawk.util.AwkSettings;
 
 public class AwkTest {
 
@@ -490,5 +491,232 @@ public class AwkTest {
 		);
 
 	}
-	
+
+	@Test
+	public void testSuperInstructions() throws Exception {
+		// field access, array element increment, variable store and increment,
+		// comparison of a variable to a constant, and threaded jumps
+		assertEquals(
+				"two a\nb 3\na 4\n3 3\n",
+				runAwk("{ a[$1] += $2; n = n + 1; c++ } n == 2 { print \"two\", $1 } "
+						+ "END { print \"b\", a[\"b\"]; print \"a\", a[\"a\"]; print n, c }",
+						"a 1\na 3\nb 3\n")
+		);
+	}
+
+	@Test
+	public void testTypedComparisons() throws Exception {
+		// numeric variables, NR/NF, and an uninitialized variable
+		// (which still compares like an uninitialized value)
+		assertEquals(
+				"10 1 0 1 1\n",
+				runAwk("function lt(a, b) { return a < b } "
+						+ "{ for (i = 1; i <= NF; i++) sum += $i } "
+						+ "END { print sum, (NR >= 2), (u > -1), (u == 0), lt(\"10\", \"9\") + lt(1, 2) }",
+						"1 2\n3 4\n")
+		);
+	}
+
+	@Test
+	public void testUnboxedVariables() throws Exception {
+		// numeric variables, also when -v assigns them a string, in every engine
+		String script = "function f(n,  l) { l = n; l *= 2; l++; return l } "
+				+ "{ for (i = 1; i <= NF; i++) sum += $i; n++; n += 0.5; m = n; m /= 2; k %= 3 } "
+				+ "END { x = 9223372036854775807; x++; y = s; y++; print sum, i, n, m, k, sum i, f(2.25), x, s, y }";
+		String input = "1 2 3 x 4.5\n10\n";
+		String expected = "20.5 2 3 1.5 0 20.52 5.5 9223372036854775807 abc 1\n";
+		for (int mode = 0; mode < 4; mode++) {
+			AwkSettings settings = new AwkSettings();
+			settings.setCompileToJvm(mode == 1);
+			settings.setTieredCompilation(mode != 0);
+			settings.setRegisterVm(mode == 2);
+			settings.setNodeEngine(mode == 3);
+			settings.getVariables().put("s", "abc");
+			settings.getVariables().put("sum", "abc");
+			assertEquals("mode " + mode, expected, runAwk(script, input, false, settings));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testMemoizedFunctions() throws Exception {
+		// fib() would never end without its results cached; the others
+		// read or write a global, or change with CONVFMT
+		assertEquals(
+				"1548008755920 2 3 0.123457 0.12\n",
+				runAwk("function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2) } "
+						+ "function count(x) { cnt++; return x + cnt } "
+						+ "function str(x) { return x \"\" } "
+						+ "BEGIN { a = fib(60); b = count(1); c = count(1); d = str(0.1234567); CONVFMT = \"%.2g\"; "
+						+ "print a, b, c, d, str(0.1234567) }",
+						null)
+		);
+	}
+
+	@Test
+	public void testCachedExecPrograms() throws Exception {
+		// each execution starts with fresh variables, whichever VM runs the cached program
+		String script = "BEGIN { for (i = 0; i < 50; i++) { r += exec(\"BEGIN { x++; for (j = 0; j < 3; j++) s += j; exit s + x }\"); "
+				+ "r += exec(\"BEGIN { exit 2 }\") } print r }";
+		for (boolean registers : new boolean[] { false, true }) {
+			AwkSettings settings = new AwkSettings();
+			settings.setAdditionalFunctions(true);
+			settings.setRegisterVm(registers);
+			assertEquals("300\n", runAwk(script, null, false, settings));
+		}
+	}
+
+	@Test
+	public void testDenseArrays() throws Exception {
+		// split() arrays iterate in order, and stay arrays after sparse keys
+		assertEquals(
+				"1=c 2=b 3=a 3\n3 0 1 cae\n1 2 2 0\npr 2\n",
+				runAwk("BEGIN { n = split(\"c b a\", x); for (k in x) printf \"%s=%s \", k, x[k]; print length(x); "
+						+ "x[5] = \"e\"; delete x[2]; print length(x), (2 in x), (5 in x), x[1] x[3] x[5]; "
+						+ "n = split(\"p q\", x); for (k in x) printf \"%s \", k; print length(x), (3 in x); "
+						+ "delete x[2]; x[2] = \"r\"; print x[1] x[2], length(x) }",
+						null)
+		);
+	}
+
+	@Test
+	public void testArrayAggregations() throws Exception {
+		// counters and sums are updated in place, and still read as numbers or strings
+		assertEquals(
+				"7 2 0 -1.75 -2\n2.5 1 0 -0.625 -1\n0 1 0 0 -1\n1 11 1 0.5\n",
+				runAwk("{ s[$1] += $2; c[$1]++; p[$1] *= 2; m[$1] -= $2 / 4; d[$1]-- } "
+						+ "END { for (k = 1; k <= 3; k++) print s[k], c[k], p[k], m[k], d[k]; "
+						+ "s[1] = \"x\"; s[1] += 1; c[2] = c[2] \"0\"; c[2]++; "
+						+ "big[1] = 9223372036854775807; big[1]++; print s[1], c[2], (big[1] > 9e18), (s[4] += 0.5) }",
+						"1 10\n2 2.5\n1 -3\n3 x\n")
+		);
+	}
+
+	@Test
+	public void testNumericStrings() throws Exception {
+		// fields print as read, and compare as numbers only when they look like ones
+		assertEquals(
+				"12.00 1e2 12.00 1d1 1 1 0 0 1 0\nfalse\n1 1 3.0\n12.00 0.123457 1e2 0x1A 1d 0\n",
+				runAwk("{ x = $1; print $1, $3, x, $5 ($2 < 3), ($1 == 12), ($3 == 100), ($4 == 0), ($5 == 1), ($2 < -4), ($2 < \"-4\"); "
+						+ "if ($6) print \"true\"; else print \"false\"; "
+						+ "split(\"3.0 10\", a); print (a[1] == 3), (a[2] > 9), a[1]; $2 = 0.1234567; print }",
+						"12.00 -5 1e2 0x1A 1d 0\n")
+		);
+	}
+
+	@Test
+	public void testAssignedFields() throws Exception {
+		// a string assigned to a field or to $0 is not a numeric string
+		assertEquals(
+				"T T 4 T 1\n",
+				runAwk("{ $2 = \"0\"; printf ($2 ? \"T \" : \"F \"); $0 = \"00E0\"; printf ($0 ? \"T \" : \"F \"); "
+						+ "print length($0), ($0 != \"\" ? \"T\" : \"F\"), ($1 == 0) }", "a b\n")
+		);
+		// but the fields split from $0, and the values of fields assigned to fields are
+		// an uninitialized value creates the field, as an empty string
+		assertEquals("2 0\n", runAwk("{ $2 = $1; print NF, ($2 == 0) }", "\n"));
+		assertEquals("F 1 1\n", runAwk("{ $0 = \"0 x\"; $3 = $1; printf ($1 ? \"T \" : \"F \"); print ($1 == 0), ($3 == \"0.0\" + 0) }", "a\n"));
+		// a number assigned to a field keeps its value: it is printed with OFMT,
+		// and $0 is rebuilt with CONVFMT
+		assertEquals(
+				"3.1416 3.1416 2.7183\n3.14 2.72\n",
+				runAwk("BEGIN { CONVFMT = \"%.2f\"; OFMT = \"%.4f\"; $1 = 3.14159265; x = $1; print $1, x, ($2 = 2.7182818); print }", null)
+		);
+	}
+
+	@Test
+	public void testNumericPrefixes() throws Exception {
+		// strings convert to the number they start with, or 0
+		assertEquals(
+				"12 3 1000 1 0 -0.5 2 -1 8 1\n",
+				runAwk("BEGIN { x = \"abc\"; x--; y = \"7up\"; y++; "
+						+ "print \"12abc\" + 0, \" 3\" + 0, \"1e3x\" + 0, \"1e\" + 0, \"x\" + 0, \"-.5.\" + 0, \"+2\" + 0, x, y, (\"10a\" < 9) }",
+						null)
+		);
+		// except for Infinity and NaN, which Double.parseDouble() reads
+		assertEquals(
+				"Infinity -Infinity NaN Infinity 0 0\n",
+				runAwk("{ print $1 + 0, $2 + 0, $3 + 0, $4 + 0, $5 + 0, $6 + 0 }", " Infinity -Infinity NaN +Infinityx inf nan\n")
+		);
+	}
+
+	@Test
+	public void testNumberFormats() throws Exception {
+		// the usual OFMT and CONVFMT, trailing zeroes trimmed
+		assertEquals(
+				"3.14159 -0.0314159 666667 0.3\n3.14 0.33 -0.01\n3.14 100\n",
+				runAwk("BEGIN { x = 3.14159; print x, -x / 100, 2 / 3 * 1000000, 0.1 + 0.2; "
+						+ "OFMT = \"%.2f\"; print x, 1 / 3, -0.0111; CONVFMT = \"%.3g\"; y = x \"\"; print y, 99.96 \"\" }",
+						null)
+		);
+	}
+
+	@Test
+	public void testUnboxedOperands() throws Exception {
+		// intermediate numbers and comparisons, with fields and constants
+		assertEquals(
+				"19.5 15 -9.5 0 1 1 1 1 1 1 9.5\n",
+				runAwk("{ x = 9223372036854775807; print $1 + $2, $1 * 3 / 2, -$2, !$3, !($1 - 10), ($1 > $2), ($1 == 10.0), "
+						+ "($3 < $1), -x - 1 < 0, 7 % -3, $2 / 4 * 4 }",
+						"10 9.5 0x\n")
+		);
+	}
+
+	@Test
+	public void testLongArithmetic() throws Exception {
+		// integers stay exact beyond 2^53, and overflow into doubles
+		assertEquals(
+				"9007199254740995 9007199254740997 6000000001 18014398509481990 -9007199254740995 3.5 4 -1 1.84467e+19\n",
+				runAwk("BEGIN { x = 9007199254740992; x++; x += 2; a[\"k\"] = x; a[\"k\"]++; a[\"k\"] += 1; "
+						+ "y = 3000000000; y *= 2; y++; "
+						+ "print x, a[\"k\"], y, x * 2, -x, 7 / 2, 8 / 2, -7 % 3, 9223372036854775807 * 2 }",
+						null)
+		);
+	}
+
+	@Test
+	public void testSpecialVariablesAssignedWhileRunning() throws Exception {
+		// FS applies from the next record, and split() follows it too
+		assertEquals(
+				"a:b-c:2\na b:c 1|1|2|3 3 0.5\n",
+				runAwk("NR == 1 { OFS = \":\"; print $1, $2, split($0, t) } "
+						+ "NR == 2 { FS = \"[-,]+\"; OFS = \" \"; ORS = \"|\"; print $1, $2, split($0, t) } "
+						+ "NR == 3 { OFS = \" \"; ORS = \"\\n\"; OFMT = \"%.1f\"; print $1 \"|\" $2 \"|\" $3, split($0, t), 0.49 }",
+						"a b-c\na b:c\n1,-2--3\n")
+		);
+	}
+
+	@Test
+	public void testInlinedFunctions() throws Exception {
+		// parameters are copied, extra locals start uninitialized at each call,
+		// calls are inlined within arguments, bodies and other functions
+		assertEquals(
+				"4+ 4+ 3\n7 9 1\n[hi there] 9 15\n",
+				runAwk("function max(a, b) { return a > b ? a : b } "
+						+ "function clamp(v, lo, hi,   r) { r = max(v, lo); return r > hi ? hi : r } "
+						+ "function bump(x,   t) { t = t \"+\"; x = x + 1; return x t } "
+						+ "function trim(s) { sub(/^ +/, \"\", s); sub(/ +$/, \"\", s); return s } "
+						+ "function f(n,   k) { k = max(n, max(2, n - 1)); return clamp(k, 0, 5) + bump(k) } "
+						+ "BEGIN { x = 3; print bump(x), bump(x), x; "
+						+ "print max(max(1, 7), max(4, 2)), clamp(12, 1, 9), clamp(-3, 1, 9); "
+						+ "print \"[\" trim(\"  hi there  \") \"]\", f(4), f(9) }",
+						null)
+		);
+	}
+
+	@Test
+	public void testConstantFolding() throws Exception {
+		// folded expressions, dead branches, uncalled functions,
+		// and constants propagated within BEGIN (but not beyond it)
+		assertEquals(
+				"7 3.5 -4 ab3 1024 1 0 1 0 1\n45 abc 6\nbig\n3 x\n",
+				runAwk("function unused(a) { return a + 1 } function f(x) { return g(x) } function g(y) { return y * 2 } "
+						+ "BEGIN { n = 10; s = \"ab\"; if (0) print unused(1); "
+						+ "print 1 + 2 * 3, 7 / 2, -4, \"a\" \"b\" 3, 2 ^ 10, 1 < 2, \"10\" < \"9\", !0, 0 && x, 1 || x; "
+						+ "for (i = 0; i < n; i++) t += i; print t, s \"c\", f(3); "
+						+ "if (n > 5) print \"big\"; else print \"small\"; while (0) print \"no\"; m = 3 } "
+						+ "{ print m, $1 }",
+						"x\n")
+		);
+	}
+
 }
@@ -81,8 +81,40 @@ public class AwkTestHelper {
 	 * @throws ClassNotFoundException 
 	 */
 	static String runAwk(File scriptFile, List<File> inputFileList, boolean setTempDir) throws IOException, ExitException, ClassNotFoundException {
-		
+		return runAwk(scriptFile, inputFileList, setTempDir, false);
+	}
+
+	/**
+	 * Executes the specified AWK script
+	 * <p>
+	 * @param scriptFile File containing the AWK script to execute
+	 * @param inputFileList List of files that contain the input to be parsed by the AWK script
+	 * @param setTempDir Whether to set the TEMPDIR variable for the AWK script to play with
+	 * @param compileToJvm Whether to compile the script to JVM bytecode instead of interpreting it
+	 * @return the printed output of the script as a String
+	 * @throws ExitException when the AWK script forces its exit with a specified code
+	 * @throws IOException on I/O problems
+	 * @throws ClassNotFoundException 
+	 */
+	static String runAwk(File scriptFile, List<File> inputFileList, boolean setTempDir, boolean compileToJvm) throws IOException, ExitException, ClassNotFoundException {
 		AwkSettings settings = new AwkSettings();
+		settings.setCompileToJvm(compileToJvm);
+		return runAwk(scriptFile, inputFileList, setTempDir, settings);
+	}
+
+	/**
+	 * Executes the specified AWK script
+	 * <p>
+	 * @param scriptFile File containing the AWK script to execute
+	 * @param inputFileList List of files that contain the input to be parsed by the AWK script
+	 * @param setTempDir Whether to set the TEMPDIR variable for the AWK script to play with
+	 * @param settings Settings to start from (execution mode, etc.)
+	 * @return the printed output of the script as a String
+	 * @throws ExitException when the AWK script forces its exit with a specified code
+	 * @throws IOException on I/O problems
+	 * @throws ClassNotFoundException 
+	 */
+	static String runAwk(File scriptFile, List<File> inputFileList, boolean setTempDir, AwkSettings settings) throws IOException, ExitException, ClassNotFoundException {
 		
 		// Default record separator should support both CRLF and LF
 		settings.setDefaultRS("\r?\n");
@@ -144,8 +176,40 @@ public class AwkTestHelper {
 	 * @throws ClassNotFoundException 
 	 */
 	static String runAwk(String script, String input, boolean setTempDir) throws IOException, ExitException, ClassNotFoundException {
-		
+		return runAwk(script, input, setTempDir, false);
+	}
+
+	/**
+	 * Executes the specified script against the specified input
+	 * <p>
+	 * @param script AWK script to execute (as a String)
+	 * @param input Text to process (as a String)
+	 * @param setTempDir Whether to set the TEMPDIR variable for the AWK script to play with
+	 * @param compileToJvm Whether to compile the script to JVM bytecode instead of interpreting it
+	 * @return result as a String
+	 * @throws ExitException when the AWK script forces its exit with a specified code
+	 * @throws IOException on I/O problems
+	 * @throws ClassNotFoundException 
+	 */
+	static String runAwk(String script, String input, boolean setTempDir, boolean compileToJvm) throws IOException, ExitException, ClassNotFoundException {
 		AwkSettings settings = new AwkSettings();
+		settings.setCompileToJvm(compileToJvm);
+		return runAwk(script, input, setTempDir, settings);
+	}
+
+	/**
+	 * Executes the specified script against the specified input
+	 * <p>
+	 * @param script AWK script to execute (as a String)
+	 * @param input Text to process (as a String)
+	 * @param setTempDir Whether to set the TEMPDIR variable for the AWK script to play with
+	 * @param settings Settings to start from (execution mode, etc.)
+	 * @return result as a String
+	 * @throws ExitException when the AWK script forces its exit with a specified code
+	 * @throws IOException on I/O problems
+	 * @throws ClassNotFoundException 
+	 */
+	static String runAwk(String script, String input, boolean setTempDir, AwkSettings settings) throws IOException, ExitException, ClassNotFoundException {
 		
 		// Set the input
 		if (input != null) {
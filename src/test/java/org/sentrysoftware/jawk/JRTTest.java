@@ -2,9 +2,16 @@ package org.sentrysoftware.jawk;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
 import org.junit.Test;
 import org.sentrysoftware.jawk.intermediate.UninitializedObject;
+import org.sentrysoftware.jawk.jrt.AssocArray;
+import org.sentrysoftware.jawk.jrt.CompositeKey;
 import org.sentrysoftware.jawk.jrt.JRT;
+import org.sentrysoftware.jawk.jrt.StrNum;
 
 public class JRTTest {
 
@@ -104,4 +111,123 @@ public class JRTTest {
 		assertEquals("", JRT.prepareReplacement(null));
 	}
 
+	@Test
+	public void testAssocArrayIntegerKeys() {
+		AssocArray aa = new AssocArray(false);
+		for (long i = 1; i <= 5; i++) {
+			aa.put(i, "v" + i);
+		}
+		// "10", 10 and 10.0 are the same key
+		aa.put("10", "ten");
+		assertEquals("ten", aa.get(10L));
+		assertEquals("ten", aa.get(10.0));
+		assertTrue(aa.isIn(new StrNum("10")));
+		assertEquals("ten", aa.remove(10.0));
+		assertFalse(aa.isIn("10"));
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), new ArrayList<Object>(aa.keySet()));
+
+		// other keys go to a map, with the integer keys
+		aa.put("x", "y");
+		aa.put(2.5, "z");
+		assertEquals("v3", aa.get("3"));
+		assertEquals("y", aa.get("x"));
+		assertTrue(aa.isIn(2.5));
+		assertEquals(7, aa.keySet().size());
+
+		aa.clear();
+		assertTrue(aa.keySet().isEmpty());
+		assertFalse(aa.isIn("x"));
+		aa.put(7, "w");
+		assertEquals("w", aa.get("7"));
+
+		// only the canonical strings of integers are these integers
+		aa.put("007", "a");
+		aa.put("+1", "b");
+		aa.put("-0", "c");
+		aa.put(new StrNum("01"), "d");
+		assertEquals(5, aa.keySet().size());
+		assertFalse(aa.isIn(1L));
+		assertFalse(aa.isIn("0"));
+		assertEquals("w", aa.remove(7.0));
+		assertEquals("a", aa.get("007"));
+		assertEquals("d", aa.get("01"));
+		aa.put("-12", "e");
+		assertEquals("e", aa.get(-12L));
+	}
+
+	@Test
+	public void testAssocArrayIntegerKeysOrder() {
+		// integer keys are iterated in insertion order
+		AssocArray aa = new AssocArray(false);
+		aa.put(3L, "c");
+		aa.put(1L, "a");
+		aa.put(2L, "b");
+		assertEquals(Arrays.asList(3L, 1L, 2L), new ArrayList<Object>(aa.keySet()));
+		// then the string keys, in insertion order as well
+		aa.put("y", "d");
+		aa.put(4L, "e");
+		aa.put("x", "f");
+		assertEquals(Arrays.asList(3L, 1L, 2L, 4L, "y", "x"), new ArrayList<Object>(aa.keySet()));
+		aa.remove(1L);
+		aa.remove("y");
+		assertEquals(Arrays.asList(3L, 2L, 4L, "x"), new ArrayList<Object>(aa.keySet()));
+		assertEquals(4, aa.keySet().size());
+	}
+
+	@Test
+	public void testAssocArrayStringKeys() {
+		AssocArray aa = new AssocArray(false);
+		aa.put("GET", "a");
+		aa.put(new StrNum("caf\u00e9"), "b");
+		aa.put("\u0394x", "c");
+		aa.put(3L, "d");
+		assertEquals("a", aa.get(new StrNum("GET")));
+		assertEquals("b", aa.get("caf\u00e9"));
+		assertEquals("c", aa.get("\u0394x"));
+		assertEquals("d", aa.get("3"));
+		assertFalse(aa.isIn("\u0394"));
+		assertEquals(4, aa.keySet().size());
+		assertTrue(new HashSet<Object>(aa.keySet()).containsAll(Arrays.asList("GET", "caf\u00e9", "\u0394x", 3L)));
+
+		// blank elements and numbers are updated in place
+		int entry = aa.numberEntry("n");
+		assertTrue(aa.isLongAt(entry));
+		aa.putDoubleAt(entry, 0.5);
+		assertEquals(0.5, aa.get("n"));
+		assertEquals(-1, aa.numberEntry("GET"));
+
+		assertEquals("a", aa.remove("GET"));
+		assertFalse(aa.isIn("GET"));
+		assertEquals(4, aa.keySet().size());
+		aa.clear();
+		assertTrue(aa.keySet().isEmpty());
+		aa.put("GET", "e");
+		assertEquals("e", aa.get("GET"));
+	}
+
+	@Test
+	public void testCompositeKeys() {
+		CompositeKey key = new CompositeKey(new String[] { "x", "12", "\u0394" }, "\034");
+		assertEquals("x\03412\034\u0394", key.toString());
+		assertEquals(key.toString().hashCode(), key.hashCode());
+		assertEquals(key.toString().length(), key.length());
+		assertTrue(CompositeKey.isSeparator("\034"));
+		assertFalse(CompositeKey.isSeparator("0"));
+
+		// the same element as the joined string
+		AssocArray aa = new AssocArray(false);
+		aa.put(key, "a");
+		assertEquals("a", aa.get("x\03412\034\u0394"));
+		assertTrue(aa.isIn(new CompositeKey(new String[] { "x", "12", "\u0394" }, "\034")));
+		assertFalse(aa.isIn(new CompositeKey(new String[] { "x", "1", "2\u0394" }, "\034")));
+		assertEquals(Arrays.asList("x\03412\034\u0394"), new ArrayList<Object>(aa.keySet()));
+		aa.put(new StrNum("y\0341"), "b");
+		assertEquals("b", aa.remove(new CompositeKey(new String[] { "y", "1" }, "\034")));
+
+		// the string, in a map
+		aa.put(2.5, "c");
+		assertEquals("a", aa.get(key));
+		assertTrue(aa.keySet().contains("x\03412\034\u0394"));
+	}
+
 }
@@ -0,0 +1,118 @@
+package org.sentrysoftware.jawk;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sentrysoftware.jawk.jrt.AwkRuntimeException;
+import org.sentrysoftware.jawk.util.AwkSettings;
+
+/**
+ * Runs scripts with the node engine (--nodes) and checks they behave
+ * exactly like with the tuples, including when only some statements
+ * compile to nodes.
+ */
+public class NodeEngineTest {
+
+	private static AwkSettings nodeSettings() {
+		AwkSettings settings = new AwkSettings();
+		settings.setNodeEngine(true);
+		return settings;
+	}
+
+	private static String nodes(String script, String input) throws Exception {
+		return AwkTestHelper.runAwk(script, input, false, nodeSettings());
+	}
+
+	private static void assertSameAsTuples(String script, String input) throws Exception {
+		assertEquals(AwkTestHelper.runAwk(script, input), nodes(script, input));
+	}
+
+	private static void assertSameErrorAsTuples(String script, String expected_message) throws Exception {
+		AwkRuntimeException tuples_error = assertThrows(AwkRuntimeException.class, () -> AwkTestHelper.runAwk(script, null));
+		AwkRuntimeException nodes_error = assertThrows(AwkRuntimeException.class, () -> nodes(script, null));
+		assertEquals(expected_message, tuples_error.getMessage());
+		assertEquals(expected_message, nodes_error.getMessage());
+	}
+
+	@Test
+	public void testExpressions() throws Exception {
+		assertEquals("3 3 a 3\n9 -9 0 1 1 4.5 x1 1\n", nodes(
+				"BEGIN { x = 1; y = x + 2; z = (x < y) ? \"a\" : \"b\"; w = x = y; print x, y, z, w;"
+				+ " a = 3; a ^= 2; b = -a; print a, b, !a, !0, a % 4, a / 2, \"x\" (u == 0), +\"1e0\" }", null));
+	}
+
+	@Test
+	public void testFieldsAndBuiltins() throws Exception {
+		assertSameAsTuples("{ $3 = toupper($1); t = $0; n = gsub(/a/, \"A\", t); sub(/b/, \"B\"); $2++;"
+				+ " printf \"%s|%s|%d|%d\\n\", t, $0, n, NF; print substr($1, 2), index($0, \"B\"), length() }",
+				"abc 1\nbab 4\naaa 7\n");
+	}
+
+	@Test
+	public void testRules() throws Exception {
+		assertSameAsTuples("$1 > 2 { s += $1; n++ } /b/ { print NR, $2 } /c/ END { print s, n }", "1 a\n2 b\n3 c\n4 b\n");
+	}
+
+	@Test
+	public void testLoopsAndArrays() throws Exception {
+		assertSameAsTuples(
+				"{ c[$1]++ } END { for (i = 0; i < 10; i++) { if (i == 2) continue; if (i == 6) break; t = t i }"
+				+ " n = 0; for (k in c) n += c[k]; while (n > 0) { n--; w++ } ; do { w-- } while (w > 3);"
+				+ " m[1, 2] = 3; if ((1, 2) in m) delete m[1, 2]; for (k in m) l++; print t, w, n, l + 0 }",
+				"a\nb\na\nc\n");
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		assertEquals("120 55 7 olleh\n", nodes(
+				"function fact(n) { return n <= 1 ? 1 : n * fact(n - 1) }\n"
+				+ "function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }\n"
+				+ "function sum(a, b,   s) { s = a; s += b; return s }\n"
+				+ "function rev(s,   i, r) { for (i = length(s); i > 0; i--) r = r substr(s, i, 1); return r }\n"
+				+ "BEGIN { print fact(5), fib(10), sum(3, 4), rev(\"hello\") }", null));
+	}
+
+	@Test
+	public void testMixedWithTuples() throws Exception {
+		// getline, next, exit and redirections stay in the tuples, around and within nodes
+		assertSameAsTuples("function f(x) { if (x > 2) exit; return x * 2 }"
+				+ " /start/,/stop/ { print \"in\", $0; next } { getline l; print \"out\", $0, l, f(NR) > \"/dev/stderr\"; print f(NR) }"
+				+ " END { print \"end\", NR }",
+				"a\nstart\nb\nstop\nc\nd\ne\nf\n");
+	}
+
+	@Test
+	public void testErrorLineNumbers() throws Exception {
+		// the statement ends after the comment, not its field reference
+		assertSameErrorAsTuples("BEGIN { print \"a\" $s \"b\" }\n#\n", "Field $() is incorrect. (line: 1)");
+		// back in the caller once the function returns
+		assertSameErrorAsTuples("function f() {\nreturn 1\n}\nBEGIN { print f() $s }", "Field $() is incorrect. (line: 5)");
+	}
+
+	@Test
+	public void testArrayScalarMixUp() throws Exception {
+		// the first argument is dereferenced as a scalar, before split() finds x to be an array
+		assertSameErrorAsTuples("function f(a, b) { return length(a) }\nBEGIN { f(x, split(\"abc\", x, \"\")) }",
+				" is not an array. (line: 2)");
+	}
+
+	@Test
+	public void testBwkP() throws Exception {
+		URL bwkPUrl = NodeEngineTest.class.getResource("/bwk/p");
+		File bwkPDirectory = new File(bwkPUrl.toURI());
+		File inputFile = new File(bwkPDirectory, "inputs/test.countries");
+		for (File awkFile : new File(bwkPDirectory, "scripts").listFiles()) {
+			if (!awkFile.getName().startsWith("p.")) {
+				continue;
+			}
+			String expectedResult = AwkTestHelper.readTextFile(new File(bwkPDirectory, "results/" + awkFile.getName() + ".ok"));
+			String result = AwkTestHelper.runAwk(awkFile, Collections.singletonList(inputFile), false, nodeSettings());
+			result = result.replace(inputFile.getParent() + System.getProperty("file.separator"), "");
+			assertEquals(awkFile.getName(), expectedResult, result);
+		}
+	}
+}
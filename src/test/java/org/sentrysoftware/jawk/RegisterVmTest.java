@@ -0,0 +1,98 @@
+package org.sentrysoftware.jawk;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sentrysoftware.jawk.util.AwkSettings;
+
+/**
+ * Runs scripts with the register VM (--registers) and checks they behave
+ * exactly like on the operand stack.
+ */
+public class RegisterVmTest {
+
+	private static AwkSettings registerSettings() {
+		AwkSettings settings = new AwkSettings();
+		settings.setRegisterVm(true);
+		return settings;
+	}
+
+	private static String registers(String script, String input) throws Exception {
+		return AwkTestHelper.runAwk(script, input, false, registerSettings());
+	}
+
+	private static void assertSameAsStack(String script, String input) throws Exception {
+		assertEquals(AwkTestHelper.runAwk(script, input), registers(script, input));
+	}
+
+	@Test
+	public void testExpressions() throws Exception {
+		assertEquals("3 3 a 3\n9 -9 0 1 1 4.5 x1 1\n", registers(
+				"BEGIN { x = 1; y = x + 2; z = (x < y) ? \"a\" : \"b\"; w = x = y; print x, y, z, w;"
+				+ " a = 3; a ^= 2; b = -a; print a, b, !a, !0, a % 4, a / 2, \"x\" (u == 0), +\"1e0\" }", null));
+	}
+
+	@Test
+	public void testAssignmentsWhilePending() throws Exception {
+		// x is read before being assigned within the same expression
+		assertEquals("1 2 3\n2 4\n", registers("BEGIN { x = 1; print x, (x = 2), x + 1; y = x; print y, (y += 2) }", null));
+	}
+
+	@Test
+	public void testComparisons() throws Exception {
+		assertSameAsStack("{ print ($1 < $2), ($1 == $2), ($1 > \"b\"), (NF >= 2), (NR != 2), (NR <= 1) }",
+				"1 2\n10 9\nb b\nc\n");
+	}
+
+	@Test
+	public void testRules() throws Exception {
+		assertSameAsStack("$1 > 2 { s += $1; n++ } /b/ { print NR, $2 } END { print s, n }", "1 a\n2 b\n3 c\n4 b\n");
+	}
+
+	@Test
+	public void testLoopsAndArrays() throws Exception {
+		assertSameAsStack(
+				"{ c[$1]++ } END { for (i = 0; i < 3; i++) { t = t i } ; n = 0; for (k in c) n += c[k]; while (n > 0) { n--; w++ } ; do { w-- } while (w > 3); print t, w, n }",
+				"a\nb\na\nc\n");
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		assertEquals("120 55 7\n", registers(
+				"function fact(n) { return n <= 1 ? 1 : n * fact(n - 1) }\n"
+				+ "function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }\n"
+				+ "function sum(a, b,   s) { s = a; s += b; return s }\n"
+				+ "BEGIN { print fact(5), fib(10), sum(3, 4) }", null));
+	}
+
+	@Test
+	public void testRangesAndGetline() throws Exception {
+		assertSameAsStack("/start/,/stop/ { print \"in\", $0; next } { getline l; print \"out\", $0, l }",
+				"a\nstart\nb\nstop\nc\nd\n");
+	}
+
+	@Test
+	public void testExit() throws Exception {
+		assertEquals("1\nend\n", registers("{ print; exit } END { print \"end\" }", "1\n2\n"));
+	}
+
+	@Test
+	public void testBwkP() throws Exception {
+		URL bwkPUrl = RegisterVmTest.class.getResource("/bwk/p");
+		File bwkPDirectory = new File(bwkPUrl.toURI());
+		File inputFile = new File(bwkPDirectory, "inputs/test.countries");
+		for (File awkFile : new File(bwkPDirectory, "scripts").listFiles()) {
+			if (!awkFile.getName().startsWith("p.")) {
+				continue;
+			}
+			String expectedResult = AwkTestHelper.readTextFile(new File(bwkPDirectory, "results/" + awkFile.getName() + ".ok"));
+			String result = AwkTestHelper.runAwk(awkFile, Collections.singletonList(inputFile), false, registerSettings());
+			result = result.replace(inputFile.getParent() + System.getProperty("file.separator"), "");
+			assertEquals(awkFile.getName(), expectedResult, result);
+		}
+	}
+}